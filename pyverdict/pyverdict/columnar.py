@@ -0,0 +1,152 @@
+'''
+    Copyright 2018 University of Michigan
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+'''
+import decimal
+import struct
+import numpy as np
+
+# The type tags of org.verdictdb.commons.ColumnarResultWriter
+LONG = 1
+DOUBLE = 2
+BOOLEAN = 3
+STRING = 4
+DECIMAL = 5
+BYTES = 6
+
+
+def read_columnar_bytes(data):
+    """Decodes the bytes produced by VerdictSingleResult.toColumnarBytes()
+
+    The numeric columns are decoded at once with numpy.
+
+    Returns
+        (row_count, columns) where each column is a (type tag, list of values) pair. A null is
+        None. The values of a DECIMAL column are kept as str so that the database-specific
+        converters can read them in the same way as the strings retrieved from Java.
+    """
+    data = bytes(data)
+    (row_count, column_count) = struct.unpack_from('>ii', data, 0)
+    pos = 8
+    columns = []
+    for _ in range(column_count):
+        tag = data[pos]
+        pos += 1
+        bitmap_len = (row_count + 7) // 8
+        bitmap = np.frombuffer(data, dtype=np.uint8, count=bitmap_len, offset=pos)
+        is_null = np.unpackbits(bitmap)[:row_count].astype(bool)
+        pos += bitmap_len
+
+        if tag == LONG:
+            values = np.frombuffer(data, dtype='>i8', count=row_count, offset=pos).tolist()
+            pos += 8 * row_count
+        elif tag == DOUBLE:
+            values = np.frombuffer(data, dtype='>f8', count=row_count, offset=pos).tolist()
+            pos += 8 * row_count
+        elif tag == BOOLEAN:
+            values = np.frombuffer(data, dtype=np.uint8, count=row_count, offset=pos) \
+                       .astype(bool).tolist()
+            pos += row_count
+        else:
+            lengths = np.frombuffer(data, dtype='>i4', count=row_count, offset=pos).tolist()
+            pos += 4 * row_count
+            values = []
+            for length in lengths:
+                value = data[pos:pos + length]
+                values.append(value if tag == BYTES else value.decode('utf-8'))
+                pos += length
+
+        if is_null.any():
+            for i in np.flatnonzero(is_null):
+                values[i] = None
+        columns.append((tag, values))
+    return (row_count, columns)
+
+
+# The java.sql.Types of the columns whose values are str when read from Java
+_CHARACTER_SQL_TYPES = set([
+    1,      # CHAR
+    12,     # VARCHAR
+    -1,     # LONGVARCHAR
+    -15,    # NCHAR
+    -9,     # NVARCHAR
+    -16,    # LONGNVARCHAR
+])
+
+
+class RowWiseReadRequired(Exception):
+    """Raised when a decoded value cannot stand for the Java object that a converter asks for;
+    the result must then be read row by row from Java.
+    """
+    pass
+
+
+class _DecodedSQLXML:
+    """The text of an XML value in place of java.sql.SQLXML"""
+
+    def __init__(self, text):
+        self._text = text
+
+    def getString(self):
+        return self._text
+
+
+class DecodedRow:
+    """Mimics the Java result set positioned at a row, so that the datatype converters can read
+    the decoded values in the same way as they read the values from Java.
+
+    The converters call getString, getValue, getByte, and getSQLXML. getValue of a column written
+    as STRING raises RowWiseReadRequired unless the column is of a character type, because Java
+    returns an object (e.g., an array) rather than its str for the other types.
+    """
+
+    def __init__(self, columns, column_inttypes):
+        self._columns = columns
+        self._column_inttypes = column_inttypes
+        self.row = 0
+
+    def getString(self, index):
+        (tag, values) = self._columns[index]
+        value = values[self.row]
+        if value is None:
+            return None
+        if tag == BOOLEAN:
+            return 'true' if value else 'false'
+        if tag == BYTES:
+            raise RowWiseReadRequired()
+        return str(value)
+
+    def getValue(self, index):
+        (tag, values) = self._columns[index]
+        value = values[self.row]
+        if value is None:
+            return None
+        if tag == DECIMAL:
+            return decimal.Decimal(value)
+        if tag == STRING and self._column_inttypes[index] not in _CHARACTER_SQL_TYPES:
+            raise RowWiseReadRequired()
+        return value
+
+    def getByte(self, index):
+        (tag, values) = self._columns[index]
+        value = values[self.row]
+        if value is None:
+            return 0
+        if tag == LONG or tag == BOOLEAN:
+            return int(value)
+        raise RowWiseReadRequired()
+
+    def getSQLXML(self, index):
+        value = self.getString(index)
+        return None if value is None else _DecodedSQLXML(value)
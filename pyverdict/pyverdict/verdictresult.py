@@ -20,6 +20,7 @@ from .datatype_converters.redshift_converter import RedshiftConverter
 from .datatype_converters.postgres_converter import PostgresConverter
 from .datatype_converters.presto_converter import PrestoConverter
 from .datatype_converters.mysql_converter import MysqlConverter
+from .columnar import read_columnar_bytes, DecodedRow, RowWiseReadRequired
 import decimal
 import numpy as np
 import pandas as pd
@@ -42,6 +43,9 @@ class SingleResultSet:
         timedelta: np.timedelta64
     }
 
+    # the number of the rows retrieved from Java at once
+    _columnar_batch_size = 100000
+
     def __init__(self, heading, column_types, rows, verdict_context):
         self._verdict_context = verdict_context
         # (heading, column_inttypes, column_types, rows) = self._read_all(resultset)
@@ -89,19 +93,22 @@ class SingleResultSet:
 
     @classmethod
     def _read_value(cls, resultset, index, col_type, verdict_context):
+        converter = cls._get_converter(verdict_context)
+        return converter.read_value(resultset, index, col_type)
+
+    @classmethod
+    def _get_converter(cls, verdict_context):
         dbtype = verdict_context.get_dbtype()
         if dbtype == 'mysql':
-            # return cls._read_value_mysql(resultset, index, col_type)
-            return MysqlConverter.read_value(resultset, index, col_type)
+            return MysqlConverter
         elif dbtype == 'presto':
-            # return cls._read_value_presto(resultset, index, col_type)
-            return PrestoConverter.read_value(resultset, index, col_type)
+            return PrestoConverter
         elif dbtype == 'redshift':
-            return RedshiftConverter.read_value(resultset, index, col_type)
+            return RedshiftConverter
         elif dbtype == 'impala':
-            return ImpalaConverter.read_value(resultset, index, col_type)
+            return ImpalaConverter
         elif dbtype == 'postgresql':
-            return PostgresConverter.read_value(resultset, index, col_type)
+            return PostgresConverter
         else:
             raise NotImplementedError
 
@@ -218,6 +225,32 @@ class SingleResultSet:
     #     else:
     #         return resultset.getValue(index)
 
+    @classmethod
+    def _read_columnar(cls, resultset, converter, column_inttypes, column_types):
+        rows = []
+        while True:
+            (row_count, columns) = read_columnar_bytes(
+                resultset.toColumnarBytes(cls._columnar_batch_size))
+            decoded_row = DecodedRow(columns, column_inttypes)
+            for r in range(row_count):
+                decoded_row.row = r
+                row = []
+                for i in range(len(column_types)):
+                    row.append(converter.read_value(decoded_row, i, column_types[i]))
+                rows.append(row)
+            if row_count < cls._columnar_batch_size:
+                return rows
+
+    @classmethod
+    def _read_row_wise(cls, resultset, converter, column_types):
+        rows = []
+        while (resultset.next()):
+            row = []
+            for i in range(len(column_types)):
+                row.append(converter.read_value(resultset, i, column_types[i]))
+            rows.append(row)
+        return rows
+
     @classmethod
     def _read_all(cls, resultset, verdict_context):
         column_count = resultset.getColumnCount()
@@ -237,10 +270,14 @@ class SingleResultSet:
             column_inttypes.append(resultset.getColumnType(i))
             column_types.append(get_column_type_name_fxn(i))
 
-        while (resultset.next()):
-            row = []
-            for i in range(column_count):
-                row.append(cls._read_value(resultset, i, column_types[i], verdict_context))
-            rows.append(row)
+        # The rows are retrieved in batches of columnar bytes instead of a call per value; the
+        # converters then read the decoded values as if they were read from Java. If a converter
+        # needs a Java object that the bytes cannot stand for, the result is read again row-wise.
+        converter = cls._get_converter(verdict_context)
+        try:
+            rows = cls._read_columnar(resultset, converter, column_inttypes, column_types)
+        except RowWiseReadRequired:
+            resultset.rewind()
+            rows = cls._read_row_wise(resultset, converter, column_types)
 
         return (heading, column_inttypes, column_types, rows)
@@ -13,6 +13,13 @@ SCRAMBLES:                       S C R A M B L E S;
 STREAM:                          S T R E A M;
 GET:                             G E T;
 APPEND:                          A P P E N D;
+RESUME:                          R E S U M E;
+ANALYZE:                         A N A L Y Z E;
+TARGET:                          T A R G E T;
+SECONDS:                         S E C O N D S;
+ZONEMAP:                         Z O N E M A P;
+ALIGN:                           A L I G N;
+REBALANCE:                       R E B A L A N C E;
 
 
 
@@ -467,6 +474,7 @@ MARK:                            M A R K;
 MASKLEN:                         M A S K L E N;
 MAX:                             M A X;
 MD5:                             M D '5';
+MEDIAN:                          M E D I A N;
 METHOD:                          M E T H O D;
 MICROSECOND:                     M I C R O S E C O N D;
 MIN:                             M I N;
@@ -511,6 +519,7 @@ PARTITION:                       P A R T I T I O N;
 PATH:                            P A T H;
 PCLOSE:                          P C L O S E;
 PERCENTILE:                      P E R C E N T I L E;
+PERCENTILE_APPROX:               P E R C E N T I L E '_' A P P R O X;
 PERIOD_ADD:                      P E R I O D '_' A D D;
 PERIOD_DIFF:                     P E R I O D '_' D I F F;
 PG_CLIENT_ENCODING:              P G '_' C L I E N T '_' E N C O D I N G;
@@ -53,6 +53,9 @@ verdict_statement
     | stream_select_statement
     | create_scramble_statement
     | insert_scramble_statement
+    | resume_scramble_statement
+    | rebalance_scramble_statement
+    | analyze_scramble_statement
     | drop_scramble_statement
     | drop_all_scrambles_statement
     | show_scrambles_statement
@@ -70,15 +73,31 @@ create_scramble_statement
     : CREATE SCRAMBLE (IF NOT EXISTS)? scrambled_table=table_name FROM original_table=table_name
       (WHERE where=search_condition)?
       (METHOD method=scrambling_method_name)?
-      ((HASHCOLUMN | ON) hash_column=column_name)? 
+      ((HASHCOLUMN | ON) hash_column=column_name
+        | ON '(' on_columns+=column_name (',' on_columns+=column_name)* ')')?
+      (ALIGN WITH aligned_scramble=table_name)?
       ((SIZE | RATIO) percent=FLOAT)?
       (BLOCKSIZE blocksize=DECIMAL)?
+      (ZONEMAP '(' zonemap_columns+=column_name (',' zonemap_columns+=column_name)* ')')?
     ;
 
 insert_scramble_statement
 	: (APPEND|INSERT) SCRAMBLE scrambled_table=table_name WHERE where=search_condition
 	;
 
+resume_scramble_statement
+    : RESUME SCRAMBLE scrambled_table=table_name
+    ;
+
+rebalance_scramble_statement
+    : REBALANCE SCRAMBLE scrambled_table=table_name (BLOCKSIZE blocksize=DECIMAL)?
+    ;
+
+analyze_scramble_statement
+    : ANALYZE SCRAMBLE FOR original_table=table_name
+      TARGET target_seconds=(DECIMAL | FLOAT) (SECOND | SECONDS)
+    ;
+
 scrambling_method_name
     : config_value
     | HASH
@@ -656,7 +675,7 @@ ternary_function
     ;
 
 binary_function
-    : function_name=(ROUND | MOD | PMOD | LEFT | RIGHT | STRTOL | POW | POWER | PERCENTILE | SPLIT | INSTR | ENCODE | DECODE | SHIFTLEFT
+    : function_name=(ROUND | MOD | PMOD | LEFT | RIGHT | STRTOL | POW | POWER | PERCENTILE | PERCENTILE_APPROX | SPLIT | INSTR | ENCODE | DECODE | SHIFTLEFT
     | SHIFTRIGHT | SHIFTRIGHTUNSIGNED | NVL | FIND_IN_SET | FORMAT_NUMBER | FORMAT | GET_JSON_OBJECT | IN_FILE
     | LOCATE | REPEAT | AES_ENCRYPT | AES_DECRYPT | POSITION | STRCMP | TRUNCATE | ADDDATE | ADDTIME | DATEDIFF | DATE_ADD
     | DATE_FORMAT | DATE_SUB | MAKEDATE | PERIOD_ADD | PERIOD_DIFF | SUBDATE | TIME_FORMAT | TIMEDIFF | CONVERT | IFNULL | NULLIF
@@ -707,7 +726,7 @@ unary_function
      | ST_X | ST_Y | ST_INTERIORRINGS | ST_NUMGEOMETRIES | ST_GEOMETRIES | ST_NUMPOINTS 
      | ST_NUMINTERIORRING | GEOMETRY_INVALID_REASON | CONVEX_HULL_AGG | GEOMETRY_UNION_AGG 
      | BING_TILE | BING_TILE_COORDINATES | BING_TILE_POLYGON | BING_TILE_QUADKEY 
-     | BING_TILE_ZOOM_LEVEL | APPROX_DISTINCT ) 
+     | BING_TILE_ZOOM_LEVEL | APPROX_DISTINCT | MEDIAN ) 
        '(' expression ')'
      | function_name=CAST '(' cast_as_expression ')'
     ;
@@ -971,6 +990,7 @@ simple_id
     | LEFT
     | LENGTH
     | MAKEDATE
+    | MEDIAN
     | MICROSECOND
     | MINUTE
     | MOD
@@ -985,6 +1005,13 @@ simple_id
     | TIMESTAMP
     | VARIANCE
     | WEEKOFYEAR
+    | RESUME
+    | ANALYZE
+    | TARGET
+    | SECONDS
+    | ZONEMAP
+    | ALIGN
+    | REBALANCE
     ;
 
 // https://msdn.microsoft.com/en-us/library/ms188074.aspx
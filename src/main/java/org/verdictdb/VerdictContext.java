@@ -16,6 +16,7 @@
 
 package org.verdictdb;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Collection;
@@ -37,6 +38,7 @@ import org.verdictdb.core.sqlobject.CreateSchemaQuery;
 import org.verdictdb.exception.VerdictDBDbmsException;
 import org.verdictdb.exception.VerdictDBException;
 import org.verdictdb.metastore.CachedScrambleMetaStore;
+import org.verdictdb.metastore.MetaDataSnapshot;
 import org.verdictdb.metastore.ScrambleMetaStore;
 import org.verdictdb.metastore.VerdictMetaStore;
 import org.verdictdb.sqlsyntax.MysqlSyntax;
@@ -57,6 +59,12 @@ public class VerdictContext {
 
   private VerdictOption options;
 
+  // the state of the metadata when the local snapshot was restored or written last; the snapshot
+  // is rewritten only if the metadata has changed since then.
+  private long snapshotCacheModificationCount = -1;
+
+  private String snapshotMetaStoreVersion = null;
+
   private static final VerdictDBLogger log = VerdictDBLogger.getLogger(VerdictContext.class);
 
   /**
@@ -80,13 +88,89 @@ public class VerdictContext {
     initialize(options);
   }
 
-  private VerdictMetaStore getCachedMetaStore(DbmsConnection conn, VerdictOption option) {
-    CachedScrambleMetaStore metaStore =
-        new CachedScrambleMetaStore(new ScrambleMetaStore(conn, options));
-    metaStore.refreshCache();
+  private VerdictMetaStore getCachedMetaStore(DbmsConnection conn, VerdictOption option)
+      throws VerdictDBDbmsException {
+    // With the background refresh, the metastore is read through a copy of the connection, which
+    // tracks its running statement separately; otherwise, a refresh could replace the running
+    // statement of a user query, and aborting the query would cancel the refresh instead.
+    DbmsConnection metaStoreConn =
+        (option.getMetaStoreRefreshInterval() > 0) ? conn.copy() : conn;
+    ScrambleMetaStore scrambleMetaStore = new ScrambleMetaStore(metaStoreConn, options);
+    CachedScrambleMetaStore metaStore = new CachedScrambleMetaStore(scrambleMetaStore);
+    boolean restored =
+        option.isMetaDataSnapshotEnabled()
+            && restoreFromMetaDataSnapshot(metaStore, scrambleMetaStore.retrieveVersion());
+    if (!restored) {
+      metaStore.refreshCache();
+    }
+    metaStore.startBackgroundRefresh(option.getMetaStoreRefreshInterval());
     return metaStore;
   }
 
+  /**
+   * Restores the cached table metadata and scramble meta from the local snapshot.
+   *
+   * @param metaStore The metastore whose cache is set
+   * @param currentVersion The current version of the metastore
+   * @return True if the snapshot was valid and thus restored.
+   */
+  private boolean restoreFromMetaDataSnapshot(
+      CachedScrambleMetaStore metaStore, String currentVersion) {
+    String path = options.getMetaDataSnapshotPath();
+    MetaDataSnapshot snapshot = MetaDataSnapshot.readFrom(path);
+    if (snapshot == null) {
+      return false;
+    }
+    if (!snapshot.isValid(currentVersion, options.getMetaDataSnapshotMaxAge())) {
+      log.debug("The metadata snapshot is outdated: " + path);
+      return false;
+    }
+    snapshot.restoreTo((CachedDbmsConnection) conn);
+    metaStore.setCache(snapshot.getScrambleMetaSet(), currentVersion);
+    snapshotCacheModificationCount = ((CachedDbmsConnection) conn).getCacheModificationCount();
+    snapshotMetaStoreVersion = currentVersion;
+    log.debug("Restored metadata from the snapshot: " + path);
+    return true;
+  }
+
+  /**
+   * Stores the currently cached table metadata and scramble meta into the local snapshot file so
+   * that new VerdictContext instances can start without metadata queries. No-op if no snapshot
+   * path is set or if the metadata has not changed since the snapshot was restored or written.
+   */
+  public void saveMetaDataSnapshot() {
+    if (!options.isMetaDataSnapshotEnabled()) {
+      return;
+    }
+    CachedScrambleMetaStore cachedStore = (CachedScrambleMetaStore) metaStore;
+
+    // Holding the lock prevents the background refresh from updating the cache between reading the
+    // scramble meta and reading its version.
+    CachedDbmsConnection cachedConn = (CachedDbmsConnection) conn;
+    MetaDataSnapshot snapshot;
+    long cacheModificationCount;
+    synchronized (cachedStore) {
+      cachedStore.refreshIfChanged();
+      cacheModificationCount = cachedConn.getCacheModificationCount();
+      if (cacheModificationCount == snapshotCacheModificationCount
+          && cachedStore.getCachedVersion() != null
+          && cachedStore.getCachedVersion().equals(snapshotMetaStoreVersion)) {
+        log.debug("The metadata snapshot is up to date.");
+        return;
+      }
+      snapshot =
+          MetaDataSnapshot.capture(
+              cachedConn, cachedStore.retrieve(), cachedStore.getCachedVersion());
+    }
+    try {
+      snapshot.writeTo(options.getMetaDataSnapshotPath());
+      snapshotCacheModificationCount = cacheModificationCount;
+      snapshotMetaStoreVersion = snapshot.getMetaStoreVersion();
+    } catch (IOException e) {
+      log.warn("Failed to write the metadata snapshot: " + e.getMessage());
+    }
+  }
+
   /**
    * Creates the schema for temp tables.
    *
@@ -297,6 +381,8 @@ public class VerdictContext {
 
   public void close() {
     this.abort(); // terminates all ExecutionContexts first.
+    ((CachedScrambleMetaStore) metaStore).stopBackgroundRefresh();
+    saveMetaDataSnapshot();
     conn.close();
     isClosed = true;
   }
@@ -19,6 +19,7 @@ package org.verdictdb;
 import java.sql.SQLException;
 
 import org.verdictdb.commons.AttributeValueRetrievalHelper;
+import org.verdictdb.commons.ColumnarResultWriter;
 import org.verdictdb.commons.DBTablePrinter;
 import org.verdictdb.commons.DataTypeConverter;
 import org.verdictdb.commons.VerdictResultPrinter;
@@ -99,6 +100,27 @@ public abstract class VerdictSingleResult extends AttributeValueRetrievalHelper
     System.out.println(toCsv());
   }
 
+  /**
+   * Serializes all the rows of this result in a columnar binary layout (see ColumnarResultWriter).
+   * The cursor is rewound first and is placed after the last row afterwards.
+   *
+   * NOTE: This is to be used by pyverdict to read a result with a single call
+   */
+  public byte[] toColumnarBytes() {
+    rewind();
+    return toColumnarBytes(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Serializes the next rows (from the current cursor) in a columnar binary layout.
+   *
+   * @param maxRowCount The maximum number of the rows to serialize
+   * @return Includes fewer than maxRowCount rows only if no more rows exist.
+   */
+  public byte[] toColumnarBytes(int maxRowCount) {
+    return ColumnarResultWriter.write(this, maxRowCount);
+  }
+
   // Print in database form
   public void print() {
     VerdictResultSet vrs = new VerdictResultSet(this);
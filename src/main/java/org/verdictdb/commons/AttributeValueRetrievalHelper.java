@@ -19,7 +19,6 @@ package org.verdictdb.commons;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.net.URL;
 import java.sql.Array;
 import java.sql.Blob;
@@ -75,11 +74,8 @@ public abstract class AttributeValueRetrievalHelper {
     if (value instanceof Boolean) {
       return (boolean) value;
     }
-    if (value instanceof Integer
-        || value instanceof Long
-        || value instanceof Double
-        || value instanceof Float) {
-      int v = Integer.valueOf(value.toString());
+    if (value instanceof Number) {
+      double v = ((Number) value).doubleValue();
       if (v == 1) {
         return true;
       } else if (v == 0) {
@@ -121,6 +117,10 @@ public abstract class AttributeValueRetrievalHelper {
     if (value == null) {
       return 0;
     }
+    // the common case: converted without creating an intermediate object
+    if (value instanceof Number) {
+      return ((Number) value).intValue();
+    }
     if (value instanceof String) {
       String v = value.toString();
       if (v.equals("t") || v.equals("true")) {
@@ -129,9 +129,6 @@ public abstract class AttributeValueRetrievalHelper {
         return 0;
       }
     }
-    else if (value instanceof BigInteger) {
-      return ((BigInteger) value).intValue();
-    }
     return TypeCasting.toInteger(value);
   }
 
@@ -145,6 +142,9 @@ public abstract class AttributeValueRetrievalHelper {
     if (value == null) {
       return 0;
     }
+    if (value instanceof Number) {
+      return ((Number) value).longValue();
+    }
     if (value instanceof String) {
       String v = value.toString();
       if (v.equals("t") || v.equals("true")) {
@@ -153,9 +153,6 @@ public abstract class AttributeValueRetrievalHelper {
         return 0;
       }
     }
-    else if (value instanceof BigInteger) {
-      return ((BigInteger) value).longValue();
-    }
     return TypeCasting.toLong(value);
   }
 
@@ -169,6 +166,9 @@ public abstract class AttributeValueRetrievalHelper {
     if (value == null) {
       return 0;
     }
+    if (value instanceof Number) {
+      return ((Number) value).doubleValue();
+    }
     return TypeCasting.toDouble(value);
   }
 
@@ -182,6 +182,9 @@ public abstract class AttributeValueRetrievalHelper {
     if (value == null) {
       return 0;
     }
+    if (value instanceof Number) {
+      return ((Number) value).floatValue();
+    }
     return TypeCasting.toFloat(value);
   }
 
@@ -220,6 +223,9 @@ public abstract class AttributeValueRetrievalHelper {
     if (value == null) {
       return 0;
     }
+    if (value instanceof Number) {
+      return ((Number) value).byteValue();
+    }
     if (value instanceof String) {
       String v = value.toString();
       if (v.equals("t") || v.equals("true")) {
@@ -264,6 +270,9 @@ public abstract class AttributeValueRetrievalHelper {
     if (value == null) {
       return 0;
     }
+    if (value instanceof Number) {
+      return ((Number) value).shortValue();
+    }
     if (value instanceof String) {
       String v = value.toString();
       if (v.equals("t") || v.equals("true")) {
@@ -0,0 +1,253 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.commons;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.verdictdb.VerdictSingleResult;
+
+/**
+ * Serializes the rows of a VerdictSingleResult into a columnar binary layout, so that a client
+ * (i.e., pyverdict) can read many rows with a single call instead of a call per value.
+ *
+ * <p>All numbers are big-endian. The layout is:
+ *
+ * <pre>
+ * int32 rowCount
+ * int32 columnCount
+ * for each column:
+ *   int8 type tag (see the constants below)
+ *   (rowCount + 7) / 8 bytes of null bitmap; the most significant bit of the first byte is the
+ *       first row, and a set bit indicates null
+ *   values:
+ *     LONG:    rowCount x int64 (0 for null)
+ *     DOUBLE:  rowCount x float64 (NaN for null)
+ *     BOOLEAN: rowCount x int8 (0 or 1)
+ *     STRING, DECIMAL, BYTES: rowCount x int32 byte lengths, followed by the bytes of all the
+ *         values (UTF-8 for STRING and DECIMAL)
+ * </pre>
+ *
+ * <p>The type of a column is determined by its java.sql.Types; the column is written as STRING if
+ * any of its values cannot be converted to that type.
+ */
+public class ColumnarResultWriter {
+
+  public static final byte LONG = 1;
+
+  public static final byte DOUBLE = 2;
+
+  public static final byte BOOLEAN = 3;
+
+  public static final byte STRING = 4;
+
+  /** The string representation of an exact number, e.g., java.math.BigDecimal */
+  public static final byte DECIMAL = 5;
+
+  public static final byte BYTES = 6;
+
+  /**
+   * Reads the rows from the current cursor of a result and serializes them.
+   *
+   * @param result The cursor of this result is moved forward by the number of the written rows.
+   * @param maxRowCount The maximum number of the rows to write
+   * @return The serialized rows; its row count is smaller than maxRowCount only if the result
+   *     does not have more rows.
+   */
+  public static byte[] write(VerdictSingleResult result, int maxRowCount) {
+    int columnCount = result.isEmpty() ? 0 : result.getColumnCount();
+    List<Object[]> rows = new ArrayList<>();
+    if (!result.isEmpty()) {
+      while (rows.size() < maxRowCount && result.next()) {
+        Object[] row = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+          row[i] = result.getValue(i);
+        }
+        rows.add(row);
+      }
+    }
+
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(rows.size());
+      out.writeInt(columnCount);
+      for (int i = 0; i < columnCount; i++) {
+        // the type of a column is not available from some results without rows
+        byte tag = rows.isEmpty() ? STRING : getTypeTag(result.getColumnType(i));
+        writeColumn(out, rows, i, tag);
+      }
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      // not supposed to happen when writing into memory
+      throw new RuntimeException(e);
+    }
+  }
+
+  static byte getTypeTag(int sqlType) {
+    switch (sqlType) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+      case Types.BIGINT:
+        return LONG;
+      case Types.FLOAT:
+      case Types.REAL:
+      case Types.DOUBLE:
+        return DOUBLE;
+      case Types.DECIMAL:
+      case Types.NUMERIC:
+        return DECIMAL;
+      case Types.BIT:
+      case Types.BOOLEAN:
+        return BOOLEAN;
+      case Types.BINARY:
+      case Types.VARBINARY:
+      case Types.LONGVARBINARY:
+      case Types.BLOB:
+        return BYTES;
+      default:
+        return STRING;
+    }
+  }
+
+  private static void writeColumn(DataOutputStream out, List<Object[]> rows, int index, byte tag)
+      throws IOException {
+    int rowCount = rows.size();
+    // the values are converted before anything is written, in order to fall back to STRING
+    long[] longs = null;
+    double[] doubles = null;
+    byte[][] variable = null;
+    try {
+      if (tag == LONG || tag == BOOLEAN) {
+        longs = new long[rowCount];
+        for (int r = 0; r < rowCount; r++) {
+          longs[r] = (tag == LONG) ? toLong(rows.get(r)[index]) : toBoolean(rows.get(r)[index]);
+        }
+      } else if (tag == DOUBLE) {
+        doubles = new double[rowCount];
+        for (int r = 0; r < rowCount; r++) {
+          doubles[r] = toDouble(rows.get(r)[index]);
+        }
+      }
+    } catch (NumberFormatException e) {
+      tag = STRING;
+    }
+    if (tag == STRING || tag == DECIMAL || tag == BYTES) {
+      variable = new byte[rowCount][];
+      for (int r = 0; r < rowCount; r++) {
+        Object value = rows.get(r)[index];
+        if (value == null) {
+          variable[r] = new byte[0];
+        } else if (tag == BYTES && value instanceof byte[]) {
+          variable[r] = (byte[]) value;
+        } else {
+          variable[r] = toText(value).getBytes(StandardCharsets.UTF_8);
+        }
+      }
+    }
+
+    out.writeByte(tag);
+    byte[] nullBitmap = new byte[(rowCount + 7) / 8];
+    for (int r = 0; r < rowCount; r++) {
+      if (rows.get(r)[index] == null) {
+        nullBitmap[r / 8] |= (byte) (0x80 >>> (r % 8));
+      }
+    }
+    out.write(nullBitmap);
+
+    if (tag == LONG) {
+      for (long v : longs) {
+        out.writeLong(v);
+      }
+    } else if (tag == BOOLEAN) {
+      for (long v : longs) {
+        out.writeByte((int) v);
+      }
+    } else if (tag == DOUBLE) {
+      for (double v : doubles) {
+        out.writeDouble(v);
+      }
+    } else {
+      for (byte[] v : variable) {
+        out.writeInt(v.length);
+      }
+      for (byte[] v : variable) {
+        out.write(v);
+      }
+    }
+  }
+
+  /** The text of an XML value is written instead of the identity of its JDBC object. */
+  private static String toText(Object value) {
+    if (value instanceof SQLXML) {
+      try {
+        return ((SQLXML) value).getString();
+      } catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return String.valueOf(value);
+  }
+
+  private static long toLong(Object value) {
+    if (value == null) {
+      return 0;
+    } else if (value instanceof Number) {
+      return ((Number) value).longValue();
+    } else if (value instanceof Boolean) {
+      return ((Boolean) value) ? 1 : 0;
+    } else {
+      return Long.parseLong(value.toString());
+    }
+  }
+
+  private static double toDouble(Object value) {
+    if (value == null) {
+      return Double.NaN;
+    } else if (value instanceof Number) {
+      return ((Number) value).doubleValue();
+    } else {
+      return Double.parseDouble(value.toString());
+    }
+  }
+
+  private static long toBoolean(Object value) {
+    if (value == null) {
+      return 0;
+    } else if (value instanceof Boolean) {
+      return ((Boolean) value) ? 1 : 0;
+    } else if (value instanceof Number) {
+      return ((Number) value).doubleValue() != 0 ? 1 : 0;
+    }
+    String v = value.toString().toLowerCase();
+    if (v.equals("t") || v.equals("true") || v.equals("1")) {
+      return 1;
+    } else if (v.equals("f") || v.equals("false") || v.equals("0")) {
+      return 0;
+    }
+    throw new NumberFormatException("Not a boolean value: " + value);
+  }
+}
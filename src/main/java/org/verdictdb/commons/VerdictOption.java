@@ -32,11 +32,101 @@ public class VerdictOption {
   private static final String DEFAULT_CONSOLE_LOG_LEVEL = "info";
   private static final String DEFAULT_FILE_LOG_LEVEL = "debug";
 
+  private static final long DEFAULT_META_DATA_SNAPSHOT_MAX_AGE = 86400;
+
+  private static final String DEFAULT_STREAM_BUFFER_POLICY = "bounded";
+  private static final int DEFAULT_STREAM_BUFFER_SIZE = 10;
+
+  private static final int DEFAULT_STREAM_DELTA_SNAPSHOT_INTERVAL = 10;
+
+  private static final double DEFAULT_CONFIDENCE_LEVEL = 0.95;
+
   private String verdictMetaSchemaName = DEFAULT_META_SCHEMA_NAME;
   private String verdictTempSchemaName = DEFAULT_TEMP_SCHEMA_NAME;
   private String verdictConsoleLogLevel = DEFAULT_CONSOLE_LOG_LEVEL;
   private String verdictFileLogLevel = DEFAULT_FILE_LOG_LEVEL;
 
+  /**
+   * A local file used for storing the metadata snapshot. If null (default), no snapshot is used.
+   */
+  private String metaDataSnapshotPath = null;
+
+  /** The snapshot older than this (in seconds) is ignored even if the metastore is unchanged. */
+  private long metaDataSnapshotMaxAge = DEFAULT_META_DATA_SNAPSHOT_MAX_AGE;
+
+  /**
+   * The interval (in seconds) at which the cached scramble meta is checked against the metastore
+   * in the background. If 0 (default), the cache is refreshed only by the local operations.
+   */
+  private long metaStoreRefreshInterval = 0;
+
+  /**
+   * The number of the units into which a scramble creation is split; the units are run
+   * concurrently. If 1 (default), a scramble is created with a single statement.
+   */
+  private int scramblingUnitCount = 1;
+
+  /**
+   * If true, uniform scrambles are built by streaming the original table through the client (see
+   * StreamingScrambleBuilder) when the database supports it, e.g., MySQL and SQLite.
+   */
+  private boolean clientSideScrambling = false;
+
+  /**
+   * How the intermediate answers of a stream query are kept until they are read: "bounded"
+   * (default) keeps at most streamBufferSize answers, pausing the query while the buffer is full;
+   * "latest" keeps only the most recent answer, dropping the ones not read in time.
+   */
+  private String streamBufferPolicy = DEFAULT_STREAM_BUFFER_POLICY;
+
+  /** The maximum number of the unread answers of a stream query under the "bounded" policy. */
+  private int streamBufferSize = DEFAULT_STREAM_BUFFER_SIZE;
+
+  /**
+   * If true, each answer of a stream query (except for the snapshots) carries only the groups
+   * inserted, updated, or removed since the previous answer; see VerdictResultStreamWithDeltas.
+   */
+  private boolean streamDelta = false;
+
+  /** Every this many answers, a delta-encoded stream sends the full answer again. */
+  private int streamDeltaSnapshotInterval = DEFAULT_STREAM_DELTA_SNAPSHOT_INTERVAL;
+
+  /**
+   * The relative change of a numeric value below which a group is not sent as updated in a
+   * delta-encoded stream. If 0 (default), any change is sent.
+   */
+  private double streamDeltaTolerance = 0;
+
+  /**
+   * If true, the standard error and the confidence interval of every aggregate are appended to the
+   * answers of a select query as the columns "col_err", "col_lo", and "col_hi"; see
+   * VerdictResultStreamWithErrors.
+   */
+  private boolean errorBoundColumns = false;
+
+  /**
+   * The confidence level of the intervals in the error bound columns, and of those compared for
+   * the early stop of top-k queries.
+   */
+  private double confidenceLevel = DEFAULT_CONFIDENCE_LEVEL;
+
+  /**
+   * If true, the online aggregation of a top-k query (i.e., ORDER BY an aggregate LIMIT k) stops
+   * once the membership and the order of its top k groups are settled within the confidence
+   * intervals; see TopKTracker.
+   */
+  private boolean topKEarlyStop = false;
+
+  /**
+   * The memory (in megabytes) that the group state of an online aggregation may occupy. If the
+   * state grows larger, it is kept in local files and combined one hash partition at a time; see
+   * InMemoryAggregate. If 0 (default), the state is kept in memory without a limit.
+   */
+  private long aggregateMemoryBudget = 0;
+
+  /** The directory of the files of the spilled group state. If null, java.io.tmpdir is used. */
+  private String aggregateSpillDirectory = null;
+
   public VerdictOption() {}
 
   /**
@@ -82,6 +172,130 @@ public class VerdictOption {
     this.verdictTempSchemaName = verdictTempSchemaName;
   }
 
+  public String getMetaDataSnapshotPath() {
+    return metaDataSnapshotPath;
+  }
+
+  public void setMetaDataSnapshotPath(String metaDataSnapshotPath) {
+    this.metaDataSnapshotPath = metaDataSnapshotPath;
+  }
+
+  public boolean isMetaDataSnapshotEnabled() {
+    return metaDataSnapshotPath != null && !metaDataSnapshotPath.isEmpty();
+  }
+
+  public long getMetaDataSnapshotMaxAge() {
+    return metaDataSnapshotMaxAge;
+  }
+
+  public void setMetaDataSnapshotMaxAge(long metaDataSnapshotMaxAge) {
+    this.metaDataSnapshotMaxAge = metaDataSnapshotMaxAge;
+  }
+
+  public long getMetaStoreRefreshInterval() {
+    return metaStoreRefreshInterval;
+  }
+
+  public void setMetaStoreRefreshInterval(long metaStoreRefreshInterval) {
+    this.metaStoreRefreshInterval = metaStoreRefreshInterval;
+  }
+
+  public int getScramblingUnitCount() {
+    return scramblingUnitCount;
+  }
+
+  public void setScramblingUnitCount(int scramblingUnitCount) {
+    this.scramblingUnitCount = scramblingUnitCount;
+  }
+
+  public boolean isClientSideScrambling() {
+    return clientSideScrambling;
+  }
+
+  public void setClientSideScrambling(boolean clientSideScrambling) {
+    this.clientSideScrambling = clientSideScrambling;
+  }
+
+  public String getStreamBufferPolicy() {
+    return streamBufferPolicy;
+  }
+
+  public void setStreamBufferPolicy(String streamBufferPolicy) {
+    this.streamBufferPolicy = streamBufferPolicy.toLowerCase();
+  }
+
+  public int getStreamBufferSize() {
+    return streamBufferSize;
+  }
+
+  public void setStreamBufferSize(int streamBufferSize) {
+    this.streamBufferSize = streamBufferSize;
+  }
+
+  public boolean isStreamDelta() {
+    return streamDelta;
+  }
+
+  public void setStreamDelta(boolean streamDelta) {
+    this.streamDelta = streamDelta;
+  }
+
+  public int getStreamDeltaSnapshotInterval() {
+    return streamDeltaSnapshotInterval;
+  }
+
+  public void setStreamDeltaSnapshotInterval(int streamDeltaSnapshotInterval) {
+    this.streamDeltaSnapshotInterval = streamDeltaSnapshotInterval;
+  }
+
+  public double getStreamDeltaTolerance() {
+    return streamDeltaTolerance;
+  }
+
+  public void setStreamDeltaTolerance(double streamDeltaTolerance) {
+    this.streamDeltaTolerance = streamDeltaTolerance;
+  }
+
+  public boolean isErrorBoundColumns() {
+    return errorBoundColumns;
+  }
+
+  public void setErrorBoundColumns(boolean errorBoundColumns) {
+    this.errorBoundColumns = errorBoundColumns;
+  }
+
+  public double getConfidenceLevel() {
+    return confidenceLevel;
+  }
+
+  public void setConfidenceLevel(double confidenceLevel) {
+    this.confidenceLevel = confidenceLevel;
+  }
+
+  public boolean isTopKEarlyStop() {
+    return topKEarlyStop;
+  }
+
+  public void setTopKEarlyStop(boolean topKEarlyStop) {
+    this.topKEarlyStop = topKEarlyStop;
+  }
+
+  public long getAggregateMemoryBudget() {
+    return aggregateMemoryBudget;
+  }
+
+  public void setAggregateMemoryBudget(long aggregateMemoryBudget) {
+    this.aggregateMemoryBudget = aggregateMemoryBudget;
+  }
+
+  public String getAggregateSpillDirectory() {
+    return aggregateSpillDirectory;
+  }
+
+  public void setAggregateSpillDirectory(String aggregateSpillDirectory) {
+    this.aggregateSpillDirectory = aggregateSpillDirectory;
+  }
+
   public static String getVerdictTempTablePrefix() {
     return VERDICT_TEMP_TABLE_PREFIX;
   }
@@ -106,7 +320,37 @@ public class VerdictOption {
     String[] tokens = str.split("[&;?]");
     String pattern = "\\w+=\\w+";
     Pattern p = Pattern.compile(pattern);
+    // file paths may include characters other than word characters
+    Pattern snapshotPattern =
+        Pattern.compile("verdictdbmetasnapshot=(.+)", Pattern.CASE_INSENSITIVE);
+    Pattern spillDirectoryPattern =
+        Pattern.compile("verdictdbaggregatespilldir=(.+)", Pattern.CASE_INSENSITIVE);
+    // a fractional number is not matched by the pattern above
+    Pattern fractionPattern =
+        Pattern.compile(
+            "(verdictdbstreamdeltatolerance|verdictdbconfidencelevel)=([0-9.eE+-]+)",
+            Pattern.CASE_INSENSITIVE);
     for (String token : tokens) {
+      Matcher snapshotMatcher = snapshotPattern.matcher(token);
+      if (snapshotMatcher.matches()) {
+        this.setMetaDataSnapshotPath(snapshotMatcher.group(1));
+        continue;
+      }
+      Matcher spillDirectoryMatcher = spillDirectoryPattern.matcher(token);
+      if (spillDirectoryMatcher.matches()) {
+        this.setAggregateSpillDirectory(spillDirectoryMatcher.group(1));
+        continue;
+      }
+      Matcher fractionMatcher = fractionPattern.matcher(token);
+      if (fractionMatcher.matches()) {
+        double value = Double.parseDouble(fractionMatcher.group(2));
+        if (fractionMatcher.group(1).equalsIgnoreCase("verdictdbconfidencelevel")) {
+          this.setConfidenceLevel(value);
+        } else {
+          this.setStreamDeltaTolerance(value);
+        }
+        continue;
+      }
       Matcher m = p.matcher(token);
       if (m.matches()) {
         String[] option = token.split("=");
@@ -123,6 +367,39 @@ public class VerdictOption {
           case "file_loglevel":
             this.setVerdictFileLogLevel(option[1]);
             break;
+          case "verdictdbmetasnapshotmaxage":
+            this.setMetaDataSnapshotMaxAge(Long.parseLong(option[1]));
+            break;
+          case "verdictdbmetarefreshinterval":
+            this.setMetaStoreRefreshInterval(Long.parseLong(option[1]));
+            break;
+          case "verdictdbscramblingunitcount":
+            this.setScramblingUnitCount(Integer.parseInt(option[1]));
+            break;
+          case "verdictdbclientsidescrambling":
+            this.setClientSideScrambling(Boolean.parseBoolean(option[1]));
+            break;
+          case "verdictdbstreambufferpolicy":
+            this.setStreamBufferPolicy(option[1]);
+            break;
+          case "verdictdbstreambuffersize":
+            this.setStreamBufferSize(Integer.parseInt(option[1]));
+            break;
+          case "verdictdbstreamdelta":
+            this.setStreamDelta(Boolean.parseBoolean(option[1]));
+            break;
+          case "verdictdbstreamdeltasnapshotinterval":
+            this.setStreamDeltaSnapshotInterval(Integer.parseInt(option[1]));
+            break;
+          case "verdictdberrorbounds":
+            this.setErrorBoundColumns(Boolean.parseBoolean(option[1]));
+            break;
+          case "verdictdbtopkearlystop":
+            this.setTopKEarlyStop(Boolean.parseBoolean(option[1]));
+            break;
+          case "verdictdbaggregatememorybudget":
+            this.setAggregateMemoryBudget(Long.parseLong(option[1]));
+            break;
           default:
             break;
         }
@@ -134,9 +411,48 @@ public class VerdictOption {
     // Get properties here
     String newVerdictMetaSchemaName = prop.getProperty("verdictdbmetaschema");
     String newVerdictTempSchemaName = prop.getProperty("verdictdbtempschema");
+    String newMetaDataSnapshotPath = prop.getProperty("verdictdbmetasnapshot");
+    String newMetaDataSnapshotMaxAge = prop.getProperty("verdictdbmetasnapshotmaxage");
+    String newMetaStoreRefreshInterval = prop.getProperty("verdictdbmetarefreshinterval");
+    String newScramblingUnitCount = prop.getProperty("verdictdbscramblingunitcount");
+    String newClientSideScrambling = prop.getProperty("verdictdbclientsidescrambling");
+    String newStreamBufferPolicy = prop.getProperty("verdictdbstreambufferpolicy");
+    String newStreamBufferSize = prop.getProperty("verdictdbstreambuffersize");
+    String newStreamDelta = prop.getProperty("verdictdbstreamdelta");
+    String newStreamDeltaSnapshotInterval =
+        prop.getProperty("verdictdbstreamdeltasnapshotinterval");
+    String newStreamDeltaTolerance = prop.getProperty("verdictdbstreamdeltatolerance");
+    String newErrorBoundColumns = prop.getProperty("verdictdberrorbounds");
+    String newConfidenceLevel = prop.getProperty("verdictdbconfidencelevel");
+    String newTopKEarlyStop = prop.getProperty("verdictdbtopkearlystop");
+    String newAggregateMemoryBudget = prop.getProperty("verdictdbaggregatememorybudget");
+    String newAggregateSpillDirectory = prop.getProperty("verdictdbaggregatespilldir");
 
     // Set them if properties exist
     if (newVerdictMetaSchemaName != null) verdictMetaSchemaName = newVerdictMetaSchemaName;
     if (newVerdictTempSchemaName != null) verdictTempSchemaName = newVerdictTempSchemaName;
+    if (newMetaDataSnapshotPath != null) metaDataSnapshotPath = newMetaDataSnapshotPath;
+    if (newMetaDataSnapshotMaxAge != null)
+      metaDataSnapshotMaxAge = Long.parseLong(newMetaDataSnapshotMaxAge);
+    if (newMetaStoreRefreshInterval != null)
+      metaStoreRefreshInterval = Long.parseLong(newMetaStoreRefreshInterval);
+    if (newScramblingUnitCount != null)
+      scramblingUnitCount = Integer.parseInt(newScramblingUnitCount);
+    if (newClientSideScrambling != null)
+      clientSideScrambling = Boolean.parseBoolean(newClientSideScrambling);
+    if (newStreamBufferPolicy != null) setStreamBufferPolicy(newStreamBufferPolicy);
+    if (newStreamBufferSize != null) streamBufferSize = Integer.parseInt(newStreamBufferSize);
+    if (newStreamDelta != null) streamDelta = Boolean.parseBoolean(newStreamDelta);
+    if (newStreamDeltaSnapshotInterval != null)
+      streamDeltaSnapshotInterval = Integer.parseInt(newStreamDeltaSnapshotInterval);
+    if (newStreamDeltaTolerance != null)
+      streamDeltaTolerance = Double.parseDouble(newStreamDeltaTolerance);
+    if (newErrorBoundColumns != null)
+      errorBoundColumns = Boolean.parseBoolean(newErrorBoundColumns);
+    if (newConfidenceLevel != null) confidenceLevel = Double.parseDouble(newConfidenceLevel);
+    if (newTopKEarlyStop != null) topKEarlyStop = Boolean.parseBoolean(newTopKEarlyStop);
+    if (newAggregateMemoryBudget != null)
+      aggregateMemoryBudget = Long.parseLong(newAggregateMemoryBudget);
+    if (newAggregateSpillDirectory != null) aggregateSpillDirectory = newAggregateSpillDirectory;
   }
 }
@@ -19,6 +19,7 @@ package org.verdictdb.connection;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
@@ -84,15 +85,62 @@ public class CachedDbmsConnection extends DbmsConnection implements MetaDataProv
 
   // Get column name and type
   private HashMap<Pair<String, String>, List<Pair<String, String>>> columnsCache = new HashMap<>();
+
+  // incremented whenever the cached metadata changes; used for checking if the local snapshot
+  // (see MetaDataSnapshot) must be rewritten.
+  private long cacheModificationCount = 0;
   
-  
-  public void clearCache() {
+  public synchronized void clearCache() {
+    cacheModificationCount++;
     schemaCache.clear();
     tablesCache.clear();
     partitionCache.clear();
     columnsCache.clear();
   }
 
+  // The following methods are used for storing and restoring the cached metadata to and from a
+  // local snapshot (see MetaDataSnapshot).
+
+  public synchronized long getCacheModificationCount() {
+    return cacheModificationCount;
+  }
+
+  public synchronized List<String> getCachedSchemas() {
+    return new ArrayList<>(schemaCache);
+  }
+
+  public synchronized Map<String, List<String>> getCachedTables() {
+    return new HashMap<>(tablesCache);
+  }
+
+  public synchronized Map<Pair<String, String>, List<Pair<String, String>>> getCachedColumns() {
+    return new HashMap<>(columnsCache);
+  }
+
+  public synchronized Map<Pair<String, String>, List<String>> getCachedPartitionColumns() {
+    return new HashMap<>(partitionCache);
+  }
+
+  /**
+   * Replaces the current cache with the given metadata.
+   *
+   * @param schemas Schema names
+   * @param tables Key: schema name; value: table names
+   * @param columns Key: (schema, table); value: a list of (column name, column type)
+   * @param partitionColumns Key: (schema, table); value: partition column names
+   */
+  public synchronized void restoreCache(
+      List<String> schemas,
+      Map<String, List<String>> tables,
+      Map<Pair<String, String>, List<Pair<String, String>>> columns,
+      Map<Pair<String, String>, List<String>> partitionColumns) {
+    clearCache();
+    schemaCache.addAll(schemas);
+    tablesCache.putAll(tables);
+    columnsCache.putAll(columns);
+    partitionCache.putAll(partitionColumns);
+  }
+
   @Override
   public List<String> getSchemas() throws VerdictDBDbmsException {
     if (!schemaCache.isEmpty()) {
@@ -102,6 +150,7 @@ public class CachedDbmsConnection extends DbmsConnection implements MetaDataProv
       List<String> schemas = new ArrayList<>();
       schemaCache.clear();
       schemaCache.addAll(originalConn.getSchemas());
+      cacheModificationCount++;
       schemas.addAll(schemaCache);
       return schemas;
     }
@@ -120,6 +169,7 @@ public class CachedDbmsConnection extends DbmsConnection implements MetaDataProv
     synchronized (this) {
       List<String> tables = new ArrayList<>();
       tablesCache.put(schema, originalConn.getTables(schema));
+      cacheModificationCount++;
       tables.addAll(tablesCache.get(schema));
       return tables;
     }
@@ -135,6 +185,7 @@ public class CachedDbmsConnection extends DbmsConnection implements MetaDataProv
     synchronized (this) {
       List<Pair<String, String>> columns = new ArrayList<>();
       columnsCache.put(key, originalConn.getColumns(schema, table));
+      cacheModificationCount++;
       columns.addAll(columnsCache.get(key));
       return columns;
     }
@@ -161,6 +212,7 @@ public class CachedDbmsConnection extends DbmsConnection implements MetaDataProv
     synchronized (this) {
       List<String> columns = new ArrayList<>();
       partitionCache.put(key, originalConn.getPartitionColumns(schema, table));
+      cacheModificationCount++;
       columns.addAll(partitionCache.get(key));
       return columns;
     }
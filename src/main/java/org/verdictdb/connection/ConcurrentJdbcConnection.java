@@ -162,9 +162,17 @@ public class ConcurrentJdbcConnection extends DbmsConnection {
     }
   }
 
+  /**
+   * The copy shares the underlying java.sql.Connections, but tracks its running statements
+   * separately; thus, aborting one of the two does not cancel the queries of the other.
+   */
   @Override
-  public DbmsConnection copy() {
-    ConcurrentJdbcConnection copy = new ConcurrentJdbcConnection(connections);
+  public DbmsConnection copy() throws VerdictDBDbmsException {
+    List<JdbcConnection> copiedConnections = new ArrayList<>();
+    for (JdbcConnection c : connections) {
+      copiedConnections.add((JdbcConnection) c.copy());
+    }
+    ConcurrentJdbcConnection copy = new ConcurrentJdbcConnection(copiedConnections);
     copy.url = url;
     copy.info = info;
     return copy;
@@ -82,6 +82,15 @@ public interface DbmsQueryResult extends Serializable {
    */
   public long getRowCount();
 
+  /**
+   * Creates a result that shares the rows of this result but has its own cursor, placed before
+   * the first row. The rows are not copied; they are never modified once a result is created, so
+   * the views of the same result can be read concurrently.
+   *
+   * @return A new view of the rows of this result
+   */
+  public DbmsQueryResult createView();
+
   /**
    * @param index This is a zero-based index.
    * @return
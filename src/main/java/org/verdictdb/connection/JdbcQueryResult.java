@@ -20,6 +20,7 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.verdictdb.commons.AttributeValueRetrievalHelper;
@@ -87,6 +88,31 @@ public class JdbcQueryResult extends AttributeValueRetrievalHelper implements Db
     }
   }
 
+  private JdbcQueryResult(JdbcQueryResult other) {
+    columnNames = other.columnNames;
+    columnTypes = other.columnTypes;
+    columnTypeNames = other.columnTypeNames;
+    result = other.result;
+    dbmsQueryResultMetaData = other.dbmsQueryResultMetaData;
+  }
+
+  @Override
+  public JdbcQueryResult createView() {
+    return new JdbcQueryResult(this);
+  }
+
+  /**
+   * @param rowCount The number of the rows to keep
+   * @return A view of the first rows of this result, e.g., the top k rows
+   */
+  public JdbcQueryResult createView(int rowCount) {
+    JdbcQueryResult view = new JdbcQueryResult(this);
+    if (rowCount < result.size()) {
+      view.result = new ArrayList<>(result.subList(0, rowCount));
+    }
+    return view;
+  }
+
   @Override
   public DbmsQueryResultMetaData getMetaData() {
     return dbmsQueryResultMetaData;
@@ -174,8 +200,9 @@ public class JdbcQueryResult extends AttributeValueRetrievalHelper implements Db
     cursor = oldCursor;
   }
 
+  /** @return The rows of this result, which are shared with its views; thus, not modifiable. */
   public List<List<Object>> getResult() {
-    return result;
+    return Collections.unmodifiableList(result);
   }
 
   @Override
@@ -64,6 +64,19 @@ public class SparkQueryResult extends AttributeValueRetrievalHelper implements D
     result = dataset.collectAsList();
   }
 
+  private SparkQueryResult(SparkQueryResult other) {
+    columnNames = other.columnNames;
+    columnTypes = other.columnTypes;
+    columnTypeNames = other.columnTypeNames;
+    result = other.result;
+    dbmsQueryResultMetaData = other.dbmsQueryResultMetaData;
+  }
+
+  @Override
+  public SparkQueryResult createView() {
+    return new SparkQueryResult(this);
+  }
+
   @Override
   public DbmsQueryResultMetaData getMetaData() {
     return dbmsQueryResultMetaData;
@@ -28,24 +28,33 @@ import org.verdictdb.connection.DbmsConnection;
 import org.verdictdb.connection.MetaDataProvider;
 import org.verdictdb.connection.StaticMetaData;
 import org.verdictdb.core.resulthandler.ExecutionResultReader;
+import org.verdictdb.core.scrambling.BlockZoneMap;
 import org.verdictdb.core.scrambling.FastConvergeScramblingMethod;
 import org.verdictdb.core.scrambling.HashScramblingMethod;
+import org.verdictdb.core.scrambling.ScrambleAdvisor;
+import org.verdictdb.core.scrambling.ScrambleAdvisor.ScrambleRecommendation;
 import org.verdictdb.core.scrambling.ScrambleMeta;
 import org.verdictdb.core.scrambling.ScrambleMetaSet;
 import org.verdictdb.core.scrambling.ScramblingMethod;
 import org.verdictdb.core.scrambling.UniformScramblingMethod;
 import org.verdictdb.core.sqlobject.AbstractRelation;
+import org.verdictdb.core.sqlobject.AliasedColumn;
 import org.verdictdb.core.sqlobject.BaseTable;
 import org.verdictdb.core.sqlobject.ColumnOp;
 import org.verdictdb.core.sqlobject.CreateScrambleQuery;
 import org.verdictdb.core.sqlobject.JoinTable;
+import org.verdictdb.core.sqlobject.SelectItem;
 import org.verdictdb.core.sqlobject.SelectQuery;
 import org.verdictdb.core.sqlobject.SubqueryColumn;
 import org.verdictdb.core.sqlobject.UnnamedColumn;
 import org.verdictdb.exception.VerdictDBDbmsException;
 import org.verdictdb.exception.VerdictDBException;
 import org.verdictdb.exception.VerdictDBTypeException;
+import org.verdictdb.exception.VerdictDBValueException;
 import org.verdictdb.metastore.CachedScrambleMetaStore;
+import org.verdictdb.metastore.MetaDataSnapshot;
+import org.verdictdb.metastore.ScrambleCheckpointStore;
+import org.verdictdb.metastore.ScrambleCheckpointStore.ScrambleCheckpoint;
 import org.verdictdb.metastore.ScrambleMetaStore;
 import org.verdictdb.metastore.VerdictMetaStore;
 import org.verdictdb.parser.VerdictSQLParser;
@@ -55,6 +64,7 @@ import org.verdictdb.sqlreader.CondGen;
 import org.verdictdb.sqlreader.NonValidatingSQLParser;
 import org.verdictdb.sqlreader.RelationGen;
 import org.verdictdb.sqlreader.RelationStandardizer;
+import org.verdictdb.sqlreader.ScrambleTableReplacer;
 import org.verdictdb.sqlsyntax.SqlSyntax;
 
 import java.util.ArrayList;
@@ -79,6 +89,9 @@ public class ExecutionContext {
 
   private Coordinator runningCoordinator = null;
 
+  /** The scrambles read by the last select query; empty if it has not used any scramble. */
+  private List<ScrambleMeta> scramblesOfLastQuery = new ArrayList<>();
+
   private final long serialNumber;
 
   private final VerdictDBLogger log = VerdictDBLogger.getLogger(getClass());
@@ -89,6 +102,9 @@ public class ExecutionContext {
     select,
     scrambling,
     insert_scramble,
+    resume_scramble,
+    rebalance_scramble,
+    analyze_scramble,
     drop_scramble,
     drop_all_scrambles,
     set_default_schema,
@@ -155,7 +171,8 @@ public class ExecutionContext {
             && queryType != QueryType.show_databases
             && queryType != QueryType.show_tables
             && queryType != QueryType.describe_table
-            && queryType != QueryType.show_scrambles)
+            && queryType != QueryType.show_scrambles
+            && queryType != QueryType.analyze_scramble)
         && getResult) {
       throw new VerdictDBException(
           "Can not issue data manipulation statements with executeQuery().");
@@ -163,13 +180,20 @@ public class ExecutionContext {
 
     if (queryType.equals(QueryType.select)) {
       log.debug("Query type: select");
-      return sqlSelectQuery(query, getResult);
+      try {
+        return sqlSelectQuery(query, getResult);
+      } catch (VerdictDBDbmsException e) {
+        // the query may have failed due to the cached metadata of the tables altered or dropped
+        // outside VerdictDB.
+        invalidateCachedMetaData();
+        throw e;
+      }
     }
 
-    // for other types of queries, we invalidate cached metadata for expected data
-    // manipulations
-    if (conn instanceof CachedDbmsConnection) {
-      ((CachedDbmsConnection) conn).clearCache();
+    // the statements creating, altering, or dropping tables invalidate the cached metadata; the
+    // others (e.g., show, describe, use, and analyze) only read it.
+    if (changesTableMetaData(queryType)) {
+      invalidateCachedMetaData();
     }
 
     if (queryType.equals(QueryType.scrambling)) {
@@ -187,6 +211,22 @@ public class ExecutionContext {
       // checks the validity; throws an exception if not.
       scrambleQuery.checkIfSupported(conn.getSyntax());
 
+      ScrambleMetaStore metaStore = new ScrambleMetaStore(conn, options);
+      if (scrambleQuery.getAlignedTable() != null) {
+        ScrambleMeta alignedMeta =
+            metaStore.retrieveExistingScramble(
+                scrambleQuery.getAlignedSchema(), scrambleQuery.getAlignedTable());
+        if (alignedMeta == null
+            || !alignedMeta.getMethodWithDefault("uniform").equalsIgnoreCase("hash")) {
+          throw new VerdictDBValueException(
+              String.format(
+                  "A hash scramble '%s.%s' does not exist",
+                  scrambleQuery.getAlignedSchema(), scrambleQuery.getAlignedTable()));
+        }
+        scrambleQuery.setAlignedBlockDistribution(
+            alignedMeta.getCumulativeDistributionForTier(0));
+      }
+
       ScramblingCoordinator scrambler =
           new ScramblingCoordinator(
               conn,
@@ -194,12 +234,14 @@ public class ExecutionContext {
               options.getVerdictTempSchemaName(),
               scrambleQuery.getBlockSize(),
               scrambleQuery.getExistingPartitionColumns());
+      scrambler.setScramblingUnitCount(options.getScramblingUnitCount());
+      scrambler.setClientSideScrambling(options.isClientSideScrambling());
+      scrambler.setCheckpointStore(new ScrambleCheckpointStore(conn, options), query);
 
       // store this metadata to our own metadata db.
       ScrambleMeta meta = scrambler.scramble(scrambleQuery);
 
       // Add metadata to metastore
-      ScrambleMetaStore metaStore = new ScrambleMetaStore(conn, options);
       metaStore.addToStore(meta);
       refreshScrambleMetaStore();
       return null;
@@ -265,20 +307,114 @@ public class ExecutionContext {
       scrambleQuery.setMethod(existingScrambleMeta.getMethod());
       scrambleQuery.setHashColumnName(existingScrambleMeta.getHashColumn());
       scrambleQuery.setScramblingMethod(scrambleMethod);
+      // the new rows are inserted into the table that currently stores the scramble
+      scrambleQuery.setNewTable(existingScrambleMeta.getStoredTableName());
 
       ScramblingCoordinator scrambler =
           new ScramblingCoordinator(
               conn, scrambleQuery.getNewSchema(), options.getVerdictTempSchemaName());
 
+      // The appended rows may fall outside the ranges of the blocks. The zone map is removed from
+      // the metastore before appending so that no query skips a block based on the old ranges,
+      // even if the append or the recomputation fails; it is stored again once recomputed.
+      BlockZoneMap zoneMap = existingScrambleMeta.getZoneMap();
+      if (zoneMap != null) {
+        existingScrambleMeta.setZoneMap(null);
+        metaStore.addToStore(existingScrambleMeta);
+        refreshScrambleMetaStore();
+      }
+
       // append new scramble
       scrambler.appendScramble(scrambleQuery);
+
+      if (zoneMap != null) {
+        scrambler.updateZoneMap(existingScrambleMeta, zoneMap.getColumnNames());
+        metaStore.addToStore(existingScrambleMeta);
+        refreshScrambleMetaStore();
+      }
+      return null;
+    } else if (queryType.equals(QueryType.resume_scramble)) {
+      log.debug("Query type: resume_scramble");
+
+      BaseTable scrambleTable = getTableForResumeScramble(query);
+      String scrambleSchema =
+          (scrambleTable.getSchemaName() == null)
+              ? conn.getDefaultSchema()
+              : scrambleTable.getSchemaName();
+      ScrambleCheckpointStore checkpointStore = new ScrambleCheckpointStore(conn, options);
+      ScrambleCheckpoint checkpoint =
+          checkpointStore.retrievePendingBuild(scrambleSchema, scrambleTable.getTableName());
+      if (checkpoint == null) {
+        throw new VerdictDBValueException(
+            String.format(
+                "No unfinished build of the scramble '%s.%s' exists.",
+                scrambleSchema, scrambleTable.getTableName()));
+      }
+
+      CreateScrambleQuery scrambleQuery = generateScrambleQuery(checkpoint.getStatement());
+      ScramblingCoordinator scrambler =
+          new ScramblingCoordinator(
+              conn,
+              scrambleQuery.getNewSchema(),
+              options.getVerdictTempSchemaName(),
+              scrambleQuery.getBlockSize(),
+              conn.getPartitionColumns(
+                  scrambleQuery.getOriginalSchema(), scrambleQuery.getOriginalTable()));
+      scrambler.setCheckpointStore(checkpointStore, checkpoint.getStatement());
+      ScrambleMeta meta = scrambler.resumeScramble(scrambleQuery, checkpoint);
+
+      ScrambleMetaStore metaStore = new ScrambleMetaStore(conn, options);
+      metaStore.addToStore(meta);
+      refreshScrambleMetaStore();
       return null;
+
+    } else if (queryType.equals(QueryType.rebalance_scramble)) {
+      log.debug("Query type: rebalance_scramble");
+
+      Pair<BaseTable, Long> tableAndBlockSize = getTableAndBlockSizeForRebalanceScramble(query);
+      BaseTable scrambleTable = tableAndBlockSize.getLeft();
+      String scrambleSchema =
+          (scrambleTable.getSchemaName() == null)
+              ? conn.getDefaultSchema()
+              : scrambleTable.getSchemaName();
+      ScrambleMetaStore metaStore = new ScrambleMetaStore(conn, options);
+      ScrambleMeta existingScrambleMeta =
+          metaStore.retrieveExistingScramble(scrambleSchema, scrambleTable.getTableName());
+      if (existingScrambleMeta == null) {
+        throw new VerdictDBValueException(
+            String.format(
+                "A scramble '%s.%s' does not exist",
+                scrambleSchema, scrambleTable.getTableName()));
+      }
+
+      // the table replaced by the previous rebalance was kept for the queries planned before it
+      metaStore.dropRetiredScrambleTables(existingScrambleMeta);
+
+      ScramblingCoordinator scrambler =
+          new ScramblingCoordinator(
+              conn,
+              scrambleSchema,
+              options.getVerdictTempSchemaName(),
+              tableAndBlockSize.getRight());
+      ScrambleMeta meta = scrambler.rebalanceScramble(existingScrambleMeta);
+
+      // A single metastore entry switches the scramble to its new table. The queries planned
+      // before the switch keep reading the previous table, which is dropped by the next rebalance.
+      metaStore.addToStore(meta);
+      refreshScrambleMetaStore();
+      return null;
+
+    } else if (queryType.equals(QueryType.analyze_scramble)) {
+      log.debug("Query type: analyze_scramble");
+      return generateAnalyzeScrambleResultFromQuery(query);
+
     } else if (queryType.equals(QueryType.drop_scramble)) {
       log.debug("Query type: drop_scramble");
 
       ScrambleMetaStore metaStore = new ScrambleMetaStore(conn, options);
       Pair<BaseTable, BaseTable> tablePair = getTablePairForDropScramble(query);
       metaStore.dropScrambleTable(tablePair.getLeft(), tablePair.getRight());
+      refreshScrambleMetaStore();
       return null;
 
     } else if (queryType.equals(QueryType.drop_all_scrambles)) {
@@ -287,6 +423,7 @@ public class ExecutionContext {
       ScrambleMetaStore metaStore = new ScrambleMetaStore(conn, options);
       BaseTable table = getTableForDropAllScramble(query);
       metaStore.dropAllScrambleTable(table);
+      refreshScrambleMetaStore();
       return null;
 
     } else if (queryType.equals(QueryType.show_scrambles)) {
@@ -317,6 +454,28 @@ public class ExecutionContext {
     }
   }
 
+  private static boolean changesTableMetaData(QueryType queryType) {
+    return queryType == QueryType.scrambling
+        || queryType == QueryType.insert_scramble
+        || queryType == QueryType.resume_scramble
+        || queryType == QueryType.rebalance_scramble
+        || queryType == QueryType.drop_scramble
+        || queryType == QueryType.drop_all_scrambles;
+  }
+
+  /**
+   * Clears the cached table metadata and removes the local snapshot of the metadata, if any, so
+   * that the metadata is retrieved again by this and any new VerdictContext.
+   */
+  private void invalidateCachedMetaData() {
+    if (conn instanceof CachedDbmsConnection) {
+      ((CachedDbmsConnection) conn).clearCache();
+    }
+    if (options.isMetaDataSnapshotEnabled()) {
+      MetaDataSnapshot.invalidate(options.getMetaDataSnapshotPath());
+    }
+  }
+
   private VerdictSingleResult sqlSelectQuery(String query, boolean getResult)
       throws VerdictDBException {
     SelectQuery selectQuery = standardizeQuery(query);
@@ -327,17 +486,30 @@ public class ExecutionContext {
     }
     QueryResultAccuracyEstimator accEst =
         new QueryResultAccuracyEstimatorFromDifference(selectQuery);
+    // the convergence is checked with the original answers; the errors are computed from every
+    // answer, but attached only to the returned one.
+    VerdictResultStreamWithErrors errors = null;
+    if (options.isErrorBoundColumns()) {
+      errors = createErrorStream(stream, selectQuery);
+    }
+    // the sketched distinct counts of the intermediate answers are lower bounds, not estimates,
+    // so such queries return only the answer that covers every block.
+    boolean coversAllBlocks =
+        computesDistinctCountsBySketches(scramblesOfLastQuery)
+            && containsDistinctCount(selectQuery);
 
     try {
+      VerdictSingleResult answer = null;
       while (stream.hasNext()) {
         VerdictSingleResult rs = stream.next();
+        answer = (errors == null) ? rs : errors.addErrors(rs);
         accEst.add(rs);
-        if (accEst.isLastResultAccurate()) {
-          return rs;
+        if (!coversAllBlocks && accEst.isLastResultAccurate()) {
+          return answer;
         }
       }
       // return the last result otherwise
-      return accEst.getAnswers().get(accEst.getAnswerCount() - 1);
+      return answer;
     } catch (RuntimeException e) {
       throw e;
     } finally {
@@ -380,7 +552,17 @@ public class ExecutionContext {
     }
 
     SelectQuery selectQuery = standardizeQuery(query);
-    return streamSelectQuery(selectQuery);
+    VerdictResultStream stream = streamSelectQuery(selectQuery);
+    int columnCount = selectQuery.getSelectList().size();
+    if (options.isErrorBoundColumns()) {
+      VerdictResultStreamWithErrors errors = createErrorStream(stream, selectQuery);
+      stream = errors;
+      columnCount = errors.getColumnCountWithErrors();
+    }
+    if (options.isStreamDelta()) {
+      stream = createDeltaStream(stream, selectQuery, columnCount);
+    }
+    return stream;
   }
 
   /**
@@ -398,7 +580,10 @@ public class ExecutionContext {
     runningCoordinator = null;
 
     ExecutionResultReader reader = coordinator.process(selectQuery, queryContext);
+    scramblesOfLastQuery = new ArrayList<>();
     if (coordinator.getLastQuery() != null) {
+      SelectQueryCoordinator.findScrambles(
+          coordinator.getLastQuery(), metaset, scramblesOfLastQuery);
       // this means there are scrambles for the query so that
       // we need to abort the coordinator at the end.
       runningCoordinator = coordinator;
@@ -407,6 +592,84 @@ public class ExecutionContext {
     return stream;
   }
 
+  private VerdictResultStreamWithErrors createErrorStream(
+      VerdictResultStream stream, SelectQuery selectQuery) {
+    boolean blockEstimatesAvailable =
+        SelectQueryCoordinator.hasSingleBlockPerAnswer(scramblesOfLastQuery);
+    if (!blockEstimatesAvailable) {
+      log.warn(
+          "The error bounds of the aggregates other than the count-distinct sketches are not "
+              + "computed for the query, since its answers are not one block apart.");
+    }
+    return new VerdictResultStreamWithErrors(
+        stream,
+        selectQuery,
+        options.getConfidenceLevel(),
+        computesDistinctCountsBySketches(scramblesOfLastQuery),
+        blockEstimatesAvailable);
+  }
+
+  /**
+   * The count-distinct aggregates are computed with sketches unless every scramble is a hash
+   * scramble; see SelectAsyncAggExecutionNode.
+   */
+  private static boolean computesDistinctCountsBySketches(List<ScrambleMeta> scrambles) {
+    for (ScrambleMeta meta : scrambles) {
+      if (!meta.getMethodWithDefault("uniform").equalsIgnoreCase("hash")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** @return True if the select list or the having clause includes a count-distinct aggregate. */
+  private static boolean containsDistinctCount(SelectQuery selectQuery) {
+    List<UnnamedColumn> columns = new ArrayList<>();
+    for (SelectItem item : selectQuery.getSelectList()) {
+      if (item instanceof AliasedColumn) {
+        columns.add(((AliasedColumn) item).getColumn());
+      } else if (item instanceof UnnamedColumn) {
+        columns.add((UnnamedColumn) item);
+      }
+    }
+    if (selectQuery.getHaving().isPresent()) {
+      columns.add(selectQuery.getHaving().get());
+    }
+    for (UnnamedColumn column : columns) {
+      if (column instanceof ColumnOp && ((ColumnOp) column).isCountDistinctAggregate()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Delta-encodes the answers of a stream, identifying the groups by the non-aggregate columns of
+   * the select list.
+   *
+   * @param columnCount The number of the columns of an answer
+   */
+  private VerdictResultStream createDeltaStream(
+      VerdictResultStream stream, SelectQuery selectQuery, int columnCount) {
+    List<SelectItem> selectList = selectQuery.getSelectList();
+    List<Integer> keys = new ArrayList<>();
+    for (int i = 0; i < selectList.size(); i++) {
+      if (!selectList.get(i).isAggregateColumn()) {
+        keys.add(i);
+      }
+    }
+    int[] keyIndexes = new int[keys.size()];
+    for (int i = 0; i < keyIndexes.length; i++) {
+      keyIndexes[i] = keys.get(i);
+    }
+    return new VerdictResultStreamWithDeltas(
+        stream,
+        keyIndexes,
+        columnCount,
+        options.getStreamDeltaSnapshotInterval(),
+        options.getStreamDeltaTolerance());
+  }
+
   /**
    * Standardizes a query string into a select query object.
    *
@@ -415,7 +678,12 @@ public class ExecutionContext {
    * @throws VerdictDBException
    */
   private SelectQuery standardizeQuery(String query) throws VerdictDBException {
-    return standardizeQuery(query, conn);
+    SelectQuery selectQuery = NonValidatingSQLParser.toSelectQuery(query);
+    // the table of a rebalanced scramble may have been replaced; its metadata is read from the
+    // table that currently stores its rows.
+    new ScrambleTableReplacer(metaStore.retrieve())
+        .replaceWithPhysicalTables(selectQuery, conn.getDefaultSchema());
+    return standardizeSelectQuery(selectQuery, conn);
   }
 
   static SelectQuery standardizeQuery(String query, DbmsConnection conn) throws VerdictDBException {
@@ -446,7 +714,7 @@ public class ExecutionContext {
 
   private void refreshScrambleMetaStore() {
     // no type check was added to make it fail if non-cached metastore is used.
-    ((CachedScrambleMetaStore) this.metaStore).refreshCache();
+    ((CachedScrambleMetaStore) this.metaStore).refreshIfChanged();
   }
 
   private Pair<BaseTable, BaseTable> getTablePairForDropScramble(String query) {
@@ -480,6 +748,39 @@ public class ExecutionContext {
     return visitor.visit(parser.drop_all_scrambles_statement());
   }
 
+  private BaseTable getTableForResumeScramble(String query) {
+    VerdictSQLParser parser = NonValidatingSQLParser.parserOf(query);
+    VerdictSQLParserBaseVisitor<BaseTable> visitor =
+        new VerdictSQLParserBaseVisitor<BaseTable>() {
+          @Override
+          public BaseTable visitResume_scramble_statement(
+              VerdictSQLParser.Resume_scramble_statementContext ctx) {
+            RelationGen g = new RelationGen();
+            return (BaseTable) g.visit(ctx.scrambled_table);
+          }
+        };
+    return visitor.visit(parser.resume_scramble_statement());
+  }
+
+  private Pair<BaseTable, Long> getTableAndBlockSizeForRebalanceScramble(String query) {
+    VerdictSQLParser parser = NonValidatingSQLParser.parserOf(query);
+    VerdictSQLParserBaseVisitor<Pair<BaseTable, Long>> visitor =
+        new VerdictSQLParserBaseVisitor<Pair<BaseTable, Long>>() {
+          @Override
+          public Pair<BaseTable, Long> visitRebalance_scramble_statement(
+              VerdictSQLParser.Rebalance_scramble_statementContext ctx) {
+            RelationGen g = new RelationGen();
+            BaseTable scrambleTable = (BaseTable) g.visit(ctx.scrambled_table);
+            long blocksize =
+                (ctx.blocksize == null)
+                    ? (long) conn.getSyntax().getRecommendedblockSize()
+                    : Long.parseLong(ctx.blocksize.getText());
+            return Pair.of(scrambleTable, blocksize);
+          }
+        };
+    return visitor.visit(parser.rebalance_scramble_statement());
+  }
+
   private String stripQuote(String expr) {
     if (expr == null) {
       return null;
@@ -533,6 +834,15 @@ public class ExecutionContext {
                     : Long.parseLong(ctx.blocksize.getText());
             String hashColumnName =
                 (ctx.hash_column == null) ? null : stripQuote(ctx.hash_column.getText());
+            List<String> stratifiedColumns = new ArrayList<>();
+            for (VerdictSQLParser.Column_nameContext column : ctx.on_columns) {
+              stratifiedColumns.add(stripQuote(column.getText()));
+            }
+            if (method.equalsIgnoreCase("stratified") && hashColumnName != null) {
+              // METHOD stratified ON col
+              stratifiedColumns.add(hashColumnName);
+              hashColumnName = null;
+            }
             CondGen cond = new CondGen();
             UnnamedColumn where = (ctx.where == null ? null : cond.visit(ctx.where));
 
@@ -547,6 +857,28 @@ public class ExecutionContext {
                     blocksize,
                     hashColumnName,
                     where);
+            if (!stratifiedColumns.isEmpty()) {
+              query.setStratifiedColumns(stratifiedColumns);
+            }
+            if (ctx.aligned_scramble != null) {
+              // the aligned scramble is looked up in the schema of the new scramble by default.
+              BaseTable alignedTable = (BaseTable) g.visit(ctx.aligned_scramble);
+              String alignedSchema = alignedTable.getSchemaName();
+              if (alignedSchema == null) {
+                alignedSchema =
+                    (scrambleTable.getSchemaName() == null)
+                        ? conn.getDefaultSchema()
+                        : scrambleTable.getSchemaName();
+              }
+              query.setAlignedScramble(alignedSchema, alignedTable.getTableName());
+            }
+            if (!ctx.zonemap_columns.isEmpty()) {
+              List<String> zoneMapColumns = new ArrayList<>();
+              for (VerdictSQLParser.Column_nameContext column : ctx.zonemap_columns) {
+                zoneMapColumns.add(stripQuote(column.getText()));
+              }
+              query.setZoneMapColumns(zoneMapColumns);
+            }
             if (ctx.IF() != null) query.setIfNotExists(true);
             return query;
           }
@@ -608,6 +940,52 @@ public class ExecutionContext {
     return result;
   }
 
+  /**
+   * Recommends the parameters of a scramble for the given table and target latency. The
+   * recommendation is returned as a single row including a CREATE SCRAMBLE statement; no scramble
+   * is created by this method.
+   */
+  private VerdictSingleResult generateAnalyzeScrambleResultFromQuery(String query)
+      throws VerdictDBException {
+    VerdictSQLParser parser = NonValidatingSQLParser.parserOf(query);
+    VerdictSQLParser.Analyze_scramble_statementContext ctx = parser.analyze_scramble_statement();
+    BaseTable originalTable = (BaseTable) new RelationGen().visit(ctx.original_table);
+    String schema =
+        (originalTable.getSchemaName() == null)
+            ? conn.getDefaultSchema()
+            : originalTable.getSchemaName();
+    String table = originalTable.getTableName();
+    double targetSeconds = Double.parseDouble(ctx.target_seconds.getText());
+
+    ScrambleRecommendation recommendation =
+        new ScrambleAdvisor(conn).advise(schema, table, targetSeconds);
+    List<String> header =
+        Arrays.asList(
+            "original_table",
+            "row_count",
+            "rows_per_second",
+            "block_size",
+            "block_count",
+            "relative_size",
+            "method",
+            "expected_seconds",
+            "statement");
+    List<Object> row =
+        Arrays.<Object>asList(
+            schema + "." + table,
+            recommendation.getRowCount(),
+            recommendation.getRowsPerSecond(),
+            recommendation.getBlockSize(),
+            recommendation.getBlockCount(),
+            recommendation.getRelativeSize(),
+            recommendation.getMethod(),
+            recommendation.getExpectedFirstAnswerSeconds(),
+            recommendation.toCreateScrambleStatement(schema, table + "_scrambled"));
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(row);
+    return new VerdictSingleResultFromListData(header, rows);
+  }
+
   private void updateDefaultSchemaFromQuery(String query) throws VerdictDBDbmsException {
     VerdictSQLParser parser = NonValidatingSQLParser.parserOf(query);
     String schema = parser.use_statement().database.getText();
@@ -745,6 +1123,24 @@ public class ExecutionContext {
             return QueryType.insert_scramble;
           }
 
+          @Override
+          public QueryType visitResume_scramble_statement(
+              VerdictSQLParser.Resume_scramble_statementContext ctx) {
+            return QueryType.resume_scramble;
+          }
+
+          @Override
+          public QueryType visitRebalance_scramble_statement(
+              VerdictSQLParser.Rebalance_scramble_statementContext ctx) {
+            return QueryType.rebalance_scramble;
+          }
+
+          @Override
+          public QueryType visitAnalyze_scramble_statement(
+              VerdictSQLParser.Analyze_scramble_statementContext ctx) {
+            return QueryType.analyze_scramble;
+          }
+
           @Override
           public QueryType visitCreate_scramble_statement(
               VerdictSQLParser.Create_scramble_statementContext ctx) {
@@ -1,8 +1,5 @@
 package org.verdictdb.coordinator;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.verdictdb.VerdictSingleResult;
 import org.verdictdb.commons.VerdictDBLogger;
 
@@ -10,18 +7,22 @@ public abstract class QueryResultAccuracyEstimator {
 
   protected VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());
 
-  protected List<VerdictSingleResult> answers = new ArrayList<>();
+  // only the most recent answer is kept; the earlier answers may be large.
+  protected VerdictSingleResult lastAnswer;
+
+  protected int answerCount = 0;
 
-  public List<VerdictSingleResult> getAnswers() {
-    return answers;
+  public VerdictSingleResult getLastAnswer() {
+    return lastAnswer;
   }
 
   public int getAnswerCount() { 
-    return answers.size(); 
+    return answerCount; 
   }
 
   public void add(VerdictSingleResult rs) {
-    answers.add(rs);
+    lastAnswer = rs;
+    answerCount++;
   }
 
   /**
@@ -1,13 +1,11 @@
 package org.verdictdb.coordinator;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.verdictdb.VerdictSingleResult;
-import org.verdictdb.commons.TypeCasting;
 import org.verdictdb.core.sqlobject.*;
 
 /**
@@ -15,7 +13,9 @@ import org.verdictdb.core.sqlobject.*;
  * 
  * 
  * For comparison, the grouping attributes (i.e., non-aggregate attributes) are used as a key,
- * and the non-grouping attributes (i.e., aggregate attributes) are used as values.
+ * and the non-grouping attributes (i.e., aggregate attributes) are used as values. Only the state
+ * of the latest answer is kept: the keys are hashed into 64-bit integers and the values are kept
+ * in flat arrays, which are compared and overwritten in place by the next answer.
  * 
  * If the changes in the values are smaller than a predefined threshold (e.g., 5%) for every key,
  * the answer is considered to be accurate.
@@ -39,10 +39,15 @@ public class QueryResultAccuracyEstimatorFromDifference extends QueryResultAccur
   // Otherwise, it will fetch next result.
   private Double groupCountError = 0.05;
 
-  // Stores the latest result in an alternative form.
-  // The key is the values of grouping columns; the value is the values of non-grouping columns
-  // The grouping columns are analyzed using the original query.
-  private HashMap<List<Object>, List<Object>> groupToNonGroupMap;
+  // The state of the groups of the latest answer, keyed by the hashes of the grouping values.
+  private GroupTable groups;
+
+  // The number of the rows of the previous answer
+  private long previousRowCount = -1;
+
+  // The fraction of the groups of the latest answer whose values are within valueError of the
+  // previous answer.
+  private double convergedGroupFraction = 0;
   
   // Used for inferring grouping and aggregate columns.
   private SelectQuery originalQuery;
@@ -51,6 +56,11 @@ public class QueryResultAccuracyEstimatorFromDifference extends QueryResultAccur
 //  private Set<Integer> groupingColumnIndexes = new HashSet<>();
   private Set<Integer> nongroupingColumnIndxes = new HashSet<>();
 
+  // the same as nongroupingColumnIndxes, as an array for the per-row loops.
+  private int[] nongroupingColumns;
+
+  private boolean isCountOnly;
+
   QueryResultAccuracyEstimatorFromDifference(SelectQuery originalQuery) {
     this.originalQuery = originalQuery;
 //    this.runningCoordinator = runningCoordinator;
@@ -66,7 +76,7 @@ public class QueryResultAccuracyEstimatorFromDifference extends QueryResultAccur
     }
     
     List<SelectItem> selectItems = originalQuery.getSelectList();
-    VerdictSingleResult singleAnswer = answers.get(0);
+    VerdictSingleResult singleAnswer = lastAnswer;
     
     // estimate the number of columns that would be projected by '*'.
     int numColExceptforAsterisk = 0;
@@ -97,6 +107,16 @@ public class QueryResultAccuracyEstimatorFromDifference extends QueryResultAccur
         i++;
       }
     }
+
+    nongroupingColumns = new int[nongroupingColumnIndxes.size()];
+    int k = 0;
+    for (int index = 0; index < i; index++) {
+      if (nongroupingColumnIndxes.contains(index)) {
+        nongroupingColumns[k++] = index;
+      }
+    }
+    groups = new GroupTable(nongroupingColumns.length);
+    isCountOnly = checkIfQueryCountOnly();
   }
 
   public void setValueError(Double valueError) {
@@ -107,6 +127,15 @@ public class QueryResultAccuracyEstimatorFromDifference extends QueryResultAccur
     this.groupCountError = groupCountError;
   }
 
+  /**
+   * @return The fraction of the groups of the last answer whose aggregate values are within
+   *     valueError of the previous answer; the groups that did not exist in the previous answer
+   *     are counted as not converged. 0 for the first answer.
+   */
+  public double getConvergedGroupFraction() {
+    return convergedGroupFraction;
+  }
+
   /**
    * fetch the answer from stream until converge
    *
@@ -127,6 +156,7 @@ public class QueryResultAccuracyEstimatorFromDifference extends QueryResultAccur
     // base condition check
     if (nongroupingColumnIndxes.size() == 0) {
       log.debug("No aggregate columns exist. The result is assumed to be exact.");
+      convergedGroupFraction = 1.0;
       return true;
     }
 
@@ -135,85 +165,247 @@ public class QueryResultAccuracyEstimatorFromDifference extends QueryResultAccur
 //    return true;
 //  }
     
-    // some variables we will use in this function
-    HashMap<List<Object>, List<Object>> newAggregatedMap = new HashMap<>();
-    VerdictSingleResult currentAnswer = answers.get(answers.size() - 1);
+    // The groups are compared against the previous answer in place: the values of a group are
+    // overwritten with the new values right after the comparison.
+    VerdictSingleResult currentAnswer = lastAnswer;
+    int columnCount = currentAnswer.getColumnCount();
+    int aggCount = nongroupingColumns.length;
+    groups.startAnswer();
+    long rowCount = 0;
+    long convergedGroupCount = 0;
+    boolean isValueConverged = true;
     
     while (currentAnswer.next()) {
-      List<Object> aggregateValues = new ArrayList<>();
-      List<Object> groupValues = new ArrayList<>();
-      // dyoon: this does not seem to handle "SELECT *" correctly resulting in
-      // IndexOutOfBoundsException
-      // please take a look and apply a proper fix later.
-      for (int i = 0; i < currentAnswer.getColumnCount(); i++) {
-        if (nongroupingColumnIndxes.contains(i)) {
-//        if (currentAnswer.getMetaData().isAggregate.get(i)) {
-          // if the aggregate value is null value, we just let it to be 0.
-          if (checkIfQueryCountOnly() && currentAnswer.getValue(i) == null) {
-            aggregateValues.add(0);
-          } else {
-            aggregateValues.add(currentAnswer.getValue(i));
-          }
+      rowCount++;
+      long key = hashGroupingValues(currentAnswer, columnCount);
+      int slot = groups.put(key);
+      boolean existedBefore = groups.wasInPreviousAnswer();
+      boolean isGroupConverged = existedBefore;
+      int base = slot * aggCount;
+
+      for (int a = 0; a < aggCount; a++) {
+        Object obj = currentAnswer.getValue(nongroupingColumns[a]);
+        double newValue;
+        if (obj == null) {
+          // if the aggregate value is null value, we just let it to be 0 for count queries.
+          newValue = isCountOnly ? 0 : Double.NaN;
+        } else if (obj instanceof Number) {
+          newValue = ((Number) obj).doubleValue();
         } else {
-          groupValues.add(currentAnswer.getValue(i));
+          // a non-numeric aggregate (e.g., the max of strings) does not affect the convergence.
+          newValue = 0;
+        }
+
+        if (isGroupConverged) {
+          double prevValue = groups.values[base + a];
+          if (Double.isNaN(prevValue) || Double.isNaN(newValue)) {
+            // if Aggregate column is null, convergence test fails.
+            isGroupConverged = false;
+          } else if (prevValue < newValue * (1 - valueError)
+              || prevValue > newValue * (1 + valueError)) {
+            if (isValueConverged) {
+              log.debug(
+                  String.format("Not accurate enough. Prev: %f, New: %f", prevValue, newValue));
+            }
+            isGroupConverged = false;
+          }
         }
+        groups.values[base + a] = newValue;
+      }
+
+      if (isGroupConverged) {
+        convergedGroupCount++;
+      } else if (existedBefore) {
+        isValueConverged = false;
       }
-      newAggregatedMap.put(groupValues, aggregateValues);
     }
     currentAnswer.rewind();
-    
-    
-    if (answers.size() <= 1) {
-      groupToNonGroupMap = newAggregatedMap;
+    convergedGroupFraction = (rowCount == 0) ? 1.0 : (double) convergedGroupCount / rowCount;
+
+    long prevRowCount = previousRowCount;
+    previousRowCount = rowCount;
+    if (prevRowCount < 0) {
+      convergedGroupFraction = 0;
       return false;
     }
-    
-    // Now actual check starts.
-    VerdictSingleResult previousAnswer = answers.get(answers.size() - 2);
 
     // Check 1: check if #groupCountError is converged
-    if (currentAnswer.getRowCount() < previousAnswer.getRowCount() * (1 - groupCountError)
-        || currentAnswer.getRowCount() > previousAnswer.getRowCount() * (1 + groupCountError)) {
+    if (rowCount < prevRowCount * (1 - groupCountError)
+        || rowCount > prevRowCount * (1 + groupCountError)) {
       return false;
     }
 
     // Check 2: if aggregate values have converged.
-    Boolean isValueConverged = true;
-    for (List<Object> groupingValues : newAggregatedMap.keySet()) {
-      if (isValueConverged && groupToNonGroupMap.containsKey(groupingValues)) {
-        List<Object> prevAggregatedValues = groupToNonGroupMap.get(groupingValues);
-        List<Object> aggregatedValues = newAggregatedMap.get(groupingValues);
-        
-        for (int idx = 0; idx < aggregatedValues.size(); idx++) {
-          Object prevObj = prevAggregatedValues.get(idx);
-          Object newObj = aggregatedValues.get(idx);
-          if (prevObj == null || newObj == null) {
-            // if Aggregate column is null, convergence test fails.
-            isValueConverged = false;
-            break;
-          }
-          double newValue = TypeCasting.toDouble(newObj);
-          double prevValue = TypeCasting.toDouble(prevObj);
-          
-          if (prevValue < newValue * (1 - valueError) 
-              || prevValue > newValue * (1 + valueError)) {
-            log.debug(
-                String.format("Not accurate enough. Prev: %f, New: %f", prevValue, newValue));
-            isValueConverged = false;
-            break;
-          }
+    return isValueConverged;
+  }
+
+  private long hashGroupingValues(VerdictSingleResult answer, int columnCount) {
+    long hash = 1;
+    int a = 0;
+    for (int i = 0; i < columnCount; i++) {
+      if (a < nongroupingColumns.length && nongroupingColumns[a] == i) {
+        a++;
+        continue;
+      }
+      hash = combineHash(hash, answer.getValue(i));
+    }
+    return hash;
+  }
+
+  /**
+   * Adds a grouping value to the hash of the preceding grouping values of a row.
+   *
+   * @param hash 1 for the first value
+   */
+  static long combineHash(long hash, Object value) {
+    return mix(hash * 31 + hashValue(value));
+  }
+
+  /** A 64-bit hash of a value, in order to make the collisions unlikely for millions of groups */
+  static long hashValue(Object value) {
+    if (value == null) {
+      return 0x9E3779B97F4A7C15L;
+    } else if (value instanceof Long
+        || value instanceof Integer
+        || value instanceof Short
+        || value instanceof Byte) {
+      return ((Number) value).longValue();
+    } else if (value instanceof Double || value instanceof Float) {
+      return Double.doubleToLongBits(((Number) value).doubleValue());
+    } else if (value instanceof CharSequence) {
+      // FNV-1a
+      CharSequence str = (CharSequence) value;
+      long hash = 0xcbf29ce484222325L;
+      for (int i = 0; i < str.length(); i++) {
+        hash ^= str.charAt(i);
+        hash *= 0x100000001b3L;
+      }
+      return hash;
+    } else if (value instanceof Date) {
+      return ((Date) value).getTime();
+    } else {
+      return value.hashCode();
+    }
+  }
+
+  /** The finalizer of MurmurHash3 */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * An open-addressing hash table from the hashes of the grouping values to the aggregate values,
+   * stored in flat arrays. Two groups with the same hash share a slot; with 64-bit hashes, this
+   * is unlikely even for millions of groups, and it only makes the check more conservative or
+   * compares against a wrong group in rare cases.
+   */
+  static class GroupTable {
+
+    private final int valueCount;
+
+    private long[] keys;
+
+    // the sequence number of the last answer that included the group; 0 for an empty slot.
+    private int[] answerStamps;
+
+    double[] values;
+
+    private int size = 0;
+
+    private int currentStamp = 0;
+
+    private boolean wasInPreviousAnswer = false;
+
+    GroupTable(int valueCount) {
+      this.valueCount = valueCount;
+      allocate(16);
+    }
+
+    private void allocate(int capacity) {
+      keys = new long[capacity];
+      answerStamps = new int[capacity];
+      values = new double[capacity * valueCount];
+    }
+
+    /** Starts the comparison of a new answer. */
+    void startAnswer() {
+      currentStamp++;
+    }
+
+    /**
+     * Finds or adds the slot of a group and marks it as included in the current answer.
+     *
+     * @return The index of the slot; its values are at [slot * valueCount, (slot+1) * valueCount).
+     */
+    int put(long key) {
+      if ((size + 1) * 2 > keys.length) {
+        grow();
+      }
+      int slot = findSlot(key);
+      if (answerStamps[slot] == 0) {
+        keys[slot] = key;
+        size++;
+        wasInPreviousAnswer = false;
+      } else {
+        wasInPreviousAnswer = (answerStamps[slot] == currentStamp - 1);
+      }
+      answerStamps[slot] = currentStamp;
+      return slot;
+    }
+
+    /** @return True if the group of the last put() was included in the previous answer. */
+    boolean wasInPreviousAnswer() {
+      return wasInPreviousAnswer;
+    }
+
+    private int findSlot(long key) {
+      int mask = keys.length - 1;
+      int slot = (int) (key ^ (key >>> 32)) & mask;
+      while (answerStamps[slot] != 0 && keys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    /**
+     * Rehashes the groups of the current and the previous answers, dropping those of the older
+     * answers, which are never compared again; the capacity is doubled only if the remaining
+     * groups still fill a quarter of the table.
+     */
+    private void grow() {
+      long[] oldKeys = keys;
+      int[] oldStamps = answerStamps;
+      double[] oldValues = values;
+      int liveCount = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldStamps[i] != 0 && oldStamps[i] >= currentStamp - 1) {
+          liveCount++;
         }
       }
-      
-      if (!isValueConverged) {
-        break;
+      int capacity = oldKeys.length;
+      if ((liveCount + 1) * 4 > capacity) {
+        capacity *= 2;
+      }
+      allocate(capacity);
+      size = liveCount;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldStamps[i] != 0 && oldStamps[i] >= currentStamp - 1) {
+          int slot = findSlot(oldKeys[i]);
+          keys[slot] = oldKeys[i];
+          answerStamps[slot] = oldStamps[i];
+          System.arraycopy(oldValues, i * valueCount, values, slot * valueCount, valueCount);
+        }
       }
     }
-    
-    // replaces the old values with the new values
-    groupToNonGroupMap = newAggregatedMap;
 
-    return isValueConverged;
+    int capacity() {
+      return keys.length;
+    }
   }
 
   /**
@@ -19,7 +19,7 @@ public class QueryResultAccuracyEstimatorWithGroupSize extends QueryResultAccura
    */
   @Override
   public boolean isLastResultAccurate() {
-    if (answers.size()<resultNumToBreak) {
+    if (answerCount<resultNumToBreak) {
       return false;
     } else {
       log.debug("Break condition has reached.");
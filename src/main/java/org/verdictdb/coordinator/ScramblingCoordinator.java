@@ -25,17 +25,23 @@ import org.verdictdb.connection.CachedDbmsConnection;
 import org.verdictdb.connection.ConcurrentJdbcConnection;
 import org.verdictdb.connection.DbmsConnection;
 import org.verdictdb.core.execplan.ExecutablePlanRunner;
+import org.verdictdb.core.scrambling.BlockZoneMap;
 import org.verdictdb.core.scrambling.FastConvergeScramblingMethod;
 import org.verdictdb.core.scrambling.HashScramblingMethod;
 import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScrambleRebalancer;
 import org.verdictdb.core.scrambling.ScramblingMethod;
 import org.verdictdb.core.scrambling.ScramblingMethodBase;
 import org.verdictdb.core.scrambling.ScramblingPlan;
+import org.verdictdb.core.scrambling.ScramblingProgress;
+import org.verdictdb.core.scrambling.StratifiedScramblingMethod;
+import org.verdictdb.core.scrambling.StreamingScrambleBuilder;
 import org.verdictdb.core.scrambling.UniformScramblingMethod;
 import org.verdictdb.core.sqlobject.BaseColumn;
 import org.verdictdb.core.sqlobject.BaseTable;
 import org.verdictdb.core.sqlobject.CreateSchemaQuery;
 import org.verdictdb.core.sqlobject.CreateScrambleQuery;
+import org.verdictdb.core.sqlobject.DeleteQuery;
 import org.verdictdb.core.sqlobject.DropTableQuery;
 import org.verdictdb.core.sqlobject.InsertIntoSelectQuery;
 import org.verdictdb.core.sqlobject.SelectItem;
@@ -43,6 +49,13 @@ import org.verdictdb.core.sqlobject.SelectQuery;
 import org.verdictdb.core.sqlobject.UnnamedColumn;
 import org.verdictdb.exception.VerdictDBException;
 import org.verdictdb.exception.VerdictDBValueException;
+import org.verdictdb.metastore.ScrambleCheckpointStore;
+import org.verdictdb.metastore.ScrambleCheckpointStore.ScrambleCheckpoint;
+import org.verdictdb.sqlsyntax.HiveSyntax;
+import org.verdictdb.sqlsyntax.ImpalaSyntax;
+import org.verdictdb.sqlsyntax.PrestoSyntax;
+import org.verdictdb.sqlsyntax.SparkSyntax;
+import org.verdictdb.sqlsyntax.SqlSyntax;
 import org.verdictdb.sqlwriter.QueryToSql;
 
 import java.util.ArrayList;
@@ -72,7 +85,7 @@ import java.util.Set;
 public class ScramblingCoordinator {
 
   private final Set<String> scramblingMethods =
-      new HashSet<>(Arrays.asList("uniform", "fastconverge"));
+      new HashSet<>(Arrays.asList("uniform", "fastconverge", "stratified"));
 
   // default options
   // Note that these options are actually all specified by the values in
@@ -89,6 +102,12 @@ public class ScramblingCoordinator {
           put("createIfNotExists", "false");
           put("maxScrambleTableBlockCount", "100");
           put("existingPartitionColumns", "");
+          put("appendThroughTempTable", "false");
+          put("scramblingUnitCount", "1");
+          put("scramblingUnitColumn", "");
+          put("stratifiedColumns", "");
+          put("zoneMapColumns", "");
+          put("clientSideScrambling", "false");
         }
       };
 
@@ -98,6 +117,10 @@ public class ScramblingCoordinator {
 
   Optional<String> scratchpadSchema;
 
+  private ScrambleCheckpointStore checkpointStore = null;
+
+  private String scrambleStatement = null;
+
   private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());
 
   public ScramblingCoordinator(DbmsConnection conn) {
@@ -144,6 +167,36 @@ public class ScramblingCoordinator {
     }
   }
 
+  /**
+   * Sets the number of the units into which the scramble creation is split. The units are run
+   * concurrently; thus, this number should not exceed the number of the underlying connections.
+   *
+   * @param unitCount 1 (default) creates a scramble with a single statement
+   */
+  public void setScramblingUnitCount(int unitCount) {
+    options.put("scramblingUnitCount", String.valueOf(unitCount));
+  }
+
+  /**
+   * Makes uniform scrambles built by streaming the original table through the client (see
+   * StreamingScrambleBuilder) if the connection supports it; otherwise, this has no effect.
+   */
+  public void setClientSideScrambling(boolean clientSideScrambling) {
+    options.put("clientSideScrambling", String.valueOf(clientSideScrambling));
+  }
+
+  /**
+   * Makes the parallel builds record their checkpoints so that an unfinished build can be
+   * continued by resumeScramble().
+   *
+   * @param checkpointStore Where the checkpoints are recorded
+   * @param statement The CREATE SCRAMBLE statement to be recorded with the checkpoints
+   */
+  public void setCheckpointStore(ScrambleCheckpointStore checkpointStore, String statement) {
+    this.checkpointStore = checkpointStore;
+    this.scrambleStatement = statement;
+  }
+
   public ScrambleMeta scramble(String originalSchema, String originalTable)
       throws VerdictDBException {
     String newSchema;
@@ -208,13 +261,22 @@ public class ScramblingCoordinator {
     return meta;
   }
 
+  /**
+   * Appends the rows of the original table (satisfying the where clause of the query) to an
+   * existing scramble. By default, the new rows are inserted directly with a single "INSERT INTO
+   * ... SELECT" statement. For the databases that cannot use rand() correctly in such a statement
+   * (i.e., Impala), or if the "appendThroughTempTable" option is "true", a temporary scramble is
+   * created first and then inserted into the existing scramble.
+   *
+   * @param query
+   * @throws VerdictDBException
+   */
   // Note: this is the method currently used by the upstream interface.
   public void appendScramble(CreateScrambleQuery query) throws VerdictDBException {
     ScramblingMethod scramblingMethod = query.getScramblingMethod();
     String methodName = query.getMethod();
     String scrambleSchema = query.getNewSchema();
     String scrambleTable = query.getNewTable();
-    String tempTable = "verdictdbtemp_" + RandomStringUtils.randomAlphanumeric(8);
     String originalSchema = query.getOriginalSchema();
     String originalTable = query.getOriginalTable();
     String primaryColumn = query.getHashColumnName();
@@ -226,11 +288,6 @@ public class ScramblingCoordinator {
       effectiveOptions.put(o.getKey(), o.getValue());
     }
 
-    // perform scrambling
-    log.info(
-        String.format(
-            "Starts to create a temporary %s scramble %s.%s from %s.%s",
-            methodName.toUpperCase(), scrambleSchema, tempTable, originalSchema, originalTable));
     if (methodName.equalsIgnoreCase("hash")) {
       log.info(String.format("Method: %s on %s", methodName.toUpperCase(), primaryColumn));
     } else {
@@ -240,6 +297,57 @@ public class ScramblingCoordinator {
         String.format(
             "Relative size: %.6f (or equivalently, %.4f %%)", relativeSize, relativeSize * 100));
 
+    List<Pair<String, String>> columns = conn.getColumns(scrambleSchema, scrambleTable);
+    List<String> columnNames = new ArrayList<>();
+    for (Pair<String, String> column : columns) {
+      columnNames.add(column.getLeft());
+    }
+
+    boolean throughTempTable =
+        effectiveOptions.get("appendThroughTempTable").equalsIgnoreCase("true")
+            || (conn.getSyntax() instanceof ImpalaSyntax);
+    if (throughTempTable) {
+      appendScrambleThroughTempTable(query, columnNames, effectiveOptions);
+      return;
+    }
+
+    log.info(
+        String.format(
+            "Starts to append %s.%s to the %s scramble %s.%s",
+            originalSchema, originalTable, methodName.toUpperCase(), scrambleSchema, scrambleTable));
+    ScramblingPlan plan =
+        ScramblingPlan.createForAppend(
+            scrambleSchema,
+            scrambleTable,
+            columnNames,
+            originalSchema,
+            originalTable,
+            scramblingMethod,
+            query.getWhere(),
+            effectiveOptions);
+    ExecutablePlanRunner.runTillEnd(conn, plan);
+    log.info(
+        String.format(
+            "Appended new rows to the existing scramble (%s.%s)", scrambleSchema, scrambleTable));
+  }
+
+  private void appendScrambleThroughTempTable(
+      CreateScrambleQuery query, List<String> columnNames, Map<String, String> effectiveOptions)
+      throws VerdictDBException {
+    ScramblingMethod scramblingMethod = query.getScramblingMethod();
+    String methodName = query.getMethod();
+    String scrambleSchema = query.getNewSchema();
+    String scrambleTable = query.getNewTable();
+    String tempTable = "verdictdbtemp_" + RandomStringUtils.randomAlphanumeric(8);
+    String originalSchema = query.getOriginalSchema();
+    String originalTable = query.getOriginalTable();
+
+    // perform scrambling
+    log.info(
+        String.format(
+            "Starts to create a temporary %s scramble %s.%s from %s.%s",
+            methodName.toUpperCase(), scrambleSchema, tempTable, originalSchema, originalTable));
+
     ScramblingPlan plan =
         ScramblingPlan.create(
             scrambleSchema,
@@ -254,10 +362,8 @@ public class ScramblingCoordinator {
         String.format(
             "Finished creating temporary scramble to append: %s.%s", scrambleSchema, tempTable));
 
-    List<Pair<String, String>> columns = conn.getColumns(scrambleSchema, scrambleTable);
     List<SelectItem> selectList = new ArrayList<>();
-    for (Pair<String, String> column : columns) {
-      String columnName = column.getLeft();
+    for (String columnName : columnNames) {
       selectList.add(new BaseColumn(columnName));
     }
 
@@ -296,6 +402,16 @@ public class ScramblingCoordinator {
     double relativeSize = query.getSize();
     Map<String, String> customOptions = new HashMap<>(options);
     customOptions.put("minScrambleTableBlockSize", Long.toString(query.getBlockSize()));
+    if (query.getStratifiedColumns() != null) {
+      customOptions.put("stratifiedColumns", Joiner.on(",").join(query.getStratifiedColumns()));
+    }
+    if (query.getZoneMapColumns() != null) {
+      customOptions.put("zoneMapColumns", Joiner.on(",").join(query.getZoneMapColumns()));
+    }
+    if (query.getAlignedBlockDistribution() != null) {
+      customOptions.put(
+          "alignedBlockDistribution", Joiner.on(",").join(query.getAlignedBlockDistribution()));
+    }
 
     ScrambleMeta meta =
         scramble(
@@ -350,12 +466,12 @@ public class ScramblingCoordinator {
    */
   // scramble(CreateScrambleQuery query) method relies on this.
   public ScrambleMeta scramble(
-      String originalSchema,
-      String originalTable,
-      String newSchema,
-      String newTable,
-      String methodName,
-      String primaryColumn,
+      final String originalSchema,
+      final String originalTable,
+      final String newSchema,
+      final String newTable,
+      final String methodName,
+      final String primaryColumn,
       double relativeSize,
       UnnamedColumn where,
       Map<String, String> customOptions)
@@ -376,7 +492,7 @@ public class ScramblingCoordinator {
     }
 
     // overwrite options with custom options.
-    Map<String, String> effectiveOptions = new HashMap<String, String>();
+    final Map<String, String> effectiveOptions = new HashMap<String, String>();
     for (Entry<String, String> o : options.entrySet()) {
       effectiveOptions.put(o.getKey(), o.getValue());
     }
@@ -392,6 +508,12 @@ public class ScramblingCoordinator {
     ScramblingMethodBase scramblingMethodBase;
     if (methodName.equalsIgnoreCase("uniform")) {
       scramblingMethodBase = new UniformScramblingMethod(blockSize, maxBlockCount, relativeSize);
+    } else if (methodName.equalsIgnoreCase("hash")
+        && effectiveOptions.containsKey("alignedBlockDistribution")) {
+      // the blocks are aligned with those of another hash scramble (see HashScramblingMethod).
+      scramblingMethodBase =
+          new HashScramblingMethod(
+              getAlignedBlockDistribution(effectiveOptions), primaryColumn);
     } else if (methodName.equalsIgnoreCase("hash")) {
       scramblingMethodBase =
           new HashScramblingMethod(blockSize, maxBlockCount, relativeSize, primaryColumn);
@@ -400,6 +522,11 @@ public class ScramblingCoordinator {
     } else if (methodName.equalsIgnoreCase("FastConverge") && primaryColumn != null) {
       scramblingMethodBase =
           new FastConvergeScramblingMethod(blockSize, scratchpadSchema.get(), primaryColumn);
+    } else if (methodName.equalsIgnoreCase("stratified")) {
+      List<String> stratifiedColumns = getStratifiedColumns(primaryColumn, effectiveOptions);
+      scramblingMethodBase =
+          new StratifiedScramblingMethod(
+              blockSize, maxBlockCount, relativeSize, scratchpadSchema.get(), stratifiedColumns);
     } else {
       throw new VerdictDBValueException("Invalid scrambling method: " + methodName);
     }
@@ -419,21 +546,254 @@ public class ScramblingCoordinator {
         String.format(
             "Relative size: %.6f (or equivalently, %.4f %%)", relativeSize, relativeSize * 100));
 
-    ScramblingPlan plan =
-        ScramblingPlan.create(
+    int unitCount = Integer.valueOf(effectiveOptions.get("scramblingUnitCount"));
+    List<String> zoneMapColumns = splitColumns(effectiveOptions.get("zoneMapColumns"));
+    ScramblingPlan plan = null;
+    CheckpointRecorder recorder = null;
+    BlockZoneMap streamedZoneMap = null;
+    if (Boolean.valueOf(effectiveOptions.get("clientSideScrambling"))
+        && scramblingMethodBase instanceof UniformScramblingMethod
+        && StreamingScrambleBuilder.isSupported(conn)) {
+      log.info("Creates the scramble by streaming the original table through the client");
+      StreamingScrambleBuilder builder =
+          new StreamingScrambleBuilder(StreamingScrambleBuilder.findJdbcConnection(conn));
+      streamedZoneMap =
+          builder.build(
+              originalSchema,
+              originalTable,
+              newSchema,
+              newTable,
+              where,
+              (UniformScramblingMethod) scramblingMethodBase,
+              effectiveOptions.get("tierColumnName"),
+              effectiveOptions.get("blockColumnName"),
+              zoneMapColumns);
+    } else if (unitCount > 1 && ScramblingPlan.isParallelSupported(conn.getSyntax())) {
+      String unitColumn =
+          getScramblingUnitColumn(originalSchema, originalTable, primaryColumn, effectiveOptions);
+      log.info(
+          String.format("Creates the scramble in %d units split on %s", unitCount, unitColumn));
+      plan =
+          ScramblingPlan.createParallel(
+              newSchema,
+              newTable,
+              originalSchema,
+              originalTable,
+              scramblingMethod,
+              where,
+              effectiveOptions,
+              unitColumn,
+              unitCount);
+      if (checkpointStore != null) {
+        final ScramblingMethodBase method = scramblingMethodBase;
+        recorder =
+            new CheckpointRecorder(newSchema, newTable, unitColumn, unitCount, null) {
+              @Override
+              ScrambleMeta composeMeta() {
+                return createScrambleMeta(
+                    newSchema,
+                    newTable,
+                    originalSchema,
+                    originalTable,
+                    methodName,
+                    primaryColumn,
+                    method,
+                    effectiveOptions);
+              }
+            };
+        plan.getProgress().setListener(recorder);
+      }
+    } else {
+      if (unitCount > 1) {
+        log.info("Creates the scramble with a single statement; the database cannot split it.");
+      }
+      plan =
+          ScramblingPlan.create(
+              newSchema,
+              newTable,
+              originalSchema,
+              originalTable,
+              scramblingMethod,
+              where,
+              effectiveOptions);
+    }
+    if (plan != null) {
+      ExecutablePlanRunner.runTillEnd(conn, plan);
+    }
+    log.info(String.format("Finished creating %s.%s", newSchema, newTable));
+    if (recorder != null) {
+      recorder.recordCompletion();
+    }
+
+    reinitiateConnections();
+
+    ScrambleMeta meta =
+        createScrambleMeta(
             newSchema,
             newTable,
             originalSchema,
             originalTable,
-            scramblingMethod,
-            where,
+            methodName,
+            primaryColumn,
+            scramblingMethodBase,
             effectiveOptions);
+    if (!zoneMapColumns.isEmpty()) {
+      if (streamedZoneMap != null) {
+        // already computed while the rows were written
+        meta.setZoneMap(streamedZoneMap);
+      } else {
+        computeZoneMap(meta, zoneMapColumns);
+      }
+    }
+    return meta;
+  }
+
+  /**
+   * Recomputes the zone map of a scramble (e.g., after new rows are appended).
+   *
+   * @param meta The meta of the scramble, which is updated with the new zone map
+   * @param columns The columns of the zone map
+   * @throws VerdictDBException
+   */
+  public void updateZoneMap(ScrambleMeta meta, List<String> columns) throws VerdictDBException {
+    computeZoneMap(meta, columns);
+  }
+
+  private void computeZoneMap(ScrambleMeta meta, List<String> columns)
+      throws VerdictDBException {
+    log.info(
+        String.format(
+            "Computes the block zone map of %s.%s on %s",
+            meta.getSchemaName(), meta.getTableName(), Joiner.on(", ").join(columns)));
+    meta.setZoneMap(BlockZoneMap.compute(conn, meta, columns));
+  }
+
+  /**
+   * Continues a parallel scramble build that has not been completed (e.g., due to a connection
+   * failure). The units completed by the previous build are skipped; the other units are run
+   * again. Since a unit is recorded as completed only after its insertion, a unit not recorded may
+   * still have inserted its rows; thus, the rows of the other units are deleted before they are
+   * run again. A build is not resumed in the databases whose "INSERT INTO ... SELECT" is not
+   * transactional (see hasAtomicInsert()), which do not support deleting rows either.
+   *
+   * @param query The CREATE SCRAMBLE query of the previous build
+   * @param checkpoint The state of the previous build
+   * @return The meta of the completed scramble
+   * @throws VerdictDBException
+   */
+  public ScrambleMeta resumeScramble(CreateScrambleQuery query, ScrambleCheckpoint checkpoint)
+      throws VerdictDBException {
+    ScrambleMeta meta = checkpoint.getScrambleMeta();
+    if (!hasAtomicInsert(conn.getSyntax())) {
+      throw new VerdictDBValueException(
+          String.format(
+              "The scramble '%s.%s' cannot be resumed since a failed unit may have inserted some "
+                  + "of its rows. Drop the scramble and create it again.",
+              meta.getSchemaName(), meta.getTableName()));
+    }
+    ScramblingMethod scramblingMethod = meta.getScramblingMethod();
+    if (scramblingMethod == null) {
+      throw new VerdictDBValueException(
+          String.format(
+              "The scrambling method of the scramble '%s.%s' is not recorded.",
+              meta.getSchemaName(), meta.getTableName()));
+    }
+
+    Map<String, String> effectiveOptions = new HashMap<>(options);
+    effectiveOptions.put("tierColumnName", meta.getTierColumn());
+    effectiveOptions.put("blockColumnName", meta.getAggregationBlockColumn());
+
+    Set<Integer> completedUnits = checkpoint.getCompletedUnits();
+    log.info(
+        String.format(
+            "Resumes creating %s.%s: %d of %d units have been completed",
+            meta.getSchemaName(),
+            meta.getTableName(),
+            completedUnits.size(),
+            checkpoint.getUnitCount()));
+    for (int i = 0; i < checkpoint.getUnitCount(); i++) {
+      if (!completedUnits.contains(i)) {
+        DeleteQuery deleteQuery =
+            ScramblingPlan.createUnitDeleteQuery(
+                meta.getSchemaName(),
+                meta.getTableName(),
+                checkpoint.getUnitColumn(),
+                i,
+                checkpoint.getUnitCount());
+        conn.execute(QueryToSql.convert(conn.getSyntax(), deleteQuery));
+      }
+    }
+    ScramblingPlan plan =
+        ScramblingPlan.createParallel(
+            meta.getSchemaName(),
+            meta.getTableName(),
+            meta.getOriginalSchemaName(),
+            meta.getOriginalTableName(),
+            scramblingMethod,
+            query.getWhere(),
+            effectiveOptions,
+            checkpoint.getUnitColumn(),
+            checkpoint.getUnitCount(),
+            completedUnits);
+    CheckpointRecorder recorder = null;
+    if (checkpointStore != null) {
+      recorder =
+          new CheckpointRecorder(
+              meta.getSchemaName(),
+              meta.getTableName(),
+              checkpoint.getUnitColumn(),
+              checkpoint.getUnitCount(),
+              checkpoint.getBuildId());
+      plan.getProgress().setListener(recorder);
+    }
     ExecutablePlanRunner.runTillEnd(conn, plan);
-    log.info(String.format("Finished creating %s.%s", newSchema, newTable));
+    log.info(String.format("Finished creating %s.%s", meta.getSchemaName(), meta.getTableName()));
+    if (recorder != null) {
+      recorder.recordCompletion();
+    }
+
+    reinitiateConnections();
+    if (query.getZoneMapColumns() != null && !query.getZoneMapColumns().isEmpty()) {
+      computeZoneMap(meta, query.getZoneMapColumns());
+    }
+    return meta;
+  }
+
+  /**
+   * Hive, Spark, Impala, and Presto write the files of an "INSERT INTO ... SELECT" without a
+   * transaction, so the files written before a failure remain in the table.
+   */
+  private static boolean hasAtomicInsert(SqlSyntax syntax) {
+    return !(syntax instanceof HiveSyntax
+        || syntax instanceof SparkSyntax
+        || syntax instanceof ImpalaSyntax
+        || syntax instanceof PrestoSyntax);
+  }
+
+  /**
+   * Re-partitions an existing scramble into the number of blocks suitable for its current size
+   * (see ScrambleRebalancer), using the block size and the maximum block count of this coordinator.
+   * The zone map of the scramble, if any, is computed again for the new blocks.
+   *
+   * @param meta The current meta of the scramble
+   * @return The meta of the rebalanced scramble, which is yet to be stored in the metastore
+   * @throws VerdictDBException
+   */
+  public ScrambleMeta rebalanceScramble(ScrambleMeta meta) throws VerdictDBException {
+    long blockSize = Double.valueOf(options.get("minScrambleTableBlockSize")).longValue();
+    int maxBlockCount = Double.valueOf(options.get("maxScrambleTableBlockCount")).intValue();
+    ScrambleMeta rebalanced =
+        new ScrambleRebalancer(conn).rebalance(meta, blockSize, maxBlockCount);
+    if (meta.getZoneMap() != null) {
+      computeZoneMap(rebalanced, meta.getZoneMap().getColumnNames());
+    }
+    return rebalanced;
+  }
 
-    // Reinitiate Connections after table creation is done
-    // This is to handle the case that the JDBC connections are disconnected due to
-    // the long idle time.
+  // Reinitiate Connections after table creation is done
+  // This is to handle the case that the JDBC connections are disconnected due to
+  // the long idle time.
+  private void reinitiateConnections() throws VerdictDBException {
     if (conn instanceof ConcurrentJdbcConnection) {
       ((ConcurrentJdbcConnection) conn).reinitiateConnection();
     } else if (conn instanceof CachedDbmsConnection
@@ -442,7 +802,17 @@ public class ScramblingCoordinator {
       ((ConcurrentJdbcConnection) ((CachedDbmsConnection) conn).getOriginalConnection())
           .reinitiateConnection();
     }
+  }
 
+  private ScrambleMeta createScrambleMeta(
+      String newSchema,
+      String newTable,
+      String originalSchema,
+      String originalTable,
+      String methodName,
+      String primaryColumn,
+      ScramblingMethodBase scramblingMethod,
+      Map<String, String> effectiveOptions) {
     // compose scramble meta
     String tierColumn = effectiveOptions.get("tierColumnName");
     int tierCount = scramblingMethod.getTierCount();
@@ -467,8 +837,145 @@ public class ScramblingCoordinator {
             cumulativeDistribution,
             methodName,
             primaryColumn,
-            scramblingMethodBase);
+            scramblingMethod);
 
     return meta;
   }
+
+  /**
+   * Records the checkpoints of a parallel scramble build in the checkpoint store. Failures are only
+   * logged since the scramble itself can still be built.
+   */
+  private class CheckpointRecorder implements ScramblingProgress.Listener {
+
+    private final String scrambleSchema;
+
+    private final String scrambleTable;
+
+    private final String unitColumn;
+
+    private final int unitCount;
+
+    private volatile String buildId;
+
+    CheckpointRecorder(
+        String scrambleSchema,
+        String scrambleTable,
+        String unitColumn,
+        int unitCount,
+        String buildId) {
+      this.scrambleSchema = scrambleSchema;
+      this.scrambleTable = scrambleTable;
+      this.unitColumn = unitColumn;
+      this.unitCount = unitCount;
+      this.buildId = buildId;
+    }
+
+    /** @return The meta of the scramble being built; called once the scramble table is created. */
+    ScrambleMeta composeMeta() {
+      return null;
+    }
+
+    @Override
+    public void onTableCreated() {
+      try {
+        buildId =
+            checkpointStore.startBuild(composeMeta(), scrambleStatement, unitColumn, unitCount);
+      } catch (VerdictDBException e) {
+        log.warn("Failed to record the start of the scramble build: " + e.getMessage());
+      }
+    }
+
+    @Override
+    public void onUnitComplete(int unitId) {
+      if (buildId == null) {
+        return;
+      }
+      try {
+        checkpointStore.markUnitComplete(scrambleSchema, scrambleTable, buildId, unitId);
+      } catch (VerdictDBException e) {
+        log.warn("Failed to record the completion of a scrambling unit: " + e.getMessage());
+      }
+    }
+
+    void recordCompletion() {
+      if (buildId == null) {
+        return;
+      }
+      try {
+        checkpointStore.markBuildComplete(scrambleSchema, scrambleTable, buildId);
+      } catch (VerdictDBException e) {
+        log.warn("Failed to record the completion of the scramble build: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * The stratified columns are given by the "stratifiedColumns" option (comma-separated). A single
+   * column may also be given as the primary column, i.e., "METHOD stratified ON col".
+   */
+  private List<String> getStratifiedColumns(String primaryColumn, Map<String, String> options)
+      throws VerdictDBValueException {
+    List<String> stratifiedColumns = splitColumns(options.get("stratifiedColumns"));
+    if (stratifiedColumns.isEmpty() && primaryColumn != null) {
+      stratifiedColumns.add(primaryColumn);
+    }
+    if (stratifiedColumns.isEmpty()) {
+      throw new VerdictDBValueException("No column is given for stratified scrambling.");
+    }
+    return stratifiedColumns;
+  }
+
+  /**
+   * The cumulative distribution of the blocks of the scramble that a new hash scramble aligns
+   * with. Using the same distribution lets both scrambles assign the same hash values to the same
+   * blocks.
+   */
+  private Map<Integer, List<Double>> getAlignedBlockDistribution(Map<String, String> options) {
+    List<Double> distribution = new ArrayList<>();
+    for (String value : splitColumns(options.get("alignedBlockDistribution"))) {
+      distribution.add(Double.valueOf(value));
+    }
+    Map<Integer, List<Double>> probDist = new HashMap<>();
+    probDist.put(0, distribution);
+    return probDist;
+  }
+
+  /** Splits a comma-separated list of column names; an empty list if the option is not set. */
+  private List<String> splitColumns(String option) {
+    List<String> columns = new ArrayList<>();
+    if (option != null) {
+      for (String column : option.split(",")) {
+        if (!column.trim().isEmpty()) {
+          columns.add(column.trim());
+        }
+      }
+    }
+    return columns;
+  }
+
+  /**
+   * The column used for splitting the units of a parallel scramble creation: the
+   * "scramblingUnitColumn" option if set, the hash column, the first primary key column, or the
+   * first column of the original table (in this order).
+   */
+  private String getScramblingUnitColumn(
+      String originalSchema,
+      String originalTable,
+      String primaryColumn,
+      Map<String, String> effectiveOptions)
+      throws VerdictDBException {
+    String unitColumn = effectiveOptions.get("scramblingUnitColumn");
+    if (unitColumn != null && !unitColumn.isEmpty()) {
+      return unitColumn;
+    }
+    if (primaryColumn != null) {
+      return primaryColumn;
+    }
+    List<String> primaryKey = conn.getPrimaryKey(originalSchema, originalTable);
+    if (primaryKey != null && !primaryKey.isEmpty()) {
+      return primaryKey.get(0);
+    }
+    return conn.getColumns(originalSchema, originalTable).get(0).getLeft();
+  }
 }
@@ -16,8 +16,11 @@
 
 package org.verdictdb.coordinator;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.lang3.tuple.Triple;
 import org.verdictdb.commons.VerdictDBLogger;
@@ -26,11 +29,15 @@ import org.verdictdb.connection.DbmsConnection;
 import org.verdictdb.core.execplan.ExecutablePlanRunner;
 import org.verdictdb.core.execplan.ExecutionInfoToken;
 import org.verdictdb.core.execplan.ExecutionTokenQueue;
+import org.verdictdb.core.querying.ExecutableNodeBase;
 import org.verdictdb.core.querying.QueryExecutionPlan;
 import org.verdictdb.core.querying.QueryExecutionPlanFactory;
 import org.verdictdb.core.querying.ola.AsyncQueryExecutionPlan;
+import org.verdictdb.core.querying.ola.CoHashedJoin;
+import org.verdictdb.core.querying.ola.SelectAsyncAggExecutionNode;
 import org.verdictdb.core.querying.simplifier.QueryExecutionPlanSimplifier;
 import org.verdictdb.core.resulthandler.ExecutionResultReader;
+import org.verdictdb.core.scrambling.ScrambleMeta;
 import org.verdictdb.core.scrambling.ScrambleMetaSet;
 import org.verdictdb.core.sqlobject.AbstractRelation;
 import org.verdictdb.core.sqlobject.AliasedColumn;
@@ -154,6 +161,7 @@ public class SelectQueryCoordinator implements Coordinator {
     // plan.
     QueryExecutionPlan asyncPlan = AsyncQueryExecutionPlan.create(plan);
     log.debug("Async plan created.");
+    configureOnlineAggregations(asyncPlan.getRootNode(), fasterQuery);
 
     // simplify the plan
     //    QueryExecutionPlan simplifiedAsyncPlan = QueryExecutionPlanSimplifier.simplify(asyncPlan);
@@ -178,19 +186,103 @@ public class SelectQueryCoordinator implements Coordinator {
       planRunner = null;
     }
   }
+
+  /**
+   * Applies the syntax of the connection and the options to the online aggregations of a plan,
+   * i.e., the memory budget of the group state (in megabytes) and the early stop of top-k queries.
+   * The early stop is enabled only if every answer covers exactly one more block than the previous
+   * one, which the standard errors of TopKTracker assume.
+   *
+   * @param query The query of the plan, with the scrambles in place of the original tables
+   */
+  private void configureOnlineAggregations(ExecutableNodeBase root, SelectQuery query) {
+    long memoryBudget = (options == null) ? 0 : options.getAggregateMemoryBudget() * 1024 * 1024;
+    boolean isTopKEarlyStop = options != null && options.isTopKEarlyStop();
+    if (isTopKEarlyStop) {
+      List<ScrambleMeta> scrambles = new ArrayList<>();
+      findScrambles(query, scrambleMetaSet, scrambles);
+      if (!hasSingleBlockPerAnswer(scrambles)) {
+        log.debug(
+            "The early stop of top-k queries is disabled since the answers of the query are "
+                + "not one block apart.");
+        isTopKEarlyStop = false;
+      }
+    }
+    Set<ExecutableNodeBase> visited = new HashSet<>();
+    List<ExecutableNodeBase> nodes = new LinkedList<>();
+    nodes.add(root);
+    while (!nodes.isEmpty()) {
+      ExecutableNodeBase node = nodes.remove(0);
+      if (!visited.add(node)) {
+        continue;
+      }
+      if (node instanceof SelectAsyncAggExecutionNode) {
+        SelectAsyncAggExecutionNode aggNode = (SelectAsyncAggExecutionNode) node;
+        aggNode.setBackendSyntax(conn.getSyntax());
+        if (memoryBudget > 0) {
+          aggNode.setAggregateMemoryBudget(memoryBudget, options.getAggregateSpillDirectory());
+        }
+        if (isTopKEarlyStop) {
+          aggNode.enableTopKEarlyStop(options.getConfidenceLevel());
+        }
+      }
+      nodes.addAll(node.getSources());
+    }
+  }
   
+  /** Collects the scrambles read by a query, including those in its subqueries. */
+  static void findScrambles(
+      AbstractRelation relation, ScrambleMetaSet metaset, List<ScrambleMeta> scrambles) {
+    if (relation instanceof BaseTable) {
+      BaseTable table = (BaseTable) relation;
+      ScrambleMeta meta = metaset.getSingleMeta(table.getSchemaName(), table.getTableName());
+      if (meta != null) {
+        scrambles.add(meta);
+      }
+    } else if (relation instanceof JoinTable) {
+      for (AbstractRelation joined : ((JoinTable) relation).getJoinList()) {
+        findScrambles(joined, metaset, scrambles);
+      }
+    } else if (relation instanceof SelectQuery) {
+      for (AbstractRelation source : ((SelectQuery) relation).getFromList()) {
+        findScrambles(source, metaset, scrambles);
+      }
+    }
+  }
+
+  /**
+   * Checks if every progressive answer covers exactly one more block, with the same weight, than
+   * the previous one. This holds only for a single uniform or hash scramble without a zone map;
+   * e.g., the blocks of the other methods have different sampling probabilities, the answers of
+   * ripple joins and co-hashed joins cover several blocks at once, and zone maps may skip blocks.
+   */
+  static boolean hasSingleBlockPerAnswer(List<ScrambleMeta> scrambles) {
+    if (scrambles.size() != 1) {
+      return false;
+    }
+    ScrambleMeta meta = scrambles.get(0);
+    String method = meta.getMethodWithDefault("uniform");
+    return (method.equalsIgnoreCase("uniform") || method.equalsIgnoreCase("hash"))
+        && meta.getZoneMap() == null;
+  }
+
   /**
    * Ensures that simple aggregates (i.e., sum, count, avg) are associated with uniform scrambles,
-   * and that count-distinct aggregates are associated with hash scrambles.
+   * and that count-distinct aggregates are associated with hash scrambles. The count-distinct
+   * aggregates of the outermost query can also be associated with uniform scrambles including all
+   * the rows of their original tables; they are computed with HyperLogLog sketches. Quantile
+   * aggregates (i.e., percentile and median) are computed with mergeable quantile sketches, which
+   * are supported only in the outermost query.
    * 
    * @param query
    * @throws VerdictDBException
    */
   private void ensureScrambleCorrectness(SelectQuery query) throws VerdictDBException {
-    ensureScrambleCorrectnessInner(query, null);
+    ensureScrambleCorrectnessInner(query, null, true);
   }
   
-  private void ensureScrambleCorrectnessInner(SelectQuery query, BaseColumn countDistinctColumn)
+  private void ensureScrambleCorrectnessInner(
+      SelectQuery query, BaseColumn countDistinctColumn, boolean isOutermost)
       throws VerdictDBException {
     
     Triple<Boolean, Boolean, BaseColumn> inspectionInfo = inspectAggregatesInSelectList(query);
@@ -208,20 +300,40 @@ public class SelectQueryCoordinator implements Coordinator {
         }
         String method = scrambleMetaSet.getScramblingMethod(schemaName, tableName);
 
+        if (!isOutermost && containsQuantileAggregate(query)) {
+          throw new VerdictDBValueException(
+              "Quantile aggregates (e.g., percentile, median) on a scramble are supported only "
+                  + "in the outermost query.");
+        }
+
         if (containAggregateItem) {
+          // hash scrambles can be used only when they are joined on their hash columns with other
+          // hash scrambles aligned with them.
           if (!method.equalsIgnoreCase("uniform")
-              && !method.equalsIgnoreCase("fastconverge")) {
+              && !method.equalsIgnoreCase("fastconverge")
+              && !method.equalsIgnoreCase("stratified")
+              && !(method.equalsIgnoreCase("hash")
+                  && CoHashedJoin.isCoHashed(scrambleMetaSet, query))) {
             throw new VerdictDBValueException(
-                "Simple aggregates must be used with a uniform scramble.");
+                "Simple aggregates must be used with a uniform scramble "
+                    + "or with co-hashed scrambles joined on their hash columns.");
           }
         } else if (containCountDistinctItem) {
           String hashColumn = scrambleMetaSet.getHashColumn(schemaName, tableName);
-          if (!method.equalsIgnoreCase("hash")
-              || hashColumn == null
-              || !hashColumn.equalsIgnoreCase(countDistinctColumn.getColumnName())) {
+          boolean onHashColumn =
+              method.equalsIgnoreCase("hash")
+                  && hashColumn != null
+                  && countDistinctColumn != null
+                  && hashColumn.equalsIgnoreCase(countDistinctColumn.getColumnName());
+          boolean sketchable =
+              isOutermost
+                  && method.equalsIgnoreCase("uniform")
+                  && includesAllRows(scrambleMetaSet.getSingleMeta(schemaName, tableName));
+          if (!onHashColumn && !sketchable) {
             throw new VerdictDBValueException(
                 "Count distinct of a column must be used with the hash scramble "
-                    + "built on that column.");
+                    + "built on that column, or in the outermost query with a uniform scramble "
+                    + "that includes all the rows of its original table.");
           }
         }
         
@@ -232,10 +344,31 @@ public class SelectQueryCoordinator implements Coordinator {
           }
         }
       } else if (table instanceof SelectQuery) {
-        ensureScrambleCorrectnessInner((SelectQuery) table, countDistinctColumn);
+        ensureScrambleCorrectnessInner((SelectQuery) table, countDistinctColumn, false);
       }  
     }
   }
+
+  private static boolean containsQuantileAggregate(SelectQuery query) {
+    for (SelectItem selectItem : query.getSelectList()) {
+      if (selectItem instanceof AliasedColumn
+          && ((AliasedColumn) selectItem).getColumn() instanceof ColumnOp
+          && ((ColumnOp) ((AliasedColumn) selectItem).getColumn()).isQuantileAggregate()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean includesAllRows(ScrambleMeta meta) {
+    if (meta.getNumberOfTiers() != 1 || meta.getCumulativeDistributionForTier() == null) {
+      return false;
+    }
+    List<Double> distribution = meta.getCumulativeDistributionForTier(0);
+    return distribution != null
+        && !distribution.isEmpty()
+        && distribution.get(distribution.size() - 1) >= 1.0 - 1e-6;
+  }
   
   /**
    * For the third element, the operand inside the count-distinct, we recursively examine the
@@ -366,6 +499,7 @@ public class SelectQueryCoordinator implements Coordinator {
 
     // replaces original tables with scrambles
     ScrambleTableReplacer replacer = new ScrambleTableReplacer(scrambleMetaSet);
+    replacer.replaceWithPhysicalTables(query, conn.getDefaultSchema());
     int scrambleCount = replacer.replaceQuery(query);
     
     // ensure scramble validity
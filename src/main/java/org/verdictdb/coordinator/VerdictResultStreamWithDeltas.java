@@ -0,0 +1,319 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.coordinator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.verdictdb.VerdictResultStream;
+import org.verdictdb.VerdictSingleResult;
+
+/**
+ * Delta-encodes the progressive answers of another stream. Later answers of a group-by query
+ * usually differ from the previous ones only in a few groups, so sending only those groups saves
+ * the cost of serializing and rendering the whole answer again.
+ *
+ * <p>Each answer has an additional first column, CHANGE_COLUMN_NAME, followed by the columns of
+ * the original answer:
+ *
+ * <ol>
+ *   <li>"snapshot": the answer is complete; the client must discard the groups it has. The first
+ *       answer and every snapshotInterval-th answer are snapshots.
+ *   <li>"insert": a group that did not exist in the client's state.
+ *   <li>"update": a group whose non-key values have changed by more than the tolerance.
+ *   <li>"delete": a group that no longer exists; only its key values are set.
+ * </ol>
+ *
+ * <p>The changes are computed against the values the client holds (i.e., the values sent last),
+ * not against the previous answer, so that the changes below the tolerance accumulate until they
+ * are sent. When the original stream ends, a final delta with the remaining small changes is sent,
+ * so that the client ends with the exact final answer.
+ */
+public class VerdictResultStreamWithDeltas implements VerdictResultStream {
+
+  public static final String CHANGE_COLUMN_NAME = "verdictdb_change";
+
+  public static final String SNAPSHOT = "snapshot";
+
+  public static final String INSERT = "insert";
+
+  public static final String UPDATE = "update";
+
+  public static final String DELETE = "delete";
+
+  private final VerdictResultStream stream;
+
+  /** The indexes of the columns identifying a group, e.g., the group-by columns. */
+  private final int[] keyIndexes;
+
+  /** The number of the columns in an answer; -1 if unknown. */
+  private final int columnCount;
+
+  private final int snapshotInterval;
+
+  private final double tolerance;
+
+  private int sequence = 0;
+
+  private List<String> header = new ArrayList<>();
+
+  /** The rows the client holds, by their keys */
+  private Map<List<Object>, List<Object>> sentRows = new LinkedHashMap<>();
+
+  /** The rows of the most recent answer, by their keys; null if they were not keyed uniquely */
+  private Map<List<Object>, List<Object>> latestRows;
+
+  /** True if the client's state may not be keyed, i.e., the previous answer was not keyed */
+  private boolean isSnapshotRequired = false;
+
+  private boolean isFinalDeltaChecked = false;
+
+  private DeltaResult finalDelta;
+
+  /**
+   * @param stream The stream of the complete answers
+   * @param keyIndexes The indexes of the columns identifying a group; empty if an answer has a
+   *     single row.
+   * @param columnCount The expected number of the columns; an answer with a different number of
+   *     columns is sent as a snapshot. -1 to accept any number of columns.
+   * @param snapshotInterval Every this many answers, a snapshot is sent.
+   * @param tolerance The relative change of a numeric value regarded as unchanged.
+   */
+  public VerdictResultStreamWithDeltas(
+      VerdictResultStream stream,
+      int[] keyIndexes,
+      int columnCount,
+      int snapshotInterval,
+      double tolerance) {
+    if (snapshotInterval < 1) {
+      throw new IllegalArgumentException(
+          "The snapshot interval must be a positive integer: " + snapshotInterval);
+    }
+    this.stream = stream;
+    this.keyIndexes = keyIndexes;
+    this.columnCount = columnCount;
+    this.snapshotInterval = snapshotInterval;
+    this.tolerance = tolerance;
+  }
+
+  /** An answer of this stream. */
+  public static class DeltaResult extends VerdictSingleResultFromListData {
+
+    private final int sequenceNumber;
+
+    private final boolean isSnapshot;
+
+    DeltaResult(
+        List<String> header, List<List<Object>> rows, int sequenceNumber, boolean isSnapshot) {
+      super(header, rows, true);
+      this.sequenceNumber = sequenceNumber;
+      this.isSnapshot = isSnapshot;
+    }
+
+    /** @return The sequence number of this answer, starting from 1 */
+    public int getSequenceNumber() {
+      return sequenceNumber;
+    }
+
+    public boolean isSnapshot() {
+      return isSnapshot;
+    }
+  }
+
+  @Override
+  public VerdictResultStream create(VerdictSingleResult singleResult) {
+    return null;
+  }
+
+  @Override
+  public boolean isCompleted() {
+    return !hasNext();
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (finalDelta != null) {
+      return true;
+    }
+    if (stream.hasNext()) {
+      return true;
+    }
+    if (!isFinalDeltaChecked) {
+      isFinalDeltaChecked = true;
+      if (tolerance > 0 && latestRows != null) {
+        DeltaResult delta = createDelta(latestRows, 0);
+        if (delta.getRowCount() > 0) {
+          finalDelta = delta;
+        }
+      }
+    }
+    return finalDelta != null;
+  }
+
+  @Override
+  public DeltaResult next() {
+    if (finalDelta != null) {
+      DeltaResult delta = finalDelta;
+      finalDelta = null;
+      return delta;
+    }
+
+    VerdictSingleResult answer = stream.next();
+    List<List<Object>> rows = readRows(answer);
+    latestRows = groupByKeys(rows);
+    boolean isSnapshotDue = (sequence % snapshotInterval == 0) || isSnapshotRequired;
+    isSnapshotRequired = (latestRows == null);
+    if (isSnapshotDue || latestRows == null) {
+      return createSnapshot(rows);
+    } else {
+      return createDelta(latestRows, tolerance);
+    }
+  }
+
+  private List<List<Object>> readRows(VerdictSingleResult answer) {
+    List<List<Object>> rows = new ArrayList<>();
+    if (answer == null || answer.isEmpty()) {
+      return rows;
+    }
+    int count = answer.getColumnCount();
+    List<String> newHeader = new ArrayList<>(count + 1);
+    newHeader.add(CHANGE_COLUMN_NAME);
+    for (int i = 0; i < count; i++) {
+      newHeader.add(answer.getColumnName(i));
+    }
+    header = newHeader;
+
+    answer.rewind();
+    while (answer.next()) {
+      List<Object> row = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        row.add(answer.getValue(i));
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  /** @return null if the rows cannot be identified by their keys */
+  private Map<List<Object>, List<Object>> groupByKeys(List<List<Object>> rows) {
+    Map<List<Object>, List<Object>> keyed = new LinkedHashMap<>();
+    for (List<Object> row : rows) {
+      if (columnCount >= 0 && row.size() != columnCount) {
+        return null;
+      }
+      if (keyed.put(getKey(row), row) != null) {
+        return null;
+      }
+    }
+    return keyed;
+  }
+
+  private List<Object> getKey(List<Object> row) {
+    Object[] key = new Object[keyIndexes.length];
+    for (int i = 0; i < keyIndexes.length; i++) {
+      key[i] = row.get(keyIndexes[i]);
+    }
+    return Arrays.asList(key);
+  }
+
+  private DeltaResult createSnapshot(List<List<Object>> rows) {
+    sentRows =
+        (latestRows == null)
+            ? new LinkedHashMap<List<Object>, List<Object>>()
+            : new LinkedHashMap<>(latestRows);
+    List<List<Object>> output = new ArrayList<>(rows.size());
+    for (List<Object> row : rows) {
+      output.add(withChange(SNAPSHOT, row));
+    }
+    return new DeltaResult(header, output, ++sequence, true);
+  }
+
+  private DeltaResult createDelta(Map<List<Object>, List<Object>> current, double tolerance) {
+    List<List<Object>> output = new ArrayList<>();
+    for (Map.Entry<List<Object>, List<Object>> entry : current.entrySet()) {
+      List<Object> sent = sentRows.get(entry.getKey());
+      List<Object> row = entry.getValue();
+      if (sent == null) {
+        output.add(withChange(INSERT, row));
+      } else if (isChanged(sent, row, tolerance)) {
+        output.add(withChange(UPDATE, row));
+      } else {
+        continue;
+      }
+      sentRows.put(entry.getKey(), row);
+    }
+
+    Iterator<Map.Entry<List<Object>, List<Object>>> sentIterator = sentRows.entrySet().iterator();
+    while (sentIterator.hasNext()) {
+      Map.Entry<List<Object>, List<Object>> entry = sentIterator.next();
+      if (!current.containsKey(entry.getKey())) {
+        List<Object> row = new ArrayList<>();
+        for (int i = 0; i < entry.getValue().size(); i++) {
+          row.add(null);
+        }
+        for (int i = 0; i < keyIndexes.length; i++) {
+          row.set(keyIndexes[i], entry.getKey().get(i));
+        }
+        output.add(withChange(DELETE, row));
+        sentIterator.remove();
+      }
+    }
+    return new DeltaResult(header, output, ++sequence, false);
+  }
+
+  private boolean isChanged(List<Object> sent, List<Object> row, double tolerance) {
+    for (int i = 0; i < row.size(); i++) {
+      Object before = sent.get(i);
+      Object after = row.get(i);
+      if (before instanceof Number && after instanceof Number) {
+        double b = ((Number) before).doubleValue();
+        double a = ((Number) after).doubleValue();
+        if (Math.abs(a - b) > tolerance * Math.max(Math.abs(a), Math.abs(b))) {
+          return true;
+        }
+      } else if (!Objects.equals(before, after)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static List<Object> withChange(String change, List<Object> row) {
+    List<Object> output = new ArrayList<>(row.size() + 1);
+    output.add(change);
+    output.addAll(row);
+    return output;
+  }
+
+  @Override
+  public Iterator<VerdictSingleResult> iterator() {
+    return this;
+  }
+
+  @Override
+  public void remove() {}
+
+  @Override
+  public void close() {
+    stream.close();
+  }
+}
@@ -0,0 +1,455 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.coordinator;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.verdictdb.VerdictResultStream;
+import org.verdictdb.VerdictSingleResult;
+import org.verdictdb.commons.DataTypeConverter;
+import org.verdictdb.commons.TypeCasting;
+import org.verdictdb.connection.DbmsQueryResultMetaData;
+import org.verdictdb.core.querying.ola.HyperLogLog;
+import org.verdictdb.core.querying.ola.ProgressiveEstimate;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
+
+/**
+ * Attaches the standard error and the confidence interval of every aggregate to the progressive
+ * answers of another stream.
+ *
+ * <p>The standard errors are estimated from the per-block estimates recovered from consecutive
+ * answers, per group; see ProgressiveEstimate.
+ *
+ * <ol>
+ *   <li>sum and count: a group missing from the earlier answers had no rows in the earlier
+ *       blocks, i.e., its per-block estimates were zero.
+ *   <li>other aggregates (e.g., avg): only the answers including the group are counted; the
+ *       per-block estimates are approximate if the groups are unevenly spread over the blocks.
+ *   <li>count-distinct computed with HyperLogLog sketches: the relative standard error of the
+ *       sketches (see HyperLogLog). The error concerns the distinct values of the blocks processed
+ *       so far: the intermediate answers are lower bounds that grow with the blocks, not unbiased
+ *       estimates of the final answer, so VerdictContext.sql() returns only the answer covering
+ *       every block for such queries.
+ *   <li>min, max, and quantiles (e.g., median): no error is computed.
+ * </ol>
+ *
+ * <p>A group missing from an answer of a query with a having clause or a limit may have been
+ * filtered out rather than have no rows, so sum and count are then treated like the other
+ * aggregates. The per-block estimates are valid only if every answer covers exactly one more
+ * block of a single scramble; otherwise (e.g., ripple joins, stratified scrambles, or skipped
+ * blocks), only the errors of the sketches are computed.
+ *
+ * <p>For an aggregate column "col", the columns "col_err", "col_lo", and "col_hi" are appended
+ * after all the original columns. They are null until a group appears in two answers. Since the
+ * total number of the blocks is not known here, the finite population correction is not applied;
+ * the errors are conservative for the answers covering most of the blocks.
+ *
+ * <p>The groups are identified by the 64-bit hashes of their grouping values, as in
+ * QueryResultAccuracyEstimatorFromDifference. Only the groups of the latest answer are kept unless
+ * a group may be missing from an answer and reappear later, i.e., with a having clause or a limit.
+ */
+public class VerdictResultStreamWithErrors implements VerdictResultStream {
+
+  public static final String ERROR_SUFFIX = "_err";
+
+  public static final String LOWER_SUFFIX = "_lo";
+
+  public static final String UPPER_SUFFIX = "_hi";
+
+  private enum AggregateKind {
+    ADDITIVE,
+    OTHER,
+    DISTINCT_SKETCH,
+    NO_ERROR
+  }
+
+  private static final double DISTINCT_SKETCH_RELATIVE_ERROR =
+      new HyperLogLog().getRelativeStandardError();
+
+  private final VerdictResultStream stream;
+
+  /** The indexes of the grouping columns, which identify a group across the answers */
+  private final List<Integer> groupIndexes = new ArrayList<>();
+
+  private final List<Integer> aggIndexes = new ArrayList<>();
+
+  private final List<AggregateKind> aggKinds = new ArrayList<>();
+
+  private final int columnCount;
+
+  private final boolean isSupported;
+
+  /** True if a group missing from an answer never appears again, i.e., has no rows so far */
+  private final boolean missingGroupsHaveNoRows;
+
+  /** True if some aggregate needs the per-block estimates of its groups */
+  private final boolean needsMoments;
+
+  /** The half width of a confidence interval in the units of the standard error */
+  private final double zScore;
+
+  private int answerCount = 0;
+
+  /** The moments of the aggregates, by the hashes of the grouping values */
+  private Map<Long, ProgressiveEstimate[]> momentsPerGroup = new HashMap<>();
+
+  /**
+   * @param stream The stream of the answers
+   * @param selectList The select list of the standardized query producing the answers
+   * @param confidenceLevel e.g., 0.95
+   */
+  public VerdictResultStreamWithErrors(
+      VerdictResultStream stream, List<SelectItem> selectList, double confidenceLevel) {
+    this(stream, selectList, confidenceLevel, false);
+  }
+
+  /**
+   * @param distinctCountsBySketches True if the count-distinct aggregates are computed with
+   *     HyperLogLog sketches, i.e., some scramble of the query is not a hash scramble
+   */
+  public VerdictResultStreamWithErrors(
+      VerdictResultStream stream,
+      List<SelectItem> selectList,
+      double confidenceLevel,
+      boolean distinctCountsBySketches) {
+    this(stream, selectList, confidenceLevel, distinctCountsBySketches, true, true);
+  }
+
+  /**
+   * @param query The standardized query producing the answers
+   * @param blockEstimatesAvailable True if every answer covers exactly one more block of a single
+   *     scramble than the previous answer
+   */
+  public VerdictResultStreamWithErrors(
+      VerdictResultStream stream,
+      SelectQuery query,
+      double confidenceLevel,
+      boolean distinctCountsBySketches,
+      boolean blockEstimatesAvailable) {
+    this(
+        stream,
+        query.getSelectList(),
+        confidenceLevel,
+        distinctCountsBySketches,
+        blockEstimatesAvailable,
+        !query.getHaving().isPresent() && !query.getLimit().isPresent());
+  }
+
+  private VerdictResultStreamWithErrors(
+      VerdictResultStream stream,
+      List<SelectItem> selectList,
+      double confidenceLevel,
+      boolean distinctCountsBySketches,
+      boolean blockEstimatesAvailable,
+      boolean missingGroupsHaveNoRows) {
+    if (confidenceLevel <= 0 || confidenceLevel >= 1) {
+      throw new IllegalArgumentException(
+          "The confidence level must be between 0 and 1: " + confidenceLevel);
+    }
+    this.stream = stream;
+    this.columnCount = selectList.size();
+    this.zScore = ProgressiveEstimate.inverseStandardNormal(0.5 + confidenceLevel / 2);
+    this.missingGroupsHaveNoRows = missingGroupsHaveNoRows;
+
+    boolean hasAsterisk = false;
+    for (int i = 0; i < selectList.size(); i++) {
+      SelectItem item = selectList.get(i);
+      if (item instanceof AsteriskColumn) {
+        hasAsterisk = true;
+      } else if (item.isAggregateColumn()) {
+        aggIndexes.add(i);
+        AggregateKind kind = getAggregateKind(item, distinctCountsBySketches);
+        if (kind == AggregateKind.ADDITIVE && !missingGroupsHaveNoRows) {
+          kind = AggregateKind.OTHER;
+        }
+        if ((kind == AggregateKind.ADDITIVE || kind == AggregateKind.OTHER)
+            && !blockEstimatesAvailable) {
+          kind = AggregateKind.NO_ERROR;
+        }
+        aggKinds.add(kind);
+      } else {
+        groupIndexes.add(i);
+      }
+    }
+    isSupported = !hasAsterisk && !aggIndexes.isEmpty();
+    needsMoments =
+        aggKinds.contains(AggregateKind.ADDITIVE) || aggKinds.contains(AggregateKind.OTHER);
+  }
+
+  private static AggregateKind getAggregateKind(
+      SelectItem item, boolean distinctCountsBySketches) {
+    UnnamedColumn column =
+        (item instanceof AliasedColumn) ? ((AliasedColumn) item).getColumn() : null;
+    if (!(column instanceof ColumnOp)) {
+      return AggregateKind.OTHER;
+    }
+    ColumnOp op = (ColumnOp) column;
+    if (op.isMaxAggregate() || op.isMinAggregate() || op.isQuantileAggregate()) {
+      return AggregateKind.NO_ERROR;
+    } else if (op.getOpType().equals("sum") || op.getOpType().equals("count")) {
+      return AggregateKind.ADDITIVE;
+    } else if (op.getOpType().equals("countdistinct") || op.getOpType().equals("approx_distinct")) {
+      // the per-block counts of a hash scramble are over disjoint sets of the values
+      return distinctCountsBySketches ? AggregateKind.DISTINCT_SKETCH : AggregateKind.ADDITIVE;
+    } else {
+      return AggregateKind.OTHER;
+    }
+  }
+
+  /** @return The number of the columns of the answers of this stream */
+  public int getColumnCountWithErrors() {
+    return isSupported ? columnCount + 3 * aggIndexes.size() : columnCount;
+  }
+
+  /**
+   * An answer with the error columns, as a view of the original answer: the original columns are
+   * read from the original answer, which shares its cursor with this view, and the error columns
+   * from an array. The original answer must not be read separately while this view is read.
+   */
+  public static class AnswerWithErrors extends VerdictSingleResult {
+
+    private final VerdictSingleResult answer;
+
+    private final int columnCount;
+
+    private final List<String> errorColumnNames;
+
+    /** The values of the error columns, row by row; NaN for null */
+    private final double[] errorValues;
+
+    private int rowIndex = -1;
+
+    // used to support wasNull()
+    private Object lastValueRead;
+
+    AnswerWithErrors(
+        VerdictSingleResult answer, List<String> errorColumnNames, double[] errorValues) {
+      this.answer = answer;
+      this.columnCount = answer.getColumnCount();
+      this.errorColumnNames = errorColumnNames;
+      this.errorValues = errorValues;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return answer.isEmpty();
+    }
+
+    @Override
+    public DbmsQueryResultMetaData getMetaData() {
+      return null;
+    }
+
+    @Override
+    public int getColumnCount() {
+      return columnCount + errorColumnNames.size();
+    }
+
+    @Override
+    public String getColumnName(int index) {
+      return (index < columnCount)
+          ? answer.getColumnName(index)
+          : errorColumnNames.get(index - columnCount);
+    }
+
+    @Override
+    public int getColumnType(int index) {
+      if (index >= columnCount) {
+        return Types.DOUBLE;
+      }
+      return (answer.getRowCount() > 0) ? answer.getColumnType(index) : Types.JAVA_OBJECT;
+    }
+
+    @Override
+    public String getColumnTypeNamePy(int index) {
+      return DataTypeConverter.typeName(getColumnType(index));
+    }
+
+    @Override
+    public void rewind() {
+      answer.rewind();
+      rowIndex = -1;
+    }
+
+    @Override
+    public boolean next() {
+      if (!answer.next()) {
+        return false;
+      }
+      rowIndex++;
+      return true;
+    }
+
+    @Override
+    public long getRowCount() {
+      return answer.getRowCount();
+    }
+
+    @Override
+    public Object getValue(int index) {
+      if (index < columnCount) {
+        lastValueRead = answer.getValue(index);
+      } else {
+        double value = errorValues[rowIndex * errorColumnNames.size() + index - columnCount];
+        lastValueRead = Double.isNaN(value) ? null : value;
+      }
+      return lastValueRead;
+    }
+
+    @Override
+    public boolean wasNull() {
+      return lastValueRead == null;
+    }
+  }
+
+  @Override
+  public VerdictResultStream create(VerdictSingleResult singleResult) {
+    return null;
+  }
+
+  @Override
+  public boolean isCompleted() {
+    return stream.isCompleted();
+  }
+
+  @Override
+  public boolean hasNext() {
+    return stream.hasNext();
+  }
+
+  @Override
+  public VerdictSingleResult next() {
+    return addErrors(stream.next());
+  }
+
+  /**
+   * Updates the moments with an answer and returns the answer with the error columns. This must be
+   * called for every answer of the stream, in order.
+   *
+   * @param answer The answer is read from its beginning and rewound afterwards. It is not copied;
+   *     the returned answer is a view of it.
+   * @return The original answer if the errors cannot be computed for the query.
+   */
+  public VerdictSingleResult addErrors(VerdictSingleResult answer) {
+    if (!isSupported
+        || answer == null
+        || answer.isEmpty()
+        || answer.getColumnCount() != columnCount) {
+      return answer;
+    }
+    answerCount++;
+
+    List<String> errorColumnNames = new ArrayList<>(3 * aggIndexes.size());
+    for (int index : aggIndexes) {
+      String name = answer.getColumnName(index);
+      errorColumnNames.add(name + ERROR_SUFFIX);
+      errorColumnNames.add(name + LOWER_SUFFIX);
+      errorColumnNames.add(name + UPPER_SUFFIX);
+    }
+
+    // the groups of the earlier answers are dropped unless they may reappear later
+    Map<Long, ProgressiveEstimate[]> currentMoments =
+        missingGroupsHaveNoRows ? new HashMap<Long, ProgressiveEstimate[]>() : momentsPerGroup;
+    int rowWidth = errorColumnNames.size();
+    double[] errorValues = new double[(int) answer.getRowCount() * rowWidth];
+    int offset = 0;
+    answer.rewind();
+    while (answer.next()) {
+      ProgressiveEstimate[] moments = needsMoments ? findMoments(answer, currentMoments) : null;
+      computeErrors(answer, moments, errorValues, offset);
+      offset += rowWidth;
+    }
+    answer.rewind();
+    momentsPerGroup = currentMoments;
+    return new AnswerWithErrors(answer, errorColumnNames, errorValues);
+  }
+
+  /** Finds the moments of the group of the current row and keeps them in currentMoments. */
+  private ProgressiveEstimate[] findMoments(
+      VerdictSingleResult answer, Map<Long, ProgressiveEstimate[]> currentMoments) {
+    long key = 1;
+    for (int index : groupIndexes) {
+      key = QueryResultAccuracyEstimatorFromDifference.combineHash(key, answer.getValue(index));
+    }
+    ProgressiveEstimate[] moments = momentsPerGroup.get(key);
+    if (moments == null) {
+      moments = new ProgressiveEstimate[aggIndexes.size()];
+    }
+    currentMoments.put(key, moments);
+    return moments;
+  }
+
+  /** Writes the error columns of the current row at errorValues[offset]. */
+  private void computeErrors(
+      VerdictSingleResult answer,
+      ProgressiveEstimate[] moments,
+      double[] errorValues,
+      int offset) {
+    for (int i = 0; i < aggIndexes.size(); i++) {
+      Double value = TypeCasting.toDouble(answer.getValue(aggIndexes.get(i)));
+      int at = offset + 3 * i;
+      errorValues[at] = Double.NaN;
+      errorValues[at + 1] = Double.NaN;
+      errorValues[at + 2] = Double.NaN;
+      if (aggKinds.get(i) == AggregateKind.NO_ERROR || value == null) {
+        continue;
+      }
+      Double error;
+      if (aggKinds.get(i) == AggregateKind.DISTINCT_SKETCH) {
+        error = value * DISTINCT_SKETCH_RELATIVE_ERROR;
+      } else {
+        if (moments[i] == null) {
+          // for sum and count, the per-block estimates of the earlier blocks were zero
+          moments[i] =
+              (aggKinds.get(i) == AggregateKind.ADDITIVE)
+                  ? ProgressiveEstimate.withZeroBlocks(answerCount - 1)
+                  : new ProgressiveEstimate();
+        }
+        moments[i].add(value);
+        error = moments[i].getStandardError();
+      }
+      if (error != null) {
+        errorValues[at] = error;
+        errorValues[at + 1] = value - zScore * error;
+        errorValues[at + 2] = value + zScore * error;
+      }
+    }
+  }
+
+  @Override
+  public Iterator<VerdictSingleResult> iterator() {
+    return this;
+  }
+
+  @Override
+  public void remove() {}
+
+  @Override
+  public void close() {
+    stream.close();
+  }
+}
@@ -5,7 +5,6 @@ import org.verdictdb.connection.DbmsQueryResult;
 import org.verdictdb.connection.DbmsQueryResultMetaData;
 
 import com.google.common.base.Optional;
-import com.rits.cloning.Cloner;
 
 public class VerdictSingleResultFromDbmsQueryResult
     extends VerdictSingleResult {
@@ -20,15 +19,16 @@ public class VerdictSingleResultFromDbmsQueryResult
     if (result == null) {
       this.result = Optional.absent();
     } else {
-      DbmsQueryResult copied = copyResult(result);
-      copied.rewind();
-      this.result = Optional.of(copied);
+      this.result = Optional.of(result.createView());
     }
   }
 
+  /**
+   * @param result
+   * @param asIs If true, the given result (including its cursor) is used as-is; otherwise, a view
+   *     of the result with a separate cursor is used.
+   */
   public VerdictSingleResultFromDbmsQueryResult(DbmsQueryResult result, boolean asIs) {
-    // If result contains objects that cannot be serialized (e.g., BLOB, CLOB in H2),
-    // it is just copied as-is (i.e., shallow copy) as opposed to deep copy.
     super();
     if (result == null) {
       this.result = Optional.absent();
@@ -36,9 +36,7 @@ public class VerdictSingleResultFromDbmsQueryResult
       if (asIs) {
         this.result = Optional.of(result);
       } else {
-        DbmsQueryResult copied = copyResult(result);
-        copied.rewind();
-        this.result = Optional.of(copied);
+        this.result = Optional.of(result.createView());
       }
     }
   }
@@ -51,12 +49,6 @@ public class VerdictSingleResultFromDbmsQueryResult
     return !result.isPresent();
   }
 
-
-  private DbmsQueryResult copyResult(DbmsQueryResult result) {
-    DbmsQueryResult copied = new Cloner().deepClone(result);
-    return copied;
-  }
-
   public DbmsQueryResultMetaData getMetaData() {
     return result.isPresent() ? result.get().getMetaData() : null;
   }
@@ -3,6 +3,7 @@ package org.verdictdb.coordinator;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.verdictdb.VerdictSingleResult;
@@ -10,7 +11,6 @@ import org.verdictdb.commons.DataTypeConverter;
 import org.verdictdb.connection.DbmsQueryResultMetaData;
 
 import com.google.common.base.Optional;
-import com.rits.cloning.Cloner;
 
 public class VerdictSingleResultFromListData extends VerdictSingleResult {
 
@@ -38,13 +38,14 @@ public class VerdictSingleResultFromListData extends VerdictSingleResult {
 
   public VerdictSingleResultFromListData(
       List<String> header, List<List<Object>> result, boolean asIs) {
-    // If result contains objects that cannot be serialized (e.g., BLOB, CLOB in H2),
-    // it is just copied as-is (i.e., shallow copy) as opposed to deep copy.
+    // If asIs is true, the given lists are used without taking a snapshot; the caller must not
+    // modify them afterwards.
     super();
     if (result == null) {
       this.result = Optional.absent();
     } else {
       if (asIs) {
+        fieldsName = header;
         this.result = Optional.of(result);
       } else {
         fieldsName = header;
@@ -62,9 +63,16 @@ public class VerdictSingleResultFromListData extends VerdictSingleResult {
     return !result.isPresent();
   }
 
+  /**
+   * Takes an unmodifiable snapshot of the rows. Only the lists are copied; the values themselves
+   * (e.g., strings and numbers retrieved from a database) are shared.
+   */
   private static List<List<Object>> copyResult(List<List<Object>> result) {
-    List<List<Object>> copied = new Cloner().deepClone(result);
-    return copied;
+    List<List<Object>> copied = new ArrayList<>(result.size());
+    for (List<Object> row : result) {
+      copied.add(Collections.unmodifiableList(new ArrayList<>(row)));
+    }
+    return Collections.unmodifiableList(copied);
   }
 
   public DbmsQueryResultMetaData getMetaData() {
@@ -51,6 +51,18 @@ public class AggregateFrameQueryResult extends AttributeValueRetrievalHelper
     }
   }
 
+  private AggregateFrameQueryResult(AggregateFrameQueryResult other) {
+    aggregateFrame = other.aggregateFrame;
+    it = aggregateFrame.data.entrySet().iterator();
+    orderedColumnIndex = other.orderedColumnIndex;
+  }
+
+  /** The view iterates over the same aggregate frame with its own iterator. */
+  @Override
+  public AggregateFrameQueryResult createView() {
+    return new AggregateFrameQueryResult(this);
+  }
+
   private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
     ois.defaultReadObject();
     it = aggregateFrame.data.entrySet().iterator();
@@ -146,8 +158,8 @@ public class AggregateFrameQueryResult extends AttributeValueRetrievalHelper
 
   @Override
   public void rewind() {
-    // TODO Auto-generated method stub
-
+    it = aggregateFrame.data.entrySet().iterator();
+    currentEntry = null;
   }
 
   @Override
@@ -20,9 +20,12 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.verdictdb.commons.VerdictDBLogger;
 import org.verdictdb.connection.CachedDbmsConnection;
@@ -149,7 +152,22 @@ public class ExecutableNodeRunner implements Runnable {
     //    }
   }
 
+  /**
+   * The answers of a SelectAsyncAggExecutionNode have been copied out of its in-memory database
+   * (which may keep its tables in local files); thus, the database is no longer needed.
+   */
+  private void closeInMemoryAggregate() {
+    if (node instanceof SelectAsyncAggExecutionNode) {
+      ((SelectAsyncAggExecutionNode) node).close();
+    }
+  }
+
   public boolean runThisAndDependents() {
+    // a node may finish before all its children run (e.g., SelectAsyncAggExecutionNode)
+    if (noNeedToRun()) {
+      return false;
+    }
+
     // first run all children on separate threads
     // this function may be called again when run() is triggered upon a completion of one of 
     // child nodes. Therefore, runChildren() is responsible for ensuring the same node does not
@@ -321,6 +339,7 @@ public class ExecutableNodeRunner implements Runnable {
         broadcastAndTriggerRun(failureToken);
         //        clearRunningTask();
         markFailure();
+        closeInMemoryAggregate();
         return;
       }
       if (areAllSuccess(tokens)) {
@@ -328,6 +347,7 @@ public class ExecutableNodeRunner implements Runnable {
         broadcastAndTriggerRun(ExecutionInfoToken.successToken());
         //clearRunningTask();
         markComplete();
+        closeInMemoryAggregate();
         return;
       }
 
@@ -355,9 +375,50 @@ public class ExecutableNodeRunner implements Runnable {
           return;
         }
       }
+
+      // the answer may be settled before all the blocks are processed (e.g., top-k groups)
+      if (isAnswerSettled()) {
+        log.debug(
+            String.format("The answer of %s is settled; skips the other blocks.", node.toString()));
+        setDependentsAborted();
+        ((SelectAsyncAggExecutionNode) node).abort();
+        broadcastAndTriggerRun(ExecutionInfoToken.successToken());
+        markComplete();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Marks the unfinished nodes this node depends on (directly or indirectly) as aborted, so that
+   * none of them issues a query for the remaining blocks. The statements they have already issued
+   * are not cancelled but run to completion, and their results are discarded: the connection is
+   * shared with the nodes consuming the answer of this node, and DbmsConnection.abort() would
+   * cancel their statements as well.
+   */
+  private void setDependentsAborted() {
+    Set<ExecutableNodeBase> visited = new HashSet<>();
+    List<ExecutableNodeBase> nodes = new LinkedList<>(((ExecutableNodeBase) node).getSources());
+    while (!nodes.isEmpty()) {
+      ExecutableNodeBase dependent = nodes.remove(0);
+      if (!visited.add(dependent)) {
+        continue;
+      }
+      ExecutableNodeRunner runner = dependent.getRegisteredRunner();
+      if (runner != null
+          && runner.getStatus() != NodeRunningStatus.completed
+          && runner.getStatus() != NodeRunningStatus.failed) {
+        runner.setAborted();
+      }
+      nodes.addAll(dependent.getSources());
     }
   }
 
+  private boolean isAnswerSettled() {
+    return node instanceof SelectAsyncAggExecutionNode
+        && ((SelectAsyncAggExecutionNode) node).isAnswerSettled();
+  }
+
   synchronized List<ExecutionInfoToken> retrieve() {
     Map<Integer, ExecutionTokenQueue> sourceChannelAndQueues = node.getSourceQueues();
 
@@ -1,17 +1,35 @@
 package org.verdictdb.core.querying;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.verdictdb.commons.VerdictDBLogger;
 import org.verdictdb.connection.DbmsQueryResult;
 import org.verdictdb.core.execplan.ExecutionInfoToken;
+import org.verdictdb.core.querying.ola.HyperLogLog;
 import org.verdictdb.core.querying.ola.InMemoryAggregate;
+import org.verdictdb.core.sqlobject.AbstractRelation;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
 import org.verdictdb.core.sqlobject.CreateTableAsSelectQuery;
+import org.verdictdb.core.sqlobject.SelectItem;
 import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.SetOperationRelation;
+import org.verdictdb.core.sqlobject.SetOperationRelation.SetOpType;
 import org.verdictdb.core.sqlobject.SqlConvertible;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
 import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+import org.verdictdb.sqlsyntax.MysqlSyntax;
+import org.verdictdb.sqlsyntax.SqlSyntax;
+import org.verdictdb.sqlsyntax.SqliteSyntax;
 
 /**
  *
@@ -35,6 +53,18 @@ public class SelectAggExecutionNode extends AggExecutionNode {
 
   private InMemoryAggregate inMemoryAggregate;
 
+  // the number of the histogram bins of a quantile column per factor of e in magnitude
+  private static final int HISTOGRAM_BINS_PER_E = 100;
+
+  private static final String SKETCH_BRANCHES_ALIAS = "verdictdb_sketch_branches";
+
+  // the owners of the rewritten select items other than a single branch
+  private static final int FIRST_BRANCH = 0;
+
+  private static final int ALL_BRANCHES = -1;
+
+  private static final int WEIGHTED_BRANCHES = -2;
+
   public SelectAggExecutionNode(IdCreator idCreator, SelectQuery selectQuery) {
     super(idCreator, selectQuery);
   }
@@ -56,9 +86,228 @@ public class SelectAggExecutionNode extends AggExecutionNode {
   @Override
   public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
     CreateTableAsSelectQuery query = (CreateTableAsSelectQuery)super.createQuery(tokens);
-    return query.getSelect();
+    return rewriteAggregatesForSketches(query.getSelect());
   }
-  
+
+  /**
+   * Replaces the count-distinct and quantile columns computed with sketches by their operands,
+   * which are also added to the group-by list. That is, the distinct values are retrieved for each
+   * group; then, they are folded into a sketch when the result is inserted into the in-memory
+   * database. For the quantile columns, the number of the rows of each value is also retrieved
+   * (i.e., a per-block histogram), which becomes the weight of the value in the sketch.
+   *
+   * <p>The per-block histograms of the quantile columns are bounded: the values are grouped into
+   * bins whose widths are 1% of their magnitudes (see createHistogramBins()). SQLite, which does
+   * not provide a logarithm by default, retrieves a bin per distinct value.
+   *
+   * <p>If the database provides a hash function, the registers of the HyperLogLog sketches are
+   * computed by the database instead: a count-distinct column is replaced by the register index of
+   * its operand, and the largest rank of each register is retrieved. Thus, at most 2^12 rows are
+   * retrieved for each group, regardless of the number of the distinct values.
+   *
+   * <p>The sketches grouped by different operands are computed in separate branches of a union,
+   * since grouping by all of them at once would retrieve their cross product. A branch computes
+   * its own sketch columns; the other sketch columns are null in it (see createNullColumn()), and
+   * the other aggregate columns are computed only in the first branch. The nulls are ignored when
+   * the rows are folded into sketches.
+   *
+   * <p>The select query of this node is not changed since it is passed to the downstream node to
+   * describe the aggregates.
+   */
+  private SelectQuery rewriteAggregatesForSketches(SelectQuery select) {
+    if (inMemoryAggregate == null) {
+      return select;
+    }
+    SelectQuery copy = select.deepcopy();
+    SqlSyntax syntax = inMemoryAggregate.getBackendSyntax();
+    List<SelectItem> newSelectList = new ArrayList<>();
+    // the branch computing each item of newSelectList
+    List<Integer> itemBranches = new ArrayList<>();
+    // the operands that each branch groups by, in addition to the original groups
+    List<List<UnnamedColumn>> branchOperands = new ArrayList<>();
+    Set<Integer> weightedBranches = new HashSet<>();
+    List<SelectItem> rankItems = new ArrayList<>();
+    List<Integer> rankBranches = new ArrayList<>();
+    for (SelectItem item : copy.getSelectList()) {
+      if (item instanceof AliasedColumn
+          && inMemoryAggregate.isSketchColumn(((AliasedColumn) item).getAliasName())
+          && ((AliasedColumn) item).getColumn() instanceof ColumnOp) {
+        ColumnOp col = (ColumnOp) ((AliasedColumn) item).getColumn();
+        if (col.getOpType().equals("countdistinct") || col.getOpType().equals("approx_distinct")) {
+          String alias = ((AliasedColumn) item).getAliasName();
+          UnnamedColumn operand = col.getOperand();
+          boolean computesRegisters =
+              syntax != null && syntax.hashFunction("verdictdbcolumn") != null;
+          if (computesRegisters) {
+            operand = createRegisterIndex(operand);
+          }
+          int branch = findBranch(branchOperands, Arrays.asList(operand));
+          if (computesRegisters) {
+            rankItems.add(
+                new AliasedColumn(
+                    new ColumnOp("max", createRegisterRank(col.getOperand(), syntax)),
+                    InMemoryAggregate.SKETCH_RANK_PREFIX + alias));
+            rankBranches.add(branch);
+          }
+          newSelectList.add(new AliasedColumn(operand, alias));
+          itemBranches.add(branch);
+          continue;
+        }
+      }
+      if (item instanceof AliasedColumn
+          && inMemoryAggregate.isQuantileSketchColumn(((AliasedColumn) item).getAliasName())
+          && ((AliasedColumn) item).getColumn() instanceof ColumnOp) {
+        ColumnOp col = (ColumnOp) ((AliasedColumn) item).getColumn();
+        UnnamedColumn operand = col.getOperand(0);
+        List<UnnamedColumn> histogramBins = Arrays.asList(operand);
+        if (syntax != null && !(syntax instanceof SqliteSyntax)) {
+          // the values within a bin are represented by their average, weighted by their count
+          histogramBins = createHistogramBins(operand, syntax);
+          operand = ColumnOp.avg(operand);
+        }
+        int branch = findBranch(branchOperands, histogramBins);
+        weightedBranches.add(branch);
+        newSelectList.add(new AliasedColumn(operand, ((AliasedColumn) item).getAliasName()));
+        itemBranches.add(branch);
+        continue;
+      }
+      // the other aggregates are computed once, in the first branch
+      boolean isAggregate = item instanceof AliasedColumn && item.isAggregateColumn();
+      newSelectList.add(item);
+      itemBranches.add(isAggregate ? FIRST_BRANCH : ALL_BRANCHES);
+    }
+    if (branchOperands.isEmpty()) {
+      return select;
+    }
+    newSelectList.addAll(rankItems);
+    itemBranches.addAll(rankBranches);
+    if (!weightedBranches.isEmpty()) {
+      newSelectList.add(
+          new AliasedColumn(ColumnOp.count(), InMemoryAggregate.QUANTILE_WEIGHT_ALIAS));
+      itemBranches.add(WEIGHTED_BRANCHES);
+    }
+
+    List<SelectQuery> branches = new ArrayList<>();
+    for (int b = 0; b < branchOperands.size(); b++) {
+      SelectQuery branch = (b == 0) ? copy : select.deepcopy();
+      branch.clearSelectList();
+      for (int i = 0; i < newSelectList.size(); i++) {
+        int owner = itemBranches.get(i);
+        boolean isComputed =
+            owner == ALL_BRANCHES
+                || owner == b
+                || (owner == WEIGHTED_BRANCHES && weightedBranches.contains(b));
+        SelectItem item = newSelectList.get(i);
+        branch.addSelectItem(isComputed ? item : createNullColumn((AliasedColumn) item));
+      }
+      for (UnnamedColumn operand : branchOperands.get(b)) {
+        branch.addGroupby(operand);
+      }
+      branches.add(branch);
+    }
+    if (branches.size() == 1) {
+      return branches.get(0);
+    }
+    AbstractRelation union = branches.get(0);
+    for (int b = 1; b < branches.size(); b++) {
+      union = new SetOperationRelation(union, branches.get(b), SetOpType.unionAll);
+    }
+    union.setAliasName(SKETCH_BRANCHES_ALIAS);
+    return SelectQuery.create(Arrays.<SelectItem>asList(new AsteriskColumn()), union);
+  }
+
+  /** @return The index of the branch grouping by the operands; a new branch if none does. */
+  private static int findBranch(
+      List<List<UnnamedColumn>> branchOperands, List<UnnamedColumn> operands) {
+    int branch = branchOperands.indexOf(operands);
+    if (branch < 0) {
+      branchOperands.add(operands);
+      branch = branchOperands.size() - 1;
+    }
+    return branch;
+  }
+
+  /**
+   * A null in place of a column computed by another branch of the union. It has the type of the
+   * column, i.e., case when 1 = 0 then col end, since some databases (e.g., Postgres) resolve the
+   * types of the columns of a union pairwise and take a column of nulls as text. A column that is
+   * not an aggregate is wrapped by min() because the branch does not group by it.
+   */
+  private static AliasedColumn createNullColumn(AliasedColumn item) {
+    UnnamedColumn column = item.getColumn();
+    if (!column.isAggregateColumn()) {
+      column = new ColumnOp("min", column);
+    }
+    UnnamedColumn never = ColumnOp.equal(ConstantColumn.valueOf(1), ConstantColumn.valueOf(0));
+    return new AliasedColumn(
+        ColumnOp.casewhen(Arrays.asList(never, column, ConstantColumn.valueOf("NULL"))),
+        item.getAliasName());
+  }
+
+  /**
+   * The bins of a histogram of the value: the sign of the value, and the logarithm of its
+   * magnitude rounded to a multiple of 1 / HISTOGRAM_BINS_PER_E. Thus, the values in a bin are
+   * within about 1% of each other, and there are at most about 4,000 bins for the magnitudes
+   * from 1e-9 to 1e9. The nulls and the zeros are kept in their own bins.
+   */
+  private static List<UnnamedColumn> createHistogramBins(UnnamedColumn value, SqlSyntax syntax) {
+    UnnamedColumn sign =
+        ColumnOp.casewhen(
+            Arrays.asList(
+                ColumnOp.greater(value, ConstantColumn.valueOf(0)),
+                ConstantColumn.valueOf(1),
+                ColumnOp.less(value, ConstantColumn.valueOf(0)),
+                ConstantColumn.valueOf(-1),
+                value));
+    // H2 names the natural logarithm log
+    String ln = (syntax instanceof H2Syntax) ? "log" : "ln";
+    UnnamedColumn magnitude =
+        ColumnOp.casewhen(
+            Arrays.asList(
+                ColumnOp.notequal(value, ConstantColumn.valueOf(0)),
+                ColumnOp.floor(
+                    ColumnOp.add(
+                        ColumnOp.multiply(
+                            new ColumnOp(ln, new ColumnOp("abs", value)),
+                            ConstantColumn.valueOf(HISTOGRAM_BINS_PER_E)),
+                        ConstantColumn.valueOf("0.5"))),
+                value));
+    return Arrays.asList(sign, magnitude);
+  }
+
+  /** @return The index of the register for the value: floor(hash(value) * 2^12) */
+  private static UnnamedColumn createRegisterIndex(UnnamedColumn operand) {
+    return ColumnOp.floor(
+        ColumnOp.multiply(
+            ColumnOp.hash(operand), ConstantColumn.valueOf(1 << HyperLogLog.DEFAULT_PRECISION)));
+  }
+
+  /**
+   * The rank of the value in its register, i.e., the number of the leading zeros of the rest of
+   * its hash value plus one. The hash functions of the databases have only about 17 bits (see
+   * SqlSyntax.hashFunction()), most of which are used for the register index; thus, the rank is
+   * computed from another hash value u of the value, i.e., the hash of the value followed by '#':
+   * floor(-log2(u)) + 1, where u is in (0, 1]. The ranks are at most 17, which suffices for up to
+   * hundreds of millions of distinct values.
+   */
+  private static UnnamedColumn createRegisterRank(UnnamedColumn operand, SqlSyntax syntax) {
+    // MySQL converts the values into strings by itself; it does not allow casts to text.
+    UnnamedColumn text =
+        (syntax instanceof MysqlSyntax)
+            ? operand
+            : ColumnOp.cast(
+                operand, ConstantColumn.valueOf(syntax.getGenericStringDataTypeName()));
+    UnnamedColumn salted =
+        new ColumnOp("concat", Arrays.asList(text, ConstantColumn.valueOf("'#'")));
+    // the hash values are multiples of 0.00001 in [0, 1)
+    UnnamedColumn u = ColumnOp.add(ColumnOp.hash(salted), ConstantColumn.valueOf("0.00001"));
+    // -1/ln(2); the small constant avoids rounding down the exact powers of two
+    UnnamedColumn log2 =
+        ColumnOp.multiply(
+            new ColumnOp("ln", u), ConstantColumn.valueOf(String.valueOf(-1 / Math.log(2))));
+    return ColumnOp.floor(ColumnOp.add(log2, ConstantColumn.valueOf("1.000000001")));
+  }
+
   private static synchronized String getNextTableName() {
     return IN_MEMORY_TABLE_NAME + selectAggID++;
   }
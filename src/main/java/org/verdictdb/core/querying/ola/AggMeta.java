@@ -110,7 +110,8 @@ public class AggMeta implements Serializable {
     List<Integer> tierCounts = new ArrayList<>();
     for (ScrambleMeta meta : metaset) {
       String schemaName = meta.getSchemaName();
-      String tableName = meta.getTableName();
+      // the dimensions of the cubes refer to the tables that are actually queried
+      String tableName = meta.getStoredTableName();
       scrambles.add(Pair.of(schemaName, tableName));
       tierCounts.add(meta.getNumberOfTiers());
     }
@@ -156,6 +157,13 @@ public class AggMeta implements Serializable {
   }
 
   private double ratioOfCube(HyperTableCube cube, ScrambleMetaSet metaset, TierCombination tiers) {
+    if (cube.isCoHashed()) {
+      // the blocks of co-hashed scrambles are sampled together by their join keys; the sampling
+      // probability is that of a single dimension.
+      Dimension dim = cube.getDimensions().get(0);
+      int tier = tiers.getTierNumberFor(dim.getSchemaName(), dim.getTableName());
+      return ratioOfDimension(dim, metaset, tier);
+    }
     double ratio = 1.0;
     for (Dimension dim : cube.getDimensions()) {
       String schemaName = dim.getSchemaName();
@@ -278,7 +278,8 @@ public class AsyncAggExecutionNode extends ProjectionNode {
     List<Pair<UnnamedColumn, Double>> scalingFactorPerTier = new ArrayList<>();
 
     Map<TierCombination, Double> scaleFactors = sourceAggMeta.computeScaleFactors();
-    Map<ScrambleMeta, String> tierColums = sourceAggMeta.getTierColumnForScramble();
+    Map<Pair<String, String>, String> tierAliasPerScramble =
+        indexTierColumnsByScramble(sourceAggMeta.getTierColumnForScramble());
 
     // each iteration of this loop generates a single condition-then part
     for (Entry<TierCombination, Double> tierScale : scaleFactors.entrySet()) {
@@ -291,7 +292,7 @@ public class AsyncAggExecutionNode extends ProjectionNode {
       for (Entry<Pair<String, String>, Integer> perTable : combination) {
         Pair<String, String> table = perTable.getKey();
         Integer tier = perTable.getValue();
-        String aliasName = findScrambleAlias(tierColums, table);
+        String aliasName = tierAliasPerScramble.get(table);
 
         UnnamedColumn part =
             ColumnOp.equal(
@@ -310,18 +311,21 @@ public class AsyncAggExecutionNode extends ProjectionNode {
     return scalingFactorPerTier;
   }
 
-  private String findScrambleAlias(
-      Map<ScrambleMeta, String> tierColums, Pair<String, String> table) {
-
+  /**
+   * @param tierColums Map of a scramble to the alias of its tier column
+   * @return Map of (schema, table) of a scramble to the alias of its tier column
+   */
+  private Map<Pair<String, String>, String> indexTierColumnsByScramble(
+      Map<ScrambleMeta, String> tierColums) {
+    Map<Pair<String, String>, String> index = new HashMap<>();
     for (Entry<ScrambleMeta, String> metaToAlias : tierColums.entrySet()) {
       ScrambleMeta meta = metaToAlias.getKey();
-      String aliasName = metaToAlias.getValue();
-      if (meta.getSchemaName().equals(table.getLeft())
-          && meta.getTableName().equals(table.getRight())) {
-        return aliasName;
+      Pair<String, String> table = Pair.of(meta.getSchemaName(), meta.getStoredTableName());
+      if (!index.containsKey(table)) {
+        index.put(table, metaToAlias.getValue());
       }
     }
-    return null;
+    return index;
   }
 
   @Override
@@ -613,6 +617,19 @@ public class AsyncAggExecutionNode extends ProjectionNode {
             col.setOperand(aggContent.getOperands());
           }
           
+        } else if (AsyncQueryExecutionPlan.isQuantileOpType(col.getOpType())) {
+          // the quantile of the merged sketch; median(col) is percentile(col, 0.5)
+          String aliasName =
+              aggMeta
+                  .getAggColumnAggAliasPair()
+                  .get(new ImmutablePair<>("median", col.getOperand(0)));
+          UnnamedColumn probability =
+              col.getOpType().equals("median")
+                  ? ConstantColumn.valueOf(0.5)
+                  : col.getOperand(1);
+          col.setOpType(InMemoryAggregate.QUANTILE_ESTIMATE_FUNCTION);
+          col.setOperand(Arrays.asList(aggContents.get(aliasName), probability));
+
         } else if (col.getOpType().equals("avg")) {  // If it is avg, set col to be divide columnOp
           String aliasNameSum =
               aggMeta.getAggColumnAggAliasPair().get(new ImmutablePair<>("sum", col.getOperand(0)));
@@ -17,7 +17,6 @@
 package org.verdictdb.core.querying.ola;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -167,7 +166,9 @@ public class AsyncQueryExecutionPlan extends QueryExecutionPlan {
       String tableName = a.getRight().getMiddle();
       scrambles.add(Pair.of(schemaName, tableName));
     }
-    OlaAggregationPlan aggPlan = new OlaAggregationPlan(scrambleMeta, scrambles);
+    boolean coHashed = isCoHashedJoin(scrambleMeta, scrambledNodes);
+    OlaAggregationPlan aggPlan = new OlaAggregationPlan(scrambleMeta, scrambles, coHashed);
+    aggPlan.skipBlocks(findSkippableBlocks(scrambleMeta, scrambledNodes));
     List<Pair<ExecutableNodeBase, ExecutableNodeBase>> oldSubscriptionInformation =
         new ArrayList<>();
     ExecutableNodeBase newRoot;
@@ -199,7 +200,7 @@ public class AsyncQueryExecutionPlan extends QueryExecutionPlan {
             identifyScrambledNodes(scrambleMeta, copy.getNodesInBlock());
 
         // Assign hyper table cube to the block
-        aggroot.getAggMeta().setCubes(Arrays.asList(aggPlan.cubes.get(i)));
+        aggroot.getAggMeta().setCubes(getCubesToAssign(aggPlan, i));
 
         // rewrite the select list of the individual aggregate nodes to add tier columns
         // also agg alias are identified in this function.
@@ -265,7 +266,7 @@ public class AsyncQueryExecutionPlan extends QueryExecutionPlan {
             identifyScrambledNodes(scrambleMeta, copy.getNodesInBlock());
 
         // Assign hyper table cube to the block
-        aggroot.getAggMeta().setCubes(Arrays.asList(aggPlan.cubes.get(i)));
+        aggroot.getAggMeta().setCubes(getCubesToAssign(aggPlan, i));
 
         // rewrite the select list of the individual aggregate nodes to add tier columns
         resetTierColumnAliasGeneration();
@@ -339,6 +340,63 @@ public class AsyncQueryExecutionPlan extends QueryExecutionPlan {
     return newRoot;
   }
 
+  /**
+   * The skipped cubes are assigned to the first aggregation so that every answer counts them as
+   * processed; their contributions are known to be zero.
+   */
+  private List<HyperTableCube> getCubesToAssign(OlaAggregationPlan aggPlan, int sequence) {
+    List<HyperTableCube> cubes = new ArrayList<>();
+    cubes.add(aggPlan.cubes.get(sequence));
+    if (sequence == 0) {
+      cubes.addAll(aggPlan.getSkippedCubes());
+    }
+    return cubes;
+  }
+
+  /**
+   * Checks if all the scrambles are read by a single node that joins them as co-hashed scrambles.
+   */
+  private boolean isCoHashedJoin(
+      ScrambleMetaSet scrambleMeta,
+      List<Pair<ExecutableNodeBase, Triple<String, String, String>>> scrambledNodes) {
+    if (scrambledNodes.size() < 2) {
+      return false;
+    }
+    ExecutableNodeBase node = scrambledNodes.get(0).getLeft();
+    for (Pair<ExecutableNodeBase, Triple<String, String, String>> a : scrambledNodes) {
+      if (a.getLeft() != node) {
+        return false;
+      }
+    }
+    return node instanceof QueryNodeBase
+        && CoHashedJoin.isCoHashed(scrambleMeta, ((QueryNodeBase) node).getSelectQuery());
+  }
+
+  /**
+   * Uses the zone maps of the scrambles to find the blocks that cannot contain any row satisfying
+   * the filters of the nodes reading the scrambles.
+   */
+  private Map<Pair<String, String>, Set<Integer>> findSkippableBlocks(
+      ScrambleMetaSet scrambleMeta,
+      List<Pair<ExecutableNodeBase, Triple<String, String, String>>> scrambledNodes) {
+    Map<Pair<String, String>, Set<Integer>> skippableBlocks = new HashMap<>();
+    for (Pair<ExecutableNodeBase, Triple<String, String, String>> a : scrambledNodes) {
+      String schemaName = a.getRight().getLeft();
+      String tableName = a.getRight().getMiddle();
+      String aliasName = a.getRight().getRight();
+      ScrambleMeta meta = scrambleMeta.getSingleMeta(schemaName, tableName);
+      if (meta == null || aliasName == null || !(a.getLeft() instanceof QueryNodeBase)) {
+        continue;
+      }
+      SelectQuery q = ((QueryNodeBase) a.getLeft()).getSelectQuery();
+      Set<Integer> blocks = BlockPruner.findSkippableBlocks(meta, q, aliasName);
+      if (!blocks.isEmpty()) {
+        skippableBlocks.put(Pair.of(schemaName, tableName), blocks);
+      }
+    }
+    return skippableBlocks;
+  }
+
   /**
    * @param scrambleMeta Information about what tables have been scrambled.
    * @param blockNodes
@@ -395,7 +453,8 @@ public class AsyncQueryExecutionPlan extends QueryExecutionPlan {
             || ((ColumnOp) s).getOpType().equals("max")
             || ((ColumnOp) s).getOpType().equals("min")
             || ((ColumnOp) s).getOpType().equals("countdistinct")
-            || ((ColumnOp) s).getOpType().equals("approx_distinct")) {
+            || ((ColumnOp) s).getOpType().equals("approx_distinct")
+            || isQuantileOpType(((ColumnOp) s).getOpType())) {
           columnOps.add((ColumnOp) s);
         } else {
           itemToCheck.addAll(((ColumnOp) s).getOperands());
@@ -405,6 +464,17 @@ public class AsyncQueryExecutionPlan extends QueryExecutionPlan {
     return columnOps;
   }
 
+  /**
+   * The quantile aggregates, i.e., percentile(col, p), percentile_approx(col, p), and median(col).
+   * The quantiles of the same column share a single per-block column (registered as
+   * median(col) in the aggregate meta), which becomes a mergeable quantile sketch.
+   */
+  static boolean isQuantileOpType(String opType) {
+    return opType.equals("percentile")
+        || opType.equals("percentile_approx")
+        || opType.equals("median");
+  }
+
   /**
    * identify the nodes that are (1) aggregates with scrambled tables, (2) no descendants of any
    * other top aggregates, (3) the aggregated columns (inner-most base columns if they are inside
@@ -800,6 +870,17 @@ public class AsyncQueryExecutionPlan extends QueryExecutionPlan {
                 }
               }
               
+            } else if (isQuantileOpType(col.getOpType())) {
+              if (!meta.getAggColumnAggAliasPair()
+                  .containsKey(new ImmutablePair<>("median", col.getOperand(0)))) {
+                ColumnOp col1 = new ColumnOp("median", col.getOperand(0));
+                newSelectlist.add(new AliasedColumn(col1, newAlias));
+                meta.getAggColumnAggAliasPair()
+                    .put(new ImmutablePair<>("median", col1.getOperand(0)), newAlias);
+                aggColumnAlias.add(newAlias);
+                ++aggColumnIdentiferNum;
+              }
+
             } else if (col.getOpType().equals("max") || col.getOpType().equals("min")) {
               ColumnOp col1 = new ColumnOp(col.getOpType(), col.getOperand(0));
               newSelectlist.add(new AliasedColumn(col1, newAlias));
@@ -0,0 +1,261 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.querying.ola;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.verdictdb.core.scrambling.BlockZoneMap;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
+
+/**
+ * Identifies the blocks of a scramble that cannot contain any row satisfying the filter of a
+ * query, using the zone map stored in the scramble's meta.
+ *
+ * <p>Only the conjuncts of the form (column op constant) are examined, where op is one of the
+ * comparison operators, between, in, is null, and is not null. The other conjuncts are assumed to be
+ * satisfiable in every block.
+ */
+class BlockPruner {
+
+  private BlockZoneMap zoneMap;
+
+  private String tableAlias;
+
+  private boolean isSingleTable;
+
+  private BlockPruner(BlockZoneMap zoneMap, String tableAlias, boolean isSingleTable) {
+    this.zoneMap = zoneMap;
+    this.tableAlias = tableAlias;
+    this.isSingleTable = isSingleTable;
+  }
+
+  /**
+   * @param meta The meta of the scramble
+   * @param query The query that directly reads the scramble
+   * @param tableAlias The alias of the scramble in the query
+   * @return The blocks that can be skipped
+   */
+  static Set<Integer> findSkippableBlocks(ScrambleMeta meta, SelectQuery query, String tableAlias) {
+    Set<Integer> skippable = new HashSet<>();
+    BlockZoneMap zoneMap = meta.getZoneMap();
+    if (zoneMap == null
+        || zoneMap.getBlockCount() != meta.getAggregationBlockCount()
+        || !query.getFilter().isPresent()) {
+      return skippable;
+    }
+
+    // unqualified columns are resolved to the scramble only when it is the only table.
+    boolean isSingleTable =
+        query.getFromList().size() == 1 && query.getFromList().get(0) instanceof BaseTable;
+    BlockPruner pruner = new BlockPruner(zoneMap, tableAlias, isSingleTable);
+    List<UnnamedColumn> conjuncts = new ArrayList<>();
+    collectConjuncts(query.getFilter().get(), conjuncts);
+
+    for (int block = 0; block < zoneMap.getBlockCount(); block++) {
+      for (UnnamedColumn conjunct : conjuncts) {
+        if (!pruner.mayBeSatisfied(conjunct, block)) {
+          skippable.add(block);
+          break;
+        }
+      }
+    }
+    return skippable;
+  }
+
+  private static void collectConjuncts(UnnamedColumn predicate, List<UnnamedColumn> conjuncts) {
+    if (predicate instanceof ColumnOp && ((ColumnOp) predicate).getOpType().equals("and")) {
+      for (UnnamedColumn operand : ((ColumnOp) predicate).getOperands()) {
+        collectConjuncts(operand, conjuncts);
+      }
+    } else {
+      conjuncts.add(predicate);
+    }
+  }
+
+  private boolean mayBeSatisfied(UnnamedColumn predicate, int block) {
+    if (!(predicate instanceof ColumnOp)) {
+      return true;
+    }
+    ColumnOp op = (ColumnOp) predicate;
+    String opType = op.getOpType();
+    List<UnnamedColumn> operands = op.getOperands();
+
+    if (opType.equals("is_null") || opType.equals("is_not_null")) {
+      String column = getColumnName(operands.get(0));
+      if (column == null) {
+        return true;
+      }
+      return opType.equals("is_null")
+          ? zoneMap.mayContainNull(column, block)
+          : zoneMap.mayContainNonNull(column, block);
+
+    } else if (opType.equals("between")) {
+      String column = getColumnName(operands.get(0));
+      if (column == null) {
+        return true;
+      }
+      Double low = getConstant(operands.get(1), column);
+      Double high = getConstant(operands.get(2), column);
+      return zoneMap.mayOverlap(column, block, low, true, high, true);
+
+    } else if (opType.equals("in")) {
+      String column = getColumnName(operands.get(0));
+      if (column == null) {
+        return true;
+      }
+      for (UnnamedColumn value : operands.subList(1, operands.size())) {
+        Double v = getConstant(value, column);
+        if (v == null || zoneMap.mayOverlap(column, block, v, true, v, true)) {
+          return true;
+        }
+      }
+      return false;
+
+    } else if (operands.size() == 2) {
+      // (column op constant) or (constant op column)
+      String column = getColumnName(operands.get(0));
+      UnnamedColumn constant = operands.get(1);
+      if (column == null) {
+        column = getColumnName(operands.get(1));
+        constant = operands.get(0);
+        opType = flip(opType);
+      }
+      if (column == null || opType == null) {
+        return true;
+      }
+      Double v = getConstant(constant, column);
+      if (v == null) {
+        return true;
+      }
+      if (opType.equals("equal")) {
+        return zoneMap.mayOverlap(column, block, v, true, v, true);
+      } else if (opType.equals("greater")) {
+        return zoneMap.mayOverlap(column, block, v, false, null, false);
+      } else if (opType.equals("greaterequal") || opType.equals("notlessthan")) {
+        return zoneMap.mayOverlap(column, block, v, true, null, false);
+      } else if (opType.equals("less")) {
+        return zoneMap.mayOverlap(column, block, null, false, v, false);
+      } else if (opType.equals("lessequal") || opType.equals("notgreaterthan")) {
+        return zoneMap.mayOverlap(column, block, null, false, v, true);
+      }
+    }
+    return true;
+  }
+
+  /** @return The op type after swapping the operands; null if unknown. */
+  private static String flip(String opType) {
+    if (opType.equals("equal")) {
+      return "equal";
+    } else if (opType.equals("greater")) {
+      return "less";
+    } else if (opType.equals("greaterequal") || opType.equals("notlessthan")) {
+      return "lessequal";
+    } else if (opType.equals("less")) {
+      return "greater";
+    } else if (opType.equals("lessequal") || opType.equals("notgreaterthan")) {
+      return "greaterequal";
+    }
+    return null;
+  }
+
+  /** @return The name of the column if it refers to a column of the scramble with a zone map. */
+  private String getColumnName(UnnamedColumn column) {
+    if (!(column instanceof BaseColumn)) {
+      return null;
+    }
+    BaseColumn base = (BaseColumn) column;
+    String alias = base.getTableSourceAlias();
+    if (alias == null ? !isSingleTable : !alias.equals(tableAlias)) {
+      return null;
+    }
+    return zoneMap.hasColumn(base.getColumnName()) ? base.getColumnName() : null;
+  }
+
+  /**
+   * Converts a constant into the representation used by the zone map of the column.
+   *
+   * @return null if the constant cannot be converted
+   */
+  private Double getConstant(UnnamedColumn constant, String column) {
+    if (constant instanceof ColumnOp) {
+      // date '2018-01-01' or timestamp '2018-01-01 00:00:00'
+      ColumnOp op = (ColumnOp) constant;
+      if ((op.getOpType().equals("date") || op.getOpType().equals("timestamp"))
+          && op.getOperands().size() == 1) {
+        constant = op.getOperand(0);
+      } else {
+        return null;
+      }
+    }
+    if (!(constant instanceof ConstantColumn)
+        || ((ConstantColumn) constant).getValue() == null) {
+      return null;
+    }
+    String value = ((ConstantColumn) constant).getValue().toString().trim();
+    if (value.length() >= 2 && value.startsWith("'") && value.endsWith("'")) {
+      value = value.substring(1, value.length() - 1);
+    }
+
+    try {
+      if (zoneMap.isTemporal(column)) {
+        return (double) parseTemporal(value);
+      } else {
+        return Double.valueOf(value);
+      }
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Parses a date or timestamp literal as a wall-clock time in UTC, which is how the zone map
+   * stores the temporal values (see BlockZoneMap.toEpochMillisInUtc()).
+   */
+  private static long parseTemporal(String value) {
+    boolean isDate = value.length() <= "yyyy-mm-dd".length();
+    SimpleDateFormat format = new SimpleDateFormat(isDate ? "yyyy-MM-dd" : "yyyy-MM-dd HH:mm:ss");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    format.setLenient(false);
+    ParsePosition position = new ParsePosition(0);
+    java.util.Date parsed = format.parse(value, position);
+    if (parsed == null) {
+      throw new IllegalArgumentException("Not a temporal literal: " + value);
+    }
+
+    // fractional seconds, e.g., '2018-01-01 00:00:00.123456'
+    String fraction = value.substring(position.getIndex());
+    if (fraction.isEmpty()) {
+      return parsed.getTime();
+    } else if (fraction.matches("\\.[0-9]{1,9}")) {
+      return parsed.getTime() + (long) Math.floor(Double.parseDouble("0" + fraction) * 1000);
+    } else {
+      throw new IllegalArgumentException("Not a temporal literal: " + value);
+    }
+  }
+}
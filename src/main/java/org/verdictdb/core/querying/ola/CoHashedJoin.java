@@ -0,0 +1,162 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.querying.ola;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.sqlobject.AbstractRelation;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.JoinTable;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
+
+/**
+ * Detects the joins of co-hashed scrambles, i.e., hash scrambles that share the same block
+ * distribution (see HashScramblingMethod) and are equi-joined on their hash columns.
+ *
+ * <p>In such a join, a row of one scramble only matches the rows in the block of the same number
+ * in the other scrambles. Thus, only the diagonal block combinations need to be joined, and the
+ * join of the first k blocks is a universe sample of the join result: it includes every joined row
+ * whose join key hashes into those k blocks. The sampling probability is that of k blocks of a
+ * single scramble, not the product over the scrambles.
+ */
+public class CoHashedJoin {
+
+  private CoHashedJoin() {}
+
+  /**
+   * @param metaSet The scrambles
+   * @param query The query that directly reads the scrambles
+   * @return True if the query reads at least two scrambles, and all of them are co-hashed and
+   *     connected by the equi-join conditions on their hash columns.
+   */
+  public static boolean isCoHashed(ScrambleMetaSet metaSet, SelectQuery query) {
+    List<BaseTable> scrambles = new ArrayList<>();
+    List<UnnamedColumn> conjuncts = new ArrayList<>();
+    for (AbstractRelation relation : query.getFromList()) {
+      if (relation instanceof BaseTable) {
+        addIfScrambled(metaSet, (BaseTable) relation, scrambles);
+      } else if (relation instanceof JoinTable) {
+        JoinTable join = (JoinTable) relation;
+        for (AbstractRelation r : join.getJoinList()) {
+          if (r instanceof BaseTable) {
+            addIfScrambled(metaSet, (BaseTable) r, scrambles);
+          }
+        }
+        for (UnnamedColumn condition : join.getCondition()) {
+          if (condition != null) {
+            collectConjuncts(condition, conjuncts);
+          }
+        }
+      }
+    }
+    if (scrambles.size() < 2) {
+      return false;
+    }
+    if (query.getFilter().isPresent()) {
+      collectConjuncts(query.getFilter().get(), conjuncts);
+    }
+
+    // every scramble must be a hash scramble with the same block distribution
+    List<ScrambleMeta> metas = new ArrayList<>();
+    List<Double> distribution = null;
+    for (BaseTable table : scrambles) {
+      ScrambleMeta meta = metaSet.getSingleMeta(table.getSchemaName(), table.getTableName());
+      if (!meta.getMethodWithDefault("uniform").equalsIgnoreCase("hash")
+          || meta.getHashColumn() == null
+          || meta.getNumberOfTiers() != 1
+          || !table.getAliasName().isPresent()) {
+        return false;
+      }
+      List<Double> d = meta.getCumulativeDistributionForTier(0);
+      if (distribution != null && !distribution.equals(d)) {
+        return false;
+      }
+      distribution = d;
+      metas.add(meta);
+    }
+
+    // union-find over the scrambles connected by (a.hashcolumn = b.hashcolumn)
+    int[] parent = new int[scrambles.size()];
+    for (int i = 0; i < parent.length; i++) {
+      parent[i] = i;
+    }
+    for (UnnamedColumn conjunct : conjuncts) {
+      if (!(conjunct instanceof ColumnOp) || !((ColumnOp) conjunct).getOpType().equals("equal")) {
+        continue;
+      }
+      List<UnnamedColumn> operands = ((ColumnOp) conjunct).getOperands();
+      int left = findScrambleOfHashColumn(operands.get(0), scrambles, metas);
+      int right = findScrambleOfHashColumn(operands.get(1), scrambles, metas);
+      if (left >= 0 && right >= 0) {
+        parent[find(parent, left)] = find(parent, right);
+      }
+    }
+    int root = find(parent, 0);
+    for (int i = 1; i < parent.length; i++) {
+      if (find(parent, i) != root) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void addIfScrambled(
+      ScrambleMetaSet metaSet, BaseTable table, List<BaseTable> scrambles) {
+    if (metaSet.isScrambled(table.getSchemaName(), table.getTableName())) {
+      scrambles.add(table);
+    }
+  }
+
+  private static void collectConjuncts(UnnamedColumn predicate, List<UnnamedColumn> conjuncts) {
+    if (predicate instanceof ColumnOp && ((ColumnOp) predicate).getOpType().equals("and")) {
+      for (UnnamedColumn operand : ((ColumnOp) predicate).getOperands()) {
+        collectConjuncts(operand, conjuncts);
+      }
+    } else {
+      conjuncts.add(predicate);
+    }
+  }
+
+  /** @return The index of the scramble if the column is its hash column; -1 otherwise. */
+  private static int findScrambleOfHashColumn(
+      UnnamedColumn column, List<BaseTable> scrambles, List<ScrambleMeta> metas) {
+    if (!(column instanceof BaseColumn)) {
+      return -1;
+    }
+    BaseColumn base = (BaseColumn) column;
+    for (int i = 0; i < scrambles.size(); i++) {
+      if (scrambles.get(i).getAliasName().get().equals(base.getTableSourceAlias())
+          && metas.get(i).getHashColumn().equalsIgnoreCase(base.getColumnName())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i) {
+      i = parent[i];
+    }
+    return i;
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.querying.ola;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A HyperLogLog sketch for estimating the number of distinct values.
+ *
+ * <p>The sketches of different aggregation blocks are merged by taking the register-wise maximum;
+ * the merged sketch is identical to the sketch of all the values of those blocks. Thus, unlike the
+ * per-block count-distinct values, the sketches can be combined regardless of how the values are
+ * distributed over the blocks (i.e., for the scrambles other than hash scrambles).
+ *
+ * <p>A sketch uses a fixed number of registers (2^precision); its relative standard error is
+ * 1.04/sqrt(2^precision), about 1.6% for the default precision.
+ */
+public class HyperLogLog {
+
+  public static final int DEFAULT_PRECISION = 12;
+
+  private final int precision;
+
+  private final byte[] registers;
+
+  public HyperLogLog() {
+    this(DEFAULT_PRECISION);
+  }
+
+  public HyperLogLog(int precision) {
+    if (precision < 4 || precision > 16) {
+      throw new IllegalArgumentException("The precision must be between 4 and 16: " + precision);
+    }
+    this.precision = precision;
+    this.registers = new byte[1 << precision];
+  }
+
+  /**
+   * Adds a value to this sketch. Null values are ignored as in count(distinct ...).
+   *
+   * @param value A value retrieved from a database. Numbers are hashed by their numeric values;
+   *     e.g., 1, 1.0, and BigDecimal("1.00") are the same value.
+   */
+  public void offer(Object value) {
+    if (value == null) {
+      return;
+    }
+    String normalized = (value instanceof Number) ? normalize((Number) value) : value.toString();
+    offerHash(hash(normalized.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /** @return The shortest decimal representation of a number without trailing zeros */
+  static String normalize(Number number) {
+    BigDecimal decimal;
+    if (number instanceof BigDecimal) {
+      decimal = (BigDecimal) number;
+    } else if (number instanceof BigInteger) {
+      decimal = new BigDecimal((BigInteger) number);
+    } else if (number instanceof Double || number instanceof Float) {
+      double d = number.doubleValue();
+      if (Double.isNaN(d) || Double.isInfinite(d)) {
+        return number.toString();
+      }
+      // the string of a float is shorter than that of the same value as a double
+      decimal = new BigDecimal(number.toString());
+    } else {
+      decimal = BigDecimal.valueOf(number.longValue());
+    }
+    if (decimal.signum() == 0) {
+      return "0";
+    }
+    return decimal.stripTrailingZeros().toPlainString();
+  }
+
+  /**
+   * Sets a register to the given rank unless it is already larger; used for the registers computed
+   * by a database.
+   *
+   * @param index The index of the register
+   * @param rank The number of the leading zeros of the rest of a hash value plus one
+   */
+  void offerRegister(int index, int rank) {
+    if (index < 0 || index >= registers.length || rank <= 0) {
+      return;
+    }
+    rank = Math.min(rank, 64 - precision + 1);
+    if (registers[index] < rank) {
+      registers[index] = (byte) rank;
+    }
+  }
+
+  void offerHash(long hash) {
+    int index = (int) (hash >>> (64 - precision));
+    // the number of leading zeros in the remaining bits plus one
+    int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+    if (registers[index] < rank) {
+      registers[index] = (byte) rank;
+    }
+  }
+
+  /**
+   * Merges another sketch into this sketch.
+   *
+   * @param other A sketch with the same precision
+   */
+  public void merge(HyperLogLog other) {
+    if (other.precision != precision) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Sketches of different precisions cannot be merged: %d and %d",
+              precision, other.precision));
+    }
+    for (int i = 0; i < registers.length; i++) {
+      if (registers[i] < other.registers[i]) {
+        registers[i] = other.registers[i];
+      }
+    }
+  }
+
+  /** @return The estimated number of the distinct values added to this sketch */
+  public long estimate() {
+    int m = registers.length;
+    double sum = 0;
+    int zeroCount = 0;
+    for (byte r : registers) {
+      sum += Math.pow(2, -r);
+      if (r == 0) {
+        ++zeroCount;
+      }
+    }
+    double alpha = 0.7213 / (1 + 1.079 / m);
+    double estimate = alpha * m * m / sum;
+
+    // linear counting is more accurate for small cardinalities
+    if (estimate <= 2.5 * m && zeroCount > 0) {
+      estimate = m * Math.log((double) m / zeroCount);
+    }
+    return Math.round(estimate);
+  }
+
+  /** @return The relative standard error of the estimates */
+  public double getRelativeStandardError() {
+    return 1.04 / Math.sqrt(registers.length);
+  }
+
+  public int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Serializes the registers as a string of one printable character per register, so that a
+   * sketch can be stored in a varchar column.
+   */
+  @Override
+  public String toString() {
+    char[] encoded = new char[registers.length];
+    for (int i = 0; i < registers.length; i++) {
+      encoded[i] = (char) ('0' + registers[i]);
+    }
+    return new String(encoded);
+  }
+
+  /**
+   * @param encoded The string produced by toString()
+   * @return The sketch with the same registers
+   */
+  public static HyperLogLog fromString(String encoded) {
+    int precision = Integer.numberOfTrailingZeros(encoded.length());
+    if (encoded.length() != (1 << precision)) {
+      throw new IllegalArgumentException(
+          "The length of a serialized sketch must be a power of two: " + encoded.length());
+    }
+    HyperLogLog sketch = new HyperLogLog(precision);
+    for (int i = 0; i < encoded.length(); i++) {
+      sketch.registers[i] = (byte) (encoded.charAt(i) - '0');
+    }
+    return sketch;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof HyperLogLog)) {
+      return false;
+    }
+    return Arrays.equals(registers, ((HyperLogLog) obj).registers);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(registers);
+  }
+
+  /** 64-bit FNV-1a followed by the finalizer of MurmurHash3 for the avalanche of all the bits. */
+  static long hash(byte[] bytes) {
+    long h = 0xcbf29ce484222325L;
+    for (byte b : bytes) {
+      h ^= (b & 0xff);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
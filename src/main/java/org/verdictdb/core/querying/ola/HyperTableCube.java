@@ -38,6 +38,12 @@ public class HyperTableCube implements Serializable {
 
   List<Dimension> dimensions = new ArrayList<>(); // serves as dimension constraints
 
+  /**
+   * True if the dimensions are co-hashed scrambles (see CoHashedJoin), in which case the cube
+   * includes the same blocks of every dimension and samples only as much as a single dimension.
+   */
+  boolean coHashed = false;
+
   public HyperTableCube() {}
 
   public HyperTableCube(List<Dimension> dimensions) {
@@ -57,6 +63,10 @@ public class HyperTableCube implements Serializable {
     return dimensions;
   }
 
+  public boolean isCoHashed() {
+    return coHashed;
+  }
+
   public Pair<Integer, Integer> getSpanOf(String schemaName, String tableName) {
     for (Dimension d : dimensions) {
       if (d.schemaName.equals(schemaName) && d.tableName.equals(tableName)) {
@@ -105,6 +115,37 @@ public class HyperTableCube implements Serializable {
     return cubes;
   }
 
+  /**
+   * Slices the cube of co-hashed scrambles into the diagonal cubes, i.e., the i-th cube includes
+   * the i-th block of every dimension. The other block combinations are not sliced since they do
+   * not produce any joined rows. All dimensions must have the same length.
+   */
+  public List<HyperTableCube> diagonalSlice() throws VerdictDBValueException {
+    List<HyperTableCube> cubes = new ArrayList<>();
+    if (dimensions.isEmpty()) {
+      return cubes;
+    }
+    int length = dimensions.get(0).length();
+    for (Dimension d : dimensions) {
+      if (d.length() != length) {
+        throw new VerdictDBValueException(
+            "The dimensions of co-hashed scrambles must have the same length.");
+      }
+    }
+
+    for (int i = 0; i < length; i++) {
+      List<Dimension> diagonal = new ArrayList<>();
+      for (Dimension d : dimensions) {
+        diagonal.add(
+            new Dimension(d.getSchemaName(), d.getTableName(), d.getBegin() + i, d.getBegin() + i));
+      }
+      HyperTableCube cube = new HyperTableCube(diagonal);
+      cube.coHashed = true;
+      cubes.add(cube);
+    }
+    return cubes;
+  }
+
   public List<HyperTableCube> roundRobinSlice() throws VerdictDBValueException {
     List<HyperTableCube> cubes = new ArrayList<>();
     HyperTableCube remaining = this;
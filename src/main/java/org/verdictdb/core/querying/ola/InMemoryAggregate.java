@@ -3,17 +3,29 @@ package org.verdictdb.core.querying.ola;
 import static java.sql.Types.CHAR;
 import static java.sql.Types.VARCHAR;
 
+import java.io.File;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang3.RandomStringUtils;
+import org.h2.api.AggregateFunction;
+import org.h2.tools.DeleteDbFiles;
 import org.verdictdb.commons.DataTypeConverter;
 import org.verdictdb.commons.VerdictDBLogger;
 import org.verdictdb.connection.DbmsQueryResult;
@@ -24,6 +36,7 @@ import org.verdictdb.core.sqlobject.AsteriskColumn;
 import org.verdictdb.core.sqlobject.BaseColumn;
 import org.verdictdb.core.sqlobject.BaseTable;
 import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
 import org.verdictdb.core.sqlobject.GroupingAttribute;
 import org.verdictdb.core.sqlobject.SelectItem;
 import org.verdictdb.core.sqlobject.SelectQuery;
@@ -31,19 +44,104 @@ import org.verdictdb.core.sqlobject.SetOperationRelation;
 import org.verdictdb.core.sqlobject.UnnamedColumn;
 import org.verdictdb.exception.VerdictDBException;
 import org.verdictdb.sqlsyntax.H2Syntax;
+import org.verdictdb.sqlsyntax.SqlSyntax;
 import org.verdictdb.sqlwriter.SelectQueryToSql;
 
 public class InMemoryAggregate {
 
   private final String SELECT_ASYNC_AGG_TABLE = "VERDICTDB_SELECTASYNCAGG";
 
+  /** The aggregate function merging the HyperLogLog sketches in a column. */
+  public static final String SKETCH_MERGE_FUNCTION = "verdictdb_hll_merge";
+
+  /** The function returning the distinct-count estimate of a HyperLogLog sketch. */
+  public static final String SKETCH_ESTIMATE_FUNCTION = "verdictdb_hll_estimate";
+
+  /** The aggregate function merging the quantile sketches in a column. */
+  public static final String QUANTILE_MERGE_FUNCTION = "verdictdb_quantile_merge";
+
+  /** The function multiplying the weights of a quantile sketch, i.e., scaling it. */
+  public static final String QUANTILE_SCALE_FUNCTION = "verdictdb_quantile_scale";
+
+  /** The function returning a quantile estimate of a quantile sketch. */
+  public static final String QUANTILE_ESTIMATE_FUNCTION = "verdictdb_quantile";
+
+  /**
+   * The alias of the column of the per-block results that includes the number of the rows having
+   * the values of a quantile column, i.e., the per-block histogram.
+   */
+  public static final String QUANTILE_WEIGHT_ALIAS = "verdictdb_quantile_weight";
+
+  /**
+   * The prefix of the alias of the column of the per-block results that includes the HyperLogLog
+   * register values computed by the database, followed by the alias of the count-distinct column;
+   * the count-distinct column then includes the register indexes.
+   */
+  public static final String SKETCH_RANK_PREFIX = "verdictdb_rank_";
+
+  /** The function returning the hash partition of a group; see combineTables(). */
+  public static final String PARTITION_FUNCTION = "verdictdb_partition";
+
+  // the column of the union being combined that includes the partition of each row
+  private static final String PARTITION_COLUMN = "verdictdb_partition_id";
+
+  // the estimated memory occupied by a value and by a serialized sketch, respectively, while the
+  // groups are combined
+  private static final long ESTIMATED_BYTES_PER_VALUE = 64;
+
+  private static final long ESTIMATED_BYTES_PER_SKETCH = 8192;
+
+  // the estimated memory occupied by a row of a query result
+  private static final long ESTIMATED_BYTES_PER_RESULT_ROW = 1024;
+
+  private static final int MAX_PARTITION_COUNT = 256;
+
   private long selectAsyncAggTableID = 0;
 
   private static SelectQueryToSql selectQueryToSql = new SelectQueryToSql(new H2Syntax());
 
   private Connection conn;
+
+  private String h2Database;
+
+  // if positive, the tables are stored in local files, and the groups are combined in hash
+  // partitions so that the group state occupies at most this many bytes in memory.
+  private long memoryBudget = 0;
+
+  private String spillDirectory = System.getProperty("java.io.tmpdir");
   
   private boolean aborted = false;
+
+  private boolean isAnswerCutLogged = false;
+
+  // the aliases of the count-distinct columns that are computed with HyperLogLog sketches. For
+  // these columns, the per-block results include the registers (or the distinct values if the
+  // database cannot hash them), which are folded into a sketch per group.
+  private Set<String> sketchColumns = new HashSet<>();
+
+  // the syntax of the database running the per-block queries
+  private SqlSyntax backendSyntax = null;
+
+  // the aliases of the quantile columns (e.g., median); the per-block results include the values
+  // and their counts, which are folded into a quantile sketch per group.
+  private Set<String> quantileSketchColumns = new HashSet<>();
+
+  // the aliases of the sum-like and max/min aggregates, which are aggregated when the per-block
+  // results are folded into sketches
+  private Set<String> sumColumns = new HashSet<>();
+
+  private Map<String, String> maxminColumns = new HashMap<>();
+
+  private enum ColumnRole {
+    GROUP,
+    SUM,
+    MAX,
+    MIN,
+    DISTINCT_SKETCH,
+    QUANTILE_SKETCH,
+    WEIGHT,
+    RANK
+  }
   
   private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());;
 
@@ -52,31 +150,190 @@ public class InMemoryAggregate {
     try {
       Class.forName("org.h2.Driver");
       inMemoryAggregate = new InMemoryAggregate();
-      String h2Database = "verdictdb_" + RandomStringUtils.randomAlphanumeric(8).toLowerCase();
-      String DB_CONNECTION = String.format("jdbc:h2:mem:%s;DB_CLOSE_DELAY=-1", h2Database);
-      inMemoryAggregate.conn = DriverManager.getConnection(DB_CONNECTION, "", "");
-    } catch (SQLException | ClassNotFoundException e) {
+      inMemoryAggregate.h2Database =
+          "verdictdb_" + RandomStringUtils.randomAlphanumeric(8).toLowerCase();
+    } catch (ClassNotFoundException e) {
       // https://stackoverflow.com/questions/2070293/why-doesnt-java-allow-to-throw-a-checked-exception-from-static-initialization-b
       throw new ExceptionInInitializerError(e);
     }
     return inMemoryAggregate;
   }
 
+  /**
+   * Bounds the memory occupied by the group state. When the state is larger than the budget, the
+   * tables are kept in a local file with a page cache of half the budget, and the groups are
+   * combined one hash partition at a time (see combineTables()). This must be set before the first
+   * table is created.
+   *
+   * @param memoryBudget The budget in bytes; if 0, the state is kept in memory without a limit.
+   * @param spillDirectory The directory of the file; if null, java.io.tmpdir is used.
+   */
+  public synchronized void setMemoryBudget(long memoryBudget, String spillDirectory) {
+    if (conn != null) {
+      log.warn("The memory budget is ignored since the in-memory database is already in use.");
+      return;
+    }
+    this.memoryBudget = memoryBudget;
+    if (spillDirectory != null) {
+      this.spillDirectory = spillDirectory;
+    }
+  }
+
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * The database is opened on its first use so that the memory budget set after the creation of
+   * this object is applied.
+   */
+  private synchronized Connection getConnection() throws SQLException {
+    if (conn == null) {
+      conn = DriverManager.getConnection(getConnectionString(), "", "");
+      registerSketchFunctions();
+    }
+    return conn;
+  }
+
+  private String getConnectionString() {
+    if (memoryBudget <= 0) {
+      return String.format("jdbc:h2:mem:%s;DB_CLOSE_DELAY=-1", h2Database);
+    }
+    // the pages of the tables beyond the cache, and the rows of the large results (e.g., of the
+    // union of two tables) are kept in the file.
+    long cacheSizeInKB = Math.max(memoryBudget / 2 / 1024, 1);
+    long maxMemoryRows = Math.max(memoryBudget / 2 / ESTIMATED_BYTES_PER_RESULT_ROW, 1000);
+    String path = new File(spillDirectory, h2Database).getAbsolutePath();
+    return String.format(
+        "jdbc:h2:file:%s;DB_CLOSE_DELAY=-1;CACHE_SIZE=%d;MAX_MEMORY_ROWS=%d",
+        path, cacheSizeInKB, maxMemoryRows);
+  }
+
+  private void registerSketchFunctions() throws SQLException {
+    Statement stmt = conn.createStatement();
+    stmt.execute(
+        String.format(
+            "CREATE AGGREGATE IF NOT EXISTS %s FOR \"%s\"",
+            SKETCH_MERGE_FUNCTION, SketchMerge.class.getName()));
+    stmt.execute(
+        String.format(
+            "CREATE ALIAS IF NOT EXISTS %s FOR \"%s.estimateSketch\"",
+            SKETCH_ESTIMATE_FUNCTION, InMemoryAggregate.class.getName()));
+    stmt.execute(
+        String.format(
+            "CREATE AGGREGATE IF NOT EXISTS %s FOR \"%s\"",
+            QUANTILE_MERGE_FUNCTION, QuantileSketchMerge.class.getName()));
+    stmt.execute(
+        String.format(
+            "CREATE ALIAS IF NOT EXISTS %s FOR \"%s.scaleQuantileSketch\"",
+            QUANTILE_SCALE_FUNCTION, InMemoryAggregate.class.getName()));
+    stmt.execute(
+        String.format(
+            "CREATE ALIAS IF NOT EXISTS %s FOR \"%s.estimateQuantile\"",
+            QUANTILE_ESTIMATE_FUNCTION, InMemoryAggregate.class.getName()));
+    stmt.execute(
+        String.format(
+            "CREATE ALIAS IF NOT EXISTS %s FOR \"%s.partitionOf\"",
+            PARTITION_FUNCTION, InMemoryAggregate.class.getName()));
+    stmt.close();
+  }
+
+  /**
+   * Sets the count-distinct columns that are computed with HyperLogLog sketches.
+   *
+   * @param aliases The aliases of those columns in the individual aggregate queries
+   */
+  public void setSketchColumns(Set<String> aliases) {
+    sketchColumns = new HashSet<>(aliases);
+  }
+
+  public boolean isSketchColumn(String alias) {
+    return sketchColumns.contains(alias);
+  }
+
+  /**
+   * Sets the syntax of the database that runs the per-block queries, which decides whether the
+   * database can compute the registers of the sketches.
+   */
+  public void setBackendSyntax(SqlSyntax syntax) {
+    backendSyntax = syntax;
+  }
+
+  /** @return null if not known */
+  public SqlSyntax getBackendSyntax() {
+    return backendSyntax;
+  }
+
+  /**
+   * Sets the quantile columns that are computed with quantile sketches.
+   *
+   * @param aliases The aliases of those columns in the individual aggregate queries
+   */
+  public void setQuantileSketchColumns(Set<String> aliases) {
+    quantileSketchColumns = new HashSet<>(aliases);
+  }
+
+  public boolean isQuantileSketchColumn(String alias) {
+    return quantileSketchColumns.contains(alias);
+  }
+
+  /**
+   * Sets the other aggregate columns of the individual aggregate queries. When the per-block
+   * results are folded into sketches, they are summed (or maximized/minimized) per group.
+   *
+   * @param sumAliases The aliases of the sum and count columns
+   * @param maxminAliases The aliases of the max and min columns mapped to "max" or "min"
+   */
+  public void setAggregateColumns(List<String> sumAliases, Map<String, String> maxminAliases) {
+    sumColumns = new HashSet<>(sumAliases);
+    maxminColumns = new HashMap<>(maxminAliases);
+  }
+
+  private ColumnRole getColumnRole(String columnName) {
+    if (sketchColumns.contains(columnName)) {
+      return ColumnRole.DISTINCT_SKETCH;
+    } else if (quantileSketchColumns.contains(columnName)) {
+      return ColumnRole.QUANTILE_SKETCH;
+    } else if (columnName.equals(QUANTILE_WEIGHT_ALIAS)) {
+      return ColumnRole.WEIGHT;
+    } else if (columnName.startsWith(SKETCH_RANK_PREFIX)
+        && sketchColumns.contains(columnName.substring(SKETCH_RANK_PREFIX.length()))) {
+      return ColumnRole.RANK;
+    } else if (sumColumns.contains(columnName)) {
+      return ColumnRole.SUM;
+    } else if ("max".equals(maxminColumns.get(columnName))) {
+      return ColumnRole.MAX;
+    } else if ("min".equals(maxminColumns.get(columnName))) {
+      return ColumnRole.MIN;
+    } else {
+      return ColumnRole.GROUP;
+    }
+  }
+
   public void createTable(DbmsQueryResult dbmsQueryResult, String tableName) throws SQLException {
     // the query processing has already been finished; thus, no more processing will be needed.
     if (aborted) {
       return;
     }
     
+    ColumnRole[] roles = new ColumnRole[dbmsQueryResult.getColumnCount()];
+    boolean containsSketch = false;
+    boolean isFirstColumn = true;
     StringBuilder insertColNames = new StringBuilder();
     StringBuilder tableColDefs = new StringBuilder();
     StringBuilder bindVariables = new StringBuilder();
     for (int i = 0; i < dbmsQueryResult.getColumnCount(); i++) {
-      if (i > 0) {
+      roles[i] = getColumnRole(dbmsQueryResult.getColumnName(i));
+      if (roles[i] == ColumnRole.WEIGHT || roles[i] == ColumnRole.RANK) {
+        // the weights and the ranks are folded into the sketches
+        continue;
+      }
+      if (!isFirstColumn) {
         insertColNames.append(", ");
         tableColDefs.append(", ");
         bindVariables.append(", ");
       }
+      isFirstColumn = false;
       tableColDefs.append(String.format("\"%s\"", dbmsQueryResult.getColumnName(i)));
       tableColDefs.append(" ");
       // char -> varchar in case this type is an array of char
@@ -84,6 +341,10 @@ public class InMemoryAggregate {
       if (columnType == CHAR) {
         columnType = VARCHAR;
       }
+      if (roles[i] == ColumnRole.DISTINCT_SKETCH || roles[i] == ColumnRole.QUANTILE_SKETCH) {
+        columnType = VARCHAR;
+        containsSketch = true;
+      }
       tableColDefs.append(DataTypeConverter.typeName(columnType));
       insertColNames.append(String.format("\"%s\"", dbmsQueryResult.getColumnName(i)));
       bindVariables.append('?');
@@ -97,7 +358,7 @@ public class InMemoryAggregate {
       String createSql = "CREATE TABLE IF NOT EXISTS " + tableName + " (" + tableColDefs + ")";
 //      log.info(createSql);
       
-      stmt = conn.createStatement();
+      stmt = getConnection().createStatement();
       stmt.execute(createSql);
       stmt.close();
 
@@ -108,12 +369,16 @@ public class InMemoryAggregate {
           + bindVariables
           + ")";
 //      log.info(sql);
-      pstmt = conn.prepareStatement(sql);
-      while (dbmsQueryResult.next()) {
-        for (int i = 1; i <= dbmsQueryResult.getColumnCount(); i++) {
-          pstmt.setObject(i, dbmsQueryResult.getValue(i - 1));
+      pstmt = getConnection().prepareStatement(sql);
+      if (containsSketch) {
+        foldIntoSketches(dbmsQueryResult, roles, pstmt);
+      } else {
+        while (dbmsQueryResult.next()) {
+          for (int i = 1; i <= dbmsQueryResult.getColumnCount(); i++) {
+            pstmt.setObject(i, dbmsQueryResult.getValue(i - 1));
+          }
+          pstmt.addBatch();
         }
-        pstmt.addBatch();
       }
       pstmt.executeBatch();
     
@@ -134,6 +399,187 @@ public class InMemoryAggregate {
     }
   }
 
+  /**
+   * Folds the values of the sketch columns into a sketch per group, where a group is identified by
+   * the values of the non-aggregate columns. The other aggregate columns are summed (or
+   * maximized/minimized) per group since the per-block query groups the rows more finely, i.e., by
+   * the values (or the register indexes) of the sketch columns as well. The sketches grouped by
+   * different values are computed in different branches of a union; the columns computed by the
+   * other branches are null in a row, and the nulls are ignored.
+   *
+   * <p>Under a memory budget, the folded groups are inserted and cleared whenever they would occupy
+   * more than half of the budget; a group may then have several rows in the table, which are
+   * merged when the tables are combined and when the answer is computed.
+   *
+   * @param insert The rows are inserted with the serialized sketches in place of the values; the
+   *     weight and rank columns are excluded.
+   */
+  private void foldIntoSketches(
+      DbmsQueryResult result, ColumnRole[] roles, PreparedStatement insert) throws SQLException {
+    Map<List<Object>, Object[]> foldedPerGroup = new LinkedHashMap<>();
+    int weightIndex = Arrays.asList(roles).indexOf(ColumnRole.WEIGHT);
+    // the rank column of each count-distinct column whose registers are computed by the database
+    int[] rankIndexes = new int[roles.length];
+    int foldedColumnCount = 0;
+    for (int i = 0; i < roles.length; i++) {
+      rankIndexes[i] = -1;
+      if (roles[i] == ColumnRole.RANK) {
+        String sketchColumn = result.getColumnName(i).substring(SKETCH_RANK_PREFIX.length());
+        for (int j = 0; j < roles.length; j++) {
+          if (result.getColumnName(j).equals(sketchColumn)) {
+            rankIndexes[j] = i;
+          }
+        }
+      } else if (roles[i] != ColumnRole.WEIGHT) {
+        foldedColumnCount++;
+      }
+    }
+    long maxGroupCount = getMaxFoldedGroupCount(roles);
+
+    while (result.next()) {
+      List<Object> group = new ArrayList<>();
+      for (int i = 0; i < roles.length; i++) {
+        if (roles[i] == ColumnRole.GROUP) {
+          group.add(result.getValue(i));
+        }
+      }
+      Object[] folded = foldedPerGroup.get(group);
+      if (folded == null) {
+        folded = new Object[roles.length];
+        for (int i = 0; i < roles.length; i++) {
+          if (roles[i] == ColumnRole.DISTINCT_SKETCH) {
+            folded[i] = new HyperLogLog();
+          } else if (roles[i] == ColumnRole.QUANTILE_SKETCH) {
+            folded[i] = new QuantileSketch();
+          }
+        }
+        if (foldedPerGroup.size() >= maxGroupCount) {
+          insertFolded(foldedPerGroup.values(), roles, foldedColumnCount, insert);
+          foldedPerGroup.clear();
+        }
+        foldedPerGroup.put(group, folded);
+      }
+
+      Object weight = (weightIndex < 0) ? null : result.getValue(weightIndex);
+      for (int i = 0; i < roles.length; i++) {
+        Object value = result.getValue(i);
+        switch (roles[i]) {
+          case GROUP:
+            folded[i] = value;
+            break;
+          case SUM:
+            folded[i] = addValues(folded[i], value);
+            break;
+          case MAX:
+            if (value != null && (folded[i] == null || compareValues(value, folded[i]) > 0)) {
+              folded[i] = value;
+            }
+            break;
+          case MIN:
+            if (value != null && (folded[i] == null || compareValues(value, folded[i]) < 0)) {
+              folded[i] = value;
+            }
+            break;
+          case DISTINCT_SKETCH:
+            if (rankIndexes[i] < 0) {
+              ((HyperLogLog) folded[i]).offer(value);
+            } else if (value != null && result.getValue(rankIndexes[i]) != null) {
+              ((HyperLogLog) folded[i])
+                  .offerRegister(
+                      ((Number) value).intValue(),
+                      ((Number) result.getValue(rankIndexes[i])).intValue());
+            }
+            break;
+          case QUANTILE_SKETCH:
+            ((QuantileSketch) folded[i]).offer(value, weight);
+            break;
+          default:
+            break;
+        }
+      }
+    }
+
+    insertFolded(foldedPerGroup.values(), roles, foldedColumnCount, insert);
+  }
+
+  private static void insertFolded(
+      Collection<Object[]> foldedGroups,
+      ColumnRole[] roles,
+      int foldedColumnCount,
+      PreparedStatement insert)
+      throws SQLException {
+    for (Object[] folded : foldedGroups) {
+      int j = 1;
+      for (int i = 0; i < roles.length; i++) {
+        if (roles[i] == ColumnRole.WEIGHT || roles[i] == ColumnRole.RANK) {
+          continue;
+        }
+        boolean isSketch =
+            roles[i] == ColumnRole.DISTINCT_SKETCH || roles[i] == ColumnRole.QUANTILE_SKETCH;
+        insert.setObject(j++, isSketch ? folded[i].toString() : folded[i]);
+      }
+      insert.addBatch();
+    }
+    // the batch is not kept in memory together with the next groups
+    insert.executeBatch();
+  }
+
+  /**
+   * @return The number of the groups whose sketches fit in the half of the memory budget; no limit
+   *     if there is no memory budget.
+   */
+  private long getMaxFoldedGroupCount(ColumnRole[] roles) {
+    if (memoryBudget <= 0) {
+      return Long.MAX_VALUE;
+    }
+    long bytesPerGroup = 0;
+    for (ColumnRole role : roles) {
+      if (role == ColumnRole.DISTINCT_SKETCH || role == ColumnRole.QUANTILE_SKETCH) {
+        bytesPerGroup += ESTIMATED_BYTES_PER_SKETCH;
+      } else {
+        bytesPerGroup += ESTIMATED_BYTES_PER_VALUE;
+      }
+    }
+    return Math.max(memoryBudget / 2 / bytesPerGroup, 1);
+  }
+
+  private static Object addValues(Object sum, Object value) {
+    if (value == null) {
+      return sum;
+    } else if (sum == null) {
+      return value;
+    }
+    Number a = (Number) sum;
+    Number b = (Number) value;
+    if (isIntegral(a) && isIntegral(b)) {
+      return a.longValue() + b.longValue();
+    } else if ((isIntegral(a) || a instanceof BigDecimal)
+        && (isIntegral(b) || b instanceof BigDecimal)) {
+      return new BigDecimal(a.toString()).add(new BigDecimal(b.toString()));
+    } else {
+      return a.doubleValue() + b.doubleValue();
+    }
+  }
+
+  private static boolean isIntegral(Number number) {
+    return number instanceof Long
+        || number instanceof Integer
+        || number instanceof Short
+        || number instanceof Byte
+        || number instanceof BigInteger;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static int compareValues(Object a, Object b) {
+    if (a instanceof Number && b instanceof Number) {
+      return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+    } else if (a instanceof Comparable && a.getClass().equals(b.getClass())) {
+      return ((Comparable) a).compareTo(b);
+    } else {
+      return a.toString().compareTo(b.toString());
+    }
+  }
+
   public DbmsQueryResult executeQuery(SelectQuery query) throws VerdictDBException, SQLException {
     // the query processing has already been finished; thus, no more processing will be needed.
     if (aborted) {
@@ -143,7 +589,7 @@ public class InMemoryAggregate {
     String sql = selectQueryToSql.toSql(query);
 //    log.info(sql);
     
-    Statement stmt = conn.createStatement();
+    Statement stmt = getConnection().createStatement();
     DbmsQueryResult dbmsQueryResult = null;
     
     try {
@@ -163,6 +609,56 @@ public class InMemoryAggregate {
     return dbmsQueryResult;
   }
   
+  /**
+   * Runs the query computing an answer from the combined groups. Under a memory budget, only as
+   * many rows of an intermediate answer as fit in the half of the budget are retrieved, i.e., the
+   * first groups in the order of the query (e.g., the top groups of an order-by clause); a warning
+   * is logged when an answer is cut. The final answer is always retrieved in full.
+   *
+   * @param isFinal True if the answer covers all the blocks
+   */
+  public DbmsQueryResult executeAnswerQuery(SelectQuery query, boolean isFinal)
+      throws VerdictDBException, SQLException {
+    long maxRowCount = getMaxAnswerRowCount(query.getSelectList().size());
+    if (isFinal || hasLimitWithin(query, maxRowCount)) {
+      return executeQuery(query);
+    }
+    query.addLimit(ConstantColumn.valueOf(String.valueOf(maxRowCount)));
+    DbmsQueryResult result = executeQuery(query);
+    if (result != null && result.getRowCount() >= maxRowCount && !isAnswerCutLogged) {
+      log.warn(
+          String.format(
+              "The intermediate answers are limited to their first %d rows to fit in the "
+                  + "memory budget; the final answer is complete.",
+              maxRowCount));
+      isAnswerCutLogged = true;
+    }
+    return result;
+  }
+
+  /** @return The number of the rows of an answer that fit in the half of the memory budget */
+  long getMaxAnswerRowCount(int columnCount) {
+    if (memoryBudget <= 0) {
+      return Long.MAX_VALUE;
+    }
+    return Math.max(memoryBudget / 2 / (Math.max(columnCount, 1) * ESTIMATED_BYTES_PER_VALUE), 1);
+  }
+
+  private static boolean hasLimitWithin(SelectQuery query, long maxRowCount) {
+    if (maxRowCount == Long.MAX_VALUE) {
+      return true;
+    }
+    if (!query.getLimit().isPresent() || !(query.getLimit().get() instanceof ConstantColumn)) {
+      return false;
+    }
+    try {
+      Object limit = ((ConstantColumn) query.getLimit().get()).getValue();
+      return Long.parseLong(limit.toString()) <= maxRowCount;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
   private synchronized String getNextTableName() {
     return SELECT_ASYNC_AGG_TABLE + selectAsyncAggTableID++;
   }
@@ -180,7 +676,7 @@ public class InMemoryAggregate {
     // check targetTable exists
     if (newAggTableName.equals("")) {
       // if not just let it be the copy of combineTable
-      Statement stmt = conn.createStatement();
+      Statement stmt = getConnection().createStatement();
       stmt.execute(
           String.format("CREATE TABLE %s AS SELECT * FROM %s", tableName, combinedTableName));
       stmt.close();
@@ -202,6 +698,12 @@ public class InMemoryAggregate {
               ((AliasedColumn) sel).setColumn(new ColumnOp("max", new BaseColumn(alias)));
             } else if (col instanceof ColumnOp && ((ColumnOp) col).getOpType().equals("min")) {
               ((AliasedColumn) sel).setColumn(new ColumnOp("min", new BaseColumn(alias)));
+            } else if (sketchColumns.contains(alias)) {
+              ((AliasedColumn) sel)
+                  .setColumn(new ColumnOp(SKETCH_MERGE_FUNCTION, new BaseColumn(alias)));
+            } else if (quantileSketchColumns.contains(alias)) {
+              ((AliasedColumn) sel)
+                  .setColumn(new ColumnOp(QUANTILE_MERGE_FUNCTION, new BaseColumn(alias)));
             } else {    // count, sum, countdistinct, approx_distinct
               ((AliasedColumn) sel).setColumn(new ColumnOp("sum", new BaseColumn(alias)));
             }
@@ -224,18 +726,123 @@ public class InMemoryAggregate {
       copy.setFromList(Arrays.asList(setOperation));
       copy.clearGroupby();
       copy.addGroupby(groupList);
-      String sql = selectQueryToSql.toSql(copy);
-      
-      log.debug("Issues the following query to an in-memory db: " + sql);
-      
-      Statement stmt = conn.createStatement();
-      stmt.execute(String.format("CREATE TABLE %s AS %s", tableName, sql));
+
+      // the groups of each partition are combined in turn, so that only the groups of a single
+      // partition are kept in memory at once; the combined groups are appended to the new table.
+      int partitionCount =
+          groupList.isEmpty()
+              ? 1
+              : getPartitionCount(Arrays.asList(newAggTableName, combinedTableName), copy);
+      Statement stmt = getConnection().createStatement();
+      String partitionedTableName = tableName + "_PARTITIONED";
+      if (partitionCount > 1) {
+        // the union is scanned once, tagging each row with its partition; then, the rows of each
+        // partition are read through an index instead of scanning the union again.
+        List<UnnamedColumn> operands = new ArrayList<>();
+        operands.add(ConstantColumn.valueOf(partitionCount));
+        for (GroupingAttribute group : groupList) {
+          operands.add(((UnnamedColumn) group).deepcopy());
+        }
+        SelectQuery tagging =
+            SelectQuery.create(
+                Arrays.<SelectItem>asList(
+                    new AsteriskColumn(),
+                    new AliasedColumn(
+                        new ColumnOp(PARTITION_FUNCTION, operands), PARTITION_COLUMN)),
+                setOperation);
+        stmt.execute(
+            String.format(
+                "CREATE TABLE %s AS %s", partitionedTableName, selectQueryToSql.toSql(tagging)));
+        stmt.execute(
+            String.format(
+                "CREATE INDEX %s_INDEX ON %s (\"%s\")",
+                partitionedTableName, partitionedTableName, PARTITION_COLUMN));
+        copy.setFromList(
+            Arrays.<AbstractRelation>asList(new BaseTable("PUBLIC", partitionedTableName)));
+      }
+      for (int partition = 0; partition < partitionCount; partition++) {
+        SelectQuery partitionQuery = copy;
+        if (partitionCount > 1) {
+          partitionQuery = copy.deepcopy();
+          partitionQuery.addFilterByAnd(
+              ColumnOp.equal(
+                  new BaseColumn(PARTITION_COLUMN), ConstantColumn.valueOf(partition)));
+        }
+        String sql = selectQueryToSql.toSql(partitionQuery);
+
+        log.debug("Issues the following query to an in-memory db: " + sql);
+
+        if (partition == 0) {
+          stmt.execute(String.format("CREATE TABLE %s AS %s", tableName, sql));
+        } else {
+          stmt.execute(String.format("INSERT INTO %s %s", tableName, sql));
+        }
+      }
       stmt.close();
+      if (partitionCount > 1) {
+        dropTable(partitionedTableName);
+      }
+    }
+
+    // the combined tables are no longer needed
+    dropTable(combinedTableName);
+    if (!newAggTableName.equals("")) {
+      dropTable(newAggTableName);
     }
 
     return tableName;
   }
 
+  private void dropTable(String tableName) throws SQLException {
+    Statement stmt = getConnection().createStatement();
+    stmt.execute(String.format("DROP TABLE IF EXISTS %s", tableName));
+    stmt.close();
+  }
+
+  /**
+   * Estimates the number of the hash partitions whose groups fit in the half of the memory budget
+   * (the other half is used for the page cache). Every row of the tables is assumed to be a
+   * distinct group.
+   *
+   * @param tableNames The tables to combine
+   * @param combiningQuery The query combining the tables
+   * @return 1 if there is no memory budget or the groups fit in memory
+   */
+  private int getPartitionCount(List<String> tableNames, SelectQuery combiningQuery)
+      throws SQLException {
+    if (memoryBudget <= 0) {
+      return 1;
+    }
+    long rowCount = 0;
+    Statement stmt = getConnection().createStatement();
+    for (String tableName : tableNames) {
+      ResultSet rs = stmt.executeQuery(String.format("SELECT COUNT(*) FROM %s", tableName));
+      rs.next();
+      rowCount += rs.getLong(1);
+      rs.close();
+    }
+    stmt.close();
+
+    long bytesPerGroup = 0;
+    for (SelectItem item : combiningQuery.getSelectList()) {
+      String alias = (item instanceof AliasedColumn) ? ((AliasedColumn) item).getAliasName() : "";
+      if (sketchColumns.contains(alias) || quantileSketchColumns.contains(alias)) {
+        bytesPerGroup += ESTIMATED_BYTES_PER_SKETCH;
+      } else {
+        bytesPerGroup += ESTIMATED_BYTES_PER_VALUE;
+      }
+    }
+    double partitionCount = Math.ceil(rowCount * bytesPerGroup / (memoryBudget / 2.0));
+    if (partitionCount > MAX_PARTITION_COUNT) {
+      log.warn(
+          String.format(
+              "The groups to combine (about %d bytes) need %.0f partitions to fit in the memory "
+                  + "budget, but only %d partitions are used; the memory budget may be exceeded.",
+              rowCount * bytesPerGroup, partitionCount, MAX_PARTITION_COUNT));
+    }
+    return (int) Math.max(1, Math.min(partitionCount, MAX_PARTITION_COUNT));
+  }
+
   private static void resetSchemaAndTableForCombining(UnnamedColumn column) {
     List<UnnamedColumn> columns = new ArrayList<>();
     columns.add(column);
@@ -256,9 +863,156 @@ public class InMemoryAggregate {
     }
   }
 
+  /**
+   * The scalar function registered to the in-memory database as PARTITION_FUNCTION. The equal
+   * groups (e.g., 1.0 and 1.00) belong to the same partition.
+   *
+   * @param partitionCount The number of the partitions
+   * @param values The values of the grouping columns of a group
+   * @return The partition of the group between 0 and partitionCount - 1
+   */
+  public static int partitionOf(int partitionCount, Object... values) {
+    int hash = 1;
+    for (Object value : values) {
+      hash = 31 * hash + hashValue(value);
+    }
+    // the bits are mixed since the hash code of a small integer is the integer itself
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    return (hash & Integer.MAX_VALUE) % partitionCount;
+  }
+
+  private static int hashValue(Object value) {
+    if (value == null) {
+      return 0;
+    } else if (value instanceof BigDecimal) {
+      BigDecimal decimal = (BigDecimal) value;
+      return (decimal.signum() == 0) ? 0 : decimal.stripTrailingZeros().hashCode();
+    } else if (value instanceof byte[]) {
+      return Arrays.hashCode((byte[]) value);
+    } else {
+      return value.hashCode();
+    }
+  }
+
+  /**
+   * The scalar function registered to the in-memory database as SKETCH_ESTIMATE_FUNCTION.
+   *
+   * @param sketch A serialized HyperLogLog sketch
+   * @return The distinct-count estimate of the sketch
+   */
+  public static Long estimateSketch(String sketch) {
+    if (sketch == null) {
+      return null;
+    }
+    return HyperLogLog.fromString(sketch).estimate();
+  }
+
+  /** The aggregate function registered to the in-memory database as SKETCH_MERGE_FUNCTION. */
+  public static class SketchMerge implements AggregateFunction {
+
+    private HyperLogLog merged = null;
+
+    @Override
+    public void init(Connection conn) {}
+
+    @Override
+    public int getType(int[] inputTypes) {
+      return Types.VARCHAR;
+    }
+
+    @Override
+    public void add(Object value) {
+      if (value == null) {
+        return;
+      }
+      HyperLogLog sketch = HyperLogLog.fromString(value.toString());
+      if (merged == null) {
+        merged = sketch;
+      } else {
+        merged.merge(sketch);
+      }
+    }
+
+    @Override
+    public Object getResult() {
+      return (merged == null) ? null : merged.toString();
+    }
+  }
+
+  /**
+   * The scalar function registered to the in-memory database as QUANTILE_SCALE_FUNCTION.
+   *
+   * @param factor The scale factor, e.g., the inverse of the sampling probability of a tier
+   * @param sketch A serialized quantile sketch
+   * @return The serialized sketch whose weights are multiplied by the factor
+   */
+  public static String scaleQuantileSketch(Double factor, String sketch) {
+    if (factor == null || sketch == null) {
+      return sketch;
+    }
+    QuantileSketch scaled = QuantileSketch.fromString(sketch);
+    scaled.scale(factor);
+    return scaled.toString();
+  }
+
+  /**
+   * The scalar function registered to the in-memory database as QUANTILE_ESTIMATE_FUNCTION.
+   *
+   * @param sketch A serialized quantile sketch
+   * @param p A number between 0 and 1; e.g., 0.5 for the median
+   * @return The estimated p-th quantile
+   */
+  public static Double estimateQuantile(String sketch, Double p) {
+    if (sketch == null || p == null) {
+      return null;
+    }
+    return QuantileSketch.fromString(sketch).quantile(p);
+  }
+
+  /** The aggregate function registered to the in-memory database as QUANTILE_MERGE_FUNCTION. */
+  public static class QuantileSketchMerge implements AggregateFunction {
+
+    private QuantileSketch merged = null;
+
+    @Override
+    public void init(Connection conn) {}
+
+    @Override
+    public int getType(int[] inputTypes) {
+      return Types.VARCHAR;
+    }
+
+    @Override
+    public void add(Object value) {
+      if (value == null) {
+        return;
+      }
+      QuantileSketch sketch = QuantileSketch.fromString(value.toString());
+      if (merged == null) {
+        merged = sketch;
+      } else {
+        merged.merge(sketch);
+      }
+    }
+
+    @Override
+    public Object getResult() {
+      return (merged == null) ? null : merged.toString();
+    }
+  }
+
   public void abort() {
     aborted = true;
-    
+    close();
+  }
+
+  /** Closes the database and deletes its files, if any. */
+  public synchronized void close() {
+    if (conn == null) {
+      return;
+    }
     try {
       if (!conn.isClosed()) {
         // This will close all the connection and the database.
@@ -269,5 +1023,8 @@ public class InMemoryAggregate {
     } catch (SQLException e) {
       e.printStackTrace();
     }
+    if (memoryBudget > 0) {
+      DeleteDbFiles.execute(spillDirectory, h2Database, true);
+    }
   }
 }
@@ -19,6 +19,8 @@ package org.verdictdb.core.querying.ola;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.verdictdb.core.scrambling.ScrambleMetaSet;
@@ -33,6 +35,9 @@ public class OlaAggregationPlan {
 
   List<HyperTableCube> cubes = new ArrayList<>();
 
+  /** The cubes that are not queried since they cannot contain any row satisfying the filter. */
+  List<HyperTableCube> skippedCubes = new ArrayList<>();
+
   // alias name for aggregate item and their aggregate type
 
   /**
@@ -42,6 +47,19 @@ public class OlaAggregationPlan {
    */
   public OlaAggregationPlan(ScrambleMetaSet scrambleMeta, List<Pair<String, String>> scrambles)
       throws VerdictDBValueException {
+    this(scrambleMeta, scrambles, false);
+  }
+
+  /**
+   * @param scrambleMeta
+   * @param scrambles The scrambled tables that appear in a query.
+   * @param coHashed True if the scrambles are joined as co-hashed scrambles (see CoHashedJoin), in
+   *     which case only the diagonal block combinations are queried.
+   * @throws VerdictDBValueException
+   */
+  public OlaAggregationPlan(
+      ScrambleMetaSet scrambleMeta, List<Pair<String, String>> scrambles, boolean coHashed)
+      throws VerdictDBValueException {
 
     // exception checks
     if (scrambles.size() == 0) {
@@ -62,6 +80,11 @@ public class OlaAggregationPlan {
     }
     HyperTableCube originalCube = new HyperTableCube(dims);
 
+    if (coHashed) {
+      cubes = originalCube.diagonalSlice();
+      return;
+    }
+
     // slice: either approach works; ripple join approach simply ensures quicker latency.
 //    cubes = originalCube.roundRobinSlice();
     cubes = originalCube.rippleJoinSlice();
@@ -74,6 +97,54 @@ public class OlaAggregationPlan {
     return null;
   }
 
+  /**
+   * Removes the cubes that include, for any of the scrambles, only the blocks that can be skipped.
+   * Such cubes do not contribute to the answer; thus, they still count as processed when the scale
+   * factors are computed (see getSkippedCubes()). At least one cube is kept so that the query
+   * still returns an answer.
+   *
+   * @param skippableBlocks (schema, table) -> the blocks that can be skipped
+   */
+  public void skipBlocks(Map<Pair<String, String>, Set<Integer>> skippableBlocks) {
+    List<HyperTableCube> kept = new ArrayList<>();
+    for (HyperTableCube cube : cubes) {
+      if (isSkippable(cube, skippableBlocks)) {
+        skippedCubes.add(cube);
+      } else {
+        kept.add(cube);
+      }
+    }
+    if (kept.isEmpty() && !skippedCubes.isEmpty()) {
+      kept.add(skippedCubes.remove(0));
+    }
+    cubes = kept;
+  }
+
+  private boolean isSkippable(
+      HyperTableCube cube, Map<Pair<String, String>, Set<Integer>> skippableBlocks) {
+    for (Dimension d : cube.getDimensions()) {
+      Set<Integer> blocks = skippableBlocks.get(Pair.of(d.getSchemaName(), d.getTableName()));
+      if (blocks == null) {
+        continue;
+      }
+      boolean allSkippable = true;
+      for (int b = d.getBegin(); b <= d.getEnd(); b++) {
+        if (!blocks.contains(b)) {
+          allSkippable = false;
+          break;
+        }
+      }
+      if (allSkippable) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public List<HyperTableCube> getSkippedCubes() {
+    return skippedCubes;
+  }
+
   public int totalBlockAggCount() {
     return cubes.size();
   }
@@ -0,0 +1,124 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.querying.ola;
+
+/**
+ * The standard error of the progressive answers of an aggregate within a group.
+ *
+ * <p>Each progressive answer of an OLA query covers one more block of a scramble, and the answer
+ * covering k blocks is (approximately) the mean of k per-block estimates. Those per-block
+ * estimates are recovered from two consecutive answers as X_k = k * A_k - (k-1) * A_(k-1), and
+ * their running moments are maintained with Welford's method. The standard error of A_k is then
+ * sqrt(var(X) / k).
+ */
+public class ProgressiveEstimate {
+
+  /** The number of the blocks covered by the last answer */
+  private long blockCount = 0;
+
+  /** The number of the per-block estimates recovered so far */
+  private long estimateCount = 0;
+
+  private double mean = 0;
+
+  private double m2 = 0;
+
+  /** The last answer */
+  private double last = 0;
+
+  public ProgressiveEstimate() {}
+
+  /**
+   * Creates the state of a group that had no rows in the earlier blocks, i.e., whose per-block
+   * estimates were zero (e.g., for sum and count).
+   *
+   * @param blockCount The number of those blocks
+   */
+  public static ProgressiveEstimate withZeroBlocks(long blockCount) {
+    ProgressiveEstimate estimate = new ProgressiveEstimate();
+    estimate.blockCount = blockCount;
+    estimate.estimateCount = blockCount;
+    return estimate;
+  }
+
+  /**
+   * Creates the state of a group whose earlier answers are unknown.
+   *
+   * @param blockCount The number of the blocks covered by the answer
+   * @param answer The first known answer
+   */
+  public static ProgressiveEstimate startingFrom(long blockCount, double answer) {
+    ProgressiveEstimate estimate = new ProgressiveEstimate();
+    estimate.blockCount = blockCount;
+    estimate.last = answer;
+    return estimate;
+  }
+
+  /** @param answer The answer covering one more block than the last answer */
+  public void add(double answer) {
+    double estimate = (blockCount + 1) * answer - blockCount * last;
+    blockCount++;
+    estimateCount++;
+    double delta = estimate - mean;
+    mean += delta / estimateCount;
+    m2 += delta * (estimate - mean);
+    last = answer;
+  }
+
+  /** @return The standard error of the last answer; null if unknown */
+  public Double getStandardError() {
+    if (estimateCount < 2) {
+      return null;
+    }
+    return Math.sqrt(m2 / (estimateCount - 1) / blockCount);
+  }
+
+  /**
+   * The inverse of the cumulative distribution function of the standard normal distribution,
+   * computed with Acklam's rational approximation (relative error below 1.2e-9).
+   */
+  public static double inverseStandardNormal(double p) {
+    final double[] a = {
+      -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+      1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00
+    };
+    final double[] b = {
+      -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+      6.680131188771972e+01, -1.328068155288572e+01
+    };
+    final double[] c = {
+      -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+      -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00
+    };
+    final double[] d = {
+      7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00
+    };
+    double low = 0.02425;
+    if (p < low) {
+      double q = Math.sqrt(-2 * Math.log(p));
+      return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+          / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+    } else if (p <= 1 - low) {
+      double q = p - 0.5;
+      double r = q * q;
+      return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+          / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    } else {
+      return -inverseStandardNormal(1 - p);
+    }
+  }
+}
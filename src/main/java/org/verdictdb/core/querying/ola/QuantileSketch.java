@@ -0,0 +1,312 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.querying.ola;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A t-digest sketch for estimating the quantiles (e.g., the median) of weighted values.
+ *
+ * <p>The values are summarized by centroids, i.e., pairs of a mean and a weight. The centroids
+ * near both ends of the distribution are kept small, so that the extreme quantiles are as
+ * accurate as the median. A sketch keeps at most about compression * pi / 2 centroids; the
+ * quantiles of the default compression are usually accurate to a fraction of a percent in rank.
+ *
+ * <p>The sketches of different aggregation blocks are merged by re-clustering their centroids.
+ * Multiplying the weights of a sketch (e.g., by the scale factor of a tier) changes the relative
+ * importance of its values when it is merged with other sketches.
+ */
+public class QuantileSketch {
+
+  public static final double DEFAULT_COMPRESSION = 100;
+
+  private final double compression;
+
+  private double[] means = new double[0];
+
+  private double[] weights = new double[0];
+
+  private double totalWeight = 0;
+
+  private double min = Double.POSITIVE_INFINITY;
+
+  private double max = Double.NEGATIVE_INFINITY;
+
+  // the values not yet merged into the centroids
+  private double[] bufferMeans;
+
+  private double[] bufferWeights;
+
+  private int bufferSize = 0;
+
+  public QuantileSketch() {
+    this(DEFAULT_COMPRESSION);
+  }
+
+  public QuantileSketch(double compression) {
+    if (!(compression >= 10)) {
+      throw new IllegalArgumentException("The compression must be at least 10: " + compression);
+    }
+    this.compression = compression;
+    int bufferCapacity = (int) (5 * compression);
+    bufferMeans = new double[bufferCapacity];
+    bufferWeights = new double[bufferCapacity];
+  }
+
+  /**
+   * Adds a value retrieved from a database. Null values are ignored as in the other aggregates.
+   *
+   * @param value A number or its string representation
+   * @param weight The number of the occurrences of the value; null is regarded as one.
+   */
+  public void offer(Object value, Object weight) {
+    if (value == null) {
+      return;
+    }
+    double w = (weight == null) ? 1 : toDouble(weight);
+    add(toDouble(value), w);
+  }
+
+  private static double toDouble(Object value) {
+    if (value instanceof Number) {
+      return ((Number) value).doubleValue();
+    }
+    try {
+      return Double.parseDouble(value.toString().trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Quantiles can be computed only for numbers: " + value);
+    }
+  }
+
+  public void add(double value, double weight) {
+    if (Double.isNaN(value) || !(weight > 0)) {
+      return;
+    }
+    if (bufferSize == bufferMeans.length) {
+      compress();
+    }
+    bufferMeans[bufferSize] = value;
+    bufferWeights[bufferSize] = weight;
+    bufferSize++;
+    totalWeight += weight;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  /**
+   * Merges another sketch into this sketch. The other sketch is not changed.
+   *
+   * @param other A sketch of any compression
+   */
+  public void merge(QuantileSketch other) {
+    // the centroids are only replaced by compress(), but the buffer is reused; thus, the buffered
+    // values are copied in case the other sketch is this sketch.
+    double[] otherMeans = other.means;
+    double[] otherWeights = other.weights;
+    double[] otherBufferMeans = Arrays.copyOf(other.bufferMeans, other.bufferSize);
+    double[] otherBufferWeights = Arrays.copyOf(other.bufferWeights, other.bufferSize);
+    double otherMin = other.min;
+    double otherMax = other.max;
+    for (int i = 0; i < otherMeans.length; i++) {
+      add(otherMeans[i], otherWeights[i]);
+    }
+    for (int i = 0; i < otherBufferMeans.length; i++) {
+      add(otherBufferMeans[i], otherBufferWeights[i]);
+    }
+    min = Math.min(min, otherMin);
+    max = Math.max(max, otherMax);
+  }
+
+  /**
+   * Multiplies the weights of all the values by a factor.
+   *
+   * @param factor A positive number
+   */
+  public void scale(double factor) {
+    if (!(factor > 0)) {
+      throw new IllegalArgumentException("The scale factor must be positive: " + factor);
+    }
+    compress();
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] *= factor;
+    }
+    totalWeight *= factor;
+  }
+
+  /** Merges the buffered values into the centroids. */
+  private void compress() {
+    if (bufferSize == 0) {
+      return;
+    }
+    int count = means.length + bufferSize;
+    double[] allMeans = Arrays.copyOf(means, count);
+    double[] allWeights = Arrays.copyOf(weights, count);
+    System.arraycopy(bufferMeans, 0, allMeans, means.length, bufferSize);
+    System.arraycopy(bufferWeights, 0, allWeights, means.length, bufferSize);
+    bufferSize = 0;
+    sortByMeans(allMeans, allWeights);
+
+    double[] newMeans = new double[count];
+    double[] newWeights = new double[count];
+    int size = 0;
+    double weightBefore = 0; // the weight of the centroids before the current one
+    newMeans[0] = allMeans[0];
+    newWeights[0] = allWeights[0];
+    double kLeft = scaleFunction(0);
+    for (int i = 1; i < count; i++) {
+      double proposed = newWeights[size] + allWeights[i];
+      if (scaleFunction((weightBefore + proposed) / totalWeight) - kLeft <= 1) {
+        // the weighted mean is updated incrementally to avoid the loss of precision
+        newWeights[size] = proposed;
+        newMeans[size] += (allMeans[i] - newMeans[size]) * allWeights[i] / proposed;
+      } else {
+        weightBefore += newWeights[size];
+        kLeft = scaleFunction(weightBefore / totalWeight);
+        size++;
+        newMeans[size] = allMeans[i];
+        newWeights[size] = allWeights[i];
+      }
+    }
+    means = Arrays.copyOf(newMeans, size + 1);
+    weights = Arrays.copyOf(newWeights, size + 1);
+  }
+
+  /** Maps a quantile to the index of a centroid; the centroids span at most one index each. */
+  private double scaleFunction(double q) {
+    q = Math.min(Math.max(q, 0), 1);
+    return compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+  }
+
+  private static void sortByMeans(final double[] means, double[] weights) {
+    Integer[] order = new Integer[means.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(
+        order,
+        new Comparator<Integer>() {
+          @Override
+          public int compare(Integer a, Integer b) {
+            return Double.compare(means[a], means[b]);
+          }
+        });
+    double[] sortedMeans = new double[means.length];
+    double[] sortedWeights = new double[weights.length];
+    for (int i = 0; i < order.length; i++) {
+      sortedMeans[i] = means[order[i]];
+      sortedWeights[i] = weights[order[i]];
+    }
+    System.arraycopy(sortedMeans, 0, means, 0, means.length);
+    System.arraycopy(sortedWeights, 0, weights, 0, weights.length);
+  }
+
+  /**
+   * @param p A number between 0 and 1; e.g., 0.5 for the median
+   * @return The estimated p-th quantile; null if no values have been added.
+   */
+  public Double quantile(double p) {
+    if (p < 0 || p > 1) {
+      throw new IllegalArgumentException("The quantile must be between 0 and 1: " + p);
+    }
+    compress();
+    int n = means.length;
+    if (n == 0) {
+      return null;
+    }
+    if (n == 1) {
+      return means[0];
+    }
+
+    // a centroid is regarded as located at the center of the ranks it covers
+    double target = p * totalWeight;
+    double left = weights[0] / 2;
+    if (target <= left) {
+      return interpolate(min, means[0], target / left);
+    }
+    for (int i = 0; i < n - 1; i++) {
+      double right = left + (weights[i] + weights[i + 1]) / 2;
+      if (target <= right) {
+        return interpolate(means[i], means[i + 1], (target - left) / (right - left));
+      }
+      left = right;
+    }
+    double last = weights[n - 1] / 2;
+    return interpolate(means[n - 1], max, (target - left) / last);
+  }
+
+  private static double interpolate(double from, double to, double fraction) {
+    fraction = Math.min(Math.max(fraction, 0), 1);
+    return from + (to - from) * fraction;
+  }
+
+  /** @return The sum of the weights of the values added to this sketch */
+  public double getTotalWeight() {
+    return totalWeight;
+  }
+
+  /** @return The number of the centroids summarizing the values */
+  public int getCentroidCount() {
+    compress();
+    return means.length;
+  }
+
+  /**
+   * Serializes this sketch as "compression;min;max;mean:weight,mean:weight,...", so that a sketch
+   * can be stored in a varchar column.
+   */
+  @Override
+  public String toString() {
+    compress();
+    StringBuilder encoded = new StringBuilder();
+    encoded.append(compression).append(';').append(min).append(';').append(max).append(';');
+    for (int i = 0; i < means.length; i++) {
+      if (i > 0) {
+        encoded.append(',');
+      }
+      encoded.append(means[i]).append(':').append(weights[i]);
+    }
+    return encoded.toString();
+  }
+
+  /**
+   * @param encoded The string produced by toString()
+   * @return The sketch with the same centroids
+   */
+  public static QuantileSketch fromString(String encoded) {
+    String[] parts = encoded.split(";", -1);
+    if (parts.length != 4) {
+      throw new IllegalArgumentException("Not a serialized quantile sketch: " + encoded);
+    }
+    QuantileSketch sketch = new QuantileSketch(Double.parseDouble(parts[0]));
+    sketch.min = Double.parseDouble(parts[1]);
+    sketch.max = Double.parseDouble(parts[2]);
+    if (parts[3].isEmpty()) {
+      return sketch;
+    }
+    String[] centroids = parts[3].split(",");
+    sketch.means = new double[centroids.length];
+    sketch.weights = new double[centroids.length];
+    for (int i = 0; i < centroids.length; i++) {
+      int colon = centroids[i].indexOf(':');
+      sketch.means[i] = Double.parseDouble(centroids[i].substring(0, colon));
+      sketch.weights[i] = Double.parseDouble(centroids[i].substring(colon + 1));
+      sketch.totalWeight += sketch.weights[i];
+    }
+    return sketch;
+  }
+}
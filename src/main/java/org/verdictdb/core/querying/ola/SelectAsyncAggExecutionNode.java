@@ -2,22 +2,30 @@ package org.verdictdb.core.querying.ola;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.JdbcQueryResult;
 import org.verdictdb.core.execplan.ExecutionInfoToken;
 import org.verdictdb.core.querying.ExecutableNodeBase;
 import org.verdictdb.core.querying.IdCreator;
 import org.verdictdb.core.querying.QueryNodeBase;
 import org.verdictdb.core.querying.SelectAggExecutionNode;
 import org.verdictdb.core.querying.SubscriptionTicket;
+import org.verdictdb.core.scrambling.ScrambleMeta;
 import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
 import org.verdictdb.core.sqlobject.BaseTable;
 import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
 import org.verdictdb.core.sqlobject.CreateTableAsSelectQuery;
 import org.verdictdb.core.sqlobject.SelectItem;
 import org.verdictdb.core.sqlobject.SelectQuery;
@@ -25,6 +33,7 @@ import org.verdictdb.core.sqlobject.SqlConvertible;
 import org.verdictdb.core.sqlobject.UnnamedColumn;
 import org.verdictdb.exception.VerdictDBDbmsException;
 import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.SqlSyntax;
 
 
 /**
@@ -60,6 +69,15 @@ public class SelectAsyncAggExecutionNode extends AsyncAggExecutionNode {
 
   private InMemoryAggregate inMemoryAggregate = InMemoryAggregate.create();
 
+  // not null if the query is a top-k query, whose answer may be settled before all the blocks are
+  // processed; it is used only if the early stop is enabled.
+  private TopKTracker topKTracker = null;
+
+  private boolean isTopKEarlyStop = false;
+
+  // the number of the individual aggregation results combined so far
+  private int combinedSourceCount = 0;
+
   private SelectAsyncAggExecutionNode(IdCreator idCreator) {
     super(idCreator);
   }
@@ -107,10 +125,20 @@ public class SelectAsyncAggExecutionNode extends AsyncAggExecutionNode {
         createBaseQueryForReplacement(sourceAggMeta, sourceSelectList, placeholderTable, meta);
     node.aggColumns = aggColumnsAndQuery.getLeft();
     SelectQuery subquery = (SelectQuery) aggColumnsAndQuery.getMiddle();
+    Set<String> sketchAliases = findCountDistinctAliasesForSketches(sourceAggMeta);
+    useSketchesInBaseQuery(subquery, node.aggColumns, sketchAliases);
+    Set<String> quantileAliases = findQuantileAliases(sourceAggMeta);
+    scaleQuantileSketchesInBaseQuery(subquery, quantileAliases);
     Pair<SelectQuery, HashMap<String, UnnamedColumn>> pair =
         sumUpTierGroup(subquery, sourceAggMeta);
     node.selectQuery = pair.getLeft();
     ((AsyncAggExecutionNode) node).aggContents = pair.getRight();
+    mergeSketchesAcrossTiers(pair.getRight(), sketchAliases);
+    mergeQuantileSketchesAcrossTiers(pair.getRight(), quantileAliases);
+    node.inMemoryAggregate.setSketchColumns(sketchAliases);
+    node.inMemoryAggregate.setQuantileSketchColumns(quantileAliases);
+    node.inMemoryAggregate.setAggregateColumns(
+        sourceAggMeta.getAggAlias(), sourceAggMeta.getMaxminAggAlias());
 //    node.scrambledTableTierInfo =
 //        new ImmutableMap.Builder<Integer, String>().putAll(aggColumnsAndQuery.getRight()).build();
 
@@ -124,6 +152,7 @@ public class SelectAsyncAggExecutionNode extends AsyncAggExecutionNode {
     if (originalAggQuery.getHaving().isPresent()) {
       node.selectQuery.addHavingByAnd(originalAggQuery.getHaving().get());
     }
+    node.topKTracker = TopKTracker.create(originalAggQuery);
 
     // share same inMemoryAggregate object with selectAggExecutionNode
     for (ExecutableNodeBase source : node.getSources()) {
@@ -132,6 +161,128 @@ public class SelectAsyncAggExecutionNode extends AsyncAggExecutionNode {
     return node;
   }
 
+  /**
+   * The per-block count-distinct values of a hash scramble (on the count-distinct column) can
+   * simply be summed since the blocks include disjoint sets of the distinct values. For the other
+   * scrambles, the count-distinct columns are computed with HyperLogLog sketches, which are merged
+   * across blocks.
+   *
+   * @return The aliases of the count-distinct columns to be computed with sketches
+   */
+  static Set<String> findCountDistinctAliasesForSketches(AggMeta sourceAggMeta) {
+    Set<String> aliases = new HashSet<>();
+    boolean onHashScramblesOnly = true;
+    for (ScrambleMeta meta : sourceAggMeta.getTierColumnForScramble().keySet()) {
+      if (!meta.getMethodWithDefault("uniform").equalsIgnoreCase("hash")) {
+        onHashScramblesOnly = false;
+      }
+    }
+    if (onHashScramblesOnly) {
+      return aliases;
+    }
+
+    for (Map.Entry<Pair<String, UnnamedColumn>, String> entry
+        : sourceAggMeta.getAggColumnAggAliasPair().entrySet()) {
+      String opType = entry.getKey().getLeft();
+      if (opType.equals("countdistinct") || opType.equals("approx_distinct")) {
+        aliases.add(entry.getValue());
+      }
+    }
+    return aliases;
+  }
+
+  /**
+   * The sketch columns are neither scaled nor multiplied (they are strings); the scaling does not
+   * apply to distinct counts.
+   */
+  private static void useSketchesInBaseQuery(
+      SelectQuery baseQuery, List<ColumnOp> aggColumns, Set<String> sketchAliases) {
+    List<SelectItem> selectList = baseQuery.getSelectList();
+    for (int i = 0; i < selectList.size(); i++) {
+      if (!(selectList.get(i) instanceof AliasedColumn)) {
+        continue;
+      }
+      AliasedColumn item = (AliasedColumn) selectList.get(i);
+      if (sketchAliases.contains(item.getAliasName())) {
+        aggColumns.remove(item.getColumn());
+        selectList.set(
+            i,
+            new AliasedColumn(
+                new BaseColumn(INNER_RAW_AGG_TABLE_ALIAS, item.getAliasName()),
+                item.getAliasName()));
+      }
+    }
+  }
+
+  /**
+   * Replaces sum(sketch) with the estimate of the merged sketch, where the merge is over the
+   * tier combinations of the same group.
+   */
+  private static void mergeSketchesAcrossTiers(
+      Map<String, UnnamedColumn> aggContents, Set<String> sketchAliases) {
+    for (String alias : sketchAliases) {
+      ColumnOp sum = (ColumnOp) aggContents.get(alias);
+      if (sum == null) {
+        continue;
+      }
+      UnnamedColumn sketch = sum.getOperand();
+      sum.setOpType(InMemoryAggregate.SKETCH_ESTIMATE_FUNCTION);
+      sum.setOperand(
+          Arrays.<UnnamedColumn>asList(
+              new ColumnOp(InMemoryAggregate.SKETCH_MERGE_FUNCTION, sketch)));
+    }
+  }
+
+  /**
+   * The quantile columns (i.e., percentile, percentile_approx, and median) are always computed
+   * with quantile sketches, since the per-block quantiles cannot be combined otherwise.
+   *
+   * @return The aliases of the per-block quantile columns
+   */
+  static Set<String> findQuantileAliases(AggMeta sourceAggMeta) {
+    Set<String> aliases = new HashSet<>();
+    for (Map.Entry<Pair<String, UnnamedColumn>, String> entry
+        : sourceAggMeta.getAggColumnAggAliasPair().entrySet()) {
+      if (AsyncQueryExecutionPlan.isQuantileOpType(entry.getKey().getLeft())) {
+        aliases.add(entry.getValue());
+      }
+    }
+    return aliases;
+  }
+
+  /**
+   * Unlike the other sketches, the quantile sketches are scaled: the weights of the values are
+   * multiplied by the scale factor of their tier combination, so that the values of the tiers
+   * sampled at lower rates weigh more when the sketches are merged. The scale factor placeholder
+   * (i.e., the first operand) is replaced as for the other aggregates.
+   */
+  private static void scaleQuantileSketchesInBaseQuery(
+      SelectQuery baseQuery, Set<String> quantileAliases) {
+    for (SelectItem item : baseQuery.getSelectList()) {
+      if (item instanceof AliasedColumn
+          && quantileAliases.contains(((AliasedColumn) item).getAliasName())
+          && ((AliasedColumn) item).getColumn() instanceof ColumnOp) {
+        ((ColumnOp) ((AliasedColumn) item).getColumn())
+            .setOpType(InMemoryAggregate.QUANTILE_SCALE_FUNCTION);
+      }
+    }
+  }
+
+  /**
+   * Replaces sum(sketch) with the merged quantile sketch. The quantile of the merged sketch is
+   * computed when the original select list is restored, since the quantiles of the same column
+   * share a sketch.
+   */
+  private static void mergeQuantileSketchesAcrossTiers(
+      Map<String, UnnamedColumn> aggContents, Set<String> quantileAliases) {
+    for (String alias : quantileAliases) {
+      ColumnOp sum = (ColumnOp) aggContents.get(alias);
+      if (sum != null) {
+        sum.setOpType(InMemoryAggregate.QUANTILE_MERGE_FUNCTION);
+      }
+    }
+  }
+
   /**
    * The individual aggregation results are retrieved and sent to this method in tokens. Then,
    * this method combines those answers and scale them.
@@ -141,6 +292,7 @@ public class SelectAsyncAggExecutionNode extends AsyncAggExecutionNode {
     ExecutionInfoToken token = tokens.get(0);
     String table = (String) token.getValue("tableName");
     SelectQuery dependentQuery = (SelectQuery) token.getValue("dependentQuery");
+    combinedSourceCount++;
     
     if (aggMeta == null) {
       aggMeta = (AggMeta) token.getValue("aggMeta");
@@ -158,7 +310,19 @@ public class SelectAsyncAggExecutionNode extends AsyncAggExecutionNode {
       // here, the base aggregate functions (e.g., sum(col), count(col)) are composed to
       // reconstruct the original aggregate function (e.g., avg(col) = sum(col) / count(col))
       SelectQuery query = ((CreateTableAsSelectQuery) super.createQuery(tokens)).getSelect();
-      dbmsQueryResult = inMemoryAggregate.executeQuery(query);
+      if (isTopKEarlyStop) {
+        // the contenders ranked right below the top k groups are fetched together
+        query.addLimit(ConstantColumn.valueOf(topKTracker.getFetchCount()));
+        DbmsQueryResult fetched = inMemoryAggregate.executeQuery(query);
+        if (fetched != null) {
+          topKTracker.add(fetched);
+          fetched = ((JdbcQueryResult) fetched).createView(topKTracker.getK());
+        }
+        dbmsQueryResult = fetched;
+      } else {
+        boolean isFinal = combinedSourceCount >= getSourceCount();
+        dbmsQueryResult = inMemoryAggregate.executeAnswerQuery(query, isFinal);
+      }
 
 //      List<Boolean> isAggregated = new ArrayList<>();
 //      for (SelectItem sel : selectQuery.getSelectList()) {
@@ -250,7 +414,48 @@ public class SelectAsyncAggExecutionNode extends AsyncAggExecutionNode {
     this.scrambleMeta = meta;
   }
 
+  /**
+   * Sets the syntax of the database running the per-block queries, which then compute the
+   * registers of the count-distinct sketches if the database provides a hash function.
+   */
+  public void setBackendSyntax(SqlSyntax syntax) {
+    inMemoryAggregate.setBackendSyntax(syntax);
+  }
+
+  /**
+   * Bounds the memory occupied by the group state of the online aggregation.
+   *
+   * @param memoryBudget The budget in bytes; if 0, there is no limit.
+   * @param spillDirectory The directory of the files of the spilled state; if null, the default.
+   */
+  public void setAggregateMemoryBudget(long memoryBudget, String spillDirectory) {
+    inMemoryAggregate.setMemoryBudget(memoryBudget, spillDirectory);
+  }
+
+  /**
+   * Lets this node finish once the top k groups of its answer are settled, if the query is a
+   * top-k query; see TopKTracker.
+   *
+   * @param confidenceLevel The confidence level of the intervals compared, e.g., 0.95
+   */
+  public void enableTopKEarlyStop(double confidenceLevel) {
+    if (topKTracker != null) {
+      topKTracker.setConfidenceLevel(confidenceLevel);
+      isTopKEarlyStop = true;
+    }
+  }
+
+  /** @return True if the last answer is final even though some blocks have not been processed */
+  public boolean isAnswerSettled() {
+    return isTopKEarlyStop && topKTracker.isSettled();
+  }
+
   public void abort() {
     inMemoryAggregate.abort();
   }
+
+  /** Releases the group state once all the answers have been produced. */
+  public void close() {
+    inMemoryAggregate.close();
+  }
 }
@@ -0,0 +1,321 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.querying.ola;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.verdictdb.commons.TypeCasting;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.core.sqlobject.AliasReference;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.GroupingAttribute;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
+
+/**
+ * Decides whether the answer of a top-k query (i.e., GROUP BY ... ORDER BY an aggregate LIMIT k)
+ * is settled before all the blocks are processed.
+ *
+ * <p>Every progressive answer is fetched with some more rows than k, i.e., the contenders ranked
+ * right below the k-th group. The standard error of the ordering aggregate is estimated per group
+ * (see ProgressiveEstimate) while the group stays in the fetched rows. The answer is settled when
+ * the confidence intervals of the top k groups do not overlap with each other (i.e., their order
+ * is settled), nor with those of the contenders (i.e., their membership is settled). A contender
+ * whose error is not known yet is given the largest error of the fetched groups.
+ *
+ * <p>The groups ranked below the fetched rows are not seen at all. Their values are bounded by the
+ * value of the last fetched row since the answer is sorted, and their standard errors are assumed
+ * to be no larger than the largest error of the fetched groups; that is, the first unfetched group
+ * is regarded as a contender with the value of the last fetched row and the largest error.
+ *
+ * <p>A group entering the fetched rows starts a new estimate, whose error is unknown until the
+ * next answer; it is not assumed to have had zero per-block estimates in the earlier answers (see
+ * ProgressiveEstimate.withZeroBlocks), since it may have been cut by the LIMIT clause rather than
+ * had no rows. VerdictResultStreamWithErrors does not fill the groups of LIMIT queries with zeros
+ * either.
+ *
+ * <p>The ordering aggregate must be sum or count, whose answer covering n blocks is the mean of n
+ * per-block estimates as ProgressiveEstimate assumes; avg is a ratio of two such means, which the
+ * per-block estimates recovered from consecutive answers do not follow. The query must not have a
+ * HAVING clause, since the groups filtered by it are not tracked.
+ *
+ * <p>The error rate is corrected for the number of the comparisons and for the repeated checks.
+ * The answer is declared settled at most once, but it is checked after every answer; thus, the
+ * probability 1 - confidenceLevel of a wrong answer is spent over the checks: the j-th check is
+ * allowed (1 - confidenceLevel) / (j * (j + 1)), whose sum over all the checks is 1 -
+ * confidenceLevel. Within a check, the allowance is split evenly among the comparisons (i.e., the
+ * k - 1 adjacent pairs of the top k groups, one per contender, and one for the unfetched groups;
+ * Bonferroni). Two intervals of z standard errors that do not overlap order their groups wrongly
+ * with a probability of at most 1 - Phi(z), so the intervals are as wide as the allowance of a
+ * comparison requires. This bound holds under the normal approximation of the per-block means
+ * with the estimated standard errors taken as exact; with a few blocks, the estimated errors are
+ * themselves uncertain, which MIN_ANSWER_COUNT only partly offsets, and the error assumed for the
+ * unseen groups is a heuristic.
+ */
+public class TopKTracker {
+
+  /** The answers covering fewer blocks are never regarded as settled. */
+  static final int MIN_ANSWER_COUNT = 3;
+
+  /** The contenders fetched in addition to the top k groups are at least this many. */
+  static final int MIN_CONTENDER_COUNT = 10;
+
+  static final double DEFAULT_CONFIDENCE_LEVEL = 0.95;
+
+  /** The indexes of the grouping columns, which identify a group across the answers */
+  private final List<Integer> groupIndexes;
+
+  private final int orderIndex;
+
+  private final boolean isDescending;
+
+  private final int k;
+
+  /** The probability of declaring a wrong answer settled, over all the checks */
+  private double errorRate = 1 - DEFAULT_CONFIDENCE_LEVEL;
+
+  private int answerCount = 0;
+
+  /** The estimates of the groups of the last answer; the other groups are forgotten. */
+  private Map<List<Object>, ProgressiveEstimate> estimates = new HashMap<>();
+
+  private boolean isSettled = false;
+
+  TopKTracker(List<Integer> groupIndexes, int orderIndex, boolean isDescending, int k) {
+    this.groupIndexes = groupIndexes;
+    this.orderIndex = orderIndex;
+    this.isDescending = isDescending;
+    this.k = k;
+  }
+
+  /**
+   * @param query An aggregate query with ORDER BY and LIMIT clauses
+   * @return null if the query is not a top-k query supported by this class
+   */
+  public static TopKTracker create(SelectQuery query) {
+    if (query.getOrderby().isEmpty()
+        || !query.getLimit().isPresent()
+        || query.getHaving().isPresent()
+        || query.getGroupby().isEmpty()) {
+      return null;
+    }
+    Integer k = parseLimit(query.getLimit().get());
+    GroupingAttribute orderAttribute = query.getOrderby().get(0).getAttribute();
+    if (k == null || !(orderAttribute instanceof AliasReference)) {
+      return null;
+    }
+    String orderAlias = ((AliasReference) orderAttribute).getAliasName();
+
+    List<Integer> groupIndexes = new ArrayList<>();
+    int orderIndex = -1;
+    List<SelectItem> selectList = query.getSelectList();
+    for (int i = 0; i < selectList.size(); i++) {
+      SelectItem item = selectList.get(i);
+      if (item instanceof AsteriskColumn) {
+        return null;
+      } else if (!item.isAggregateColumn()) {
+        groupIndexes.add(i);
+      } else if (item instanceof AliasedColumn
+          && ((AliasedColumn) item).getAliasName().equalsIgnoreCase(orderAlias)
+          && isSupportedAggregate(((AliasedColumn) item).getColumn())) {
+        orderIndex = i;
+      }
+    }
+    if (orderIndex < 0) {
+      return null;
+    }
+    boolean isDescending = query.getOrderby().get(0).getOrder().equalsIgnoreCase("desc");
+    return new TopKTracker(groupIndexes, orderIndex, isDescending, k);
+  }
+
+  private static Integer parseLimit(UnnamedColumn limit) {
+    if (!(limit instanceof ConstantColumn)) {
+      return null;
+    }
+    try {
+      int k = Integer.parseInt(((ConstantColumn) limit).getValue().toString());
+      return (k > 0) ? k : null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static boolean isSupportedAggregate(UnnamedColumn column) {
+    if (!(column instanceof ColumnOp)) {
+      return false;
+    }
+    String opType = ((ColumnOp) column).getOpType();
+    return opType.equals("sum") || opType.equals("count");
+  }
+
+  /** @param confidenceLevel The confidence level of the intervals compared, e.g., 0.95 */
+  public void setConfidenceLevel(double confidenceLevel) {
+    if (confidenceLevel <= 0 || confidenceLevel >= 1) {
+      throw new IllegalArgumentException(
+          "The confidence level must be between 0 and 1: " + confidenceLevel);
+    }
+    errorRate = 1 - confidenceLevel;
+  }
+
+  public int getK() {
+    return k;
+  }
+
+  /** @return The number of the rows to fetch for an answer, including the contenders */
+  public int getFetchCount() {
+    return k + Math.max(k, MIN_CONTENDER_COUNT);
+  }
+
+  /**
+   * Updates the estimates with the next progressive answer.
+   *
+   * @param answer The answer with at most getFetchCount() rows in the order of the query. The
+   *     answer is read from its beginning and rewound afterwards.
+   * @return True if the top k groups of the answer are settled
+   */
+  public boolean add(DbmsQueryResult answer) {
+    List<List<Object>> rows = new ArrayList<>();
+    answer.rewind();
+    while (answer.next()) {
+      List<Object> row = new ArrayList<>(answer.getColumnCount());
+      for (int i = 0; i < answer.getColumnCount(); i++) {
+        row.add(answer.getValue(i));
+      }
+      rows.add(row);
+    }
+    answer.rewind();
+    return add(rows);
+  }
+
+  boolean add(List<List<Object>> rows) {
+    answerCount++;
+    Map<List<Object>, ProgressiveEstimate> newEstimates = new HashMap<>();
+    List<Double> values = new ArrayList<>();
+    List<Double> errors = new ArrayList<>();
+
+    for (List<Object> row : rows) {
+      List<Object> group = new ArrayList<>(groupIndexes.size());
+      for (int index : groupIndexes) {
+        group.add(row.get(index));
+      }
+      Object orderValue = row.get(orderIndex);
+      Double value = (orderValue instanceof Number) ? TypeCasting.toDouble(orderValue) : null;
+      if (value == null || Double.isNaN(value)) {
+        values.add(null);
+        errors.add(null);
+        continue;
+      }
+
+      // the per-block estimates of a group are recovered only from consecutive answers
+      ProgressiveEstimate estimate = estimates.get(group);
+      if (estimate == null) {
+        estimate = ProgressiveEstimate.startingFrom(answerCount, value);
+      } else {
+        estimate.add(value);
+      }
+      newEstimates.put(group, estimate);
+      values.add(isDescending ? value : -value);
+      errors.add(estimate.getStandardError());
+    }
+    estimates = newEstimates;
+
+    boolean hasUnfetchedGroups = rows.size() >= getFetchCount();
+    isSettled = answerCount >= MIN_ANSWER_COUNT && isSettled(values, errors, hasUnfetchedGroups);
+    return isSettled;
+  }
+
+  /**
+   * @param values The values of the ordering aggregate in the descending order; null if unknown
+   * @param errors The standard errors of the values; null if unknown
+   * @param hasUnfetchedGroups True if some groups may be ranked below the fetched rows
+   */
+  private boolean isSettled(
+      List<Double> values, List<Double> errors, boolean hasUnfetchedGroups) {
+    if (values.size() <= k) {
+      // the groups not found yet might be ranked in the top k
+      return false;
+    }
+    int comparisonCount = (values.size() - 1) + (hasUnfetchedGroups ? 1 : 0);
+    double zScore = getZScore(comparisonCount);
+    double largestError = 0;
+    for (int i = 0; i < k; i++) {
+      if (values.get(i) == null || errors.get(i) == null) {
+        return false;
+      }
+      largestError = Math.max(largestError, errors.get(i));
+    }
+    for (int i = k; i < values.size(); i++) {
+      if (errors.get(i) != null) {
+        largestError = Math.max(largestError, errors.get(i));
+      }
+    }
+
+    // the order of the top k groups
+    for (int i = 0; i + 1 < k; i++) {
+      double lower = values.get(i) - zScore * errors.get(i);
+      double upper = values.get(i + 1) + zScore * errors.get(i + 1);
+      if (lower <= upper) {
+        return false;
+      }
+    }
+
+    // the membership of the top k groups
+    double lowerOfKth = values.get(k - 1) - zScore * errors.get(k - 1);
+    Double lastValue = null;
+    for (int i = k; i < values.size(); i++) {
+      if (values.get(i) == null) {
+        continue;
+      }
+      double error = (errors.get(i) == null) ? largestError : errors.get(i);
+      if (lowerOfKth <= values.get(i) + zScore * error) {
+        return false;
+      }
+      lastValue = values.get(i);
+    }
+
+    // the first unfetched group, whose value is at most the last fetched one
+    if (hasUnfetchedGroups) {
+      double bound = (lastValue == null) ? values.get(k - 1) : lastValue;
+      if (lowerOfKth <= bound + zScore * largestError) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param comparisonCount The number of the comparisons of the current check
+   * @return The half width of the intervals compared, in the units of the standard error
+   */
+  double getZScore(int comparisonCount) {
+    int check = answerCount - MIN_ANSWER_COUNT + 1;
+    double allowance = errorRate / ((double) check * (check + 1)) / comparisonCount;
+    return -ProgressiveEstimate.inverseStandardNormal(allowance);
+  }
+
+  /** @return True if the top k groups of the last answer are settled */
+  public boolean isSettled() {
+    return isSettled;
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.scrambling;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlwriter.QueryToSql;
+
+/**
+ * Per-block statistics of a scramble: the number of rows in each block, and for each of the
+ * selected columns, the min, max, and the number of non-null values in each block. Queries use them
+ * to skip the blocks that cannot contain any row satisfying their filters.
+ *
+ * <p>Numeric values are stored as doubles; date and time values are stored as the epoch
+ * milliseconds of their wall-clock time in UTC (see toEpochMillisInUtc()), so that the zone map does
+ * not depend on the time zone of the JVM that computed it.
+ * The stored min (max) is rounded down (up) by one ulp so that the precision loss of the conversion
+ * never makes a block look narrower than it is. The ranges are not kept for the other types (e.g.,
+ * strings), whose ordering depends on the collation of the database; only the null counts are kept
+ * for them.
+ */
+public class BlockZoneMap implements Serializable {
+
+  private static final long serialVersionUID = 6254181377526307741L;
+
+  private static final String BLOCK_ALIAS = "verdictdbblock";
+
+  private static final String ROW_COUNT_ALIAS = "verdictdbrowcount";
+
+  /** The columns for which the statistics are kept. */
+  List<String> columnNames = new ArrayList<>();
+
+  /** The number of rows in each block. */
+  List<Long> rowCounts = new ArrayList<>();
+
+  /** Lower-cased column name -> the statistics of the column. */
+  Map<String, ColumnZone> columns = new HashMap<>();
+
+  public BlockZoneMap() {}
+
+  /**
+   * Computes the zone map of a scramble with a single group-by query.
+   *
+   * @param conn The connection to the database where the scramble is stored
+   * @param meta The meta of the scramble
+   * @param columnNames The columns for which the min and max are computed
+   * @return The zone map
+   * @throws VerdictDBException
+   */
+  public static BlockZoneMap compute(
+      DbmsConnection conn, ScrambleMeta meta, List<String> columnNames)
+      throws VerdictDBException {
+    String tableAlias = "t";
+    String blockColumn = meta.getAggregationBlockColumn();
+    List<SelectItem> selectList = new ArrayList<>();
+    selectList.add(new AliasedColumn(new BaseColumn(tableAlias, blockColumn), BLOCK_ALIAS));
+    selectList.add(new AliasedColumn(ColumnOp.count(), ROW_COUNT_ALIAS));
+    for (int i = 0; i < columnNames.size(); i++) {
+      BaseColumn column = new BaseColumn(tableAlias, columnNames.get(i));
+      selectList.add(new AliasedColumn(new ColumnOp("min", column), "verdictdbmin" + i));
+      selectList.add(new AliasedColumn(new ColumnOp("max", column), "verdictdbmax" + i));
+      selectList.add(new AliasedColumn(new ColumnOp("count", column), "verdictdbnonnull" + i));
+    }
+    SelectQuery query =
+        SelectQuery.create(
+            selectList, new BaseTable(meta.getSchemaName(), meta.getStoredTableName(), tableAlias));
+    query.addGroupby(new BaseColumn(tableAlias, blockColumn));
+    DbmsQueryResult result = conn.execute(QueryToSql.convert(conn.getSyntax(), query));
+
+    int blockCount = meta.getAggregationBlockCount();
+    BlockZoneMap zoneMap = createEmpty(columnNames, blockCount);
+
+    while (result.next()) {
+      int block = result.getInt(0);
+      if (block < 0 || block >= blockCount) {
+        continue;
+      }
+      zoneMap.rowCounts.set(block, result.getLong(1));
+      for (int i = 0; i < columnNames.size(); i++) {
+        ColumnZone zone = zoneMap.columns.get(columnNames.get(i).toLowerCase());
+        zone.nonNullCounts.set(block, result.getLong(2 + 3 * i + 2));
+        zone.setRange(block, result.getValue(2 + 3 * i), result.getValue(2 + 3 * i + 1));
+      }
+    }
+    return zoneMap;
+  }
+
+  /**
+   * Creates an empty zone map to which the rows of a scramble are added one by one (see
+   * addRow()), e.g., while the rows are being written by a client-side build.
+   *
+   * @param columnNames The columns for which the min and max are kept
+   * @param blockCount The number of blocks of the scramble
+   */
+  static BlockZoneMap createEmpty(List<String> columnNames, int blockCount) {
+    BlockZoneMap zoneMap = new BlockZoneMap();
+    zoneMap.columnNames = new ArrayList<>(columnNames);
+    zoneMap.rowCounts = new ArrayList<>(Collections.nCopies(blockCount, 0L));
+    for (String name : columnNames) {
+      zoneMap.columns.put(name.toLowerCase(), new ColumnZone(blockCount));
+    }
+    return zoneMap;
+  }
+
+  /**
+   * Updates the statistics of a block with a row.
+   *
+   * @param block The block of the row
+   * @param values The values of the row for getColumnNames() in the same order
+   */
+  void addRow(int block, List<Object> values) {
+    rowCounts.set(block, rowCounts.get(block) + 1);
+    for (int i = 0; i < columnNames.size(); i++) {
+      Object value = values.get(i);
+      if (value != null) {
+        columns.get(columnNames.get(i).toLowerCase()).add(block, value);
+      }
+    }
+  }
+
+  public List<String> getColumnNames() {
+    return columnNames;
+  }
+
+  public boolean hasColumn(String columnName) {
+    return columns.containsKey(columnName.toLowerCase());
+  }
+
+  @JsonIgnore
+  public int getBlockCount() {
+    return rowCounts.size();
+  }
+
+  /**
+   * JDBC drivers return the date and time values without a time zone as the instants of their
+   * wall-clock time in the JVM's time zone. This converts them back to the wall-clock time, which
+   * is then expressed as the epoch milliseconds in UTC.
+   */
+  public static long toEpochMillisInUtc(java.util.Date value) {
+    long millis = value.getTime();
+    return millis + TimeZone.getDefault().getOffset(millis);
+  }
+
+  /** @return True if the min and max values are stored as epoch milliseconds. */
+  public boolean isTemporal(String columnName) {
+    ColumnZone zone = columns.get(columnName.toLowerCase());
+    return zone != null && zone.temporal;
+  }
+
+  /** @return False only if every value of the column in the block is known to be null. */
+  public boolean mayContainNonNull(String columnName, int block) {
+    ColumnZone zone = columns.get(columnName.toLowerCase());
+    return zone == null || zone.nonNullCounts.get(block) > 0;
+  }
+
+  /** @return False only if no value of the column in the block is known to be null. */
+  public boolean mayContainNull(String columnName, int block) {
+    ColumnZone zone = columns.get(columnName.toLowerCase());
+    return zone == null || zone.nonNullCounts.get(block) < rowCounts.get(block);
+  }
+
+  /**
+   * Checks if the block may contain a value within the given range. A null bound means the range
+   * is unbounded on that side.
+   *
+   * @return False only if no value of the column in the block is known to be within the range.
+   */
+  public boolean mayOverlap(
+      String columnName,
+      int block,
+      Double low,
+      boolean lowInclusive,
+      Double high,
+      boolean highInclusive) {
+    ColumnZone zone = columns.get(columnName.toLowerCase());
+    if (zone == null) {
+      return true;
+    }
+    if (zone.nonNullCounts.get(block) == 0) {
+      return false;
+    }
+    Double min = zone.min.get(block);
+    Double max = zone.max.get(block);
+    if (min == null || max == null) {
+      // the range is unknown (e.g., strings)
+      return true;
+    }
+    if (low != null && (lowInclusive ? max < low : max <= low)) {
+      return false;
+    }
+    if (high != null && (highInclusive ? min > high : min >= high)) {
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return HashCodeBuilder.reflectionHashCode(this);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return EqualsBuilder.reflectionEquals(this, obj);
+  }
+
+  @Override
+  public String toString() {
+    return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+  }
+
+  /** The statistics of a single column. */
+  public static class ColumnZone implements Serializable {
+
+    private static final long serialVersionUID = -4136279413420936112L;
+
+    boolean temporal = false;
+
+    List<Double> min = new ArrayList<>();
+
+    List<Double> max = new ArrayList<>();
+
+    List<Long> nonNullCounts = new ArrayList<>();
+
+    public ColumnZone() {}
+
+    ColumnZone(int blockCount) {
+      min = new ArrayList<>(Collections.<Double>nCopies(blockCount, null));
+      max = new ArrayList<>(Collections.<Double>nCopies(blockCount, null));
+      nonNullCounts = new ArrayList<>(Collections.nCopies(blockCount, 0L));
+    }
+
+    void setRange(int block, Object minValue, Object maxValue) {
+      Double minDouble = toDouble(minValue);
+      Double maxDouble = toDouble(maxValue);
+      if (minDouble == null || maxDouble == null) {
+        return;
+      }
+      // the values of a column are of the same type in every block
+      temporal = minValue instanceof java.util.Date;
+      min.set(block, Math.nextAfter(minDouble, Double.NEGATIVE_INFINITY));
+      max.set(block, Math.nextAfter(maxDouble, Double.POSITIVE_INFINITY));
+    }
+
+    void add(int block, Object value) {
+      nonNullCounts.set(block, nonNullCounts.get(block) + 1);
+      Double v = toDouble(value);
+      if (v == null) {
+        return;
+      }
+      temporal = value instanceof java.util.Date;
+      double low = Math.nextAfter(v, Double.NEGATIVE_INFINITY);
+      double high = Math.nextAfter(v, Double.POSITIVE_INFINITY);
+      if (min.get(block) == null || low < min.get(block)) {
+        min.set(block, low);
+      }
+      if (max.get(block) == null || high > max.get(block)) {
+        max.set(block, high);
+      }
+    }
+
+    private static Double toDouble(Object value) {
+      if (value instanceof Number) {
+        return ((Number) value).doubleValue();
+      } else if (value instanceof java.util.Date) {
+        return (double) toEpochMillisInUtc((java.util.Date) value);
+      } else {
+        return null;
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return HashCodeBuilder.reflectionHashCode(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return EqualsBuilder.reflectionEquals(this, obj);
+    }
+  }
+}
@@ -45,6 +45,7 @@ import org.verdictdb.exception.VerdictDBValueException;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -99,6 +100,17 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
 
   private int totalNumberOfblocks = -1;
 
+  /**
+   * The low and high criteria for outlier values of every numeric column (in the order of the
+   * columns). This is computed when the scramble is created and stored in the metastore together
+   * with this method, so that appending to the scramble does not scan the original table again for
+   * the same statistics.
+   */
+  private Map<String, List<Double>> outlierCriteria = null;
+
+  /** The size of the original table at the time outlierCriteria was computed. */
+  private long statisticsTableSize = -1;
+
   private static VerdictDBLogger log =
       VerdictDBLogger.getLogger(FastConvergeScramblingMethod.class);
 
@@ -145,6 +157,11 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
    * queryResult: this contains avg, std, and count 2. schemaName, tableName: this is the name of
    * the temporary tables that contains a list of large groups. 3. queryResult: this contains the
    * sum of the sizes of large groups.
+   *
+   * <p>When the primary column is given, the number of outlier tuples is estimated in the same
+   * sampled pass that finds large groups (instead of a separate full scan). Otherwise, it is
+   * counted by OutlierProportionNode. If the statistics have already been computed (i.e., this
+   * method has been restored from the metastore), only the list of large groups is computed.
    */
   @Override
   public List<ExecutableNodeBase> getStatisticsNode(
@@ -156,6 +173,21 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
 
     List<ExecutableNodeBase> statisticsNodes = new ArrayList<>();
 
+    if (outlierCriteria != null) {
+      // reuses the statistics obtained when the scramble was created; the large group list must be
+      // recreated since it is joined with the original table.
+      if (primaryColumnName != null) {
+        TempIdCreatorInScratchpadSchema idCreator =
+            new TempIdCreatorInScratchpadSchema(scratchpadSchemaName);
+        LargeGroupListNode ll =
+            new LargeGroupListNode(
+                idCreator, oldSchemaName, oldTableName, primaryColumnName, blockSize);
+        ll.setTableSize(statisticsTableSize);
+        statisticsNodes.add(ll);
+      }
+      return statisticsNodes;
+    }
+
     // outlier checking
     PercentilesAndCountNode pc =
         new PercentilesAndCountNode(
@@ -166,20 +198,20 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
             primaryColumnName);
     statisticsNodes.add(pc);
 
-    // outlier proportion computation
-    OutlierProportionNode op = new OutlierProportionNode(oldSchemaName, oldTableName);
-    op.subscribeTo(pc);
-    statisticsNodes.add(op);
-
-    // primary group's distribution checking
-    if (primaryColumnName != null) {
+    // outlier proportion computation; with a primary column, this is done by LargeGroupListNode.
+    if (primaryColumnName == null) {
+      OutlierProportionNode op = new OutlierProportionNode(oldSchemaName, oldTableName);
+      op.subscribeTo(pc);
+      statisticsNodes.add(op);
+    } else {
+      // primary group's distribution checking
       TempIdCreatorInScratchpadSchema idCreator =
           new TempIdCreatorInScratchpadSchema(scratchpadSchemaName);
       LargeGroupListNode ll =
           new LargeGroupListNode(
               idCreator, oldSchemaName, oldTableName, primaryColumnName, blockSize);
       // subscribed to 'pc' to obtain count(*) of the table, which is used to infer
-      // appropriate sampling ratio.
+      // appropriate sampling ratio, and the statistics for outlier values.
       ll.subscribeTo(pc, 0);
 
       LargeGroupSizeNode ls = new LargeGroupSizeNode(primaryColumnName);
@@ -201,7 +233,48 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
 
   static UnnamedColumn createOutlierTuplePredicate(
       DbmsQueryResult percentileAndCountResult, String sourceTableAlias, boolean printLog) {
+    return createOutlierTuplePredicate(
+        computeOutlierCriteria(percentileAndCountResult, printLog), sourceTableAlias);
+  }
+
+  static UnnamedColumn createOutlierTuplePredicate(
+      Map<String, List<Double>> outlierCriteria, String sourceTableAlias) {
     UnnamedColumn outlierPredicate = null;
+    if (outlierCriteria == null) {
+      return null;
+    }
+
+    for (Map.Entry<String, List<Double>> criteria : outlierCriteria.entrySet()) {
+      String originalColumnName = criteria.getKey();
+      double lowCriteria = criteria.getValue().get(0);
+      double highCriteria = criteria.getValue().get(1);
+      UnnamedColumn newOrPredicate =
+          ColumnOp.or(
+              ColumnOp.less(
+                  new BaseColumn(sourceTableAlias, originalColumnName),
+                  ConstantColumn.valueOf(lowCriteria)),
+              ColumnOp.greater(
+                  new BaseColumn(sourceTableAlias, originalColumnName),
+                  ConstantColumn.valueOf(highCriteria)));
+
+      if (outlierPredicate == null) {
+        outlierPredicate = newOrPredicate;
+      } else {
+        outlierPredicate = ColumnOp.or(outlierPredicate, newOrPredicate);
+      }
+    }
+
+    return outlierPredicate;
+  }
+
+  /**
+   * @param percentileAndCountResult The result of PercentilesAndCountNode
+   * @return Column name -> [low criteria, high criteria]; the values outside the range are
+   *     outliers.
+   */
+  static Map<String, List<Double>> computeOutlierCriteria(
+      DbmsQueryResult percentileAndCountResult, boolean printLog) {
+    Map<String, List<Double>> outlierCriteria = new LinkedHashMap<>();
 
     percentileAndCountResult.rewind();
     percentileAndCountResult.next(); // assumes that the original table has at least one row.
@@ -227,27 +300,14 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
                   columnName, lowCriteria, highCriteria));
         }
 
-        UnnamedColumn newOrPredicate =
-            ColumnOp.or(
-                ColumnOp.less(
-                    new BaseColumn(sourceTableAlias, originalColumnName),
-                    ConstantColumn.valueOf(lowCriteria)),
-                ColumnOp.greater(
-                    new BaseColumn(sourceTableAlias, originalColumnName),
-                    ConstantColumn.valueOf(highCriteria)));
-
-        if (outlierPredicate == null) {
-          outlierPredicate = newOrPredicate;
-        } else {
-          outlierPredicate = ColumnOp.or(outlierPredicate, newOrPredicate);
-        }
+        outlierCriteria.put(originalColumnName, Arrays.asList(lowCriteria, highCriteria));
       }
       if (columnName.equals(PercentilesAndCountNode.TOTAL_COUNT_ALIAS_NAME)) {
         // do nothing
       }
     }
 
-    return outlierPredicate;
+    return outlierCriteria;
   }
 
   @Override
@@ -257,10 +317,19 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
     //    String largeGroupListSchemaName = (String) metaData.get("1schemaName");
     //    String largeGroupListTableName = (String) metaData.get("1tableName");
 
+    // the criteria are kept (and stored in the metastore) for later appends
+    if (percentileAndCountResult != null) {
+      outlierCriteria = computeOutlierCriteria(percentileAndCountResult, false);
+      percentileAndCountResult.rewind();
+      percentileAndCountResult.next();
+      statisticsTableSize =
+          percentileAndCountResult.getLong(PercentilesAndCountNode.TOTAL_COUNT_ALIAS_NAME);
+    }
+
     // Tier 0
     UnnamedColumn tier0Predicate =
         createOutlierTuplePredicate(
-            percentileAndCountResult, FastConvergeScramblingMethod.MAIN_TABLE_SOURCE_ALIAS_NAME);
+            outlierCriteria, FastConvergeScramblingMethod.MAIN_TABLE_SOURCE_ALIAS_NAME);
 
     // Tier 1
     // select (case ... when t2.groupSize is null then 1 else 2 end) as verdictdbtier
@@ -323,11 +392,7 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
     int totalNumberOfblocks = tableSizeAndBlockNumber.getRight();
     long evenBlockSize = calcuteEvenBlockSize(totalNumberOfblocks, tableSize);
 
-    DbmsQueryResult outlierProportion =
-        (DbmsQueryResult) metaData.get(OutlierProportionNode.class.getSimpleName());
-    outlierProportion.rewind();
-    outlierProportion.next();
-    outlierSize = outlierProportion.getLong(0);
+    outlierSize = retrieveOutlierSize(metaData);
 
     if (outlierSize * 2 >= tableSize) {
       // too large outlier -> no special treatment
@@ -490,6 +555,38 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
     tier2CumulProbDist = cumulProbDist;
   }
 
+  /**
+   * The number of outlier tuples is either counted exactly by OutlierProportionNode or estimated
+   * from a sample by LargeGroupListNode (and summed up by LargeGroupSizeNode).
+   */
+  private long retrieveOutlierSize(Map<String, Object> metaData) {
+    DbmsQueryResult outlierProportion =
+        (DbmsQueryResult) metaData.get(OutlierProportionNode.class.getSimpleName());
+    if (outlierProportion != null) {
+      outlierProportion.rewind();
+      outlierProportion.next();
+      return outlierProportion.getLong(0);
+    }
+
+    DbmsQueryResult largeGroupSizeResult =
+        (DbmsQueryResult) metaData.get(LargeGroupSizeNode.class.getSimpleName());
+    if (largeGroupSizeResult == null) {
+      return 0;
+    }
+    largeGroupSizeResult.rewind();
+    largeGroupSizeResult.next();
+    for (int i = 0; i < largeGroupSizeResult.getColumnCount(); i++) {
+      String columnName = largeGroupSizeResult.getColumnName(i);
+      if (columnName.equalsIgnoreCase(OutlierProportionNode.OUTLIER_SIZE_ALIAS)) {
+        if (largeGroupSizeResult.getValue(i) == null) {
+          return 0; // no tuple has been sampled
+        }
+        return Math.round(largeGroupSizeResult.getDouble(i));
+      }
+    }
+    return 0;
+  }
+
   // Helper
   private Pair<Long, Integer> retrieveTableSizeAndBlockNumber(Map<String, Object> metaData) {
     DbmsQueryResult tableSizeResult =
@@ -764,10 +861,18 @@ class LargeGroupListNode extends CreateTableAsSelectNode {
 
   private long blockSize;
 
+  /** The size of the original table if known in advance; otherwise, -1. */
+  private long tableSize = -1;
+
   public static final String PRIMARY_GROUP_RENAME = "verdictdbrenameprimarygroup";
 
   public static final String LARGE_GROUP_SIZE_COLUMN_ALIAS = "groupSize";
 
+  public static final String OUTLIER_SIZE_COLUMN_ALIAS = "verdictdboutliersize";
+
+  /** Set to true if the created table includes the (estimated) number of outlier tuples. */
+  private boolean outlierSizeIncluded = false;
+
   public LargeGroupListNode(
       IdCreator idCreator,
       String schemaName,
@@ -781,10 +886,19 @@ class LargeGroupListNode extends CreateTableAsSelectNode {
     this.blockSize = blockSize;
   }
 
+  void setTableSize(long tableSize) {
+    this.tableSize = tableSize;
+  }
+
   /**
    * create table some-temp-table-name as select primaryGroup, count(*) * (1/p0) from
    * schemaName.tableName where rand() < p0 group by primaryGroup;
    *
+   * <p>If the statistics for outlier values are passed, the sampled rows are also used to estimate
+   * the number of outlier tuples in each group, i.e., sum(case when outlier then 1 else 0 end) *
+   * (1/p0). This saves a separate scan of the original table. The relative standard error of the
+   * estimated total is about 1/sqrt(p0 * (the number of outlier tuples)).
+   *
    * @throws VerdictDBException
    */
   @Override
@@ -793,13 +907,15 @@ class LargeGroupListNode extends CreateTableAsSelectNode {
 
     // search for the token that contains the table size.
     String countNodeKey = PercentilesAndCountNode.class.getSimpleName();
-    long tableSize = -1;
+    long tableSize = this.tableSize;
+    DbmsQueryResult percentileAndCountResult = null;
     for (ExecutionInfoToken token : tokens) {
       if (token.containsKey(countNodeKey)) {
-        DbmsQueryResult tableSizeResult = (DbmsQueryResult) token.getValue(countNodeKey);
-        tableSizeResult.rewind();
-        tableSizeResult.next();
-        tableSize = tableSizeResult.getLong(PercentilesAndCountNode.TOTAL_COUNT_ALIAS_NAME);
+        percentileAndCountResult = (DbmsQueryResult) token.getValue(countNodeKey);
+        percentileAndCountResult.rewind();
+        percentileAndCountResult.next();
+        tableSize =
+            percentileAndCountResult.getLong(PercentilesAndCountNode.TOTAL_COUNT_ALIAS_NAME);
         break;
       }
     }
@@ -823,6 +939,28 @@ class LargeGroupListNode extends CreateTableAsSelectNode {
                 ColumnOp.divide(ConstantColumn.valueOf(1.0), ConstantColumn.valueOf(p0))),
             LARGE_GROUP_SIZE_COLUMN_ALIAS));
 
+    UnnamedColumn outlierPredicate = null;
+    if (percentileAndCountResult != null) {
+      boolean printInfoLog = true;
+      outlierPredicate =
+          FastConvergeScramblingMethod.createOutlierTuplePredicate(
+              percentileAndCountResult, tableSourceAlias, printInfoLog);
+    }
+    if (outlierPredicate != null) {
+      selectList.add(
+          new AliasedColumn(
+              ColumnOp.multiply(
+                  ColumnOp.sum(
+                      ColumnOp.casewhen(
+                          Arrays.<UnnamedColumn>asList(
+                              outlierPredicate,
+                              ConstantColumn.valueOf(1),
+                              ConstantColumn.valueOf(0)))),
+                  ColumnOp.divide(ConstantColumn.valueOf(1.0), ConstantColumn.valueOf(p0))),
+              OUTLIER_SIZE_COLUMN_ALIAS));
+      outlierSizeIncluded = true;
+    }
+
     // from
     SelectQuery selectQuery =
         SelectQuery.create(selectList, new BaseTable(schemaName, tableName, tableSourceAlias));
@@ -845,6 +983,9 @@ class LargeGroupListNode extends CreateTableAsSelectNode {
 
     // set duplicate information for convenience
     token.setKeyValue(this.getClass().getSimpleName(), fullTableName);
+    if (outlierSizeIncluded) {
+      token.setKeyValue(OUTLIER_SIZE_COLUMN_ALIAS, true);
+    }
     return token;
   }
 }
@@ -906,6 +1047,18 @@ class LargeGroupSizeNode extends QueryNodeWithPlaceHolders {
     //    subscriptionTicket = placeholder.getRight();
 
     super.createQuery(tokens); // placeholder replacements performed here
+
+    // sums up the estimated number of outlier tuples as well if available
+    for (ExecutionInfoToken token : tokens) {
+      if (token.containsKey(LargeGroupListNode.OUTLIER_SIZE_COLUMN_ALIAS)) {
+        selectQuery.addSelectItem(
+            new AliasedColumn(
+                ColumnOp.sum(
+                    new BaseColumn("t", LargeGroupListNode.OUTLIER_SIZE_COLUMN_ALIAS)),
+                OutlierProportionNode.OUTLIER_SIZE_ALIAS));
+        break;
+      }
+    }
     return selectQuery;
   }
 
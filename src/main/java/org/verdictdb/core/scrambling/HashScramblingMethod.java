@@ -41,6 +41,13 @@ public class HashScramblingMethod extends ScramblingMethodBase {
     this.hashColumnName = hashColumnName;
   }
 
+  /**
+   * Creates a hash scramble whose blocks follow an existing distribution: either the distribution
+   * of the scramble being appended to, or that of another hash scramble to align with. Two hash
+   * scrambles with the same distribution put the rows with the same hash value into the same block;
+   * thus, an equi-join of two such scrambles on their hash columns only needs to join the blocks
+   * with the same number.
+   */
   public HashScramblingMethod(Map<Integer, List<Double>> probDist, String hashColumnName) {
     super(probDist);
     this.hashColumnName = hashColumnName;
@@ -141,7 +148,8 @@ public class HashScramblingMethod extends ScramblingMethodBase {
           totalNumberOfblocks = actualNumberOfBlocks;
         } else {
           double increment = prob.get(0);
-          totalNumberOfblocks = (int) Math.floor(1.0 / increment);
+          // rounded since the increment only approximates 1 / totalNumberOfblocks
+          totalNumberOfblocks = (int) Math.round(1.0 / increment);
         }
       }
     } else {
@@ -0,0 +1,269 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.scrambling;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.verdictdb.commons.VerdictDBLogger;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.core.execplan.ExecutionInfoToken;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.SqlConvertible;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.exception.VerdictDBValueException;
+import org.verdictdb.sqlwriter.QueryToSql;
+
+/**
+ * Recommends the parameters of a scramble (block size, block count, relative size, and method) so
+ * that the first answer of a query on the scramble is returned within a target latency.
+ *
+ * <p>The latency of scanning n rows is modeled as (fixed latency) + n / (scan throughput). The two
+ * parameters are measured by two probe queries on the original table: one reading a single row and
+ * the other reading probeRowCount rows. Each probe is run twice and the faster run is used, since
+ * the first run may include the time to warm up caches.
+ */
+public class ScrambleAdvisor {
+
+  static final long DEFAULT_PROBE_ROW_COUNT = 1000000;
+
+  static final long MIN_BLOCK_SIZE = 1000;
+
+  private static final int DEFAULT_MAX_BLOCK_COUNT = 100;
+
+  private DbmsConnection conn;
+
+  private long probeRowCount = DEFAULT_PROBE_ROW_COUNT;
+
+  private int maxBlockCount = DEFAULT_MAX_BLOCK_COUNT;
+
+  private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());
+
+  public ScrambleAdvisor(DbmsConnection conn) {
+    this.conn = conn;
+  }
+
+  public void setProbeRowCount(long probeRowCount) {
+    this.probeRowCount = probeRowCount;
+  }
+
+  public void setMaxBlockCount(int maxBlockCount) {
+    this.maxBlockCount = maxBlockCount;
+  }
+
+  /**
+   * @param schemaName The schema of the original table
+   * @param tableName The original table
+   * @param targetSeconds The target latency of the first answer
+   * @return The recommended parameters
+   * @throws VerdictDBException
+   */
+  public ScrambleRecommendation advise(String schemaName, String tableName, double targetSeconds)
+      throws VerdictDBException {
+    if (targetSeconds <= 0) {
+      throw new VerdictDBValueException("The target latency must be positive.");
+    }
+
+    long rowCount = countRows(schemaName, tableName);
+    long probeRows = Math.max(1, Math.min(rowCount, probeRowCount));
+    double fixedLatency = measureScanSeconds(schemaName, tableName, 1);
+    double probeSeconds = measureScanSeconds(schemaName, tableName, probeRows);
+    double rowsPerSecond =
+        (probeRows > 1 && probeSeconds > fixedLatency)
+            ? (probeRows - 1) / (probeSeconds - fixedLatency)
+            : Double.POSITIVE_INFINITY;
+    log.debug(
+        String.format(
+            "Probed %s.%s: %d rows, fixed latency %.3f s, %.0f rows/s",
+            schemaName, tableName, rowCount, fixedLatency, rowsPerSecond));
+
+    return recommend(
+        schemaName, tableName, rowCount, fixedLatency, rowsPerSecond, targetSeconds);
+  }
+
+  /** Computes a recommendation from the measured statistics. */
+  ScrambleRecommendation recommend(
+      String schemaName,
+      String tableName,
+      long rowCount,
+      double fixedLatency,
+      double rowsPerSecond,
+      double targetSeconds) {
+    // the number of rows that can be scanned within the target latency
+    double budgetSeconds = targetSeconds - fixedLatency;
+    long blockSize;
+    if (budgetSeconds <= 0) {
+      log.warn(
+          String.format(
+              "The target latency (%.3f s) is shorter than the latency of a query on %s.%s "
+                  + "(%.3f s).",
+              targetSeconds, schemaName, tableName, fixedLatency));
+      blockSize = MIN_BLOCK_SIZE;
+    } else if (Double.isInfinite(rowsPerSecond)) {
+      blockSize = Math.max(rowCount, MIN_BLOCK_SIZE);
+    } else {
+      blockSize = Math.max((long) (budgetSeconds * rowsPerSecond), MIN_BLOCK_SIZE);
+    }
+    blockSize = Math.min(blockSize, Math.max(rowCount, 1));
+
+    // too many blocks would result in too many queries; a smaller scramble is used instead.
+    int blockCount = (int) Math.max(1, Math.ceil(rowCount / (double) blockSize));
+    double relativeSize = 1.0;
+    if (blockCount > maxBlockCount) {
+      relativeSize = maxBlockCount * blockSize / (double) rowCount;
+      blockCount = maxBlockCount;
+    }
+
+    // Tiers of other methods require the full table.
+    String method = "uniform";
+
+    double expectedSeconds =
+        Double.isInfinite(rowsPerSecond) ? fixedLatency : fixedLatency + blockSize / rowsPerSecond;
+    return new ScrambleRecommendation(
+        schemaName,
+        tableName,
+        rowCount,
+        rowsPerSecond,
+        blockSize,
+        blockCount,
+        relativeSize,
+        method,
+        expectedSeconds);
+  }
+
+  private long countRows(String schemaName, String tableName) throws VerdictDBException {
+    TableSizeCountNode countNode = new TableSizeCountNode(schemaName, tableName);
+    // the node only requires a token to be passed.
+    SqlConvertible query = countNode.createQuery(Arrays.asList(new ExecutionInfoToken()));
+    DbmsQueryResult result = conn.execute(QueryToSql.convert(conn.getSyntax(), query));
+    result.next();
+    return result.getLong(0);
+  }
+
+  /** select count(*) from (select * from schemaName.tableName limit rowLimit) t */
+  private double measureScanSeconds(String schemaName, String tableName, long rowLimit)
+      throws VerdictDBException {
+    SelectQuery rows =
+        SelectQuery.create(new AsteriskColumn(), new BaseTable(schemaName, tableName, "t"));
+    rows.addLimit(ConstantColumn.valueOf(String.valueOf(rowLimit)));
+    rows.setAliasName("verdictdbprobe");
+    SelectQuery probe =
+        SelectQuery.create(new AliasedColumn(ColumnOp.count(), "verdictdbprobecount"), rows);
+    String sql = QueryToSql.convert(conn.getSyntax(), probe);
+
+    double fastest = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < 2; i++) {
+      long start = System.nanoTime();
+      conn.execute(sql);
+      fastest = Math.min(fastest, (System.nanoTime() - start) / 1e9);
+    }
+    return fastest;
+  }
+
+  public static class ScrambleRecommendation {
+
+    private String originalSchema;
+
+    private String originalTable;
+
+    private long rowCount;
+
+    private double rowsPerSecond;
+
+    private long blockSize;
+
+    private int blockCount;
+
+    private double relativeSize;
+
+    private String method;
+
+    private double expectedFirstAnswerSeconds;
+
+    public ScrambleRecommendation(
+        String originalSchema,
+        String originalTable,
+        long rowCount,
+        double rowsPerSecond,
+        long blockSize,
+        int blockCount,
+        double relativeSize,
+        String method,
+        double expectedFirstAnswerSeconds) {
+      this.originalSchema = originalSchema;
+      this.originalTable = originalTable;
+      this.rowCount = rowCount;
+      this.rowsPerSecond = rowsPerSecond;
+      this.blockSize = blockSize;
+      this.blockCount = blockCount;
+      this.relativeSize = relativeSize;
+      this.method = method;
+      this.expectedFirstAnswerSeconds = expectedFirstAnswerSeconds;
+    }
+
+    public long getRowCount() {
+      return rowCount;
+    }
+
+    public double getRowsPerSecond() {
+      return rowsPerSecond;
+    }
+
+    public long getBlockSize() {
+      return blockSize;
+    }
+
+    public int getBlockCount() {
+      return blockCount;
+    }
+
+    public double getRelativeSize() {
+      return relativeSize;
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    public double getExpectedFirstAnswerSeconds() {
+      return expectedFirstAnswerSeconds;
+    }
+
+    /**
+     * @param scrambleSchema The schema of the scramble to be created
+     * @param scrambleTable The name of the scramble to be created
+     * @return A statement creating a scramble with the recommended parameters
+     */
+    public String toCreateScrambleStatement(String scrambleSchema, String scrambleTable) {
+      return String.format(
+          "CREATE SCRAMBLE %s.%s FROM %s.%s METHOD %s SIZE %s BLOCKSIZE %d",
+          scrambleSchema,
+          scrambleTable,
+          originalSchema,
+          originalTable,
+          method,
+          BigDecimal.valueOf(relativeSize).toPlainString(),
+          blockSize);
+    }
+  }
+}
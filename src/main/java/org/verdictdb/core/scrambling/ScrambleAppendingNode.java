@@ -0,0 +1,191 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.scrambling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.core.execplan.ExecutionInfoToken;
+import org.verdictdb.core.querying.IdCreator;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.InsertIntoSelectQuery;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.SqlConvertible;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
+import org.verdictdb.exception.VerdictDBException;
+
+/**
+ * The last stage of appending new rows to an existing scramble: inserts the scrambled rows directly
+ * into the scramble with a single "INSERT INTO ... SELECT" statement. The tier and block
+ * expressions are composed in the same way as ScramblingNode.
+ *
+ * <p>Since the composed select list may not be in the same order as the columns of the existing
+ * scramble, the composed query is wrapped so that the columns are selected by name in the order of
+ * the existing scramble. If the columns are not given (i.e., the scramble has been created from the
+ * same composed query; see ScramblingPlan.createParallel()), the composed order is used.
+ */
+public class ScrambleAppendingNode extends ScramblingNode {
+
+  private static final long serialVersionUID = -2349283727013598342L;
+
+  static final String APPEND_SOURCE_ALIAS_NAME = "verdictdbappendsource";
+
+  private String scrambleSchemaName;
+
+  private String scrambleTableName;
+
+  private List<String> scrambleColumns;
+
+  /** The id of this node within a parallel scrambling plan; -1 otherwise. */
+  private int unitId = -1;
+
+  public ScrambleAppendingNode(
+      IdCreator namer,
+      String scrambleSchemaName,
+      String scrambleTableName,
+      List<String> scrambleColumns,
+      String originalSchemaName,
+      String originalTableName,
+      ScramblingMethod method,
+      String tierColumnName,
+      String blockColumnName,
+      UnnamedColumn predicate,
+      List<String> existingPartitionColumns) {
+    super(
+        namer,
+        originalSchemaName,
+        originalTableName,
+        method,
+        tierColumnName,
+        blockColumnName,
+        predicate,
+        existingPartitionColumns,
+        false);
+    this.scrambleSchemaName = scrambleSchemaName;
+    this.scrambleTableName = scrambleTableName;
+    this.scrambleColumns = scrambleColumns;
+  }
+
+  /**
+   * @param scrambleSchemaName The schema of the existing scramble
+   * @param scrambleTableName The name of the existing scramble
+   * @param scrambleColumns The columns of the existing scramble in their physical order; null if
+   *     they are the same as the composed query
+   * @param oldSchemaName
+   * @param oldTableName
+   * @param method The scrambling method used for the existing scramble
+   * @param predicate Only the rows satisfying this predicate are appended (if not null)
+   * @param options Key-value map. It must contain the following keys: "blockColumnName",
+   *     "tierColumnName"
+   * @return
+   */
+  public static ScrambleAppendingNode create(
+      String scrambleSchemaName,
+      String scrambleTableName,
+      List<String> scrambleColumns,
+      String oldSchemaName,
+      String oldTableName,
+      ScramblingMethod method,
+      UnnamedColumn predicate,
+      Map<String, String> options) {
+    // reuses the option handling of ScramblingNode
+    ScramblingNode base =
+        ScramblingNode.create(
+            scrambleSchemaName,
+            scrambleTableName,
+            oldSchemaName,
+            oldTableName,
+            method,
+            predicate,
+            options);
+    return new ScrambleAppendingNode(
+        base.getNamer(),
+        scrambleSchemaName,
+        scrambleTableName,
+        scrambleColumns,
+        oldSchemaName,
+        oldTableName,
+        method,
+        base.tierColumnName,
+        base.blockColumnName,
+        predicate,
+        base.partitionColumns);
+  }
+
+  @Override
+  public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
+    Map<String, Object> metaData = collectMetaData(tokens);
+    // the units of a parallel build share the same method instance and the same metadata results
+    // (whose cursors are thus moved only while holding the lock).
+    synchronized (method) {
+      selectQuery = composeQuery(metaData);
+      if (progress != null && metaData.containsKey(TableSizeCountNode.class.getSimpleName())) {
+        DbmsQueryResult tableSize =
+            (DbmsQueryResult) metaData.get(TableSizeCountNode.class.getSimpleName());
+        tableSize.rewind();
+        tableSize.next();
+        progress.setTotalRowCount(tableSize.getLong(TableSizeCountNode.TOTAL_COUNT_ALIAS_NAME));
+      }
+    }
+    selectQuery.setAliasName(APPEND_SOURCE_ALIAS_NAME);
+
+    List<SelectItem> selectList = new ArrayList<>();
+    for (String column : getInsertColumns(selectQuery)) {
+      selectList.add(new BaseColumn(column));
+    }
+
+    InsertIntoSelectQuery insertQuery = new InsertIntoSelectQuery();
+    insertQuery.setSchemaName(scrambleSchemaName);
+    insertQuery.setTableName(scrambleTableName);
+    insertQuery.setSelectQuery(SelectQuery.create(selectList, selectQuery));
+    return insertQuery;
+  }
+
+  private List<String> getInsertColumns(SelectQuery composed) {
+    if (scrambleColumns != null) {
+      return scrambleColumns;
+    }
+    List<String> columns = new ArrayList<>();
+    for (SelectItem item : composed.getSelectList()) {
+      if (item instanceof AliasedColumn) {
+        columns.add(((AliasedColumn) item).getAliasName());
+      } else {
+        columns.add(((BaseColumn) item).getColumnName());
+      }
+    }
+    return columns;
+  }
+
+  void setUnitId(int unitId) {
+    this.unitId = unitId;
+  }
+
+  @Override
+  public ExecutionInfoToken createToken(DbmsQueryResult result) {
+    if (progress != null) {
+      progress.markUnitComplete(unitId);
+    }
+    ExecutionInfoToken token = new ExecutionInfoToken();
+    token.setKeyValue("schemaName", scrambleSchemaName);
+    token.setKeyValue("tableName", scrambleTableName);
+    return token;
+  }
+}
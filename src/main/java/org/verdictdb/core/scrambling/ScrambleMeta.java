@@ -19,6 +19,7 @@ package org.verdictdb.core.scrambling;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
@@ -61,11 +62,21 @@ public class ScrambleMeta implements Serializable {
 
   private static final long serialVersionUID = -8422601151874567149L;
 
+  /** A scramble is rebalanced into a table named (scramble table + this infix + a random id). */
+  public static final String REBALANCED_TABLE_INFIX = "_verdictdbrebalanced_";
+
   // key
   String schemaName;
 
   String tableName;
 
+  /**
+   * The table that stores the rows of this scramble if it is not tableName, i.e., after the
+   * scramble has been rebalanced into a new table; null otherwise.
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  String physicalTableName;
+
   // aggregation block
   String aggregationBlockColumn; // agg block number (0 to count-1)
 
@@ -98,6 +109,10 @@ public class ScrambleMeta implements Serializable {
   @JsonProperty("cumulativeDistributions")
   Map<Integer, List<Double>> cumulativeDistributionForTier = new HashMap<>();
 
+  /** The min/max of selected columns in each block; null if not computed. */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  BlockZoneMap zoneMap;
+
   // subsample column; not used currently
   @JsonIgnore String subsampleColumn;
 
@@ -234,6 +249,16 @@ public class ScrambleMeta implements Serializable {
     return tableName;
   }
 
+  public String getPhysicalTableName() {
+    return physicalTableName;
+  }
+
+  /** @return The table that stores the rows of this scramble */
+  @JsonIgnore
+  public String getStoredTableName() {
+    return (physicalTableName == null) ? tableName : physicalTableName;
+  }
+
   public String getTierColumn() {
     return tierColumn;
   }
@@ -259,7 +284,9 @@ public class ScrambleMeta implements Serializable {
   @JsonIgnore
   public boolean isMethodCompatibleWithSimpleAggregates() {
     String m = getMethodWithDefault("uniform");
-    return m.equalsIgnoreCase("uniform") || m.equalsIgnoreCase("fastconverge");
+    return m.equalsIgnoreCase("uniform")
+        || m.equalsIgnoreCase("fastconverge")
+        || m.equalsIgnoreCase("stratified");
   }
 
   public String getHashColumn() {
@@ -307,6 +334,10 @@ public class ScrambleMeta implements Serializable {
     this.tableName = tableName;
   }
 
+  public void setPhysicalTableName(String physicalTableName) {
+    this.physicalTableName = physicalTableName;
+  }
+
   public void setMethod(String method) {
     this.method = method;
   }
@@ -327,6 +358,14 @@ public class ScrambleMeta implements Serializable {
     this.scramblingMethod = scramblingMethod;
   }
 
+  public BlockZoneMap getZoneMap() {
+    return zoneMap;
+  }
+
+  public void setZoneMap(BlockZoneMap zoneMap) {
+    this.zoneMap = zoneMap;
+  }
+
   public String toJsonString() {
     ObjectMapper objectMapper = new ObjectMapper();
     objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
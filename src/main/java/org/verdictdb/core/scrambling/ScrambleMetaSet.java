@@ -19,8 +19,11 @@ package org.verdictdb.core.scrambling;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.tuple.Pair;
 
@@ -39,6 +42,15 @@ public class ScrambleMetaSet implements Serializable, Iterable<ScrambleMeta> {
   // value: meta information
   List<Pair<Pair<String, String>, ScrambleMeta>> metaSet = new ArrayList<>();
 
+  // Indexes for the lookups performed while planning a query. Each list preserves the insertion
+  // order of metaSet; for the same scramble key, the first inserted item is found (as in a scan of
+  // metaSet).
+  private Map<Pair<String, String>, ScrambleMeta> scrambleIndex = new HashMap<>();
+
+  private Map<Pair<String, String>, List<ScrambleMeta>> originalTableIndex = new HashMap<>();
+
+  private Map<String, List<ScrambleMeta>> methodIndex = new HashMap<>();
+
   public ScrambleMetaSet() {}
 
   public static ScrambleMetaSet createFromCollection(Collection<ScrambleMeta> metaList) {
@@ -50,24 +62,101 @@ public class ScrambleMetaSet implements Serializable, Iterable<ScrambleMeta> {
   }
   
   private ScrambleMeta getMetaFor(Pair<String, String> metakey) {
-    for (Pair<Pair<String, String>, ScrambleMeta> item : metaSet) {
-      Pair<String, String> key = item.getKey();
-      ScrambleMeta m = item.getValue();
-      if (key.equals(metakey)) {
-        return m;
-      }
-    }
-    return null;
+    return scrambleIndex.get(metakey);
   }
   
   private boolean doesContain(Pair<String, String> metakey) {
-    for (Pair<Pair<String, String>, ScrambleMeta> item : metaSet) {
-      Pair<String, String> key = item.getKey();
-      if (key.equals(metakey)) {
-        return true;
+    return scrambleIndex.containsKey(metakey);
+  }
+
+  private void addItem(Pair<String, String> key, ScrambleMeta meta) {
+    metaSet.add(Pair.of(key, meta));
+    if (!scrambleIndex.containsKey(key)) {
+      scrambleIndex.put(key, meta);
+    }
+    // the queries on a rebalanced scramble are planned on its physical table
+    if (meta.getPhysicalTableName() != null) {
+      Pair<String, String> physicalKey =
+          getMetaKey(meta.getSchemaName(), meta.getPhysicalTableName());
+      if (!scrambleIndex.containsKey(physicalKey)) {
+        scrambleIndex.put(physicalKey, meta);
+      }
+    }
+
+    Pair<String, String> originalKey =
+        getMetaKey(meta.getOriginalSchemaName(), meta.getOriginalTableName());
+    if (!originalTableIndex.containsKey(originalKey)) {
+      originalTableIndex.put(originalKey, new ArrayList<ScrambleMeta>());
+    }
+    originalTableIndex.get(originalKey).add(meta);
+
+    String method = meta.getMethodWithDefault("uniform").toLowerCase();
+    if (!methodIndex.containsKey(method)) {
+      methodIndex.put(method, new ArrayList<ScrambleMeta>());
+    }
+    methodIndex.get(method).add(meta);
+  }
+
+  /**
+   * Returns the scrambles created from an original table, in the insertion order (i.e., the most
+   * recent one first if this set has been retrieved from a metastore).
+   *
+   * @param originalSchemaName
+   * @param originalTableName
+   * @return An empty list if no scramble exists for the table.
+   */
+  public List<ScrambleMeta> getScramblesOf(String originalSchemaName, String originalTableName) {
+    List<ScrambleMeta> metas =
+        originalTableIndex.get(getMetaKey(originalSchemaName, originalTableName));
+    if (metas == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(metas);
+  }
+
+  /**
+   * @param method A scrambling method, e.g., uniform, hash, fastconverge (case insensitive)
+   * @return The scrambles created with the method
+   */
+  public List<ScrambleMeta> getScramblesByMethod(String method) {
+    List<ScrambleMeta> metas = methodIndex.get(method.toLowerCase());
+    if (metas == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(metas);
+  }
+
+  /**
+   * Chooses the cheapest scramble of an original table that can answer a query. A scramble with
+   * fewer aggregation blocks is cheaper since it requires fewer queries (and is smaller for the
+   * same block size). Among equally cheap ones, the one inserted earlier (i.e., more recent) is
+   * chosen.
+   *
+   * @param originalSchemaName
+   * @param originalTableName
+   * @param countDistinctColumn If not null, only the hash scrambles on this column qualify;
+   *     otherwise, only the scrambles compatible with simple aggregates qualify.
+   * @return null if no scramble qualifies
+   */
+  public ScrambleMeta getBestScrambleFor(
+      String originalSchemaName, String originalTableName, String countDistinctColumn) {
+    ScrambleMeta best = null;
+    for (ScrambleMeta meta : getScramblesOf(originalSchemaName, originalTableName)) {
+      boolean qualifies;
+      if (countDistinctColumn == null) {
+        qualifies = meta.isMethodCompatibleWithSimpleAggregates();
+      } else {
+        qualifies =
+            meta.getMethodWithDefault("uniform").equalsIgnoreCase("hash")
+                && countDistinctColumn.equals(meta.getHashColumn());
+      }
+      if (qualifies
+          && (best == null
+              || meta.getAggregationBlockCount() < best.getAggregationBlockCount())) {
+        best = meta;
       }
     }
-    return false;
+    return best;
   }
 
   /**
@@ -132,7 +221,7 @@ public class ScrambleMetaSet implements Serializable, Iterable<ScrambleMeta> {
   public void addScrambleMeta(ScrambleMeta tablemeta) {
     String schema = tablemeta.getSchemaName();
     String table = tablemeta.getTableName();
-    metaSet.add(Pair.of(getMetaKey(schema, table), tablemeta));
+    addItem(getMetaKey(schema, table), tablemeta);
   }
 
   @Deprecated
@@ -150,7 +239,7 @@ public class ScrambleMetaSet implements Serializable, Iterable<ScrambleMeta> {
     //    tableMeta.setInclusionProbabilityColumn(inclusionProbabilityColumn);
     //    tableMeta.setInclusionProbabilityBlockDifferenceColumn(inclusionProbBlockDiffColumn);
     //    tableMeta.setAggregationBlockCount(aggregationBlockCount);
-    metaSet.add(Pair.of(metaKey(aliasName), tableMeta));
+    addItem(metaKey(aliasName), tableMeta);
   }
 
   public void insertScrambleMetaEntry(
@@ -167,7 +256,7 @@ public class ScrambleMetaSet implements Serializable, Iterable<ScrambleMeta> {
     tableMeta.setSubsampleColumn(subsampleColumn);
     tableMeta.setTierColumn(tierColumn);
     tableMeta.setAggregationBlockCount(aggregationBlockCount);
-    metaSet.add(Pair.of(getMetaKey(schemaName, tableName), tableMeta));
+    addItem(getMetaKey(schemaName, tableName), tableMeta);
   }
 
   @Deprecated
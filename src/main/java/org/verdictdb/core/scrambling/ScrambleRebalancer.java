@@ -0,0 +1,211 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.scrambling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.verdictdb.commons.VerdictDBLogger;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.core.execplan.ExecutionInfoToken;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.CreateScrambledTableQuery;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.SqlConvertible;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.exception.VerdictDBValueException;
+import org.verdictdb.sqlwriter.QueryToSql;
+
+/**
+ * Re-partitions an existing scramble into the number of blocks suitable for its current size.
+ * Appending rows to a scramble keeps its blocks, so the blocks grow with every append; a rebalance
+ * restores the block size (and thus the latency of the first answer).
+ *
+ * <p>The rows are copied into a new table with new block numbers, while the current table of the
+ * scramble is not changed; thus, the queries on the scramble can run during the rebalance. The
+ * returned meta refers to the new table as the physical table of the scramble (see
+ * ScrambleMeta.getPhysicalTableName()). Storing the meta in the metastore switches the scramble to
+ * the new table with a single entry.
+ *
+ * <p>Only uniform and hash scrambles can be rebalanced. The rows of a uniform scramble are placed
+ * into the new blocks at random, and the new blocks cover the same fraction of the original table
+ * as before. The rows of a hash scramble are placed by their hash values, which requires the
+ * scramble to include all hash values (i.e., its relative size is 1).
+ */
+public class ScrambleRebalancer {
+
+  private DbmsConnection conn;
+
+  private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());
+
+  public ScrambleRebalancer(DbmsConnection conn) {
+    this.conn = conn;
+  }
+
+  /**
+   * @param meta The current meta of the scramble
+   * @param blockSize The number of rows in a new block
+   * @param maxBlockCount The maximum number of the new blocks
+   * @return The meta of the rebalanced scramble; its zone map is not computed.
+   * @throws VerdictDBException
+   */
+  public ScrambleMeta rebalance(ScrambleMeta meta, long blockSize, int maxBlockCount)
+      throws VerdictDBException {
+    String methodName = meta.getMethodWithDefault("uniform");
+    String schema = meta.getSchemaName();
+    String sourceTable = meta.getStoredTableName();
+    String tierColumn = meta.getTierColumn();
+    String blockColumn = meta.getAggregationBlockColumn();
+
+    boolean isHash = methodName.equalsIgnoreCase("hash");
+    if (meta.getNumberOfTiers() != 1 || !(isHash || methodName.equalsIgnoreCase("uniform"))) {
+      throw new VerdictDBValueException(
+          String.format(
+              "Only a uniform or hash scramble can be rebalanced; %s.%s is a %s scramble.",
+              schema, meta.getTableName(), methodName));
+    }
+    List<Double> currentDistribution = meta.getCumulativeDistributionForTier(0);
+    double scrambledRatio = currentDistribution.get(currentDistribution.size() - 1);
+    if (isHash && scrambledRatio < 1.0) {
+      throw new VerdictDBValueException(
+          String.format(
+              "The hash scramble %s.%s cannot be rebalanced since it does not include all rows.",
+              schema, meta.getTableName()));
+    }
+
+    // the new blocks are determined as if the current table were an original table.
+    ScramblingMethodBase method =
+        isHash
+            ? new HashScramblingMethod(blockSize, maxBlockCount, 1.0, meta.getHashColumn())
+            : new UniformScramblingMethod(blockSize, maxBlockCount, 1.0);
+    Map<String, Object> metaData = new HashMap<>();
+    metaData.put(TableSizeCountNode.class.getSimpleName(), countRows(schema, sourceTable));
+    List<Double> blockDistribution =
+        method.getCumulativeProbabilityDistributionForTier(metaData, 0);
+
+    String newTable =
+        meta.getTableName()
+            + ScrambleMeta.REBALANCED_TABLE_INFIX
+            + RandomStringUtils.randomAlphanumeric(8).toLowerCase();
+    log.info(
+        String.format(
+            "Starts to rebalance %s.%s from %d blocks into %d blocks of %s.%s",
+            schema,
+            meta.getTableName(),
+            meta.getAggregationBlockCount(),
+            method.getActualBlockCount(),
+            schema,
+            newTable));
+    CreateScrambledTableQuery createQuery =
+        createRebalancedTableQuery(
+            method, metaData, schema, sourceTable, newTable, tierColumn, blockColumn);
+    conn.execute(QueryToSql.convert(conn.getSyntax(), createQuery));
+    log.info(String.format("Finished creating %s.%s", schema, newTable));
+
+    // the new blocks split the same fraction of the original table as the current blocks.
+    List<Double> distribution = new ArrayList<>();
+    for (double p : blockDistribution) {
+      distribution.add(p * scrambledRatio);
+    }
+    Map<Integer, List<Double>> cumulativeDistribution = new HashMap<>();
+    cumulativeDistribution.put(0, distribution);
+    // the rows appended later are placed into the new blocks in the same way.
+    ScramblingMethodBase methodForAppend =
+        isHash
+            ? new HashScramblingMethod(cumulativeDistribution, meta.getHashColumn())
+            : new UniformScramblingMethod(cumulativeDistribution);
+
+    ScrambleMeta rebalanced =
+        new ScrambleMeta(
+            schema,
+            meta.getTableName(),
+            meta.getOriginalSchemaName(),
+            meta.getOriginalTableName(),
+            blockColumn,
+            method.getActualBlockCount(),
+            tierColumn,
+            1,
+            cumulativeDistribution,
+            methodName,
+            meta.getHashColumn(),
+            methodForAppend);
+    rebalanced.setPhysicalTableName(newTable);
+    return rebalanced;
+  }
+
+  /**
+   * create table newTable as select t.col1, ..., t.tier, (new block) as block from sourceTable t
+   */
+  private CreateScrambledTableQuery createRebalancedTableQuery(
+      ScramblingMethodBase method,
+      Map<String, Object> metaData,
+      String schema,
+      String sourceTable,
+      String newTable,
+      String tierColumn,
+      String blockColumn)
+      throws VerdictDBException {
+    String alias = method.getMainTableAlias();
+    List<Pair<String, String>> columnMeta = new ArrayList<>();
+    List<SelectItem> selectList = new ArrayList<>();
+    for (Pair<String, String> column : conn.getColumns(schema, sourceTable)) {
+      if (column.getLeft().equalsIgnoreCase(tierColumn)
+          || column.getLeft().equalsIgnoreCase(blockColumn)) {
+        continue;
+      }
+      columnMeta.add(column);
+      selectList.add(new BaseColumn(alias, column.getLeft()));
+    }
+    selectList.add(new AliasedColumn(new BaseColumn(alias, tierColumn), tierColumn));
+    selectList.add(new AliasedColumn(method.getBlockExprForTier(0, metaData), blockColumn));
+    SelectQuery select =
+        SelectQuery.create(selectList, method.getScramblingSource(schema, sourceTable, metaData));
+
+    CreateScrambledTableQuery createQuery =
+        new CreateScrambledTableQuery(
+            schema,
+            sourceTable,
+            schema,
+            newTable,
+            tierColumn,
+            blockColumn,
+            select,
+            method.getBlockCount(),
+            method.getActualBlockCount(),
+            columnMeta,
+            null,
+            false);
+    createQuery.addPartitionColumn(blockColumn);
+    return createQuery;
+  }
+
+  private DbmsQueryResult countRows(String schemaName, String tableName)
+      throws VerdictDBException {
+    TableSizeCountNode countNode = new TableSizeCountNode(schemaName, tableName);
+    // the node only requires a token to be passed.
+    SqlConvertible query = countNode.createQuery(Arrays.asList(new ExecutionInfoToken()));
+    return conn.execute(QueryToSql.convert(conn.getSyntax(), query));
+  }
+}
@@ -47,6 +47,9 @@ public class ScramblingNode extends CreateScrambledTableNode {
 
   private static final long serialVersionUID = 3921018031181756963L;
 
+  /** Set only for the nodes of a parallel scrambling plan. */
+  protected ScramblingProgress progress = null;
+
   //  Map<String, String> options;
 
   public ScramblingNode(
@@ -151,6 +154,17 @@ public class ScramblingNode extends CreateScrambledTableNode {
 
   @Override
   public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
+    Map<String, Object> metaData = collectMetaData(tokens);
+    selectQuery = composeQuery(metaData);
+
+    // add partitioning for block agg column
+    addPartitionColumn(blockColumnName);
+
+    return super.createQuery(tokens);
+  }
+
+  /** Merges the key-value pairs passed from the metadata and statistics nodes. */
+  static Map<String, Object> collectMetaData(List<ExecutionInfoToken> tokens) {
     Map<String, Object> metaData = new HashMap<>();
     for (ExecutionInfoToken token : tokens) {
       for (Entry<String, Object> keyValue : token.entrySet()) {
@@ -159,12 +173,7 @@ public class ScramblingNode extends CreateScrambledTableNode {
         metaData.put(key, value);
       }
     }
-    selectQuery = composeQuery(metaData);
-
-    // add partitioning for block agg column
-    addPartitionColumn(blockColumnName);
-
-    return super.createQuery(tokens);
+    return metaData;
   }
 
   SelectQuery composeQuery(Map<String, Object> metaData) throws VerdictDBException {
@@ -294,8 +303,15 @@ public class ScramblingNode extends CreateScrambledTableNode {
     return cond;
   }
 
+  void setProgress(ScramblingProgress progress) {
+    this.progress = progress;
+  }
+
   @Override
   public ExecutionInfoToken createToken(DbmsQueryResult result) {
+    if (progress != null) {
+      progress.markTableCreated();
+    }
     return super.createToken(result);
   }
 }
@@ -17,10 +17,19 @@
 package org.verdictdb.core.scrambling;
 
 import org.verdictdb.core.querying.ExecutableNodeBase;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.DeleteQuery;
 import org.verdictdb.core.sqlobject.UnnamedColumn;
+import org.verdictdb.sqlsyntax.ImpalaSyntax;
+import org.verdictdb.sqlsyntax.SqlSyntax;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Execution plan for scrambling.
@@ -33,7 +42,8 @@ import java.util.Map;
  *   <li>actual scramble table creation node
  * </ol>
  *
- * Those nodes should be provided by the ScramblingMethod instance
+ * Those nodes should be provided by the ScramblingMethod instance. A plan created by
+ * createParallel() splits the last step into independent units, which are run concurrently.
  *
  * @author Yongjoo Park
  */
@@ -43,6 +53,9 @@ public class ScramblingPlan extends SimpleTreePlan {
 
   //  DbmsQueryResult statistics;
 
+  /** Set only for the plans created by createParallel(). */
+  private ScramblingProgress progress = null;
+
   private ScramblingPlan(ExecutableNodeBase root) {
     super(root);
   }
@@ -85,6 +98,263 @@ public class ScramblingPlan extends SimpleTreePlan {
       ScramblingMethod method,
       UnnamedColumn predicate,
       Map<String, String> options) {
+    ScramblingNode scramblingNode =
+        ScramblingNode.create(
+            newSchemaName, newTableName, oldSchemaName, oldTableName, method, predicate, options);
+    return create(
+        oldSchemaName,
+        oldTableName,
+        method,
+        Arrays.<ExecutableNodeBase>asList(scramblingNode),
+        scramblingNode);
+  }
+
+  /**
+   * Creates a plan that builds a scramble as multiple independent units. First, an empty scramble
+   * table is created; then, each unit inserts the rows whose hash values of unitColumnName fall in
+   * its own range (the rows with null values belong to the first unit). The units do not depend on
+   * each other, so they are run concurrently (e.g., over the connections of a
+   * ConcurrentJdbcConnection), and their progress is reported by getProgress().
+   *
+   * <p>Since every row is assigned to its tier and block in the same way as create(), the resulting
+   * scramble is the same as the one built by a single statement. This requires the database to
+   * support the hash function and "INSERT INTO ... SELECT" with rand(); see
+   * isParallelSupported().
+   *
+   * @param newSchemaName
+   * @param newTableName
+   * @param oldSchemaName
+   * @param oldTableName
+   * @param method
+   * @param predicate
+   * @param options Key-value map. It must contain the following keys: "blockColumnName",
+   *     "tierColumnName"
+   * @param unitColumnName The column of the original table whose hash values split the units
+   * @param unitCount The number of units
+   * @return
+   */
+  public static ScramblingPlan createParallel(
+      String newSchemaName,
+      String newTableName,
+      String oldSchemaName,
+      String oldTableName,
+      ScramblingMethod method,
+      UnnamedColumn predicate,
+      Map<String, String> options,
+      String unitColumnName,
+      int unitCount) {
+    return createParallel(
+        newSchemaName,
+        newTableName,
+        oldSchemaName,
+        oldTableName,
+        method,
+        predicate,
+        options,
+        unitColumnName,
+        unitCount,
+        null);
+  }
+
+  /**
+   * Same as above, but continues a previous build if completedUnits is given. In that case, the
+   * scramble table must already exist, and only the units not in completedUnits are run. The
+   * method must be the same as the previous build (i.e., with the same block probabilities).
+   *
+   * @param completedUnits The ids of the units completed by the previous build; null for a new
+   *     build
+   */
+  public static ScramblingPlan createParallel(
+      String newSchemaName,
+      String newTableName,
+      String oldSchemaName,
+      String oldTableName,
+      ScramblingMethod method,
+      UnnamedColumn predicate,
+      Map<String, String> options,
+      String unitColumnName,
+      int unitCount,
+      Set<Integer> completedUnits) {
+    List<ExecutableNodeBase> scramblingNodes = new ArrayList<>();
+    String scrambleName = newSchemaName + "." + newTableName;
+    ScramblingProgress progress;
+
+    // creates an empty scramble table with the same layout.
+    ScramblingNode creatingNode = null;
+    if (completedUnits == null) {
+      UnnamedColumn alwaysFalse =
+          ColumnOp.equal(ConstantColumn.valueOf(1), ConstantColumn.valueOf(0));
+      creatingNode =
+          ScramblingNode.create(
+              newSchemaName,
+              newTableName,
+              oldSchemaName,
+              oldTableName,
+              method,
+              conjoin(predicate, alwaysFalse),
+              options);
+      scramblingNodes.add(creatingNode);
+      progress = new ScramblingProgress(scrambleName, unitCount);
+      creatingNode.setProgress(progress);
+    } else {
+      progress = new ScramblingProgress(scrambleName, unitCount, completedUnits.size());
+    }
+
+    // fills the table unit by unit
+    ScramblingUnitsCompletionNode root =
+        new ScramblingUnitsCompletionNode(newSchemaName, newTableName);
+    BaseColumn unitColumn = new BaseColumn(method.getMainTableAlias(), unitColumnName);
+    for (int i = 0; i < unitCount; i++) {
+      if (completedUnits != null && completedUnits.contains(i)) {
+        continue;
+      }
+      ScrambleAppendingNode unitNode =
+          ScrambleAppendingNode.create(
+              newSchemaName,
+              newTableName,
+              null,
+              oldSchemaName,
+              oldTableName,
+              method,
+              conjoin(predicate, createUnitPredicate(unitColumn, i, unitCount)),
+              options);
+      unitNode.setUnitId(i);
+      unitNode.setProgress(progress);
+      if (creatingNode != null) {
+        unitNode.subscribeTo(creatingNode, 200);
+      }
+      root.subscribeTo(unitNode, i);
+      scramblingNodes.add(unitNode);
+    }
+
+    ScramblingPlan plan = create(oldSchemaName, oldTableName, method, scramblingNodes, root);
+    plan.progress = progress;
+    return plan;
+  }
+
+  /**
+   * Checks if the scramble can be built by createParallel() in the database of the syntax. The
+   * units are split by the hash function, which some syntaxes (e.g., H2, SQLite) do not provide;
+   * Impala does not evaluate rand() correctly in "INSERT INTO ... SELECT".
+   *
+   * @param syntax
+   * @return False if the scramble must be built by create()
+   */
+  public static boolean isParallelSupported(SqlSyntax syntax) {
+    if (syntax instanceof ImpalaSyntax) {
+      return false;
+    }
+    return syntax.hashFunction("verdictdbunitcolumn") != null;
+  }
+
+  /**
+   * Creates the query removing the rows a unit has inserted into the scramble. Since a unit may
+   * have inserted its rows without having been recorded as completed (e.g., the connection failed
+   * right after the insertion), its rows must be removed before it is run again.
+   *
+   * @param scrambleSchemaName
+   * @param scrambleTableName
+   * @param unitColumnName The column whose hash values split the units (see createParallel())
+   * @param unit The id of the unit
+   * @param unitCount The number of units
+   * @return
+   */
+  public static DeleteQuery createUnitDeleteQuery(
+      String scrambleSchemaName,
+      String scrambleTableName,
+      String unitColumnName,
+      int unit,
+      int unitCount) {
+    return new DeleteQuery(
+        scrambleSchemaName,
+        scrambleTableName,
+        createUnitPredicate(new BaseColumn(unitColumnName), unit, unitCount));
+  }
+
+  /**
+   * The predicate for the rows of the i-th unit: i/unitCount <= hash(column) < (i+1)/unitCount.
+   */
+  static UnnamedColumn createUnitPredicate(BaseColumn column, int i, int unitCount) {
+    if (unitCount == 1) {
+      return null;
+    }
+    UnnamedColumn hash = ColumnOp.hash(column);
+    UnnamedColumn lower =
+        ColumnOp.greaterequal(hash, ConstantColumn.valueOf(i / (double) unitCount));
+    UnnamedColumn upper =
+        ColumnOp.less(hash, ConstantColumn.valueOf((i + 1) / (double) unitCount));
+    if (i == 0) {
+      return ColumnOp.or(upper, ColumnOp.isnull(column));
+    } else if (i == unitCount - 1) {
+      return lower;
+    } else {
+      return ColumnOp.and(lower, upper);
+    }
+  }
+
+  private static UnnamedColumn conjoin(UnnamedColumn predicate1, UnnamedColumn predicate2) {
+    if (predicate1 == null) {
+      return predicate2;
+    } else if (predicate2 == null) {
+      return predicate1;
+    } else {
+      return ColumnOp.and(predicate1, predicate2);
+    }
+  }
+
+  /**
+   * Creates a plan that appends the rows of the original table (satisfying the predicate) directly
+   * to an existing scramble with a single "INSERT INTO ... SELECT" statement. The metadata and
+   * statistics nodes are the same as create().
+   *
+   * @param scrambleSchemaName The schema of the existing scramble
+   * @param scrambleTableName The name of the existing scramble
+   * @param scrambleColumns The columns of the existing scramble in their physical order
+   * @param oldSchemaName
+   * @param oldTableName
+   * @param method The scrambling method of the existing scramble
+   * @param predicate
+   * @param options Key-value map. It must contain the following keys: "blockColumnName",
+   *     "tierColumnName"
+   * @return
+   */
+  public static ScramblingPlan createForAppend(
+      String scrambleSchemaName,
+      String scrambleTableName,
+      List<String> scrambleColumns,
+      String oldSchemaName,
+      String oldTableName,
+      ScramblingMethod method,
+      UnnamedColumn predicate,
+      Map<String, String> options) {
+    ScrambleAppendingNode appendingNode =
+        ScrambleAppendingNode.create(
+            scrambleSchemaName,
+            scrambleTableName,
+            scrambleColumns,
+            oldSchemaName,
+            oldTableName,
+            method,
+            predicate,
+            options);
+    return create(
+        oldSchemaName,
+        oldTableName,
+        method,
+        Arrays.<ExecutableNodeBase>asList(appendingNode),
+        appendingNode);
+  }
+
+  /**
+   * @param scramblingNodes The nodes that need the metadata and statistics
+   * @param root The last node of the plan
+   */
+  private static ScramblingPlan create(
+      String oldSchemaName,
+      String oldTableName,
+      ScramblingMethod method,
+      List<ExecutableNodeBase> scramblingNodes,
+      ExecutableNodeBase root) {
 
     // create a node for step 1 - column meta data retrieval
     // these nodes will set "scramblingPlan:columnMetaData" and "scramblingPlan:partitionMetaData"
@@ -112,18 +382,20 @@ public class ScramblingPlan extends SimpleTreePlan {
       n.subscribeTo(primaryKeyMetaDataNode, 102);
     }
 
-    // create a node for step 3 - scrambling
-    ExecutableNodeBase scramblingNode =
-        ScramblingNode.create(
-            newSchemaName, newTableName, oldSchemaName, oldTableName, method, predicate, options);
-
-    scramblingNode.subscribeTo(columnMetaDataNode, 100); // for total table size
-    scramblingNode.subscribeTo(primaryKeyMetaDataNode, 101);
-    for (int i = 0; i < statsNodes.size(); i++) {
-      scramblingNode.subscribeTo(statsNodes.get(i), i);
+    // step 3 - scrambling (the nodes are given by the caller)
+    for (ExecutableNodeBase scramblingNode : scramblingNodes) {
+      scramblingNode.subscribeTo(columnMetaDataNode, 100); // for total table size
+      scramblingNode.subscribeTo(primaryKeyMetaDataNode, 101);
+      for (int i = 0; i < statsNodes.size(); i++) {
+        scramblingNode.subscribeTo(statsNodes.get(i), i);
+      }
     }
 
-    ScramblingPlan scramblingPlan = new ScramblingPlan(scramblingNode);
+    ScramblingPlan scramblingPlan = new ScramblingPlan(root);
     return scramblingPlan;
   }
+
+  public ScramblingProgress getProgress() {
+    return progress;
+  }
 }
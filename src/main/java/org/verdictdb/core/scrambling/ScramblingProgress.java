@@ -0,0 +1,137 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.scrambling;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.verdictdb.commons.VerdictDBLogger;
+import org.verdictdb.connection.QueryProgressStatus;
+
+/**
+ * Tracks the progress of a scramble that is built as multiple independent units (see
+ * ScramblingPlan.createParallel()). The number of processed rows is an estimate based on the size
+ * of the original table, which is known only to the scrambling methods that count the table.
+ *
+ * <p>A listener can be registered to be notified of each step (e.g., for recording checkpoints).
+ */
+public class ScramblingProgress implements QueryProgressStatus, Serializable {
+
+  private static final long serialVersionUID = 6418039428347104593L;
+
+  private final String scrambleName;
+
+  private final int totalUnitCount;
+
+  private final AtomicInteger completedUnitCount = new AtomicInteger(0);
+
+  /** -1 if unknown. */
+  private volatile long totalRowCount = -1;
+
+  private transient Listener listener = null;
+
+  private static final VerdictDBLogger LOG = VerdictDBLogger.getLogger(ScramblingProgress.class);
+
+  /** Receives the notifications from the nodes of a parallel scrambling plan. */
+  public interface Listener {
+
+    /** Called after the (empty) scramble table is created and before any unit starts. */
+    void onTableCreated();
+
+    /** Called after the rows of the unit have been inserted into the scramble table. */
+    void onUnitComplete(int unitId);
+  }
+
+  public ScramblingProgress(String scrambleName, int totalUnitCount) {
+    this(scrambleName, totalUnitCount, 0);
+  }
+
+  /**
+   * @param completedUnitCount The number of the units completed already (e.g., by a previous run)
+   */
+  public ScramblingProgress(String scrambleName, int totalUnitCount, int completedUnitCount) {
+    this.scrambleName = scrambleName;
+    this.totalUnitCount = totalUnitCount;
+    this.completedUnitCount.set(completedUnitCount);
+  }
+
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  void setTotalRowCount(long totalRowCount) {
+    this.totalRowCount = totalRowCount;
+  }
+
+  void markTableCreated() {
+    LOG.info(String.format("Scrambling %s: created the scramble table", scrambleName));
+    if (listener != null) {
+      listener.onTableCreated();
+    }
+  }
+
+  void markUnitComplete(int unitId) {
+    if (listener != null) {
+      listener.onUnitComplete(unitId);
+    }
+    int completed = completedUnitCount.incrementAndGet();
+    if (totalRowCount >= 0) {
+      LOG.info(
+          String.format(
+              "Scrambling %s: %d/%d units done (%.1f %%, about %d rows)",
+              scrambleName,
+              completed,
+              totalUnitCount,
+              getProgressRatio() * 100,
+              getEstimatedProcessedRowCount()));
+    } else {
+      LOG.info(
+          String.format(
+              "Scrambling %s: %d/%d units done (%.1f %%)",
+              scrambleName, completed, totalUnitCount, getProgressRatio() * 100));
+    }
+  }
+
+  @Override
+  public double getProgressRatio() {
+    if (totalUnitCount == 0) {
+      return 1.0;
+    }
+    return completedUnitCount.get() / (double) totalUnitCount;
+  }
+
+  public int getTotalUnitCount() {
+    return totalUnitCount;
+  }
+
+  public int getCompletedUnitCount() {
+    return completedUnitCount.get();
+  }
+
+  /** @return The number of the rows in the original table; -1 if unknown. */
+  public long getTotalRowCount() {
+    return totalRowCount;
+  }
+
+  /** @return The estimated number of the rows processed so far; -1 if unknown. */
+  public long getEstimatedProcessedRowCount() {
+    if (totalRowCount < 0) {
+      return -1;
+    }
+    return (long) (totalRowCount * getProgressRatio());
+  }
+}
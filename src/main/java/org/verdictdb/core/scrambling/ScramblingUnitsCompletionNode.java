@@ -0,0 +1,48 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.scrambling;
+
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.core.execplan.ExecutionInfoToken;
+import org.verdictdb.core.querying.ExecutableNodeBase;
+
+/**
+ * The root of a parallel scrambling plan. This node does not issue any query; it completes when
+ * all the scrambling units (its sources) complete.
+ */
+class ScramblingUnitsCompletionNode extends ExecutableNodeBase {
+
+  private static final long serialVersionUID = -5120337466213950187L;
+
+  private String schemaName;
+
+  private String tableName;
+
+  ScramblingUnitsCompletionNode(String schemaName, String tableName) {
+    super(-1);
+    this.schemaName = schemaName;
+    this.tableName = tableName;
+  }
+
+  @Override
+  public ExecutionInfoToken createToken(DbmsQueryResult result) {
+    ExecutionInfoToken token = new ExecutionInfoToken();
+    token.setKeyValue("schemaName", schemaName);
+    token.setKeyValue("tableName", tableName);
+    return token;
+  }
+}
@@ -0,0 +1,484 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.scrambling;
+
+import static org.verdictdb.core.scrambling.ScramblingNode.computeConditionalProbabilityDistribution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.verdictdb.commons.VerdictDBLogger;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.core.execplan.ExecutionInfoToken;
+import org.verdictdb.core.querying.CreateTableAsSelectNode;
+import org.verdictdb.core.querying.ExecutableNodeBase;
+import org.verdictdb.core.querying.IdCreator;
+import org.verdictdb.core.querying.QueryNodeWithPlaceHolders;
+import org.verdictdb.core.querying.SubscriptionTicket;
+import org.verdictdb.core.querying.TempIdCreatorInScratchpadSchema;
+import org.verdictdb.core.sqlobject.AbstractRelation;
+import org.verdictdb.core.sqlobject.AliasReference;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.GroupingAttribute;
+import org.verdictdb.core.sqlobject.JoinTable;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.SqlConvertible;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
+import org.verdictdb.exception.VerdictDBException;
+
+/**
+ * Oversamples small strata (i.e., the groups of the stratified columns) into early blocks.
+ *
+ * <p>Policy: 1. Tier 0: tuples of small strata 2. Tier 1: other tuples
+ *
+ * <p>Small strata: the strata that would have fewer than minRowsPerBlock tuples in each block if
+ * the table were scrambled uniformly. Tier 0 takes up to 50% of each block starting from the first
+ * block; thus, small strata mostly appear in full within the first few blocks.
+ *
+ * <p>Every tuple of the same tier has the same probability of being placed in each block, and this
+ * probability is recorded in the scramble meta as the cumulative distribution of the tier. The tier
+ * of each tuple is stored in the tier column of the scramble, so the scale factors computed per
+ * tier during online aggregation are the inverse of the sampling probabilities of the strata.
+ *
+ * <p>The strata are matched by equality; tuples whose stratified columns are null belong to Tier 1.
+ */
+public class StratifiedScramblingMethod extends ScramblingMethodBase {
+
+  protected String type = "stratified";
+
+  private static final long serialVersionUID = -3184913853062154587L;
+
+  double p0 = 0.5; // max portion for Tier 0
+
+  public static final String MAIN_TABLE_SOURCE_ALIAS_NAME = "t1";
+
+  public static final String RIGHT_TABLE_SOURCE_ALIAS_NAME = "t2";
+
+  static final int DEFAULT_MIN_ROWS_PER_BLOCK = 10;
+
+  private static final int DEFAULT_MAX_BLOCK_COUNT = 100;
+
+  private List<String> stratifiedColumns = new ArrayList<>();
+
+  private String scratchpadSchemaName;
+
+  private int minRowsPerBlock = DEFAULT_MIN_ROWS_PER_BLOCK;
+
+  /** The strata smaller than this size belong to Tier 0. */
+  private long smallStratumSizeThreshold = -1;
+
+  private long smallStrataSizeSum = 0;
+
+  private int totalNumberOfblocks = -1;
+
+  /** The first blocks stored in the scramble; fewer than totalNumberOfblocks if SIZE < 1. */
+  private int actualNumberOfBlocks = -1;
+
+  List<Double> tier0CumulProbDist = null;
+
+  List<Double> tier1CumulProbDist = null;
+
+  private static VerdictDBLogger log = VerdictDBLogger.getLogger(StratifiedScramblingMethod.class);
+
+  public StratifiedScramblingMethod() {
+    super(0, 0, 0);
+  }
+
+  public StratifiedScramblingMethod(
+      long blockSize, String scratchpadSchemaName, List<String> stratifiedColumns) {
+    this(blockSize, DEFAULT_MAX_BLOCK_COUNT, 1.0, scratchpadSchemaName, stratifiedColumns);
+  }
+
+  /**
+   * @param blockSize The minimum number of tuples in a block
+   * @param maxBlockCount The maximum number of blocks of the scramble
+   * @param relativeSize The size of the scramble relative to the original table (i.e., the SIZE
+   *     clause); the blocks beyond this size are not stored.
+   * @param scratchpadSchemaName The schema of the temporary table of the stratum sizes
+   * @param stratifiedColumns The columns whose groups are the strata
+   */
+  public StratifiedScramblingMethod(
+      long blockSize,
+      int maxBlockCount,
+      double relativeSize,
+      String scratchpadSchemaName,
+      List<String> stratifiedColumns) {
+    super(blockSize, maxBlockCount, relativeSize);
+    this.scratchpadSchemaName = scratchpadSchemaName;
+    this.stratifiedColumns = stratifiedColumns;
+    this.type = "stratified";
+  }
+
+  public void setMinRowsPerBlock(int minRowsPerBlock) {
+    this.minRowsPerBlock = minRowsPerBlock;
+  }
+
+  public List<String> getStratifiedColumns() {
+    return stratifiedColumns;
+  }
+
+  static String getStratumColumnAlias(int i) {
+    return "verdictdbstratum" + i;
+  }
+
+  /**
+   * Computes two nodes: (1) a temporary table containing the size of every stratum, and (2) the
+   * histogram of the stratum sizes, i.e., the number of strata for each size. If this method has
+   * been restored from the metastore (e.g., for appending), only the first node is computed since
+   * it is joined with the original table.
+   */
+  @Override
+  public List<ExecutableNodeBase> getStatisticsNode(
+      String oldSchemaName,
+      String oldTableName,
+      String columnMetaTokenKey,
+      String partitionMetaTokenKey,
+      String primarykeyMetaTokenKey) {
+    List<ExecutableNodeBase> statisticsNodes = new ArrayList<>();
+
+    TempIdCreatorInScratchpadSchema idCreator =
+        new TempIdCreatorInScratchpadSchema(scratchpadSchemaName);
+    StratumSizeListNode sl =
+        new StratumSizeListNode(idCreator, oldSchemaName, oldTableName, stratifiedColumns);
+    statisticsNodes.add(sl);
+
+    if (tier0CumulProbDist == null) {
+      StratumSizeHistogramNode sh = new StratumSizeHistogramNode();
+      sl.registerSubscriber(sh.getSubscriptionTicket());
+      statisticsNodes.add(sh);
+    }
+
+    return statisticsNodes;
+  }
+
+  @Override
+  public List<UnnamedColumn> getTierExpressions(Map<String, Object> metaData) {
+    if (tier0CumulProbDist == null) {
+      populateAllCumulativeProbabilityDistribution(metaData);
+    }
+
+    // select (case when t2.verdictdbstratumsize < threshold then 0 else 1 end) as verdictdbtier
+    // from schemaName.tableName t1 left join stratumSizeSchema.stratumSizeTable t2
+    //   on t1.col1 = t2.verdictdbstratum0 and t1.col2 = t2.verdictdbstratum1 ...
+    UnnamedColumn tier0Predicate =
+        ColumnOp.less(
+            new BaseColumn(RIGHT_TABLE_SOURCE_ALIAS_NAME, StratumSizeListNode.STRATUM_SIZE_ALIAS),
+            ConstantColumn.valueOf(smallStratumSizeThreshold));
+
+    // Tier 1: automatically handled by this function's caller
+    return Arrays.asList(tier0Predicate);
+  }
+
+  @Override
+  public List<Double> getCumulativeProbabilityDistributionForTier(
+      Map<String, Object> metaData, int tier) {
+    // only the stored blocks; the last value is below 1 if some blocks are not stored.
+    List<Double> fullDist = getFullDistributionForTier(metaData, tier);
+    List<Double> dist = new ArrayList<>(fullDist.subList(0, actualNumberOfBlocks));
+    storeCumulativeProbabilityDistribution(tier, dist);
+    return dist;
+  }
+
+  /** @return The cumulative distribution over all the blocks, including the ones not stored */
+  private List<Double> getFullDistributionForTier(Map<String, Object> metaData, int tier) {
+    if (tier0CumulProbDist == null) {
+      populateAllCumulativeProbabilityDistribution(metaData);
+    }
+    return (tier == 0) ? tier0CumulProbDist : tier1CumulProbDist;
+  }
+
+  private void populateAllCumulativeProbabilityDistribution(Map<String, Object> metaData) {
+    DbmsQueryResult histogram =
+        (DbmsQueryResult) metaData.get(StratumSizeHistogramNode.class.getSimpleName());
+
+    // table size
+    long tableSize = 0;
+    histogram.rewind();
+    while (histogram.next()) {
+      tableSize += histogram.getLong(0) * histogram.getLong(1);
+    }
+    if (tableSize == 0) {
+      // an empty table; ScramblingNode reports an error.
+      totalNumberOfblocks = 0;
+      actualNumberOfBlocks = 0;
+      tier0CumulProbDist = new ArrayList<>();
+      tier1CumulProbDist = new ArrayList<>();
+      return;
+    }
+
+    // As in UniformScramblingMethod, the stored blocks cover relativeSize of the table, and their
+    // number is capped by maxBlockCount; the rows assigned to the other blocks are discarded.
+    long effectiveRowCount =
+        (relativeSize < 1) ? (long) Math.ceil(tableSize * relativeSize) : tableSize;
+    double blockCount = Math.ceil(effectiveRowCount / (double) blockSize);
+    actualNumberOfBlocks = (int) Math.max(1, Math.min(maxBlockCount, blockCount));
+    double evenBlockSize = effectiveRowCount / (double) actualNumberOfBlocks;
+    totalNumberOfblocks =
+        (int) Math.max(actualNumberOfBlocks, Math.ceil(tableSize / evenBlockSize));
+
+    // the strata that would have fewer than minRowsPerBlock tuples in each block
+    smallStratumSizeThreshold = (long) minRowsPerBlock * totalNumberOfblocks;
+    smallStrataSizeSum = 0;
+    histogram.rewind();
+    while (histogram.next()) {
+      long stratumSize = histogram.getLong(0);
+      if (stratumSize < smallStratumSizeThreshold) {
+        smallStrataSizeSum += stratumSize * histogram.getLong(1);
+      }
+    }
+    log.info(
+        String.format(
+            "The strata with fewer than %d tuples (%d tuples in total) "
+                + "will be prioritized in future query processing.",
+            smallStratumSizeThreshold, smallStrataSizeSum));
+
+    evenBlockSize = tableSize / (double) totalNumberOfblocks;
+    if (smallStrataSizeSum == 0 || smallStrataSizeSum >= p0 * tableSize) {
+      // no special treatment is possible
+      tier0CumulProbDist = createUniformDistribution(totalNumberOfblocks);
+      tier1CumulProbDist = createUniformDistribution(totalNumberOfblocks);
+      return;
+    }
+
+    // Tier 0: fill only p0 portion of each block from the first block
+    List<Double> tier0BlockSizes = new ArrayList<>();
+    double remainingSize = smallStrataSizeSum;
+    for (int i = 0; i < totalNumberOfblocks; i++) {
+      double thisBlockSize = Math.min(remainingSize, p0 * evenBlockSize);
+      tier0BlockSizes.add(thisBlockSize);
+      remainingSize -= thisBlockSize;
+    }
+    tier0CumulProbDist = toCumulativeDistribution(tier0BlockSizes, smallStrataSizeSum);
+
+    // Tier 1: the rest of the space in each block
+    List<Double> tier1BlockSizes = new ArrayList<>();
+    for (int i = 0; i < totalNumberOfblocks; i++) {
+      tier1BlockSizes.add(evenBlockSize - tier0BlockSizes.get(i));
+    }
+    tier1CumulProbDist =
+        toCumulativeDistribution(tier1BlockSizes, tableSize - smallStrataSizeSum);
+  }
+
+  private static List<Double> createUniformDistribution(int blockCount) {
+    List<Double> cumulProbDist = new ArrayList<>();
+    for (int i = 0; i < blockCount; i++) {
+      cumulProbDist.add((i + 1) / (double) blockCount);
+    }
+    return cumulProbDist;
+  }
+
+  /** The last value is always set to 1.0 to absorb rounding errors. */
+  private static List<Double> toCumulativeDistribution(List<Double> blockSizes, double tierSize) {
+    List<Double> cumulProbDist = new ArrayList<>();
+    double cumulSize = 0;
+    for (int i = 0; i < blockSizes.size(); i++) {
+      cumulSize += blockSizes.get(i);
+      if (i == blockSizes.size() - 1) {
+        cumulProbDist.add(1.0);
+      } else {
+        cumulProbDist.add(Math.min(cumulSize / tierSize, 1.0));
+      }
+    }
+    return cumulProbDist;
+  }
+
+  @Override
+  public AbstractRelation getScramblingSource(
+      String originalSchema, String originalTable, Map<String, Object> metaData) {
+    @SuppressWarnings("unchecked")
+    Pair<String, String> fullTableName =
+        (Pair<String, String>) metaData.get(StratumSizeListNode.class.getSimpleName());
+
+    UnnamedColumn joinCondition = null;
+    for (int i = 0; i < stratifiedColumns.size(); i++) {
+      UnnamedColumn equality =
+          ColumnOp.equal(
+              new BaseColumn(MAIN_TABLE_SOURCE_ALIAS_NAME, stratifiedColumns.get(i)),
+              new BaseColumn(RIGHT_TABLE_SOURCE_ALIAS_NAME, getStratumColumnAlias(i)));
+      joinCondition = (joinCondition == null) ? equality : ColumnOp.and(joinCondition, equality);
+    }
+
+    return JoinTable.create(
+        Arrays.<AbstractRelation>asList(
+            new BaseTable(originalSchema, originalTable, MAIN_TABLE_SOURCE_ALIAS_NAME),
+            new BaseTable(
+                fullTableName.getLeft(), fullTableName.getRight(), RIGHT_TABLE_SOURCE_ALIAS_NAME)),
+        Arrays.asList(JoinTable.JoinType.leftouter),
+        Arrays.asList(joinCondition));
+  }
+
+  @Override
+  public String getMainTableAlias() {
+    return MAIN_TABLE_SOURCE_ALIAS_NAME;
+  }
+
+  @Override
+  public UnnamedColumn getBlockExprForTier(int tier, Map<String, Object> metaData) {
+    List<Double> cumulProb = getFullDistributionForTier(metaData, tier);
+    List<Double> condProb = computeConditionalProbabilityDistribution(cumulProb);
+    int blockCount = cumulProb.size();
+
+    List<UnnamedColumn> blockForTierOperands = new ArrayList<>();
+    for (int j = 0; j < blockCount; j++) {
+      blockForTierOperands.add(
+          ColumnOp.lessequal(ColumnOp.rand(), ConstantColumn.valueOf(condProb.get(j))));
+      blockForTierOperands.add(ConstantColumn.valueOf(j));
+    }
+
+    if (blockForTierOperands.size() <= 1) {
+      return ConstantColumn.valueOf(0);
+    } else {
+      return ColumnOp.casewhen(blockForTierOperands);
+    }
+  }
+
+  @Override
+  public int getBlockCount() {
+    return totalNumberOfblocks;
+  }
+
+  @Override
+  public int getActualBlockCount() {
+    return actualNumberOfBlocks;
+  }
+
+  @Override
+  public int getTierCount() {
+    return 2;
+  }
+
+  @Override
+  public double getRelativeSize() {
+    return relativeSize;
+  }
+}
+
+/**
+ * create table some-temp-table-name as select col1 as verdictdbstratum0, col2 as
+ * verdictdbstratum1, count(*) as verdictdbstratumsize from schemaName.tableName group by col1, col2;
+ */
+class StratumSizeListNode extends CreateTableAsSelectNode {
+
+  private static final long serialVersionUID = 1452069396419587032L;
+
+  private String schemaName;
+
+  private String tableName;
+
+  private List<String> stratifiedColumns;
+
+  public static final String STRATUM_SIZE_ALIAS = "verdictdbstratumsize";
+
+  public StratumSizeListNode(
+      IdCreator idCreator, String schemaName, String tableName, List<String> stratifiedColumns) {
+    super(idCreator, null);
+    this.schemaName = schemaName;
+    this.tableName = tableName;
+    this.stratifiedColumns = stratifiedColumns;
+  }
+
+  @Override
+  public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
+    String tableSourceAlias = "t";
+
+    List<SelectItem> selectList = new ArrayList<>();
+    List<GroupingAttribute> groupby = new ArrayList<>();
+    for (int i = 0; i < stratifiedColumns.size(); i++) {
+      String column = stratifiedColumns.get(i);
+      selectList.add(
+          new AliasedColumn(
+              new BaseColumn(tableSourceAlias, column),
+              StratifiedScramblingMethod.getStratumColumnAlias(i)));
+      groupby.add(new AliasReference(column));
+    }
+    selectList.add(new AliasedColumn(ColumnOp.count(), STRATUM_SIZE_ALIAS));
+
+    SelectQuery selectQuery =
+        SelectQuery.create(selectList, new BaseTable(schemaName, tableName, tableSourceAlias));
+    selectQuery.addGroupby(groupby);
+
+    this.selectQuery = selectQuery;
+    return super.createQuery(tokens);
+  }
+
+  @Override
+  public ExecutionInfoToken createToken(DbmsQueryResult result) {
+    ExecutionInfoToken token = super.createToken(result);
+    Pair<String, String> fullTableName =
+        Pair.of((String) token.getValue("schemaName"), (String) token.getValue("tableName"));
+
+    // the keys "schemaName" and "tableName" may be overwritten by other tokens.
+    token.setKeyValue(this.getClass().getSimpleName(), fullTableName);
+    return token;
+  }
+}
+
+/**
+ * select verdictdbstratumsize, count(*) as verdictdbstratumcount from verdictdbtemptable group by
+ * verdictdbstratumsize;
+ *
+ * <p>The number of rows is at most the number of distinct stratum sizes.
+ */
+class StratumSizeHistogramNode extends QueryNodeWithPlaceHolders {
+
+  private static final long serialVersionUID = -2630316462366401826L;
+
+  // When this node subscribes to the downstream nodes, this information must be used.
+  private SubscriptionTicket subscriptionTicket;
+
+  public static final String STRATUM_COUNT_ALIAS = "verdictdbstratumcount";
+
+  public StratumSizeHistogramNode() {
+    super(-1, null);
+
+    String tableSourceAlias = "t";
+    Pair<BaseTable, SubscriptionTicket> placeholder = createPlaceHolderTable(tableSourceAlias);
+    selectQuery =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new BaseColumn(tableSourceAlias, StratumSizeListNode.STRATUM_SIZE_ALIAS),
+                new AliasedColumn(ColumnOp.count(), STRATUM_COUNT_ALIAS)),
+            placeholder.getLeft());
+    selectQuery.addGroupby(new AliasReference(StratumSizeListNode.STRATUM_SIZE_ALIAS));
+    subscriptionTicket = placeholder.getRight();
+  }
+
+  public SubscriptionTicket getSubscriptionTicket() {
+    return subscriptionTicket;
+  }
+
+  @Override
+  public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
+    super.createQuery(tokens); // placeholder replacements performed here
+    return selectQuery;
+  }
+
+  @Override
+  public ExecutionInfoToken createToken(DbmsQueryResult result) {
+    ExecutionInfoToken token = new ExecutionInfoToken();
+    token.setKeyValue(this.getClass().getSimpleName(), result);
+    return token;
+  }
+}
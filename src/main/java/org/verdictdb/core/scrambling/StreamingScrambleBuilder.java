@@ -0,0 +1,370 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.scrambling;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.verdictdb.commons.VerdictDBLogger;
+import org.verdictdb.connection.CachedDbmsConnection;
+import org.verdictdb.connection.ConcurrentJdbcConnection;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.core.execplan.ExecutionInfoToken;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.CreateTableAsSelectQuery;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.SqlConvertible;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
+import org.verdictdb.exception.VerdictDBDbmsException;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.exception.VerdictDBValueException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+import org.verdictdb.sqlsyntax.MysqlSyntax;
+import org.verdictdb.sqlsyntax.SqlSyntax;
+import org.verdictdb.sqlsyntax.SqliteSyntax;
+import org.verdictdb.sqlwriter.QueryToSql;
+
+/**
+ * Creates a uniform scramble by streaming the rows of the original table through the client,
+ * instead of a single CREATE TABLE AS SELECT statement with rand() expressions. This is faster for
+ * the databases that run such a statement slowly in a single thread (e.g., MySQL and SQLite).
+ *
+ * <p>The block of each row is chosen by a (seeded) random number generator in the same way as
+ * UniformScramblingMethod chooses with rand(): a row is placed in one of getBlockCount() blocks
+ * uniformly at random, and the rows placed in the blocks beyond getActualBlockCount() are dropped.
+ * The rows are written with multi-row insert statements into the scramble, which is created empty
+ * beforehand (partitioned on the block column if supported). The zone map of the scramble is
+ * computed while the rows are written.
+ *
+ * <p>The original table is read with a cursor whose fetch size is setFetchSize(). For MySQL, the
+ * cursor is used only if "useCursorFetch=true" is set for the connection; otherwise, the driver
+ * reads the entire table into memory first.
+ */
+public class StreamingScrambleBuilder {
+
+  static final int DEFAULT_FETCH_SIZE = 10000;
+
+  static final int DEFAULT_BATCH_SIZE = 500;
+
+  /** SQLite limits the number of the parameters of a statement to 999 by default. */
+  private static final int MAX_PARAMETER_COUNT = 999;
+
+  private JdbcConnection conn;
+
+  private Random random = new Random();
+
+  private int fetchSize = DEFAULT_FETCH_SIZE;
+
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());
+
+  public StreamingScrambleBuilder(JdbcConnection conn) {
+    this.conn = conn;
+  }
+
+  /** Makes the blocks of the rows reproducible. */
+  public void setSeed(long seed) {
+    random = new Random(seed);
+  }
+
+  public void setFetchSize(int fetchSize) {
+    this.fetchSize = fetchSize;
+  }
+
+  /** @param batchSize The maximum number of the rows inserted by a single statement */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /** @return The underlying JDBC connection; null if the connection is not based on JDBC. */
+  public static JdbcConnection findJdbcConnection(DbmsConnection conn) {
+    if (conn instanceof CachedDbmsConnection) {
+      conn = ((CachedDbmsConnection) conn).getOriginalConnection();
+    }
+    if (conn instanceof ConcurrentJdbcConnection) {
+      return ((ConcurrentJdbcConnection) conn).getNextConnection();
+    } else if (conn instanceof JdbcConnection) {
+      return (JdbcConnection) conn;
+    }
+    return null;
+  }
+
+  /** @return True if scrambles can be built through the connection by this class. */
+  public static boolean isSupported(DbmsConnection conn) {
+    SqlSyntax syntax = conn.getSyntax();
+    return findJdbcConnection(conn) != null
+        && (syntax instanceof MysqlSyntax
+            || syntax instanceof SqliteSyntax
+            || syntax instanceof H2Syntax);
+  }
+
+  /**
+   * @param originalSchema The schema of the original table
+   * @param originalTable The original table
+   * @param newSchema The schema of the scramble
+   * @param newTable The scramble, which must not exist
+   * @param where The condition on the rows to include; null if all rows are included
+   * @param method Determines the number of blocks; its distribution is stored for the scramble
+   * @param tierColumn The name of the tier column
+   * @param blockColumn The name of the block column
+   * @param zoneMapColumns The columns for which the min and max of each block are computed
+   * @return The zone map of the scramble, which includes the number of rows in each block
+   * @throws VerdictDBException
+   */
+  public BlockZoneMap build(
+      String originalSchema,
+      String originalTable,
+      String newSchema,
+      String newTable,
+      UnnamedColumn where,
+      UniformScramblingMethod method,
+      String tierColumn,
+      String blockColumn,
+      List<String> zoneMapColumns)
+      throws VerdictDBException {
+    SqlSyntax syntax = conn.getSyntax();
+
+    // the block counts are determined by the method in the same way as the other builds
+    Map<String, Object> metaData = new HashMap<>();
+    metaData.put(
+        TableSizeCountNode.class.getSimpleName(), countRows(originalSchema, originalTable));
+    method.getCumulativeProbabilityDistributionForTier(metaData, 0);
+    int blockCount = method.getBlockCount();
+    int actualBlockCount = method.getActualBlockCount();
+
+    createEmptyScramble(
+        originalSchema, originalTable, newSchema, newTable, tierColumn, blockColumn,
+        actualBlockCount);
+
+    SelectQuery rows =
+        SelectQuery.create(new AsteriskColumn(), new BaseTable(originalSchema, originalTable, "t"));
+    if (where != null) {
+      rows.addFilterByAnd(where);
+    }
+    String selectSql = QueryToSql.convert(syntax, rows);
+
+    Connection jdbc = conn.getConnection();
+    Statement stmt = null;
+    ResultSet rs = null;
+    PreparedStatement fullInsert = null;
+    long rowCount = 0;
+    BlockZoneMap zoneMap = null;
+    try {
+      stmt = jdbc.createStatement();
+      stmt.setFetchSize(fetchSize);
+      log.debug("Issues the following query to DBMS: " + selectSql);
+      rs = stmt.executeQuery(selectSql);
+
+      ResultSetMetaData rsmd = rs.getMetaData();
+      int columnCount = rsmd.getColumnCount();
+      List<String> columns = new ArrayList<>();
+      int[] types = new int[columnCount + 2];
+      for (int i = 0; i < columnCount; i++) {
+        columns.add(rsmd.getColumnLabel(i + 1));
+        types[i] = rsmd.getColumnType(i + 1);
+      }
+      columns.add(tierColumn);
+      columns.add(blockColumn);
+      types[columnCount] = java.sql.Types.INTEGER;
+      types[columnCount + 1] = java.sql.Types.INTEGER;
+
+      int[] zoneMapIndexes = findColumnIndexes(columns.subList(0, columnCount), zoneMapColumns);
+      zoneMap = BlockZoneMap.createEmpty(zoneMapColumns, actualBlockCount);
+
+      int rowsPerStatement =
+          Math.max(1, Math.min(batchSize, MAX_PARAMETER_COUNT / columns.size()));
+      List<Object[]> pending = new ArrayList<>();
+      while (rs.next()) {
+        // the same as floor(rand() * blockCount); the rows beyond actualBlockCount are dropped.
+        int block = random.nextInt(blockCount);
+        if (block >= actualBlockCount) {
+          continue;
+        }
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < columnCount; i++) {
+          values[i] = rs.getObject(i + 1);
+        }
+        values[columnCount] = 0;
+        values[columnCount + 1] = block;
+        pending.add(values);
+
+        List<Object> zoneMapValues = new ArrayList<>();
+        for (int index : zoneMapIndexes) {
+          zoneMapValues.add(values[index]);
+        }
+        zoneMap.addRow(block, zoneMapValues);
+
+        if (pending.size() == rowsPerStatement) {
+          if (fullInsert == null) {
+            fullInsert =
+                jdbc.prepareStatement(
+                    insertSql(syntax, newSchema, newTable, columns, rowsPerStatement));
+          }
+          insert(fullInsert, pending, types);
+          rowCount += pending.size();
+          pending.clear();
+        }
+      }
+      if (!pending.isEmpty()) {
+        PreparedStatement lastInsert =
+            jdbc.prepareStatement(insertSql(syntax, newSchema, newTable, columns, pending.size()));
+        try {
+          insert(lastInsert, pending, types);
+        } finally {
+          lastInsert.close();
+        }
+        rowCount += pending.size();
+      }
+    } catch (SQLException e) {
+      throw new VerdictDBDbmsException(
+          String.format(
+              "Failed to create the scramble %s.%s from %s.%s\n%s",
+              newSchema, newTable, originalSchema, originalTable, e.getMessage()));
+    } finally {
+      closeQuietly(fullInsert);
+      closeQuietly(rs);
+      closeQuietly(stmt);
+    }
+
+    log.info(
+        String.format(
+            "Wrote %d rows into %d blocks of %s.%s", rowCount, actualBlockCount, newSchema,
+            newTable));
+    return zoneMap;
+  }
+
+  private DbmsQueryResult countRows(String schemaName, String tableName)
+      throws VerdictDBException {
+    TableSizeCountNode countNode = new TableSizeCountNode(schemaName, tableName);
+    // the node only requires a token to be passed.
+    SqlConvertible query = countNode.createQuery(Arrays.asList(new ExecutionInfoToken()));
+    return conn.execute(QueryToSql.convert(conn.getSyntax(), query));
+  }
+
+  /** create table newTable as select *, 0 as tier, 0 as block from originalTable where 1 = 0 */
+  private void createEmptyScramble(
+      String originalSchema,
+      String originalTable,
+      String newSchema,
+      String newTable,
+      String tierColumn,
+      String blockColumn,
+      int blockCount)
+      throws VerdictDBException {
+    List<SelectItem> selectList = new ArrayList<>();
+    selectList.add(new AsteriskColumn());
+    selectList.add(new AliasedColumn(ConstantColumn.valueOf(0), tierColumn));
+    selectList.add(new AliasedColumn(ConstantColumn.valueOf(0), blockColumn));
+    SelectQuery select =
+        SelectQuery.create(selectList, new BaseTable(originalSchema, originalTable, "t"));
+    select.addFilterByAnd(ColumnOp.equal(ConstantColumn.valueOf(1), ConstantColumn.valueOf(0)));
+
+    CreateTableAsSelectQuery create = new CreateTableAsSelectQuery(newSchema, newTable, select);
+    if (conn.getSyntax().doesSupportTablePartitioning()) {
+      create.addPartitionColumn(blockColumn);
+      create.addPartitionCount(blockCount);
+    }
+    conn.execute(QueryToSql.convert(conn.getSyntax(), create));
+  }
+
+  private static int[] findColumnIndexes(List<String> columns, List<String> names)
+      throws VerdictDBValueException {
+    int[] indexes = new int[names.size()];
+    for (int i = 0; i < names.size(); i++) {
+      indexes[i] = -1;
+      for (int j = 0; j < columns.size(); j++) {
+        if (columns.get(j).equalsIgnoreCase(names.get(i))) {
+          indexes[i] = j;
+          break;
+        }
+      }
+      if (indexes[i] < 0) {
+        throw new VerdictDBValueException("No such column: " + names.get(i));
+      }
+    }
+    return indexes;
+  }
+
+  /** insert into newTable (col1, ...) values (?, ...), (?, ...), ... */
+  private static String insertSql(
+      SqlSyntax syntax, String schema, String table, List<String> columns, int rowCount) {
+    StringBuilder sql = new StringBuilder();
+    sql.append("insert into ");
+    sql.append(syntax.quoteName(schema));
+    sql.append(".");
+    sql.append(syntax.quoteName(table));
+    sql.append(" (");
+    for (int i = 0; i < columns.size(); i++) {
+      sql.append((i == 0) ? "" : ", ");
+      sql.append(syntax.quoteName(columns.get(i)));
+    }
+    sql.append(") values ");
+    for (int r = 0; r < rowCount; r++) {
+      sql.append((r == 0) ? "(" : ", (");
+      for (int i = 0; i < columns.size(); i++) {
+        sql.append((i == 0) ? "?" : ", ?");
+      }
+      sql.append(")");
+    }
+    return sql.toString();
+  }
+
+  private static void insert(PreparedStatement insert, List<Object[]> rows, int[] types)
+      throws SQLException {
+    int index = 1;
+    for (Object[] row : rows) {
+      for (int i = 0; i < row.length; i++) {
+        if (row[i] == null) {
+          insert.setNull(index, types[i]);
+        } else {
+          insert.setObject(index, row[i]);
+        }
+        index++;
+      }
+    }
+    insert.executeUpdate();
+  }
+
+  private static void closeQuietly(AutoCloseable closeable) {
+    if (closeable == null) {
+      return;
+    }
+    try {
+      closeable.close();
+    } catch (Exception e) {
+      // nothing to do
+    }
+  }
+}
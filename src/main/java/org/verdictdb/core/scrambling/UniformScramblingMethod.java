@@ -134,7 +134,8 @@ public class UniformScramblingMethod extends ScramblingMethodBase {
           totalNumberOfblocks = actualNumberOfBlocks;
         } else {
           double increment = prob.get(0);
-          totalNumberOfblocks = (int) Math.floor(1.0 / increment);
+          // rounded since the increment only approximates 1 / totalNumberOfblocks
+          totalNumberOfblocks = (int) Math.round(1.0 / increment);
         }
       }
     } else {
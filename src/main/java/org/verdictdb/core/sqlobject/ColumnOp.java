@@ -58,6 +58,8 @@ public class ColumnOp implements UnnamedColumn, SelectItem {
    *   <li>floor
    *   <li>cast
    *   <li>percentile
+   *   <li>percentile_approx
+   *   <li>median
    *   <li>mod
    *   <li>hash: returns a value between 0 and 1
    * </ol>
@@ -430,9 +432,16 @@ public class ColumnOp implements UnnamedColumn, SelectItem {
     return doesContainOpIn(ops);
   }
 
+  /** @return True if this column includes percentile(col, p), percentile_approx, or median. */
+  public boolean isQuantileAggregate() {
+    Set<String> ops = new HashSet<>(Arrays.asList("percentile", "percentile_approx", "median"));
+    return doesContainOpIn(ops);
+  }
+
   public boolean isColumnOpAggregate() {
     Set<String> ops = new HashSet<>(Arrays.asList(
-            "avg", "sum", "count", "max", "min", "countdistinct", "approx_distinct"));
+            "avg", "sum", "count", "max", "min", "countdistinct", "approx_distinct",
+            "percentile", "percentile_approx", "median"));
     return doesContainOpIn(ops);
 //    if (this.getOpType().equals("avg")
 //        || this.getOpType().equals("sum")
@@ -457,7 +466,8 @@ public class ColumnOp implements UnnamedColumn, SelectItem {
   }
 
   public boolean isUniformSampleAggregateColumn() {
-    Set<String> ops = new HashSet<>(Arrays.asList("avg", "sum", "count", "max", "min"));
+    Set<String> ops = new HashSet<>(Arrays.asList(
+            "avg", "sum", "count", "max", "min", "percentile", "percentile_approx", "median"));
     return doesContainOpIn(ops);
   }
 
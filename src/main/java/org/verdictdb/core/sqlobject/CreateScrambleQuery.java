@@ -42,6 +42,8 @@ public class CreateScrambleQuery extends CreateTableQuery {
    * <ol>
    *   <li>1. uniform
    *   <li>2. hash
+   *   <li>3. fastconverge
+   *   <li>4. stratified
    * </ol>
    */
   private String method;
@@ -55,6 +57,20 @@ public class CreateScrambleQuery extends CreateTableQuery {
   /** The column (if present) used for hashed sampling */
   private String hashColumnName = null;
 
+  /** The columns (if present) used for stratified sampling */
+  private List<String> stratifiedColumns = null;
+
+  /** The columns (if present) for which the min/max of each block are stored */
+  private List<String> zoneMapColumns = null;
+
+  /** The hash scramble (if present) whose blocks the blocks of a new hash scramble align with */
+  private String alignedSchema = null;
+
+  private String alignedTable = null;
+
+  /** The cumulative distribution of the blocks of the aligned scramble */
+  private List<Double> alignedBlockDistribution = null;
+
   /** the condition that will be used to create a scramble */
   private UnnamedColumn where = null;
 
@@ -101,7 +117,8 @@ public class CreateScrambleQuery extends CreateTableQuery {
   public void checkIfSupported(SqlSyntax syntax) throws VerdictDBValueException {
     if (method.equalsIgnoreCase("uniform")
         || method.equalsIgnoreCase("hash")
-        || method.equalsIgnoreCase("FastConverge")) {
+        || method.equalsIgnoreCase("FastConverge")
+        || method.equalsIgnoreCase("stratified")) {
     } else {
       throw new VerdictDBValueException(
           String.format(
@@ -110,6 +127,15 @@ public class CreateScrambleQuery extends CreateTableQuery {
               method));
     }
 
+    if (method.equalsIgnoreCase("stratified")
+        && hashColumnName == null
+        && (stratifiedColumns == null || stratifiedColumns.isEmpty())) {
+      throw new VerdictDBValueException(
+          "The stratified columns are missing."
+              + "If the scrambling method is stratified, "
+              + "the columns must be present, e.g., ON (col1, col2).");
+    }
+
     if (method.equals("hash") && hashColumnName == null) {
       throw new VerdictDBValueException(
           "The hash column is null."
@@ -117,6 +143,11 @@ public class CreateScrambleQuery extends CreateTableQuery {
               + "hash column name must be present.");
     }
 
+    if (alignedTable != null && !method.equalsIgnoreCase("hash")) {
+      throw new VerdictDBValueException(
+          "Only a hash scramble can be aligned with another scramble.");
+    }
+
     if (size <= 0 || size > 1) {
       throw new VerdictDBValueException(
           String.format("Scramble size is %f. It must be between 0.0 and 1.0.", size));
@@ -202,6 +233,43 @@ public class CreateScrambleQuery extends CreateTableQuery {
     this.hashColumnName = hashColumnName;
   }
 
+  public List<String> getStratifiedColumns() {
+    return stratifiedColumns;
+  }
+
+  public void setStratifiedColumns(List<String> stratifiedColumns) {
+    this.stratifiedColumns = stratifiedColumns;
+  }
+
+  public List<String> getZoneMapColumns() {
+    return zoneMapColumns;
+  }
+
+  public void setZoneMapColumns(List<String> zoneMapColumns) {
+    this.zoneMapColumns = zoneMapColumns;
+  }
+
+  public String getAlignedSchema() {
+    return alignedSchema;
+  }
+
+  public String getAlignedTable() {
+    return alignedTable;
+  }
+
+  public void setAlignedScramble(String alignedSchema, String alignedTable) {
+    this.alignedSchema = alignedSchema;
+    this.alignedTable = alignedTable;
+  }
+
+  public List<Double> getAlignedBlockDistribution() {
+    return alignedBlockDistribution;
+  }
+
+  public void setAlignedBlockDistribution(List<Double> alignedBlockDistribution) {
+    this.alignedBlockDistribution = alignedBlockDistribution;
+  }
+
   public UnnamedColumn getWhere() {
     return where;
   }
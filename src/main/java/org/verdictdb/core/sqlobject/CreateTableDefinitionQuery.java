@@ -35,6 +35,9 @@ public class CreateTableDefinitionQuery extends CreateTableQuery {
   // See DataTypeConverter for types
   List<Pair<String, String>> columnNameAndTypes = new ArrayList<>();
 
+  // Ignored if the database does not support primary keys.
+  List<String> primaryKeyColumns = new ArrayList<>();
+
   public List<String> getPartitionColumns() {
     return partitionColumns;
   }
@@ -54,4 +57,12 @@ public class CreateTableDefinitionQuery extends CreateTableQuery {
   public void addColumnNameAndType(Pair<String, String> nameAndType) {
     this.columnNameAndTypes.add(nameAndType);
   }
+
+  public List<String> getPrimaryKeyColumns() {
+    return primaryKeyColumns;
+  }
+
+  public void setPrimaryKeyColumns(List<String> primaryKeyColumns) {
+    this.primaryKeyColumns = primaryKeyColumns;
+  }
 }
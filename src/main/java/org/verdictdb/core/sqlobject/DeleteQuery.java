@@ -0,0 +1,47 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.sqlobject;
+
+/** Deletes the rows of a table satisfying a predicate, or all the rows if no predicate is set. */
+public class DeleteQuery implements SqlConvertible {
+
+  private static final long serialVersionUID = 5307785129346208473L;
+
+  String schemaName;
+
+  String tableName;
+
+  UnnamedColumn predicate;
+
+  public DeleteQuery(String schemaName, String tableName, UnnamedColumn predicate) {
+    this.schemaName = schemaName;
+    this.tableName = tableName;
+    this.predicate = predicate;
+  }
+
+  public String getSchemaName() {
+    return schemaName;
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  public UnnamedColumn getPredicate() {
+    return predicate;
+  }
+}
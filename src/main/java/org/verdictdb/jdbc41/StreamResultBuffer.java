@@ -0,0 +1,164 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.jdbc41;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.verdictdb.VerdictSingleResult;
+
+/**
+ * The handoff of the answers of a stream query from the thread running the query to the thread
+ * reading VerdictStreamResultSet.
+ *
+ * <p>The number of the unread answers is limited by the policy:
+ *
+ * <ol>
+ *   <li>BOUNDED: at most the given number of answers are kept; put() blocks while the buffer is
+ *       full, which pauses the query until the reader catches up.
+ *   <li>LATEST: only the most recent answer is kept; put() never blocks, and the answers not read
+ *       before the next one arrives are dropped.
+ * </ol>
+ *
+ * <p>Each answer is tagged with its sequence number (starting from 1), which is preserved even if
+ * the preceding answers are dropped.
+ */
+class StreamResultBuffer {
+
+  enum Policy {
+    BOUNDED,
+    LATEST
+  }
+
+  private final Policy policy;
+
+  private final int capacity;
+
+  private final Deque<Pair<Integer, VerdictSingleResult>> results = new ArrayDeque<>();
+
+  private int sequence = 0;
+
+  private boolean isCompleted = false;
+
+  private boolean isClosed = false;
+
+  private Throwable failure;
+
+  StreamResultBuffer(Policy policy, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("The capacity must be a positive integer: " + capacity);
+    }
+    this.policy = policy;
+    this.capacity = (policy == Policy.LATEST) ? 1 : capacity;
+  }
+
+  /**
+   * @param policy "bounded" or "latest" (case insensitive)
+   * @param capacity The maximum number of the unread answers; ignored for "latest"
+   * @throws IllegalArgumentException if the policy is unknown or the capacity is not positive
+   */
+  static StreamResultBuffer create(String policy, int capacity) {
+    for (Policy p : Policy.values()) {
+      if (p.name().equalsIgnoreCase(policy)) {
+        return new StreamResultBuffer(p, capacity);
+      }
+    }
+    throw new IllegalArgumentException(
+        "Unknown stream buffer policy: " + policy + " (expected bounded or latest)");
+  }
+
+  /** A buffer that already holds a single answer and expects no more. */
+  static StreamResultBuffer of(VerdictSingleResult result) {
+    StreamResultBuffer buffer = new StreamResultBuffer(Policy.BOUNDED, 1);
+    buffer.results.add(Pair.of(++buffer.sequence, result));
+    buffer.isCompleted = true;
+    return buffer;
+  }
+
+  /**
+   * Adds an answer, blocking while the buffer is full under the BOUNDED policy.
+   *
+   * @return false if the buffer has been closed by the reader; the caller should stop producing.
+   * @throws InterruptedException
+   */
+  synchronized boolean put(VerdictSingleResult result) throws InterruptedException {
+    if (policy == Policy.LATEST) {
+      results.clear();
+    }
+    while (!isClosed && results.size() >= capacity) {
+      wait();
+    }
+    if (isClosed) {
+      return false;
+    }
+    results.add(Pair.of(++sequence, result));
+    notifyAll();
+    return true;
+  }
+
+  /**
+   * Removes the oldest answer, blocking until one is available.
+   *
+   * @return The pair of the sequence number and the answer; null if no more answers will arrive.
+   * @throws InterruptedException
+   */
+  synchronized Pair<Integer, VerdictSingleResult> take() throws InterruptedException {
+    while (results.isEmpty() && !isCompleted && !isClosed && failure == null) {
+      wait();
+    }
+    if (isClosed) {
+      return null;
+    }
+    Pair<Integer, VerdictSingleResult> result = results.poll();
+    if (result != null) {
+      notifyAll();
+    }
+    return result;
+  }
+
+  /** Indicates that no more answers will be added. */
+  synchronized void setCompleted() {
+    isCompleted = true;
+    notifyAll();
+  }
+
+  /** Indicates that the query has failed; the reader observes the failure after the answers. */
+  synchronized void fail(Throwable e) {
+    failure = e;
+    notifyAll();
+  }
+
+  /** Discards the unread answers and releases both the reader and the producer. */
+  synchronized void close() {
+    isClosed = true;
+    results.clear();
+    notifyAll();
+  }
+
+  synchronized Throwable getFailure() {
+    return failure;
+  }
+
+  synchronized boolean isEmpty() {
+    return results.isEmpty();
+  }
+
+  synchronized int size() {
+    return results.size();
+  }
+}
@@ -53,6 +53,9 @@ public class VerdictResultSet implements ResultSet {
 
   private HashMap<String, Integer> colNameIdx = new HashMap<>();
 
+  // key: a column label as given by the caller, value: zero-based index
+  private HashMap<String, Integer> labelIndexCache = new HashMap<>();
+
   public VerdictResultSet() {}
 
   public VerdictResultSet(VerdictSingleResult queryResult) {
@@ -107,7 +110,23 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public int findColumn(String columnLabel) throws SQLException {
-    return colNameIdx.get(standardizedLabel(columnLabel.toLowerCase())) + 1;
+    return findColumnIndex(columnLabel) + 1;
+  }
+
+  /**
+   * Resolves a column label into a zero-based index. Each distinct label is resolved once per
+   * result set; the clients that read values by labels repeat the same labels for every row.
+   */
+  private int findColumnIndex(String columnLabel) throws SQLException {
+    Integer index = labelIndexCache.get(columnLabel);
+    if (index == null) {
+      index = colNameIdx.get(standardizedLabel(columnLabel));
+      if (index == null) {
+        throw new SQLException("ColumnLabel does not exist.");
+      }
+      labelIndexCache.put(columnLabel, index);
+    }
+    return index;
   }
 
   @Override
@@ -130,9 +149,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public Array getArray(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getArray(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getArray(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -143,9 +160,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public InputStream getAsciiStream(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getAsciiStream(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getAsciiStream(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -164,16 +179,12 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getBigDecimal(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getBigDecimal(findColumnIndex(columnLabel));
   }
 
   @Override
   public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getBigDecimal(standardizedLabel(columnLabel.toLowerCase()), scale);
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getBigDecimal(findColumnIndex(columnLabel), scale);
   }
 
   @Override
@@ -184,9 +195,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public InputStream getBinaryStream(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getBinaryStream(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getBinaryStream(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -198,9 +207,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public Blob getBlob(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getBlob(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getBlob(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -211,9 +218,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public boolean getBoolean(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getBoolean(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getBoolean(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -242,9 +247,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public byte getByte(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getByte(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getByte(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -255,9 +258,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public byte[] getBytes(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getBytes(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getBytes(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -281,9 +282,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public Clob getClob(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getClob(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getClob(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -311,9 +310,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public Date getDate(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getDate(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getDate(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -329,9 +326,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public double getDouble(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getDouble(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getDouble(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -352,9 +347,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public float getFloat(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getFloat(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getFloat(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -370,9 +363,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public int getInt(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getInt(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getInt(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -383,9 +374,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public long getLong(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getLong(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getLong(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -411,9 +400,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public NClob getNClob(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getNClob(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getNClob(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -444,9 +431,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public Object getObject(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return getObject(colNameIdx.get(standardizedLabel(columnLabel.toLowerCase())) + 1);
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return getObject(findColumnIndex(columnLabel) + 1);
   }
 
   @Override
@@ -466,9 +451,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public Ref getRef(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getRef(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getRef(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -483,9 +466,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public RowId getRowId(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getRowId(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getRowId(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -496,9 +477,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public short getShort(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getShort(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getShort(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -508,9 +487,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public SQLXML getSQLXML(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getSQLXML(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getSQLXML(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -525,9 +502,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public String getString(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getString(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getString(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -543,9 +518,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public Time getTime(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getTime(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getTime(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -572,17 +545,12 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public Timestamp getTimestamp(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getTimestamp(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getTimestamp(findColumnIndex(columnLabel));
   }
 
   @Override
   public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      int index = columnLabel.indexOf(standardizedLabel(columnLabel)) + 1;
-      return getTimestamp(index, cal);
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return getTimestamp(findColumnIndex(columnLabel) + 1, cal);
   }
 
   @Override
@@ -598,9 +566,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public InputStream getUnicodeStream(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getUnicodeStream(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getUnicodeStream(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -610,9 +576,7 @@ public class VerdictResultSet implements ResultSet {
 
   @Override
   public URL getURL(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getURL(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getURL(findColumnIndex(columnLabel));
   }
 
   @Override
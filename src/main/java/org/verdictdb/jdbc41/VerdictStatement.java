@@ -21,11 +21,17 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.sql.SQLWarning;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.verdictdb.VerdictContext;
 import org.verdictdb.VerdictResultStream;
 import org.verdictdb.VerdictSingleResult;
 import org.verdictdb.commons.VerdictDBLogger;
+import org.verdictdb.commons.VerdictOption;
 import org.verdictdb.coordinator.ExecutionContext;
 import org.verdictdb.exception.VerdictDBException;
 
@@ -37,59 +43,85 @@ public class VerdictStatement implements java.sql.Statement {
 
   VerdictSingleResult result;
 
+  VerdictOption options;
+
+  // the stream query in progress
+  private ExecuteStream stream;
+
+  private Future<?> streamFuture;
+
+  /** The threads running the stream queries of all statements. */
+  private static final ExecutorService streamExecutor =
+      Executors.newCachedThreadPool(
+          new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "verdictdb-stream-" + count.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            }
+          });
+
   private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());
 
   public VerdictStatement(Connection conn, VerdictContext context) {
     this.conn = conn;
     this.executionContext = context.createNewExecutionContext();
+    this.options = context.getOptions();
   }
 
   /**
    * Created by Shucheng Zhong on 9/13/18
    * <p>
    * It will try to get the VerdictSingleResult from VerdictResultStream
-   * and append the VerdictSingleResult to VerdictStreamResultSet
+   * and put the VerdictSingleResult into the buffer of VerdictStreamResultSet
    * until all the VerdictSingleResults have return.
-   * Since it running on separate thread, it won't block user querying from
-   * the ResultSet
+   * Since it runs on a thread of streamExecutor, it won't block user querying from
+   * the ResultSet; the buffer pauses it while the user has not read the previous results.
    */
   class ExecuteStream implements Runnable {
 
     VerdictResultStream resultStream;
 
-    VerdictStreamResultSet resultSet;
+    StreamResultBuffer buffer;
 
     ExecutionContext executionContext;
 
-    ExecuteStream(VerdictResultStream resultStream, VerdictStreamResultSet resultSet, ExecutionContext executionContext) {
+    ExecuteStream(
+        VerdictResultStream resultStream,
+        StreamResultBuffer buffer,
+        ExecutionContext executionContext) {
       this.resultStream = resultStream;
-      this.resultSet = resultSet;
+      this.buffer = buffer;
       this.executionContext = executionContext;
     }
 
     /**
-     * When the last SingleResult is returned, it will synchronized the hasReadAllQueryResults flag of VerdictStreamResultSet
-     * to block possible call of next(). It will set status of VerdictStreamResultSet to be complete and
-     * append the last SingleResult to VerdictStreamResultSet.
+     * The buffer is marked as completed when the stream is exhausted, the buffer is closed, or
+     * the thread is interrupted (by cancel() or close()).
      */
     public void run() {
-      while (!resultStream.isCompleted()) {
-        VerdictSingleResult singleResult = resultStream.next();
-        if (!resultStream.hasNext()) {
-          // Must have synchronized keyword. Need to make sure the block is atomic because VerdictStreamResultSet.next() also use hasReadAllQueryResults flag.
-          // Otherwise, VerdictStreamResultSet may be unware the processing is completed after the last singleResult is appended.
-          synchronized ((Object) resultSet.hasReadAllQueryResults) {
-            resultSet.appendSingleResult(singleResult);
-            resultSet.setCompleted();
+      try {
+        while (!resultStream.isCompleted() && !Thread.currentThread().isInterrupted()) {
+          VerdictSingleResult singleResult = resultStream.next();
+          if (!buffer.put(singleResult)) {
+            break;
           }
-          log.debug("Execution Completed\n");
-        } else {
-          resultSet.appendSingleResult(singleResult);
         }
+        log.debug("Execution Completed\n");
+      } catch (InterruptedException e) {
+        log.debug("Stream query interrupted");
+      } catch (RuntimeException e) {
+        buffer.fail(e);
+      } finally {
+        buffer.setCompleted();
       }
     }
 
     public void abort() {
+      buffer.close();
       executionContext.abort();
     }
   }
@@ -118,12 +150,24 @@ public class VerdictStatement implements java.sql.Statement {
   public ResultSet executeQuery(String sql) throws SQLException {
     try {
       if (checkStreamQuery(sql)) {
-        VerdictStreamResultSet resultSet = new VerdictStreamResultSet();
+        stopStream();
         sql = sql.replaceFirst("(?i)stream", "");
+        // the buffer is created first so that invalid options do not leave a started stream behind
+        // the deltas cannot be dropped; each of them depends on the previous ones
+        String bufferPolicy =
+            options.isStreamDelta() ? "bounded" : options.getStreamBufferPolicy();
+        StreamResultBuffer buffer;
+        try {
+          buffer = StreamResultBuffer.create(bufferPolicy, options.getStreamBufferSize());
+        } catch (IllegalArgumentException e) {
+          throw new SQLException(e.getMessage(), e);
+        }
         VerdictResultStream resultStream = executionContext.streamsql(sql);
-        ExecuteStream executeStream = new ExecuteStream(resultStream, resultSet, executionContext);
+        VerdictStreamResultSet resultSet = new VerdictStreamResultSet(buffer);
+        ExecuteStream executeStream = new ExecuteStream(resultStream, buffer, executionContext);
         resultSet.setRunnable(executeStream);
-        new Thread(executeStream).start();
+        stream = executeStream;
+        streamFuture = streamExecutor.submit(executeStream);
         return resultSet;
       }
       result = executionContext.sql(sql);
@@ -146,9 +190,20 @@ public class VerdictStatement implements java.sql.Statement {
   @Override
   public void close() throws SQLException {
     // dongyoungy: is this correct for close() to also call terminate() just like cancel()?
+    stopStream();
     executionContext.terminate();
   }
 
+  /** Stops the stream query started last, if any, and releases the thread running it. */
+  private void stopStream() {
+    if (streamFuture != null) {
+      streamFuture.cancel(true);
+      stream.abort();
+      streamFuture = null;
+      stream = null;
+    }
+  }
+
   @Override
   public boolean isClosed() throws SQLException {
     // TODO Auto-generated method stub
@@ -212,6 +267,7 @@ public class VerdictStatement implements java.sql.Statement {
 
   @Override
   public void cancel() throws SQLException {
+    stopStream();
     executionContext.terminate();
   }
 
@@ -22,11 +22,9 @@ import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.time.FastDateFormat;
+import org.apache.commons.lang3.tuple.Pair;
 import org.verdictdb.VerdictSingleResult;
 import org.verdictdb.commons.VerdictDBLogger;
 import org.verdictdb.core.execplan.ExecutionInfoToken;
@@ -35,8 +33,8 @@ import org.verdictdb.core.execplan.ExecutionInfoToken;
  * Created by: Shucheng Zhong on 9/12/18
  * ResultSet type for stream select query when VerdictStatement.sql() is called.
  * <p>
- * It contains a blocking queue: queryResults. When user call next(), if no queryResult available,
- * it will try to take one from queryResults. Blocked if no results are returned from VerdictResultStream.
+ * It reads the results from a StreamResultBuffer. When user call next(), if no queryResult available,
+ * it will try to take one from the buffer. Blocked if no results are returned from VerdictResultStream.
  * The first column is verdictStreamSequenceColumn, which should be int class that specify the block sequence number
  */
 public class VerdictStreamResultSet extends VerdictResultSet {
@@ -45,15 +43,14 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   private static final String verdictStreamSequenceColumn = "seq";
 
-  boolean hasReadAllQueryResults = false;
-
   private boolean isClosed = false;
 
   private long rowIndex = 0;
 
-  private HashMap<String, Integer> colNameIdx = new HashMap<>();
+  // key: a column label as given by the caller, value: zero-based index
+  private HashMap<String, Integer> labelIndexCache = new HashMap<>();
 
-  BlockingDeque<VerdictSingleResult> queryResults = new LinkedBlockingDeque<>();
+  private StreamResultBuffer queryResults;
 
   VerdictSingleResult queryResult;
 
@@ -63,24 +60,14 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());
 
-  public VerdictStreamResultSet() {
+  VerdictStreamResultSet(StreamResultBuffer queryResults) {
     super();
+    this.queryResults = queryResults;
   }
 
   public VerdictStreamResultSet(VerdictSingleResult queryResult) {
     super(queryResult);
-    queryResults.add(queryResult);
-  }
-
-  public void appendSingleResult(VerdictSingleResult queryResult) {
-    queryResults.add(queryResult);
-  }
-
-  /**
-   * return true if getting all SingleResults
-   */
-  void setCompleted() {
-    hasReadAllQueryResults = true;
+    queryResults = StreamResultBuffer.of(queryResult);
   }
 
   void setRunnable(VerdictStatement.ExecuteStream r) {
@@ -125,7 +112,11 @@ public class VerdictStreamResultSet extends VerdictResultSet {
   @Override
   public void close() {
     isClosed = true;
-    runnable.abort();
+    if (runnable != null) {
+      runnable.abort();
+    } else {
+      queryResults.close();
+    }
   }
 
   @Override
@@ -138,12 +129,34 @@ public class VerdictStreamResultSet extends VerdictResultSet {
     if (columnLabel.equals(standardizedLabel(verdictStreamSequenceColumn))) {
       return 1;
     }
-    return colNameIdx.get(standardizedLabel(columnLabel.toLowerCase())) + 2;
+    return findColumnIndex(columnLabel) + 2;
+  }
+
+  /**
+   * Resolves a column label into a zero-based index of the current result. All the results of a
+   * stream have the same columns, so each distinct label is resolved once per result set.
+   */
+  private int findColumnIndex(String columnLabel) throws SQLException {
+    Integer index = labelIndexCache.get(columnLabel);
+    if (index == null) {
+      String label = standardizedLabel(columnLabel);
+      for (int i = 0; queryResult != null && i < queryResult.getColumnCount(); i++) {
+        if (standardizedLabel(queryResult.getColumnName(i)).equals(label)) {
+          index = i;
+          break;
+        }
+      }
+      if (index == null) {
+        throw new SQLException("ColumnLabel does not exist.");
+      }
+      labelIndexCache.put(columnLabel, index);
+    }
+    return index;
   }
 
   @Override
   public boolean first() throws SQLException {
-    if (queryResults.size() == 0) {
+    if (queryResults.isEmpty()) {
       return false;
     } else {
       rowIndex = 1;
@@ -162,9 +175,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public Array getArray(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getArray(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getArray(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -175,9 +186,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public InputStream getAsciiStream(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getAsciiStream(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getAsciiStream(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -205,9 +214,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
     if (columnLabel.equals(verdictStreamSequenceColumn)) {
       return getBigDecimal(1);
     }
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getBigDecimal(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getBigDecimal(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -215,9 +222,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
     if (columnLabel.equals(verdictStreamSequenceColumn)) {
       return getBigDecimal(1, scale);
     }
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getBigDecimal(standardizedLabel(columnLabel.toLowerCase()), scale);
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getBigDecimal(findColumnIndex(columnLabel), scale);
   }
 
   @Override
@@ -228,9 +233,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public InputStream getBinaryStream(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getBinaryStream(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getBinaryStream(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -242,9 +245,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public Blob getBlob(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getBlob(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getBlob(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -255,9 +256,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public boolean getBoolean(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getBoolean(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getBoolean(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -286,9 +285,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public byte getByte(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getByte(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getByte(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -299,9 +296,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public byte[] getBytes(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getBytes(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getBytes(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -325,9 +320,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public Clob getClob(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getClob(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getClob(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -359,17 +352,12 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public Date getDate(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getDate(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getDate(findColumnIndex(columnLabel));
   }
 
   @Override
   public Date getDate(String columnLabel, Calendar cal) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      int index = columnLabel.indexOf(standardizedLabel(columnLabel)) + 1;
-      return getDate(index, cal);
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return getDate(findColumnIndex(columnLabel) + 2, cal);
   }
 
   @Override
@@ -386,9 +374,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
     if (columnLabel.equals(verdictStreamSequenceColumn)) {
       return getDouble(1);
     }
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getDouble(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getDouble(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -415,9 +401,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
     if (columnLabel.equals(verdictStreamSequenceColumn)) {
       return getFloat(1);
     }
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getFloat(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getFloat(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -439,9 +423,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
     if (columnLabel.equals(verdictStreamSequenceColumn)) {
       return getInt(1);
     }
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getInt(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getInt(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -458,20 +440,14 @@ public class VerdictStreamResultSet extends VerdictResultSet {
     if (columnLabel.equals(verdictStreamSequenceColumn)) {
       return getLong(1);
     }
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getLong(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getLong(findColumnIndex(columnLabel));
   }
 
   @Override
   public ResultSetMetaData getMetaData() throws SQLException {
     if (metadata == null && queryResult == null) {
-      try {
-        queryResult = queryResults.take();
+      if (takeNextResult()) {
         metadata = new VerdictStreamResultSetMetaData(queryResult);
-        lastQueryResultIndex++;
-      } catch (InterruptedException e) {
-
       }
     } else if (metadata == null && queryResult != null) {
       metadata = new VerdictStreamResultSetMetaData(queryResult);
@@ -497,9 +473,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public NClob getNClob(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getNClob(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getNClob(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -530,9 +504,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public Object getObject(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return getObject(colNameIdx.get(standardizedLabel(columnLabel.toLowerCase())) + 1);
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return getObject(findColumnIndex(columnLabel) + 2);
   }
 
   @Override
@@ -552,9 +524,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public Ref getRef(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getRef(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getRef(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -569,9 +539,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public RowId getRowId(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getRowId(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getRowId(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -588,9 +556,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
     if (columnLabel.equals(verdictStreamSequenceColumn)) {
       return getShort(1);
     }
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getShort(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getShort(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -600,9 +566,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public SQLXML getSQLXML(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getSQLXML(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getSQLXML(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -623,9 +587,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
     if (columnLabel.equals(verdictStreamSequenceColumn)) {
       return getString(1);
     }
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getString(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getString(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -647,17 +609,12 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public Time getTime(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getTime(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getTime(findColumnIndex(columnLabel));
   }
 
   @Override
   public Time getTime(String columnLabel, Calendar cal) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      int index = columnLabel.indexOf(standardizedLabel(columnLabel)) + 1;
-      return getTime(index, cal);
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return getTime(findColumnIndex(columnLabel) + 2, cal);
   }
 
   @Override
@@ -679,17 +636,12 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public Timestamp getTimestamp(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getTimestamp(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getTimestamp(findColumnIndex(columnLabel));
   }
 
   @Override
   public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      int index = columnLabel.indexOf(standardizedLabel(columnLabel)) + 1;
-      return getTimestamp(index, cal);
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return getTimestamp(findColumnIndex(columnLabel) + 2, cal);
   }
 
   @Override
@@ -705,9 +657,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public InputStream getUnicodeStream(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getUnicodeStream(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getUnicodeStream(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -717,9 +667,7 @@ public class VerdictStreamResultSet extends VerdictResultSet {
 
   @Override
   public URL getURL(String columnLabel) throws SQLException {
-    if (colNameIdx.containsKey(standardizedLabel(columnLabel))) {
-      return queryResult.getURL(standardizedLabel(columnLabel.toLowerCase()));
-    } else throw new SQLException("ColumnLabel does not exist.");
+    return queryResult.getURL(findColumnIndex(columnLabel));
   }
 
   @Override
@@ -855,20 +803,11 @@ public class VerdictStreamResultSet extends VerdictResultSet {
   }
 
   /**
-   * Require a mutex here. The stream is executed on the other thread. When the execution of the stream is finished,
-   * it will try to synchronize hasReadAllQueryResults flag by calling synchronized(hasReadAllQueryResults).
-   * And here are two cases: 1) next() executes first 2) the other thread executes first
-   *
-   * 1) If next() first executes, the flag hasReadAllQueryResults is still false. next() will try to take new queryResult
-   * from queryResults. As soon as, next doesn't acquire hasReadAllQueryResults flag. Then the other thread will take the
-   * acquire of hasReadAllQueryResults, append the queryresult and set the flag to be true. At that time, if another next() is called,
-   * it will get blocked at the line 'else if (queryResults.peek() == null && hasReadAllQueryResults)' until the other thread finishes
-   * its job.
-   *
-   * 2) If the other thread executes first, it will append the query result and set the flag to be true. Then waiting
-   * next() starts to execute. Since there are still queryResult in queryResults, next() will take it from the list so that
-   * the last queryResult won't be neglected. The second next() will return false, since queryResults.peek()==null and
-   * hasReadAllQueryResults==true.
+   * Moves to the next row, taking the next result from the buffer when the current result is
+   * exhausted. The call blocks until the next result arrives; it returns false once the stream
+   * query is completed and all of its results are read. Under the "latest" buffer policy, the
+   * results that have been replaced by newer ones before being taken are skipped; the sequence
+   * number (the first column) still identifies the result.
    *
    * @return
    * @throws SQLException
@@ -876,35 +815,44 @@ public class VerdictStreamResultSet extends VerdictResultSet {
   @Override
   public boolean next() throws SQLException {
     if (isClosed) return false;
-    try {
-      // on the first call
-      if (queryResult == null && (!hasReadAllQueryResults || !queryResults.isEmpty())) {
-        log.debug("Trying to take a queryResult out of blockingDeque");
-        queryResult = queryResults.take();
-        lastQueryResultIndex++;
-      }
-      boolean hasMore = queryResult.next();
-      if (hasMore) {
-        rowIndex++;
-        return true;
-      } else if (queryResults.peek() == null && hasReadAllQueryResults) {
+    // on the first call
+    if (queryResult == null && !takeNextResult()) {
+      return false;
+    }
+    while (!queryResult.next()) {
+      if (!takeNextResult()) {
         return false;
-      } else {
-        log.debug("Trying to take a queryResult out of blockingDeque");
-        queryResult = queryResults.poll(2, TimeUnit.MINUTES);
-        if (queryResult == null && hasReadAllQueryResults) {
-          return false;
-          //throw new RuntimeException("The queryResult was unavailable for a long time for an unknown reasons.");
-        } else if (queryResult == null){
-          queryResult = queryResults.take();
-        }
-        //queryResult = queryResults.take();
-        lastQueryResultIndex++;
-        return next();
       }
+    }
+    rowIndex++;
+    return true;
+  }
+
+  /**
+   * Takes the next result out of the buffer.
+   *
+   * @return false if no more results will arrive
+   * @throws SQLException if the stream query has failed
+   */
+  private boolean takeNextResult() throws SQLException {
+    log.debug("Trying to take a queryResult out of the buffer");
+    Pair<Integer, VerdictSingleResult> next;
+    try {
+      next = queryResults.take();
     } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       return false;
     }
+    if (next == null) {
+      Throwable failure = queryResults.getFailure();
+      if (failure != null && !isClosed) {
+        throw new SQLException(failure);
+      }
+      return false;
+    }
+    lastQueryResultIndex = next.getLeft();
+    queryResult = next.getRight();
+    return true;
   }
 
   @Override
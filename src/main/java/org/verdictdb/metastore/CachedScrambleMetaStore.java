@@ -1,28 +1,228 @@
 package org.verdictdb.metastore;
 
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.verdictdb.commons.VerdictDBLogger;
 import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.metastore.ScrambleMetaStore.MetaStoreEntry;
 
+/**
+ * Caches the scramble meta of another metastore.
+ *
+ * <p>The cache is versioned: refreshIfChanged() first compares the (cheap) version of the original
+ * metastore with the version of the cache, and if they differ, only the metastore rows added
+ * since the last refresh are fetched and applied to the cache. Optionally, refreshIfChanged() can
+ * be called periodically by a background thread so that the scrambles created or dropped by other
+ * clients become visible.
+ */
 public class CachedScrambleMetaStore extends VerdictMetaStore {
-  
+
   VerdictMetaStore originalMetaStore;
-  
-  ScrambleMetaSet cachedMetaSet = null;
-  
+
+  volatile ScrambleMetaSet cachedMetaSet = null;
+
+  /** The version of the original metastore at the time the cache was built. */
+  private volatile String cachedVersion = null;
+
+  /**
+   * The latest metastore row for each scramble table (including deletions). Null if the cache
+   * cannot be updated incrementally; then, the next refresh reads the entire metastore.
+   */
+  private Map<Pair<String, String>, MetaStoreEntry> latestEntries = null;
+
+  /** The largest added_at among the rows applied to latestEntries. */
+  private Timestamp lastAddedAt = null;
+
+  /** The number of metastore rows whose added_at is earlier than lastAddedAt. */
+  private long rowCountBeforeLastAddedAt = 0;
+
+  private ScheduledExecutorService refresher = null;
+
+  private static final VerdictDBLogger LOG =
+      VerdictDBLogger.getLogger(CachedScrambleMetaStore.class);
+
   public CachedScrambleMetaStore(VerdictMetaStore metaStore) {
     this.originalMetaStore = metaStore;
   }
-  
+
   @Override
   public ScrambleMetaSet retrieve() {
-    if (cachedMetaSet == null) {
+    ScrambleMetaSet metaSet = cachedMetaSet;
+    if (metaSet == null) {
       refreshCache();
+      metaSet = cachedMetaSet;
     }
-    
-    return cachedMetaSet;
+
+    return metaSet;
+  }
+
+  @Override
+  public String retrieveVersion() {
+    return originalMetaStore.retrieveVersion();
+  }
+
+  /** Rebuilds the cache by reading the entire original metastore. */
+  public synchronized void refreshCache() {
+    // The version must be obtained before the content; otherwise, the cache may claim a newer
+    // version than its content.
+    String version = originalMetaStore.retrieveVersion();
+    if (!(originalMetaStore instanceof ScrambleMetaStore)) {
+      setCacheAndVersion(originalMetaStore.retrieve(), version);
+      return;
+    }
+
+    ScrambleMetaStore store = (ScrambleMetaStore) originalMetaStore;
+    // An empty version may also result from a transient failure. In that case, we rely on
+    // retrieve(), which checks the existence of the metastore table.
+    if (ScrambleMetaStore.getRowCountOfVersion(version) > 0) {
+      try {
+        // the current-state table and the metastore rows added after the last compaction
+        ScrambleMetaStore.LatestEntries latest =
+            store.retrieveLatestEntries(ScrambleMetaStore.getRowCountOfVersion(version));
+        if (latest != null) {
+          latestEntries = latest.getEntries();
+          lastAddedAt = latest.getLastAddedAt();
+          rowCountBeforeLastAddedAt = latest.getRowCountBeforeLastAddedAt();
+          setCacheAndVersion(ScrambleMetaStore.toMetaSet(latestEntries.values()), version);
+          return;
+        }
+      } catch (VerdictDBException e) {
+        LOG.debug("Failed to read the metastore entries: {}", e.getMessage());
+      }
+    }
+    latestEntries = null;
+    lastAddedAt = null;
+    setCacheAndVersion(store.retrieve(), version);
   }
-  
-  public void refreshCache() {
-    cachedMetaSet = originalMetaStore.retrieve();
+
+  /**
+   * Updates the cache only if the original metastore has changed since the last refresh. If
+   * possible, only the newly added metastore rows are read.
+   *
+   * @return True if the cache has been updated.
+   */
+  public synchronized boolean refreshIfChanged() {
+    String version = originalMetaStore.retrieveVersion();
+    if (cachedMetaSet != null && version != null && version.equals(cachedVersion)) {
+      return false;
+    }
+
+    long newRowCount = ScrambleMetaStore.getRowCountOfVersion(version);
+    long oldRowCount = ScrambleMetaStore.getRowCountOfVersion(cachedVersion);
+    boolean canApplyIncrementally =
+        cachedMetaSet != null
+            && latestEntries != null
+            && lastAddedAt != null
+            && newRowCount > 0
+            && newRowCount >= oldRowCount;
+    if (!canApplyIncrementally) {
+      // e.g., the metastore table has been recreated.
+      refreshCache();
+      return true;
+    }
+
+    try {
+      // The rows added at exactly lastAddedAt are read again since other rows may share the same
+      // timestamp; applying the same row twice does not change the result.
+      List<MetaStoreEntry> entries =
+          ((ScrambleMetaStore) originalMetaStore).retrieveEntriesSince(lastAddedAt);
+      // If a row was added with a timestamp earlier than lastAddedAt (e.g., by a client whose clock
+      // lags behind), the row counts do not match. Then, we read everything again.
+      boolean allRowsSeen = (rowCountBeforeLastAddedAt + entries.size() == newRowCount);
+      if (allRowsSeen && ScrambleMetaStore.applyEntries(latestEntries, entries)) {
+        Timestamp newLastAddedAt = ScrambleMetaStore.getLastAddedAt(latestEntries.values());
+        rowCountBeforeLastAddedAt += entries.size() - ScrambleMetaStore.countNotBefore(entries, newLastAddedAt);
+        lastAddedAt = newLastAddedAt;
+        setCacheAndVersion(ScrambleMetaStore.toMetaSet(latestEntries.values()), version);
+        return true;
+      }
+    } catch (VerdictDBException e) {
+      LOG.debug("Incremental metastore read failed: {}", e.getMessage());
+    }
+    refreshCache();
+    return true;
+  }
+
+  /**
+   * Starts a daemon thread that calls refreshIfChanged() at the given interval. The refresh
+   * queries are sent through the connection of the original metastore, which thus should not be
+   * the connection running the user queries (see DbmsConnection.copy()).
+   *
+   * @param intervalInSeconds The interval between two version checks
+   */
+  public synchronized void startBackgroundRefresh(long intervalInSeconds) {
+    stopBackgroundRefresh();
+    if (intervalInSeconds <= 0) {
+      return;
+    }
+    refresher =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "verdictdb-metastore-refresher");
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    refresher.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              if (refreshIfChanged()) {
+                LOG.debug("Scramble meta has been refreshed.");
+              }
+            } catch (RuntimeException e) {
+              // an exception would cancel all subsequent executions.
+              LOG.debug("Background metastore refresh failed: {}", e.getMessage());
+            }
+          }
+        },
+        intervalInSeconds,
+        intervalInSeconds,
+        TimeUnit.SECONDS);
+  }
+
+  public synchronized void stopBackgroundRefresh() {
+    if (refresher != null) {
+      refresher.shutdownNow();
+      refresher = null;
+    }
+  }
+
+  /**
+   * Sets the cache using the scramble meta obtained elsewhere (e.g., from a local snapshot).
+   *
+   * @param metaSet The scramble meta to be used until the next refresh
+   * @param version The version of the metastore that metaSet corresponds to
+   */
+  public synchronized void setCache(ScrambleMetaSet metaSet, String version) {
+    // the rows of the metastore are unknown; the next change triggers a full refresh.
+    latestEntries = null;
+    lastAddedAt = null;
+    setCacheAndVersion(metaSet, version);
+  }
+
+  public String getCachedVersion() {
+    return cachedVersion;
+  }
+
+  public VerdictMetaStore getOriginalMetaStore() {
+    return originalMetaStore;
+  }
+
+  private void setCacheAndVersion(ScrambleMetaSet metaSet, String version) {
+    cachedVersion = version;
+    cachedMetaSet = metaSet;
   }
 
 }
@@ -0,0 +1,351 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.metastore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.verdictdb.commons.VerdictDBLogger;
+import org.verdictdb.connection.CachedDbmsConnection;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+
+/**
+ * A local snapshot of the table metadata (schemas, tables, columns, partition columns) and the
+ * scramble meta. A new VerdictContext can restore its caches from this snapshot without issuing
+ * metadata queries as long as the metastore has not changed since the snapshot was taken.
+ *
+ * <p>The snapshot is stored in a compact binary format (see writeTo()). Every ScrambleMeta is
+ * stored as its json string, which is the same representation used by the metastore table.
+ */
+public class MetaDataSnapshot {
+
+  private static final int MAGIC_NUMBER = 0x56444d53; // "VDMS"
+
+  private static final int FORMAT_VERSION = 1;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final VerdictDBLogger LOG = VerdictDBLogger.getLogger(MetaDataSnapshot.class);
+
+  /** The value obtained by ScrambleMetaStore.retrieveVersion() when this snapshot was taken. */
+  private String metaStoreVersion;
+
+  /** The unix time (in milliseconds) when this snapshot was taken. */
+  private long createdAt;
+
+  private List<String> schemas = new ArrayList<>();
+
+  private Map<String, List<String>> tables = new HashMap<>();
+
+  private Map<Pair<String, String>, List<Pair<String, String>>> columns = new HashMap<>();
+
+  private Map<Pair<String, String>, List<String>> partitionColumns = new HashMap<>();
+
+  private ScrambleMetaSet scrambleMetaSet = new ScrambleMetaSet();
+
+  private MetaDataSnapshot() {}
+
+  /**
+   * Takes a snapshot of the metadata currently cached in the connection.
+   *
+   * @param conn The connection whose cache is copied
+   * @param metaSet The current scramble meta
+   * @param metaStoreVersion The current version of the metastore
+   * @return A new snapshot
+   */
+  public static MetaDataSnapshot capture(
+      CachedDbmsConnection conn, ScrambleMetaSet metaSet, String metaStoreVersion) {
+    MetaDataSnapshot snapshot = new MetaDataSnapshot();
+    snapshot.metaStoreVersion = metaStoreVersion;
+    snapshot.createdAt = System.currentTimeMillis();
+    snapshot.schemas = conn.getCachedSchemas();
+    snapshot.tables = conn.getCachedTables();
+    snapshot.columns = conn.getCachedColumns();
+    snapshot.partitionColumns = conn.getCachedPartitionColumns();
+    snapshot.scrambleMetaSet = metaSet;
+    return snapshot;
+  }
+
+  /**
+   * Checks if this snapshot can be used in place of the actual metadata.
+   *
+   * @param currentMetaStoreVersion The version of the metastore at this moment
+   * @param maxAgeInSeconds The maximum age of a valid snapshot
+   * @return True if the snapshot is still valid
+   */
+  public boolean isValid(String currentMetaStoreVersion, long maxAgeInSeconds) {
+    if (metaStoreVersion == null || !metaStoreVersion.equals(currentMetaStoreVersion)) {
+      return false;
+    }
+    long age = System.currentTimeMillis() - createdAt;
+    return age >= 0 && age <= maxAgeInSeconds * 1000;
+  }
+
+  /**
+   * Copies the table metadata of this snapshot into the cache of the connection.
+   *
+   * @param conn The connection whose cache is replaced
+   */
+  public void restoreTo(CachedDbmsConnection conn) {
+    conn.restoreCache(schemas, tables, columns, partitionColumns);
+  }
+
+  public String getMetaStoreVersion() {
+    return metaStoreVersion;
+  }
+
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  public ScrambleMetaSet getScrambleMetaSet() {
+    return scrambleMetaSet;
+  }
+
+  /**
+   * Reads a snapshot from a file.
+   *
+   * @param path The file path
+   * @return The stored snapshot; null if the file does not exist or cannot be read.
+   */
+  public static MetaDataSnapshot readFrom(String path) {
+    File file = new File(path);
+    if (!file.exists()) {
+      return null;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      return read(in);
+    } catch (IOException e) {
+      LOG.debug("Failed to read the metadata snapshot {}: {}", path, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Removes the snapshot file so that no VerdictContext restores the metadata from it, e.g., after
+   * the metadata is found stale or is changed by a DDL.
+   *
+   * @param path The file path
+   */
+  public static void invalidate(String path) {
+    File file = new File(path);
+    if (!file.exists()) {
+      return;
+    }
+    if (file.delete()) {
+      LOG.debug("Invalidated the metadata snapshot: " + path);
+    } else {
+      LOG.warn("Failed to remove the outdated metadata snapshot: " + path);
+    }
+  }
+
+  /**
+   * Writes this snapshot to a file. The content is first written to a temporary file in the same
+   * directory, which then replaces the target file; thus, concurrent readers never observe a
+   * partially written snapshot.
+   *
+   * @param path The file path
+   * @throws IOException
+   */
+  public void writeTo(String path) throws IOException {
+    File file = new File(path).getAbsoluteFile();
+    File dir = file.getParentFile();
+    if (dir != null && !dir.exists()) {
+      dir.mkdirs();
+    }
+    File temp = File.createTempFile(file.getName(), ".tmp", dir);
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+      write(out);
+    }
+    if (!temp.renameTo(file)) {
+      // some platforms do not allow renaming onto an existing file
+      file.delete();
+      if (!temp.renameTo(file)) {
+        temp.delete();
+        throw new IOException("Could not replace the metadata snapshot: " + path);
+      }
+    }
+  }
+
+  void write(DataOutputStream out) throws IOException {
+    out.writeInt(MAGIC_NUMBER);
+    out.writeInt(FORMAT_VERSION);
+    writeString(out, metaStoreVersion);
+    out.writeLong(createdAt);
+
+    writeStringList(out, schemas);
+
+    out.writeInt(tables.size());
+    for (Entry<String, List<String>> entry : tables.entrySet()) {
+      writeString(out, entry.getKey());
+      writeStringList(out, entry.getValue());
+    }
+
+    out.writeInt(columns.size());
+    for (Entry<Pair<String, String>, List<Pair<String, String>>> entry : columns.entrySet()) {
+      writeStringPair(out, entry.getKey());
+      List<Pair<String, String>> nameAndTypes = entry.getValue();
+      out.writeInt(nameAndTypes.size());
+      for (Pair<String, String> nameAndType : nameAndTypes) {
+        writeStringPair(out, nameAndType);
+      }
+    }
+
+    out.writeInt(partitionColumns.size());
+    for (Entry<Pair<String, String>, List<String>> entry : partitionColumns.entrySet()) {
+      writeStringPair(out, entry.getKey());
+      writeStringList(out, entry.getValue());
+    }
+
+    List<String> metaJsons = new ArrayList<>();
+    for (ScrambleMeta meta : scrambleMetaSet) {
+      metaJsons.add(meta.toJsonString());
+    }
+    writeStringList(out, metaJsons);
+  }
+
+  static MetaDataSnapshot read(DataInputStream in) throws IOException {
+    if (in.readInt() != MAGIC_NUMBER) {
+      throw new IOException("Not a metadata snapshot file.");
+    }
+    int version = in.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported snapshot format version: " + version);
+    }
+
+    MetaDataSnapshot snapshot = new MetaDataSnapshot();
+    snapshot.metaStoreVersion = readString(in);
+    snapshot.createdAt = in.readLong();
+
+    List<String> schemas = readStringList(in);
+    if (schemas != null) {
+      snapshot.schemas = schemas;
+    }
+
+    int tableEntryCount = in.readInt();
+    for (int i = 0; i < tableEntryCount; i++) {
+      String schema = readString(in);
+      snapshot.tables.put(schema, readStringList(in));
+    }
+
+    int columnEntryCount = in.readInt();
+    for (int i = 0; i < columnEntryCount; i++) {
+      Pair<String, String> key = readStringPair(in);
+      int columnCount = in.readInt();
+      List<Pair<String, String>> nameAndTypes = new ArrayList<>(columnCount);
+      for (int j = 0; j < columnCount; j++) {
+        nameAndTypes.add(readStringPair(in));
+      }
+      snapshot.columns.put(key, nameAndTypes);
+    }
+
+    int partitionEntryCount = in.readInt();
+    for (int i = 0; i < partitionEntryCount; i++) {
+      Pair<String, String> key = readStringPair(in);
+      snapshot.partitionColumns.put(key, readStringList(in));
+    }
+
+    List<ScrambleMeta> metas = new ArrayList<>();
+    List<String> metaJsons = readStringList(in);
+    if (metaJsons == null) {
+      throw new IOException("Corrupted scramble meta in the snapshot.");
+    }
+    for (String json : metaJsons) {
+      ScrambleMeta meta = (json == null) ? null : ScrambleMeta.fromJsonString(json);
+      if (meta == null) {
+        throw new IOException("Corrupted scramble meta in the snapshot.");
+      }
+      metas.add(meta);
+    }
+    snapshot.scrambleMetaSet = ScrambleMetaSet.createFromCollection(metas);
+
+    return snapshot;
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(UTF8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, UTF8);
+  }
+
+  private static void writeStringList(DataOutputStream out, List<String> values)
+      throws IOException {
+    if (values == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(values.size());
+    for (String v : values) {
+      writeString(out, v);
+    }
+  }
+
+  private static List<String> readStringList(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    if (size < 0) {
+      return null;
+    }
+    List<String> values = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      values.add(readString(in));
+    }
+    return values;
+  }
+
+  private static void writeStringPair(DataOutputStream out, Pair<String, String> pair)
+      throws IOException {
+    writeString(out, pair.getLeft());
+    writeString(out, pair.getRight());
+  }
+
+  private static Pair<String, String> readStringPair(DataInputStream in) throws IOException {
+    String left = readString(in);
+    String right = readString(in);
+    return new ImmutablePair<>(left, right);
+  }
+}
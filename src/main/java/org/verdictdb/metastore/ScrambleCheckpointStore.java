@@ -0,0 +1,348 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.metastore;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.verdictdb.commons.VerdictDBLogger;
+import org.verdictdb.commons.VerdictOption;
+import org.verdictdb.commons.VerdictTimestamp;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.CreateSchemaQuery;
+import org.verdictdb.core.sqlobject.CreateTableDefinitionQuery;
+import org.verdictdb.core.sqlobject.DropTableQuery;
+import org.verdictdb.core.sqlobject.InsertValuesQuery;
+import org.verdictdb.core.sqlobject.OrderbyAttribute;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.exception.VerdictDBValueException;
+import org.verdictdb.sqlwriter.QueryToSql;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Records the progress of the scrambles built in multiple units (see
+ * ScramblingPlan.createParallel()) so that a failed build can be continued by RESUME SCRAMBLE.
+ *
+ * <p>Like the metastore table, the checkpoint table is append-only. Every build is identified by a
+ * random build id. A build writes a header row once the scramble table is created, a row for each
+ * completed unit, and a completion row at the end. The header contains everything needed for
+ * resuming: the original CREATE SCRAMBLE statement, how the build is split into units, and the
+ * scramble meta (including the block probabilities) of the scramble.
+ */
+public class ScrambleCheckpointStore {
+
+  private static final String CHECKPOINT_TABLE_NAME = "verdictdbscramblecheckpoint";
+
+  private static final String SCRAMBLE_SCHEMA_COLUMN = "scramble_schema";
+
+  private static final String SCRAMBLE_TABLE_COLUMN = "scramble_table";
+
+  private static final String BUILD_ID_COLUMN = "build_id";
+
+  private static final String UNIT_ID_COLUMN = "unit_id";
+
+  private static final String ADDED_AT_COLUMN = "added_at";
+
+  private static final String DATA_COLUMN = "data";
+
+  private static final int HEADER_UNIT_ID = -1;
+
+  private static final int COMPLETION_UNIT_ID = -2;
+
+  private DbmsConnection conn;
+
+  private String storeSchema;
+
+  private static final VerdictDBLogger LOG =
+      VerdictDBLogger.getLogger(ScrambleCheckpointStore.class);
+
+  public ScrambleCheckpointStore(DbmsConnection conn, VerdictOption options) {
+    this(conn, options.getVerdictMetaSchemaName());
+  }
+
+  public ScrambleCheckpointStore(DbmsConnection conn, String storeSchema) {
+    this.conn = conn;
+    this.storeSchema = storeSchema;
+  }
+
+  public static String getCheckpointTableName() {
+    return CHECKPOINT_TABLE_NAME;
+  }
+
+  /**
+   * Records the start of a build. This should be called after the (empty) scramble table is
+   * created.
+   *
+   * @param meta The scramble meta of the scramble being built
+   * @param statement The CREATE SCRAMBLE statement
+   * @param unitColumn The column used for splitting the build into units
+   * @param unitCount The number of units
+   * @return The id of the new build
+   * @throws VerdictDBException
+   */
+  public String startBuild(ScrambleMeta meta, String statement, String unitColumn, int unitCount)
+      throws VerdictDBException {
+    createCheckpointTableIfNotExists();
+
+    Map<String, Object> header = new HashMap<>();
+    header.put("statement", statement);
+    header.put("unitColumn", unitColumn);
+    header.put("unitCount", unitCount);
+    header.put("scrambleMeta", meta.toJsonString());
+    String data;
+    try {
+      // encoded since the statement may include characters that need escaping in string literals
+      String json = new ObjectMapper().writeValueAsString(header);
+      data = BaseEncoding.base64().encode(json.getBytes(Charsets.UTF_8));
+    } catch (IOException e) {
+      throw new VerdictDBValueException(e);
+    }
+
+    String buildId = RandomStringUtils.randomAlphanumeric(16);
+    insertRow(meta.getSchemaName(), meta.getTableName(), buildId, HEADER_UNIT_ID, data);
+    return buildId;
+  }
+
+  public void markUnitComplete(String scrambleSchema, String scrambleTable, String buildId, int unit)
+      throws VerdictDBException {
+    insertRow(scrambleSchema, scrambleTable, buildId, unit, "");
+  }
+
+  public void markBuildComplete(String scrambleSchema, String scrambleTable, String buildId)
+      throws VerdictDBException {
+    insertRow(scrambleSchema, scrambleTable, buildId, COMPLETION_UNIT_ID, "");
+  }
+
+  /**
+   * Retrieves the last build of the scramble if it has not been completed.
+   *
+   * @return Null if no such build exists
+   * @throws VerdictDBException
+   */
+  public ScrambleCheckpoint retrievePendingBuild(String scrambleSchema, String scrambleTable)
+      throws VerdictDBException {
+    if (!conn.getSchemas().contains(storeSchema)
+        || !conn.getTables(storeSchema).contains(CHECKPOINT_TABLE_NAME)) {
+      return null;
+    }
+
+    String tableAlias = "t";
+    SelectQuery query =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new BaseColumn(tableAlias, SCRAMBLE_SCHEMA_COLUMN),
+                new BaseColumn(tableAlias, SCRAMBLE_TABLE_COLUMN),
+                new BaseColumn(tableAlias, BUILD_ID_COLUMN),
+                new BaseColumn(tableAlias, UNIT_ID_COLUMN),
+                new BaseColumn(tableAlias, DATA_COLUMN)),
+            new BaseTable(storeSchema, CHECKPOINT_TABLE_NAME, tableAlias));
+    query.addFilterByAnd(
+        ColumnOp.equal(
+            new BaseColumn(tableAlias, SCRAMBLE_SCHEMA_COLUMN), toStringLiteral(scrambleSchema)));
+    query.addFilterByAnd(
+        ColumnOp.equal(
+            new BaseColumn(tableAlias, SCRAMBLE_TABLE_COLUMN), toStringLiteral(scrambleTable)));
+    query.addOrderby(new OrderbyAttribute(ADDED_AT_COLUMN, "asc"));
+    String sql = QueryToSql.convert(conn.getSyntax(), query);
+    DbmsQueryResult result = conn.execute(sql);
+
+    // the rows are grouped by build; the last header identifies the last build.
+    String lastBuildId = null;
+    String lastHeader = null;
+    Map<String, Set<Integer>> unitsByBuild = new HashMap<>();
+    Set<String> completedBuilds = new HashSet<>();
+    while (result.next()) {
+      if (!result.getString(0).equals(scrambleSchema)
+          || !result.getString(1).equals(scrambleTable)) {
+        continue;
+      }
+      String buildId = result.getString(2);
+      int unitId = result.getInt(3);
+      if (unitId == HEADER_UNIT_ID) {
+        lastBuildId = buildId;
+        lastHeader = result.getString(4);
+      } else if (unitId == COMPLETION_UNIT_ID) {
+        completedBuilds.add(buildId);
+      } else {
+        if (!unitsByBuild.containsKey(buildId)) {
+          unitsByBuild.put(buildId, new HashSet<Integer>());
+        }
+        unitsByBuild.get(buildId).add(unitId);
+      }
+    }
+
+    if (lastBuildId == null || completedBuilds.contains(lastBuildId)) {
+      return null;
+    }
+    Set<Integer> completedUnits = unitsByBuild.get(lastBuildId);
+    if (completedUnits == null) {
+      completedUnits = new HashSet<>();
+    }
+    return ScrambleCheckpoint.fromHeader(lastBuildId, lastHeader, completedUnits);
+  }
+
+  private static ConstantColumn toStringLiteral(String value) {
+    return ConstantColumn.valueOf("'" + value.replace("'", "''") + "'");
+  }
+
+  /**
+   * Removes the checkpoint table if exists.
+   *
+   * @throws VerdictDBException
+   */
+  public void remove() throws VerdictDBException {
+    DropTableQuery dropQuery = new DropTableQuery(storeSchema, CHECKPOINT_TABLE_NAME);
+    dropQuery.setIfExists(true);
+    conn.execute(QueryToSql.convert(conn.getSyntax(), dropQuery));
+  }
+
+  private void createCheckpointTableIfNotExists() throws VerdictDBException {
+    if (!conn.getSchemas().contains(storeSchema)) {
+      CreateSchemaQuery createSchemaQuery = new CreateSchemaQuery(storeSchema);
+      createSchemaQuery.setIfNotExists(true);
+      conn.execute(QueryToSql.convert(conn.getSyntax(), createSchemaQuery));
+    }
+    if (conn.getTables(storeSchema).contains(CHECKPOINT_TABLE_NAME)) {
+      return;
+    }
+
+    String stringType = conn.getSyntax().getGenericStringDataTypeName();
+    CreateTableDefinitionQuery query = new CreateTableDefinitionQuery();
+    query.setSchemaName(storeSchema);
+    query.setTableName(CHECKPOINT_TABLE_NAME);
+    query.addColumnNameAndType(Pair.of(SCRAMBLE_SCHEMA_COLUMN, stringType));
+    query.addColumnNameAndType(Pair.of(SCRAMBLE_TABLE_COLUMN, stringType));
+    query.addColumnNameAndType(Pair.of(BUILD_ID_COLUMN, stringType));
+    query.addColumnNameAndType(Pair.of(UNIT_ID_COLUMN, "INT"));
+    query.addColumnNameAndType(Pair.of(ADDED_AT_COLUMN, "TIMESTAMP"));
+    query.addColumnNameAndType(Pair.of(DATA_COLUMN, stringType));
+    query.setIfNotExists(true);
+    conn.execute(QueryToSql.convert(conn.getSyntax(), query));
+  }
+
+  private void insertRow(
+      String scrambleSchema, String scrambleTable, String buildId, int unitId, String data)
+      throws VerdictDBException {
+    InsertValuesQuery query = new InsertValuesQuery();
+    query.setSchemaName(storeSchema);
+    query.setTableName(CHECKPOINT_TABLE_NAME);
+    query.setValues(
+        Arrays.<Object>asList(
+            scrambleSchema,
+            scrambleTable,
+            buildId,
+            unitId,
+            new VerdictTimestamp(new Date()),
+            data));
+    String sql = QueryToSql.convert(conn.getSyntax(), query);
+    LOG.debug("Recording a scramble checkpoint with the query: {}", sql);
+    conn.execute(sql);
+  }
+
+  /** The state of an unfinished scramble build. */
+  public static class ScrambleCheckpoint {
+
+    private String buildId;
+
+    private String statement;
+
+    private String unitColumn;
+
+    private int unitCount;
+
+    private ScrambleMeta scrambleMeta;
+
+    private Set<Integer> completedUnits;
+
+    public ScrambleCheckpoint(
+        String buildId,
+        String statement,
+        String unitColumn,
+        int unitCount,
+        ScrambleMeta scrambleMeta,
+        Set<Integer> completedUnits) {
+      this.buildId = buildId;
+      this.statement = statement;
+      this.unitColumn = unitColumn;
+      this.unitCount = unitCount;
+      this.scrambleMeta = scrambleMeta;
+      this.completedUnits = completedUnits;
+    }
+
+    static ScrambleCheckpoint fromHeader(
+        String buildId, String header, Set<Integer> completedUnits)
+        throws VerdictDBValueException {
+      Map<String, Object> values;
+      try {
+        String json = new String(BaseEncoding.base64().decode(header), Charsets.UTF_8);
+        values = new ObjectMapper().readValue(json, new TypeReference<Map<String, Object>>() {});
+      } catch (IOException | IllegalArgumentException e) {
+        throw new VerdictDBValueException(e);
+      }
+      return new ScrambleCheckpoint(
+          buildId,
+          (String) values.get("statement"),
+          (String) values.get("unitColumn"),
+          ((Number) values.get("unitCount")).intValue(),
+          ScrambleMeta.fromJsonString((String) values.get("scrambleMeta")),
+          completedUnits);
+    }
+
+    public String getBuildId() {
+      return buildId;
+    }
+
+    public String getStatement() {
+      return statement;
+    }
+
+    public String getUnitColumn() {
+      return unitColumn;
+    }
+
+    public int getUnitCount() {
+      return unitCount;
+    }
+
+    public ScrambleMeta getScrambleMeta() {
+      return scrambleMeta;
+    }
+
+    public Set<Integer> getCompletedUnits() {
+      return completedUnits;
+    }
+  }
+}
@@ -22,13 +22,17 @@ import org.verdictdb.VerdictSingleResult;
 import org.verdictdb.commons.VerdictDBLogger;
 import org.verdictdb.commons.VerdictOption;
 import org.verdictdb.commons.VerdictTimestamp;
+import org.verdictdb.connection.CachedDbmsConnection;
 import org.verdictdb.connection.DbmsConnection;
 import org.verdictdb.connection.DbmsQueryResult;
 import org.verdictdb.coordinator.VerdictSingleResultFromDbmsQueryResult;
 import org.verdictdb.core.scrambling.ScrambleMeta;
 import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.sqlobject.AliasedColumn;
 import org.verdictdb.core.sqlobject.BaseColumn;
 import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
 import org.verdictdb.core.sqlobject.CreateSchemaQuery;
 import org.verdictdb.core.sqlobject.CreateTableDefinitionQuery;
 import org.verdictdb.core.sqlobject.DropTableQuery;
@@ -36,14 +40,24 @@ import org.verdictdb.core.sqlobject.InsertValuesQuery;
 import org.verdictdb.core.sqlobject.OrderbyAttribute;
 import org.verdictdb.core.sqlobject.SelectItem;
 import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.SubqueryColumn;
 import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.exception.VerdictDBValueException;
+import org.verdictdb.sqlsyntax.PrestoSyntax;
 import org.verdictdb.sqlwriter.QueryToSql;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class ScrambleMetaStore extends VerdictMetaStore {
@@ -66,6 +80,35 @@ public class ScrambleMetaStore extends VerdictMetaStore {
 
   private static final String DELETED = "DELETED";
 
+  private static final String ENTRY_TABLE_ALIAS = "t";
+
+  private static final String EMPTY_STORE_VERSION = "empty";
+
+  /** Holds only the latest row of each scramble table; rewritten by compact(). */
+  private static final String CURRENT_STATE_TABLE_NAME = "verdictdbmetacurrent";
+
+  /**
+   * Holds the same rows as the current-state table. compact() writes this table first, and readers
+   * use it while the current-state table is being rewritten; thus, a compaction never leaves the
+   * readers without a complete current state.
+   */
+  private static final String STAGING_STATE_TABLE_NAME = "verdictdbmetastaging";
+
+  /**
+   * The scramble_method of the row written last by compact(). Its data column stores the number of
+   * the other rows and the number of the metastore rows added before the compaction, separated by a
+   * comma. The former lets readers detect a partially written table; the latter lets readers detect
+   * a metastore row added with an earlier timestamp than the compaction (e.g., by a client whose
+   * clock lags behind), which would otherwise be missed.
+   */
+  private static final String COMPACTION_MARKER = "COMPACTED";
+
+  /** A write triggers compaction if this many rows have been appended since the last one. */
+  private static final int AUTO_COMPACTION_THRESHOLD = 100;
+
+  /** Used for the key columns of the current-state table when a primary key is declared. */
+  private static final String KEY_COLUMN_TYPE = "VARCHAR(128)";
+
   private DbmsConnection conn;
 
   private String storeSchema;
@@ -117,6 +160,14 @@ public class ScrambleMetaStore extends VerdictMetaStore {
     return DATA_COLUMN;
   }
 
+  public static String getCurrentStateTableName() {
+    return CURRENT_STATE_TABLE_NAME;
+  }
+
+  public static String getStagingStateTableName() {
+    return STAGING_STATE_TABLE_NAME;
+  }
+
   public void addToStore(ScrambleMeta scrambleMeta) throws VerdictDBException {
     ScrambleMetaSet scrambleMetaSet = new ScrambleMetaSet();
     scrambleMetaSet.addScrambleMeta(scrambleMeta);
@@ -172,11 +223,11 @@ public class ScrambleMetaStore extends VerdictMetaStore {
       scrambleTableSchema = conn.getDefaultSchema();
     }
 
-    // drop the actual scrambled table first.
-    DropTableQuery dropQuery = new DropTableQuery(scrambleTableSchema, scrambleTableName);
-    dropQuery.setIfExists(true);
-    String sql = QueryToSql.convert(conn.getSyntax(), dropQuery);
-    conn.execute(sql);
+    // drop the actual scrambled table first, including the tables it has been rebalanced into.
+    dropTableIfExists(scrambleTableSchema, scrambleTableName);
+    for (String table : findRebalancedTables(scrambleTableSchema, scrambleTableName)) {
+      dropTableIfExists(scrambleTableSchema, table);
+    }
 
     // update metadata with a new row where 'data' and 'method' marked as 'DELETED'
     InsertValuesQuery insertQuery = new InsertValuesQuery();
@@ -192,12 +243,55 @@ public class ScrambleMetaStore extends VerdictMetaStore {
             DELETED,
             timestamp,
             DELETED));
-    sql = QueryToSql.convert(conn.getSyntax(), insertQuery);
+    String sql = QueryToSql.convert(conn.getSyntax(), insertQuery);
     conn.execute(sql);
+
+    compactIfNeeded();
+  }
+
+  /**
+   * Drops the tables that stored the rows of a scramble before it was rebalanced, except the one
+   * that currently stores its rows (see ScrambleMeta.getStoredTableName()).
+   *
+   * @param meta The current meta of the scramble
+   * @throws VerdictDBException
+   */
+  public void dropRetiredScrambleTables(ScrambleMeta meta) throws VerdictDBException {
+    String schema = meta.getSchemaName();
+    List<String> retired = findRebalancedTables(schema, meta.getTableName());
+    retired.add(meta.getTableName());
+    for (String table : retired) {
+      if (!table.equalsIgnoreCase(meta.getStoredTableName())) {
+        dropTableIfExists(schema, table);
+      }
+    }
+  }
+
+  private List<String> findRebalancedTables(String schema, String scrambleTable)
+      throws VerdictDBException {
+    // tables are listed without the cache since they have been created by previous statements.
+    List<String> tables =
+        (conn instanceof CachedDbmsConnection)
+            ? ((CachedDbmsConnection) conn).getTablesWithoutCaching(schema)
+            : conn.getTables(schema);
+    String prefix = (scrambleTable + ScrambleMeta.REBALANCED_TABLE_INFIX).toLowerCase();
+    List<String> rebalanced = new ArrayList<>();
+    for (String table : tables) {
+      if (table.toLowerCase().startsWith(prefix)) {
+        rebalanced.add(table);
+      }
+    }
+    return rebalanced;
+  }
+
+  private void dropTableIfExists(String schema, String table) throws VerdictDBException {
+    DropTableQuery dropQuery = new DropTableQuery(schema, table);
+    dropQuery.setIfExists(true);
+    conn.execute(QueryToSql.convert(conn.getSyntax(), dropQuery));
   }
 
   /**
-   * Removes the metastore table if exists.
+   * Removes the metastore table (and its current-state tables) if exists.
    *
    * @throws VerdictDBException
    */
@@ -212,6 +306,13 @@ public class ScrambleMetaStore extends VerdictMetaStore {
     dropQuery.setIfExists(true);
     sql = QueryToSql.convert(conn.getSyntax(), dropQuery);
     conn.execute(sql);
+
+    for (String tableName : Arrays.asList(CURRENT_STATE_TABLE_NAME, STAGING_STATE_TABLE_NAME)) {
+      dropQuery = new DropTableQuery(storeSchema, tableName);
+      dropQuery.setIfExists(true);
+      sql = QueryToSql.convert(conn.getSyntax(), dropQuery);
+      conn.execute(sql);
+    }
   }
 
   /**
@@ -233,7 +334,8 @@ public class ScrambleMetaStore extends VerdictMetaStore {
 
     // create a new table if not exists
     if (!conn.getTables(storeSchema).contains(getMetaStoreTableName())) {
-      CreateTableDefinitionQuery createTableQuery = createScrambleMetaStoreTableStatement();
+      CreateTableDefinitionQuery createTableQuery =
+          createScrambleMetaStoreTableStatement(getMetaStoreTableName(), false);
       sql = QueryToSql.convert(conn.getSyntax(), createTableQuery);
       conn.execute(sql);
     }
@@ -248,28 +350,186 @@ public class ScrambleMetaStore extends VerdictMetaStore {
       insertSqls.append("; ");
     }
     conn.execute(insertSqls.toString());
+
+    compactIfNeeded();
   }
 
-  private CreateTableDefinitionQuery createScrambleMetaStoreTableStatement() {
+  /**
+   * @param tableName The metastore table or the current-state table
+   * @param keyedByScrambleTable If true, (scramble_schema, scramble_table) becomes the primary key
+   *     of the table (if the database supports it).
+   */
+  private CreateTableDefinitionQuery createScrambleMetaStoreTableStatement(
+      String tableName, boolean keyedByScrambleTable) {
     // create table
     String schemaAndTableColumnType = conn.getSyntax().getGenericStringDataTypeName();
     String addedAtColumnType = "TIMESTAMP";
     String dataColumnType = conn.getSyntax().getGenericStringDataTypeName();
+    boolean hasPrimaryKey =
+        keyedByScrambleTable && conn.getSyntax().doesSupportPrimaryKeyConstraint();
+    // e.g., MySQL does not allow TEXT columns in a primary key.
+    String keyColumnType = hasPrimaryKey ? KEY_COLUMN_TYPE : schemaAndTableColumnType;
 
     CreateTableDefinitionQuery query = new CreateTableDefinitionQuery();
     query.setSchemaName(storeSchema);
-    query.setTableName(getMetaStoreTableName());
+    query.setTableName(tableName);
     query.addColumnNameAndType(Pair.of(ORIGINAL_SCHEMA_COLUMN, schemaAndTableColumnType));
     query.addColumnNameAndType(Pair.of(ORIGINAL_TABLE_COLUMN, schemaAndTableColumnType));
-    query.addColumnNameAndType(Pair.of(SCRAMBLE_SCHEMA_COLUMN, schemaAndTableColumnType));
-    query.addColumnNameAndType(Pair.of(SCRAMBLE_TABLE_COLUMN, schemaAndTableColumnType));
+    query.addColumnNameAndType(Pair.of(SCRAMBLE_SCHEMA_COLUMN, keyColumnType));
+    query.addColumnNameAndType(Pair.of(SCRAMBLE_TABLE_COLUMN, keyColumnType));
     query.addColumnNameAndType(Pair.of(SCRAMBLE_METHOD_COLUMN, schemaAndTableColumnType));
     query.addColumnNameAndType(Pair.of(ADDED_AT_COLUMN, addedAtColumnType));
     query.addColumnNameAndType(Pair.of(DATA_COLUMN, dataColumnType));
+    if (hasPrimaryKey) {
+      query.setPrimaryKeyColumns(Arrays.asList(SCRAMBLE_SCHEMA_COLUMN, SCRAMBLE_TABLE_COLUMN));
+    }
     query.setIfNotExists(true);
     return query;
   }
 
+  /**
+   * Rewrites the current-state table so that it contains only the latest row of each scramble
+   * table. Afterwards, retrieve() reads the current-state table and only the rows of the metastore
+   * table added since this compaction. The metastore table itself is kept as a history (e.g., for
+   * SHOW SCRAMBLES).
+   *
+   * @throws VerdictDBException
+   */
+  public void compact() throws VerdictDBException {
+    long rowCount = getRowCountOfVersion(retrieveVersion());
+    LatestEntries latest = (rowCount > 0) ? retrieveLatestEntries(rowCount) : null;
+    if (latest == null) {
+      // the entire history is read if some rows are not accounted for by the last compaction.
+      List<MetaStoreEntry> entries = retrieveEntriesSince(null);
+      latest = LatestEntries.create(new ArrayList<MetaStoreEntry>(), entries, entries.size());
+      if (latest == null) {
+        throw new VerdictDBValueException(
+            "The added_at column of the metastore cannot be interpreted as a timestamp.");
+      }
+    }
+    if (latest.getEntries().isEmpty()) {
+      return;
+    }
+    writeCompactedTable(STAGING_STATE_TABLE_NAME, latest);
+    writeCompactedTable(CURRENT_STATE_TABLE_NAME, latest);
+    LOG.debug("Compacted the scramble metastore into {} rows.", latest.getEntries().size());
+  }
+
+  /**
+   * Compacts the store if many rows have been added since the last compaction. The number of those
+   * rows is counted with a single query.
+   */
+  private void compactIfNeeded() {
+    try {
+      if (countEntriesSinceCompaction() >= AUTO_COMPACTION_THRESHOLD) {
+        compact();
+      }
+    } catch (VerdictDBException e) {
+      // the metastore table remains correct; only retrieval stays slower.
+      LOG.warn("Failed to compact the scramble metastore: " + e.getMessage());
+    }
+  }
+
+  /**
+   * @return The number of the metastore rows not earlier than the last compaction; the number of
+   *     all the rows if the store has not been compacted.
+   */
+  private long countEntriesSinceCompaction() throws VerdictDBException {
+    String currentAlias = "c";
+    SelectQuery watermark =
+        SelectQuery.create(
+            new ColumnOp("max", new BaseColumn(currentAlias, ADDED_AT_COLUMN)),
+            new BaseTable(storeSchema, CURRENT_STATE_TABLE_NAME, currentAlias));
+    SelectQuery query =
+        SelectQuery.create(
+            new AliasedColumn(ColumnOp.count(), "verdictdbrowcount"),
+            new BaseTable(storeSchema, METASTORE_TABLE_NAME, ENTRY_TABLE_ALIAS));
+    query.addFilterByAnd(
+        ColumnOp.greaterequal(
+            new BaseColumn(ENTRY_TABLE_ALIAS, ADDED_AT_COLUMN), new SubqueryColumn(watermark)));
+    try {
+      DbmsQueryResult result = conn.execute(QueryToSql.convert(conn.getSyntax(), query));
+      result.next();
+      return result.getLong(0);
+    } catch (VerdictDBException e) {
+      // the current-state table does not exist (or is being rewritten)
+      return getRowCountOfVersion(retrieveVersion());
+    }
+  }
+
+  /** Replaces the content of a current-state table; the marker row is written last. */
+  private void writeCompactedTable(String tableName, LatestEntries latest)
+      throws VerdictDBException {
+    // Deletions are kept as well; thus, the largest added_at of the current-state table equals
+    // that of the metastore table at the time of this compaction.
+    Collection<MetaStoreEntry> entries = latest.getEntries().values();
+
+    DropTableQuery dropQuery = new DropTableQuery(storeSchema, tableName);
+    dropQuery.setIfExists(true);
+    conn.execute(QueryToSql.convert(conn.getSyntax(), dropQuery));
+    CreateTableDefinitionQuery createQuery =
+        createScrambleMetaStoreTableStatement(tableName, true);
+    conn.execute(QueryToSql.convert(conn.getSyntax(), createQuery));
+
+    StringBuilder insertSqls = new StringBuilder();
+    for (MetaStoreEntry entry : entries) {
+      InsertValuesQuery q =
+          createInsertEntryQuery(
+              tableName,
+              entry.getOriginalSchema(),
+              entry.getOriginalTable(),
+              entry.getScrambleTable().getLeft(),
+              entry.getScrambleTable().getRight(),
+              entry.getMethod(),
+              entry.getAddedAt(),
+              entry.getData());
+      insertSqls.append(QueryToSql.convert(conn.getSyntax(), q));
+      insertSqls.append("; ");
+    }
+    conn.execute(insertSqls.toString());
+
+    // until the marker is written, readers ignore this table.
+    InsertValuesQuery markerQuery =
+        createInsertEntryQuery(
+            tableName,
+            storeSchema,
+            tableName,
+            storeSchema,
+            tableName,
+            COMPACTION_MARKER,
+            latest.getLastAddedAt(),
+            String.format("%d,%d", entries.size(), latest.getRowCountBeforeLastAddedAt()));
+    conn.execute(QueryToSql.convert(conn.getSyntax(), markerQuery));
+  }
+
+  private InsertValuesQuery createInsertEntryQuery(
+      String tableName,
+      String originalSchema,
+      String originalTable,
+      String scrambleSchema,
+      String scrambleTable,
+      String method,
+      Timestamp addedAt,
+      String data) {
+    InsertValuesQuery query = new InsertValuesQuery();
+    query.setSchemaName(getStoreSchema());
+    query.setTableName(tableName);
+    query.setValues(
+        Arrays.<Object>asList(
+            notNull(originalSchema),
+            notNull(originalTable),
+            notNull(scrambleSchema),
+            notNull(scrambleTable),
+            notNull(method),
+            new VerdictTimestamp(addedAt),
+            notNull(data)));
+    return query;
+  }
+
+  private static String notNull(String value) {
+    return (value == null) ? "N/A" : value;
+  }
+
   private InsertValuesQuery createInsertMetaQuery(ScrambleMeta meta) {
     InsertValuesQuery query = new InsertValuesQuery();
     query.setSchemaName(getStoreSchema());
@@ -351,6 +611,451 @@ public class ScrambleMetaStore extends VerdictMetaStore {
     return null;
   }
 
+  /**
+   * Returns a cheap fingerprint of the current content of the metastore table. Since the metastore
+   * table is append-only (drops are also recorded as new rows), the fingerprint changes whenever a
+   * scramble is added or dropped.
+   *
+   * <p>Unlike retrieve(), this method does not check the existence of the schema and the table
+   * using metadata queries; if the metastore table does not exist, a fixed value is returned.
+   *
+   * @return A string composed of the number of rows and the latest timestamp
+   */
+  @Override
+  public String retrieveVersion() {
+    String tableAlias = "t";
+    SelectQuery query =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new AliasedColumn(ColumnOp.count(), "verdictdbrowcount"),
+                new AliasedColumn(
+                    new ColumnOp("max", new BaseColumn(tableAlias, ADDED_AT_COLUMN)),
+                    "verdictdblastadded")),
+            new BaseTable(storeSchema, METASTORE_TABLE_NAME, tableAlias));
+
+    try {
+      String sql = QueryToSql.convert(conn.getSyntax(), query);
+      DbmsQueryResult result = conn.execute(sql);
+      if (result == null || !result.next()) {
+        return EMPTY_STORE_VERSION;
+      }
+      long rowCount = result.getLong(0);
+      String lastAdded = result.getString(1);
+      return String.format("%d,%s", rowCount, lastAdded);
+    } catch (VerdictDBException e) {
+      // this is expected if the metastore table has not been created yet.
+      LOG.debug("Metastore version check failed: {}", e.getMessage());
+      return EMPTY_STORE_VERSION;
+    }
+  }
+
+  /**
+   * Extracts the number of metastore rows from the value returned by retrieveVersion().
+   *
+   * @param version A version string
+   * @return The number of rows; -1 if the version is not in the expected format.
+   */
+  public static long getRowCountOfVersion(String version) {
+    if (version == null) {
+      return -1;
+    }
+    if (version.equals(EMPTY_STORE_VERSION)) {
+      return 0;
+    }
+    int index = version.indexOf(',');
+    try {
+      return Long.parseLong(version.substring(0, (index < 0) ? version.length() : index));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Retrieves the rows of the metastore table added at or after the given time, in the order they
+   * were added. Unlike retrieve(), the json strings are not parsed here; callers parse only the
+   * entries they actually use.
+   *
+   * @param since Only the rows whose added_at is not earlier than this are retrieved. If null, all
+   *     rows are retrieved.
+   * @return The list of metastore rows
+   * @throws VerdictDBException if the metastore table cannot be read (e.g., it does not exist)
+   */
+  public List<MetaStoreEntry> retrieveEntriesSince(Timestamp since) throws VerdictDBException {
+    SelectQuery query = createEntrySelectQuery(METASTORE_TABLE_NAME);
+    if (since != null) {
+      String literal = new VerdictTimestamp(since).toString();
+      literal =
+          (conn.getSyntax() instanceof PrestoSyntax)
+              ? "timestamp '" + literal + "'"
+              : "'" + literal + "'";
+      query.addFilterByAnd(
+          ColumnOp.greaterequal(
+              new BaseColumn(ENTRY_TABLE_ALIAS, ADDED_AT_COLUMN),
+              ConstantColumn.valueOf(literal)));
+    }
+    return readEntries(query);
+  }
+
+  /**
+   * Retrieves the rows of the current-state table, i.e., the latest row of each scramble table as
+   * of the last compaction, in the order of added_at. Deletions are included.
+   *
+   * @return An empty list if the current-state table does not exist or is incomplete.
+   */
+  public List<MetaStoreEntry> retrieveCompactedEntries() {
+    CompactedState state = retrieveCompactedState();
+    return (state == null) ? new ArrayList<MetaStoreEntry>() : state.entries;
+  }
+
+  /**
+   * Reads the current-state table, or the staging table if the current-state table is incomplete
+   * (e.g., it is being rewritten).
+   *
+   * @return null if no complete compaction is found
+   */
+  private CompactedState retrieveCompactedState() {
+    CompactedState state = readCompactedTable(CURRENT_STATE_TABLE_NAME);
+    if (state == null) {
+      state = readCompactedTable(STAGING_STATE_TABLE_NAME);
+    }
+    return state;
+  }
+
+  private CompactedState readCompactedTable(String tableName) {
+    List<MetaStoreEntry> entries;
+    try {
+      entries = readEntries(createEntrySelectQuery(tableName));
+    } catch (VerdictDBException e) {
+      // this is expected if compaction has never been performed.
+      LOG.debug("Current-state table cannot be read: {}", e.getMessage());
+      return null;
+    }
+
+    List<MetaStoreEntry> compacted = new ArrayList<>();
+    MetaStoreEntry marker = null;
+    int markerCount = 0;
+    for (MetaStoreEntry entry : entries) {
+      if (COMPACTION_MARKER.equals(entry.getMethod())) {
+        marker = entry;
+        markerCount++;
+      } else {
+        compacted.add(entry);
+      }
+    }
+    // e.g., written partially, or by two concurrent compactions
+    String[] counts = (marker == null) ? new String[0] : marker.getData().split(",");
+    if (markerCount != 1 || counts.length != 2 || marker.getAddedAt() == null) {
+      LOG.debug("Current-state table {} is incomplete; it is ignored.", tableName);
+      return null;
+    }
+    try {
+      if (Long.parseLong(counts[0]) != compacted.size()) {
+        LOG.debug("Current-state table {} is incomplete; it is ignored.", tableName);
+        return null;
+      }
+      return new CompactedState(compacted, marker.getAddedAt(), Long.parseLong(counts[1]));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads the latest row of each scramble table from the last compaction and the metastore rows
+   * added since then.
+   *
+   * @param rowCount The number of the rows of the metastore table (see getRowCountOfVersion()),
+   *     obtained before this call
+   * @return null if the rows read do not account for all the rows of the metastore table, e.g.,
+   *     if a client whose clock lags behind added a row earlier than the last compaction. Then,
+   *     the entire metastore table must be read.
+   * @throws VerdictDBException if the metastore table cannot be read
+   */
+  LatestEntries retrieveLatestEntries(long rowCount) throws VerdictDBException {
+    CompactedState state = retrieveCompactedState();
+    List<MetaStoreEntry> compacted =
+        (state == null) ? new ArrayList<MetaStoreEntry>() : state.entries;
+    List<MetaStoreEntry> tail = retrieveEntriesSince((state == null) ? null : state.watermark);
+    long coveredRowCount = (state == null) ? 0 : state.rowCountBeforeWatermark;
+    // the rows added after the row count was obtained may make the tail longer; then, the entire
+    // table is read although no row is missing.
+    if (coveredRowCount + tail.size() != rowCount) {
+      LOG.debug("Some metastore rows are not found after the last compaction.");
+      return null;
+    }
+    return LatestEntries.create(compacted, tail, rowCount);
+  }
+
+  /** The rows of a current-state table. */
+  private static class CompactedState {
+
+    private final List<MetaStoreEntry> entries;
+
+    /** The largest added_at of the compacted rows */
+    private final Timestamp watermark;
+
+    /** The number of the metastore rows earlier than the watermark at the compaction */
+    private final long rowCountBeforeWatermark;
+
+    CompactedState(List<MetaStoreEntry> entries, Timestamp watermark, long rowCountBefore) {
+      this.entries = entries;
+      this.watermark = watermark;
+      this.rowCountBeforeWatermark = rowCountBefore;
+    }
+  }
+
+  /** The latest row of each scramble table, including deletions. */
+  static class LatestEntries {
+
+    private final Map<Pair<String, String>, MetaStoreEntry> entries;
+
+    private final Timestamp lastAddedAt;
+
+    private final long rowCountBeforeLastAddedAt;
+
+    private LatestEntries(
+        Map<Pair<String, String>, MetaStoreEntry> entries,
+        Timestamp lastAddedAt,
+        long rowCountBeforeLastAddedAt) {
+      this.entries = entries;
+      this.lastAddedAt = lastAddedAt;
+      this.rowCountBeforeLastAddedAt = rowCountBeforeLastAddedAt;
+    }
+
+    /**
+     * @param compacted The rows of the last compaction
+     * @param tail The metastore rows not earlier than the last compaction, in the order of added_at
+     * @param rowCount The number of all the metastore rows
+     * @return null if some row does not have a valid added_at
+     */
+    static LatestEntries create(
+        List<MetaStoreEntry> compacted, List<MetaStoreEntry> tail, long rowCount) {
+      Map<Pair<String, String>, MetaStoreEntry> latest = new HashMap<>();
+      if (!applyEntries(latest, compacted) || !applyEntries(latest, tail)) {
+        return null;
+      }
+      Timestamp lastAddedAt = ScrambleMetaStore.getLastAddedAt(latest.values());
+      // the tail includes every metastore row not earlier than lastAddedAt.
+      long rowCountBefore =
+          (lastAddedAt == null) ? rowCount : rowCount - countNotBefore(tail, lastAddedAt);
+      return new LatestEntries(latest, lastAddedAt, rowCountBefore);
+    }
+
+    Map<Pair<String, String>, MetaStoreEntry> getEntries() {
+      return entries;
+    }
+
+    /** @return The largest added_at of the entries; null if there is no entry. */
+    Timestamp getLastAddedAt() {
+      return lastAddedAt;
+    }
+
+    /** @return The number of the metastore rows earlier than getLastAddedAt() */
+    long getRowCountBeforeLastAddedAt() {
+      return rowCountBeforeLastAddedAt;
+    }
+  }
+
+  private SelectQuery createEntrySelectQuery(String tableName) {
+    String tableAlias = ENTRY_TABLE_ALIAS;
+    SelectQuery query =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new BaseColumn(tableAlias, ORIGINAL_SCHEMA_COLUMN),
+                new BaseColumn(tableAlias, ORIGINAL_TABLE_COLUMN),
+                new BaseColumn(tableAlias, SCRAMBLE_SCHEMA_COLUMN),
+                new BaseColumn(tableAlias, SCRAMBLE_TABLE_COLUMN),
+                new BaseColumn(tableAlias, SCRAMBLE_METHOD_COLUMN),
+                new BaseColumn(tableAlias, ADDED_AT_COLUMN),
+                new BaseColumn(tableAlias, DATA_COLUMN)),
+            new BaseTable(storeSchema, tableName, tableAlias));
+    return query;
+  }
+
+  private List<MetaStoreEntry> readEntries(SelectQuery query) throws VerdictDBException {
+    query.addOrderby(new OrderbyAttribute(ADDED_AT_COLUMN, "asc"));
+    String sql = QueryToSql.convert(conn.getSyntax(), query);
+    DbmsQueryResult result = conn.execute(sql);
+
+    List<MetaStoreEntry> entries = new ArrayList<>();
+    while (result.next()) {
+      entries.add(
+          new MetaStoreEntry(
+              result.getString(0),
+              result.getString(1),
+              result.getString(2),
+              result.getString(3),
+              result.getString(4),
+              toTimestamp(result.getValue(5)),
+              result.getString(6)));
+    }
+    return entries;
+  }
+
+  /**
+   * Applies the rows (in the order they were added) to the map from each scramble table to its
+   * latest row.
+   *
+   * @return False if some row does not have a valid added_at; then, the map is not changed.
+   */
+  static boolean applyEntries(
+      Map<Pair<String, String>, MetaStoreEntry> latest, List<MetaStoreEntry> entries) {
+    for (MetaStoreEntry entry : entries) {
+      if (entry.getAddedAt() == null) {
+        return false;
+      }
+    }
+    for (MetaStoreEntry entry : entries) {
+      latest.put(entry.getScrambleTable(), entry);
+    }
+    return true;
+  }
+
+  /** @return The number of the rows not earlier than the given time */
+  static long countNotBefore(List<MetaStoreEntry> entries, Timestamp time) {
+    long count = 0;
+    for (MetaStoreEntry entry : entries) {
+      if (!entry.getAddedAt().before(time)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** @return The largest added_at of the rows; null if the list is empty. */
+  static Timestamp getLastAddedAt(Collection<MetaStoreEntry> entries) {
+    Timestamp last = null;
+    for (MetaStoreEntry entry : entries) {
+      Timestamp addedAt = entry.getAddedAt();
+      if (addedAt != null && (last == null || addedAt.after(last))) {
+        last = addedAt;
+      }
+    }
+    return last;
+  }
+
+  /**
+   * Builds a scramble meta set from the latest row of each scramble table. The order is the same
+   * as retrieve(DbmsConnection, String), i.e., the most recently added scramble comes first.
+   */
+  static ScrambleMetaSet toMetaSet(Collection<MetaStoreEntry> latestEntries) {
+    List<MetaStoreEntry> live = new ArrayList<>();
+    for (MetaStoreEntry entry : latestEntries) {
+      if (!entry.isDeleted()) {
+        live.add(entry);
+      }
+    }
+    Collections.sort(
+        live,
+        new Comparator<MetaStoreEntry>() {
+          @Override
+          public int compare(MetaStoreEntry o1, MetaStoreEntry o2) {
+            return o2.getAddedAt().compareTo(o1.getAddedAt());
+          }
+        });
+
+    List<ScrambleMeta> metas = new ArrayList<>();
+    for (MetaStoreEntry entry : live) {
+      metas.add(entry.getScrambleMeta());
+    }
+    return ScrambleMetaSet.createFromCollection(metas);
+  }
+
+  /**
+   * Converts the value of the added_at column. Some drivers return the value as a string.
+   *
+   * @return The timestamp; null if the value cannot be interpreted.
+   */
+  private static Timestamp toTimestamp(Object value) {
+    if (value instanceof Timestamp) {
+      return (Timestamp) value;
+    } else if (value instanceof Date) {
+      return new Timestamp(((Date) value).getTime());
+    } else if (value instanceof String) {
+      try {
+        return Timestamp.valueOf((String) value);
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /** A single row of the metastore table. */
+  public static class MetaStoreEntry {
+
+    private String originalSchema;
+
+    private String originalTable;
+
+    private Pair<String, String> scrambleTable;
+
+    private String method;
+
+    private Timestamp addedAt;
+
+    private String data;
+
+    private ScrambleMeta meta = null;
+
+    public MetaStoreEntry(
+        String originalSchema,
+        String originalTable,
+        String scrambleSchema,
+        String scrambleTable,
+        String method,
+        Timestamp addedAt,
+        String data) {
+      this.originalSchema = originalSchema;
+      this.originalTable = originalTable;
+      this.scrambleTable = ImmutablePair.of(scrambleSchema, scrambleTable);
+      this.method = method;
+      this.addedAt = addedAt;
+      this.data = data;
+    }
+
+    public String getOriginalSchema() {
+      return originalSchema;
+    }
+
+    public String getOriginalTable() {
+      return originalTable;
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    public String getData() {
+      return data;
+    }
+
+    /** @return (scramble schema, scramble table) */
+    public Pair<String, String> getScrambleTable() {
+      return scrambleTable;
+    }
+
+    /** @return The time this row was added; null if the driver returned an unknown type. */
+    public Timestamp getAddedAt() {
+      return addedAt;
+    }
+
+    public boolean isDeleted() {
+      return data == null || data.toUpperCase().equals(DELETED);
+    }
+
+    /**
+     * Parses the json string on the first call.
+     *
+     * @return The scramble meta stored in this row; null if this row marks a deletion.
+     */
+    public ScrambleMeta getScrambleMeta() {
+      if (meta == null && !isDeleted()) {
+        meta = ScrambleMeta.fromJsonString(data);
+      }
+      return meta;
+    }
+  }
+
   /**
    * Retrieve all scramble metadata
    *
@@ -358,6 +1063,17 @@ public class ScrambleMetaStore extends VerdictMetaStore {
    */
   @Override
   public ScrambleMetaSet retrieve() {
+    // Reads the current-state table and the rows added since the last compaction. Falls back to
+    // reading the entire history if the metastore cannot be read this way.
+    try {
+      long rowCount = getRowCountOfVersion(retrieveVersion());
+      LatestEntries latest = (rowCount > 0) ? retrieveLatestEntries(rowCount) : null;
+      if (latest != null) {
+        return toMetaSet(latest.getEntries().values());
+      }
+    } catch (VerdictDBException e) {
+      LOG.debug("Failed to read the metastore entries: {}", e.getMessage());
+    }
     return retrieve(conn, getStoreSchema());
   }
 
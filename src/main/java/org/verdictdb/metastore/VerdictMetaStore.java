@@ -27,5 +27,15 @@ public abstract class VerdictMetaStore {
   }
   
   public abstract ScrambleMetaSet retrieve();
+
+  /**
+   * Returns a value that changes whenever the content of this metastore changes. The default
+   * implementation returns null, meaning that changes cannot be detected cheaply.
+   *
+   * @return The current version of the metastore; null if unknown
+   */
+  public String retrieveVersion() {
+    return null;
+  }
   
 }
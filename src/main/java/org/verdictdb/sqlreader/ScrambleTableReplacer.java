@@ -24,10 +24,14 @@ import org.verdictdb.core.scrambling.ScrambleMetaSet;
 import org.verdictdb.core.sqlobject.AbstractRelation;
 import org.verdictdb.core.sqlobject.BaseColumn;
 import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
 import org.verdictdb.core.sqlobject.JoinTable;
 import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.SubqueryColumn;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
 import org.verdictdb.exception.VerdictDBValueException;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /** Created by Dong Young Yoon on 7/31/18. */
@@ -58,6 +62,70 @@ public class ScrambleTableReplacer {
     return replaceQuery(query, true, null);
   }
 
+  /**
+   * Replaces the references to rebalanced scrambles with the tables that currently store their rows
+   * (see ScrambleMeta.getPhysicalTableName()). A scramble name is kept as the alias of the table if
+   * no alias is given, so the columns qualified by the scramble name remain valid. The tables that
+   * are already physical tables are not changed; thus, this may be applied more than once.
+   *
+   * @param query A query that may not have been standardized
+   * @param defaultSchema The schema of the tables whose schema is not specified
+   */
+  public void replaceWithPhysicalTables(SelectQuery query, String defaultSchema) {
+    List<SelectQuery> queries = new ArrayList<>();
+    queries.add(query);
+    while (!queries.isEmpty()) {
+      SelectQuery q = queries.remove(0);
+      for (AbstractRelation rel : q.getFromList()) {
+        if (rel instanceof BaseTable) {
+          replaceWithPhysicalTable((BaseTable) rel, defaultSchema);
+        } else if (rel instanceof SelectQuery) {
+          queries.add((SelectQuery) rel);
+        } else if (rel instanceof JoinTable) {
+          for (AbstractRelation joined : ((JoinTable) rel).getJoinList()) {
+            if (joined instanceof BaseTable) {
+              replaceWithPhysicalTable((BaseTable) joined, defaultSchema);
+            } else if (joined instanceof SelectQuery) {
+              queries.add((SelectQuery) joined);
+            }
+          }
+        }
+      }
+      if (q.getFilter().isPresent()) {
+        collectSubqueries(q.getFilter().get(), queries);
+      }
+    }
+  }
+
+  private void replaceWithPhysicalTable(BaseTable table, String defaultSchema) {
+    String schema = (table.getSchemaName() == null) ? defaultSchema : table.getSchemaName();
+    ScrambleMeta meta = metaSet.getSingleMeta(schema, table.getTableName());
+    if (meta == null
+        || meta.getPhysicalTableName() == null
+        || !meta.getTableName().equals(table.getTableName())) {
+      return;
+    }
+    if (!table.getAliasName().isPresent()) {
+      table.setAliasName(table.getTableName());
+    }
+    table.setSchemaName(schema);
+    table.setTableName(meta.getPhysicalTableName());
+    log.debug(
+        String.format(
+            "The rebalanced scramble %s.%s is read from %s.%s",
+            schema, meta.getTableName(), schema, meta.getPhysicalTableName()));
+  }
+
+  private void collectSubqueries(UnnamedColumn predicate, List<SelectQuery> queries) {
+    if (predicate instanceof ColumnOp) {
+      for (UnnamedColumn operand : ((ColumnOp) predicate).getOperands()) {
+        collectSubqueries(operand, queries);
+      }
+    } else if (predicate instanceof SubqueryColumn) {
+      queries.add(((SubqueryColumn) predicate).getSubquery());
+    }
+  }
+
   private int replaceQuery(
       SelectQuery query, boolean doReset, Triple<Boolean, Boolean, BaseColumn> outerInspectionInfo)
       throws VerdictDBValueException {
@@ -139,35 +207,17 @@ public class ScrambleTableReplacer {
     if (table instanceof BaseTable) {
       BaseTable bt = (BaseTable) table;
 
-      for (ScrambleMeta meta : metaSet) {
-        // Detects scrambled tables.
-        // The scramble meta are expected to be retrieved from the recently created ones.
-        if (meta.getSchemaName().equals(bt.getSchemaName())
-            && meta.getTableName().equals(bt.getTableName())
-            && meta.getMethodWithDefault("uniform").equalsIgnoreCase("hash")
+      ScrambleMeta meta = metaSet.getSingleMeta(bt.getSchemaName(), bt.getTableName());
+      if (meta != null) {
+        // Detects scrambled tables (i.e., the scramble is directly specified).
+        ++replaceCount;
+        if (meta.getMethodWithDefault("uniform").equalsIgnoreCase("hash")
             && countDistinctColumn.getColumnName().equals(meta.getHashColumn())) {
-          ++replaceCount;
-
           log.info(
               String.format("Scramble detected: %s.%s", meta.getSchemaName(), meta.getTableName()));
-
-          //          bt.setSchemaName(meta.getSchemaName());
-          //          bt.setTableName(meta.getTableName());
-
-          //          log.info(
-          //              String.format(
-          //                  "Automatic table replacement: %s.%s -> %s.%s",
-          //                  meta.getOriginalSchemaName(),
-          //                  meta.getOriginalTableName(),
-          //                  meta.getSchemaName(),
-          //                  meta.getTableName()));
-
-          break;
-        } else if (meta.getSchemaName().equals(bt.getSchemaName())
-            && meta.getTableName().equals(bt.getTableName())) {
-          // IF the scramble is directly specified.
-          ++replaceCount;
         }
+      } else {
+        logAvailableScramble(bt, countDistinctColumn.getColumnName());
       }
     } else if (table instanceof JoinTable) {
       JoinTable jt = (JoinTable) table;
@@ -188,31 +238,16 @@ public class ScrambleTableReplacer {
     if (table instanceof BaseTable) {
       BaseTable bt = (BaseTable) table;
 
-      for (ScrambleMeta meta : metaSet) {
-        // Detects scrambled tables.
-        if (meta.getSchemaName().equals(bt.getSchemaName())
-            && meta.getTableName().equals(bt.getTableName())
-            && meta.isMethodCompatibleWithSimpleAggregates()) {
-          ++replaceCount;
+      ScrambleMeta meta = metaSet.getSingleMeta(bt.getSchemaName(), bt.getTableName());
+      if (meta != null) {
+        // Detects scrambled tables (i.e., the scramble is directly specified).
+        ++replaceCount;
+        if (meta.isMethodCompatibleWithSimpleAggregates()) {
           log.info(
               String.format("Scramble detected: %s.%s", meta.getSchemaName(), meta.getTableName()));
-
-          //          bt.setSchemaName(meta.getSchemaName());
-          //          bt.setTableName(meta.getTableName());
-          //
-          //          log.info(
-          //              String.format(
-          //                  "Automatic table replacement: %s.%s -> %s.%s",
-          //                  meta.getOriginalSchemaName(),
-          //                  meta.getOriginalTableName(),
-          //                  meta.getSchemaName(),
-          //                  meta.getTableName()));
-          break;
-        } else if (meta.getSchemaName().equals(bt.getSchemaName())
-            && meta.getTableName().equals(bt.getTableName())) {
-          // IF the scramble is directly specified.
-          ++replaceCount;
         }
+      } else {
+        logAvailableScramble(bt, null);
       }
     } else if (table instanceof JoinTable) {
       JoinTable jt = (JoinTable) table;
@@ -226,4 +261,22 @@ public class ScrambleTableReplacer {
 
     return table;
   }
+
+  /**
+   * Automatic table replacement is currently disabled; if an original table is used, we only
+   * inform users of the cheapest scramble that can answer the query.
+   *
+   * @param bt An original table
+   * @param countDistinctColumn The column of count-distinct (if any)
+   */
+  private void logAvailableScramble(BaseTable bt, String countDistinctColumn) {
+    ScrambleMeta best =
+        metaSet.getBestScrambleFor(bt.getSchemaName(), bt.getTableName(), countDistinctColumn);
+    if (best != null) {
+      log.debug(
+          String.format(
+              "A scramble %s.%s is available for %s.%s",
+              best.getSchemaName(), best.getTableName(), bt.getSchemaName(), bt.getTableName()));
+    }
+  }
 }
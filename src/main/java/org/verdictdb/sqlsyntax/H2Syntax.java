@@ -120,4 +120,9 @@ public class H2Syntax extends SqlSyntax {
     // TODO Auto-generated method stub
     return null;
   }
+
+  @Override
+  public boolean doesSupportPrimaryKeyConstraint() {
+    return true;
+  }
 }
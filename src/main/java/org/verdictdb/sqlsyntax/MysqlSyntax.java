@@ -229,5 +229,8 @@ public class MysqlSyntax extends SqlSyntax {
     return f;
   }
 
-
+  @Override
+  public boolean doesSupportPrimaryKeyConstraint() {
+    return true;
+  }
 }
@@ -167,4 +167,9 @@ public class PostgresqlSyntax extends SqlSyntax {
         column, hashPrecision, hashPrecision);
     return f;
   }
+
+  @Override
+  public boolean doesSupportPrimaryKeyConstraint() {
+    return true;
+  }
 }
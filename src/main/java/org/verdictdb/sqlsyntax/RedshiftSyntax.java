@@ -233,4 +233,9 @@ public class RedshiftSyntax extends SqlSyntax {
         column, hashPrecision, hashPrecision);
     return f;
   }
+
+  @Override
+  public boolean doesSupportPrimaryKeyConstraint() {
+    return true;
+  }
 }
@@ -127,4 +127,14 @@ public abstract class SqlSyntax {
   public String getPrimaryKey(String schema, String table) {
     return null;
   }
+
+  /**
+   * Whether a primary key can be declared in a create table statement. Hive, Impala, Spark, and
+   * Presto do not support it.
+   *
+   * @return True if "primary key (...)" is allowed in a table definition
+   */
+  public boolean doesSupportPrimaryKeyConstraint() {
+    return false;
+  }
 }
@@ -127,4 +127,9 @@ public class SqliteSyntax extends SqlSyntax {
   public String hashFunction(String column) {
     return null;
   }
+
+  @Override
+  public boolean doesSupportPrimaryKeyConstraint() {
+    return true;
+  }
 }
@@ -324,6 +324,18 @@ public class CreateTableToSql {
       sql.append(String.format("%s %s", quoteName(column), type));
       isFirst = false;
     }
+
+    // primary key
+    List<String> primaryKeyColumns = query.getPrimaryKeyColumns();
+    if (!primaryKeyColumns.isEmpty() && syntax.doesSupportPrimaryKeyConstraint()) {
+      List<String> quoted = new ArrayList<>();
+      for (String column : primaryKeyColumns) {
+        quoted.add(quoteName(column));
+      }
+      sql.append(", primary key (");
+      sql.append(Joiner.on(", ").join(quoted));
+      sql.append(")");
+    }
     sql.append(")");
 
     return sql.toString();
@@ -0,0 +1,53 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.sqlwriter;
+
+import org.verdictdb.core.sqlobject.DeleteQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.SqlSyntax;
+
+public class DeleteToSql {
+
+  SqlSyntax syntax;
+
+  public DeleteToSql(SqlSyntax syntax) {
+    this.syntax = syntax;
+  }
+
+  public String toSql(DeleteQuery query) throws VerdictDBException {
+    StringBuilder sql = new StringBuilder();
+
+    // table
+    sql.append("delete from ");
+    sql.append(quoteName(query.getSchemaName()));
+    sql.append(".");
+    sql.append(quoteName(query.getTableName()));
+
+    // the columns of the predicate refer to the table without an alias
+    if (query.getPredicate() != null) {
+      sql.append(" where ");
+      sql.append(new SelectQueryToSql(syntax).unnamedColumnToSqlPart(query.getPredicate()));
+    }
+
+    return sql.toString();
+  }
+
+  String quoteName(String name) {
+    String quoteString = syntax.getQuoteString();
+    return quoteString + name + quoteString;
+  }
+}
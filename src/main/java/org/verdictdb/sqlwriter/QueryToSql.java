@@ -18,6 +18,7 @@ package org.verdictdb.sqlwriter;
 
 import org.verdictdb.core.sqlobject.CreateSchemaQuery;
 import org.verdictdb.core.sqlobject.CreateTableQuery;
+import org.verdictdb.core.sqlobject.DeleteQuery;
 import org.verdictdb.core.sqlobject.DropTableQuery;
 import org.verdictdb.core.sqlobject.InsertIntoSelectQuery;
 import org.verdictdb.core.sqlobject.InsertValuesQuery;
@@ -48,6 +49,9 @@ public class QueryToSql {
     } else if (query instanceof DropTableQuery) {
       DropTableToSql tosql = new DropTableToSql(syntax);
       return tosql.toSql((DropTableQuery) query);
+    } else if (query instanceof DeleteQuery) {
+      DeleteToSql tosql = new DeleteToSql(syntax);
+      return tosql.toSql((DeleteQuery) query);
     } else if (query instanceof InsertValuesQuery) {
       InsertQueryToSql tosql = new InsertQueryToSql(syntax);
       return tosql.toSql((InsertValuesQuery) query);
@@ -560,11 +560,7 @@ public class SelectQueryToSql {
     }
     if (relation instanceof SetOperationRelation) {
       sql.append("(");
-      sql.append(selectQueryToSql((SelectQuery) ((SetOperationRelation) relation).getLeft()));
-      sql.append(" ");
-      sql.append(((SetOperationRelation) relation).getSetOpType());
-      sql.append(" ");
-      sql.append(selectQueryToSql((SelectQuery) ((SetOperationRelation) relation).getRight()));
+      sql.append(setOperationToSqlPart((SetOperationRelation) relation));
       sql.append(")");
       if (relation.getAliasName().isPresent()) {
         sql.append(" as " + relation.getAliasName().get());
@@ -586,6 +582,22 @@ public class SelectQueryToSql {
     return "(" + selectQueryToSql(sel) + ") as " + aliasName.get();
   }
 
+  /** The members of a set operation, which may be set operations themselves, are not enclosed. */
+  private String setOperationToSqlPart(SetOperationRelation relation) throws VerdictDBException {
+    return setOperationMemberToSql(relation.getLeft())
+        + " "
+        + relation.getSetOpType()
+        + " "
+        + setOperationMemberToSql(relation.getRight());
+  }
+
+  private String setOperationMemberToSql(AbstractRelation member) throws VerdictDBException {
+    if (member instanceof SetOperationRelation) {
+      return setOperationToSqlPart((SetOperationRelation) member);
+    }
+    return selectQueryToSql((SelectQuery) member);
+  }
+
   String quoteName(String name) {
     String quoteString = syntax.getQuoteString();
     // already quoted
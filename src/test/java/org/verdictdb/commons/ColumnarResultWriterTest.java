@@ -0,0 +1,111 @@
+package org.verdictdb.commons;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.VerdictSingleResult;
+import org.verdictdb.connection.JdbcQueryResult;
+import org.verdictdb.coordinator.VerdictSingleResultFromDbmsQueryResult;
+
+public class ColumnarResultWriterTest {
+
+  static Connection h2conn;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    h2conn = DriverManager.getConnection("jdbc:h2:mem:columnarwritertest;DB_CLOSE_DELAY=-1");
+    Statement stmt = h2conn.createStatement();
+    stmt.execute(
+        "CREATE TABLE t (id bigint, price double, name varchar(10), "
+            + "amount decimal(10,2), flag boolean)");
+    stmt.execute("INSERT INTO t VALUES (1, 1.5, 'a', 1.50, true)");
+    stmt.execute("INSERT INTO t VALUES (null, null, null, null, null)");
+    stmt.execute("INSERT INTO t VALUES (3, 2.0, 'ccc', 3.00, false)");
+    stmt.close();
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    h2conn.close();
+  }
+
+  private VerdictSingleResult query() throws SQLException {
+    return new VerdictSingleResultFromDbmsQueryResult(
+        new JdbcQueryResult(h2conn.createStatement().executeQuery("SELECT * FROM t ORDER BY 3")));
+  }
+
+  private static String readString(DataInputStream in, int length) throws IOException {
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testWriteAllRows() throws SQLException, IOException {
+    byte[] serialized = query().toColumnarBytes();
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(serialized));
+    assertEquals(3, in.readInt());
+    assertEquals(5, in.readInt());
+
+    // the null row comes first; the null bitmap is 0b010... after the first row.
+    assertEquals(ColumnarResultWriter.LONG, in.readByte());
+    assertEquals((byte) 0x80, in.readByte());
+    assertEquals(0, in.readLong());
+    assertEquals(1, in.readLong());
+    assertEquals(3, in.readLong());
+
+    assertEquals(ColumnarResultWriter.DOUBLE, in.readByte());
+    assertEquals((byte) 0x80, in.readByte());
+    assertEquals(Double.NaN, in.readDouble(), 0);
+    assertEquals(1.5, in.readDouble(), 0);
+    assertEquals(2.0, in.readDouble(), 0);
+
+    assertEquals(ColumnarResultWriter.STRING, in.readByte());
+    assertEquals((byte) 0x80, in.readByte());
+    assertEquals(0, in.readInt());
+    assertEquals(1, in.readInt());
+    assertEquals(3, in.readInt());
+    assertEquals("accc", readString(in, 4));
+
+    assertEquals(ColumnarResultWriter.DECIMAL, in.readByte());
+    assertEquals((byte) 0x80, in.readByte());
+    assertEquals(0, in.readInt());
+    assertEquals(4, in.readInt());
+    assertEquals(4, in.readInt());
+    assertEquals("1.503.00", readString(in, 8));
+
+    assertEquals(ColumnarResultWriter.BOOLEAN, in.readByte());
+    assertEquals((byte) 0x80, in.readByte());
+    assertEquals(0, in.readByte());
+    assertEquals(1, in.readByte());
+    assertEquals(0, in.readByte());
+    assertEquals(0, in.available());
+  }
+
+  @Test
+  public void testWriteInBatches() throws SQLException, IOException {
+    VerdictSingleResult result = query();
+    int total = 0;
+    while (true) {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(result.toColumnarBytes(2)));
+      int rowCount = in.readInt();
+      assertEquals(5, in.readInt());
+      total += rowCount;
+      if (rowCount < 2) {
+        break;
+      }
+    }
+    assertEquals(3, total);
+  }
+}
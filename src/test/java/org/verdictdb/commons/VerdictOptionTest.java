@@ -17,6 +17,8 @@
 package org.verdictdb.commons;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Properties;
 
@@ -70,4 +72,146 @@ public class VerdictOptionTest {
     assertEquals("mymeta", option.getVerdictMetaSchemaName());
     assertEquals("mytemp", option.getVerdictTempSchemaName());
   }
+
+  @Test
+  public void metaDataSnapshotOptionParseTest() {
+    VerdictOption option = new VerdictOption();
+    assertEquals(false, option.isMetaDataSnapshotEnabled());
+
+    String jdbcConnectionString =
+        "jdbc:db://localhost:3306?verdictdbmetasnapshot=/tmp/verdict/meta.bin"
+            + "&verdictdbmetasnapshotmaxage=600";
+    option.parseConnectionString(jdbcConnectionString);
+
+    assertEquals(true, option.isMetaDataSnapshotEnabled());
+    assertEquals("/tmp/verdict/meta.bin", option.getMetaDataSnapshotPath());
+    assertEquals(600, option.getMetaDataSnapshotMaxAge());
+
+    Properties prop = new Properties();
+    prop.setProperty("verdictdbmetasnapshot", "C:\\verdict\\meta.bin");
+    option.parseProperties(prop);
+    assertEquals("C:\\verdict\\meta.bin", option.getMetaDataSnapshotPath());
+  }
+
+  @Test
+  public void metaStoreRefreshIntervalParseTest() {
+    VerdictOption option = new VerdictOption();
+    assertEquals(0, option.getMetaStoreRefreshInterval());
+
+    option.parseConnectionString("jdbc:db://localhost:3306?verdictdbmetarefreshinterval=5");
+    assertEquals(5, option.getMetaStoreRefreshInterval());
+
+    Properties prop = new Properties();
+    prop.setProperty("verdictdbmetarefreshinterval", "30");
+    option.parseProperties(prop);
+    assertEquals(30, option.getMetaStoreRefreshInterval());
+  }
+
+  @Test
+  public void scramblingUnitCountParseTest() {
+    VerdictOption option = new VerdictOption();
+    assertEquals(1, option.getScramblingUnitCount());
+
+    option.parseConnectionString("jdbc:db://localhost:3306?verdictdbscramblingunitcount=8");
+    assertEquals(8, option.getScramblingUnitCount());
+
+    Properties prop = new Properties();
+    prop.setProperty("verdictdbscramblingunitcount", "4");
+    option.parseProperties(prop);
+    assertEquals(4, option.getScramblingUnitCount());
+  }
+
+  @Test
+  public void streamBufferParseTest() {
+    VerdictOption option = new VerdictOption();
+    assertEquals("bounded", option.getStreamBufferPolicy());
+    assertEquals(10, option.getStreamBufferSize());
+
+    option.parseConnectionString(
+        "jdbc:db://localhost:3306?verdictdbstreambufferpolicy=LATEST&verdictdbstreambuffersize=3");
+    assertEquals("latest", option.getStreamBufferPolicy());
+    assertEquals(3, option.getStreamBufferSize());
+
+    Properties prop = new Properties();
+    prop.setProperty("verdictdbstreambufferpolicy", "bounded");
+    prop.setProperty("verdictdbstreambuffersize", "20");
+    option.parseProperties(prop);
+    assertEquals("bounded", option.getStreamBufferPolicy());
+    assertEquals(20, option.getStreamBufferSize());
+  }
+
+  @Test
+  public void streamDeltaParseTest() {
+    VerdictOption option = new VerdictOption();
+    assertEquals(false, option.isStreamDelta());
+    assertEquals(10, option.getStreamDeltaSnapshotInterval());
+    assertEquals(0, option.getStreamDeltaTolerance(), 0);
+
+    option.parseConnectionString(
+        "jdbc:db://localhost:3306?verdictdbstreamdelta=true"
+            + "&verdictdbstreamdeltasnapshotinterval=5&verdictdbstreamdeltatolerance=0.01");
+    assertEquals(true, option.isStreamDelta());
+    assertEquals(5, option.getStreamDeltaSnapshotInterval());
+    assertEquals(0.01, option.getStreamDeltaTolerance(), 0);
+
+    Properties prop = new Properties();
+    prop.setProperty("verdictdbstreamdelta", "false");
+    prop.setProperty("verdictdbstreamdeltasnapshotinterval", "20");
+    prop.setProperty("verdictdbstreamdeltatolerance", "0.1");
+    option.parseProperties(prop);
+    assertEquals(false, option.isStreamDelta());
+    assertEquals(20, option.getStreamDeltaSnapshotInterval());
+    assertEquals(0.1, option.getStreamDeltaTolerance(), 0);
+  }
+
+  @Test
+  public void errorBoundsParseTest() {
+    VerdictOption option = new VerdictOption();
+    assertEquals(false, option.isErrorBoundColumns());
+    assertEquals(0.95, option.getConfidenceLevel(), 0);
+
+    option.parseConnectionString(
+        "jdbc:db://localhost:3306?verdictdberrorbounds=true&verdictdbconfidencelevel=0.99");
+    assertEquals(true, option.isErrorBoundColumns());
+    assertEquals(0.99, option.getConfidenceLevel(), 0);
+
+    Properties prop = new Properties();
+    prop.setProperty("verdictdbconfidencelevel", "0.9");
+    option.parseProperties(prop);
+    assertEquals(true, option.isErrorBoundColumns());
+    assertEquals(0.9, option.getConfidenceLevel(), 0);
+  }
+
+  @Test
+  public void aggregateMemoryBudgetParseTest() {
+    VerdictOption option = new VerdictOption();
+    assertEquals(0, option.getAggregateMemoryBudget());
+    assertEquals(null, option.getAggregateSpillDirectory());
+
+    option.parseConnectionString(
+        "jdbc:db://localhost:3306?verdictdbaggregatememorybudget=256"
+            + "&verdictdbaggregatespilldir=/data/verdict-spill");
+    assertEquals(256, option.getAggregateMemoryBudget());
+    assertEquals("/data/verdict-spill", option.getAggregateSpillDirectory());
+
+    Properties prop = new Properties();
+    prop.setProperty("verdictdbaggregatememorybudget", "1024");
+    option.parseProperties(prop);
+    assertEquals(1024, option.getAggregateMemoryBudget());
+    assertEquals("/data/verdict-spill", option.getAggregateSpillDirectory());
+  }
+
+  @Test
+  public void topKEarlyStopParseTest() {
+    VerdictOption option = new VerdictOption();
+    assertFalse(option.isTopKEarlyStop());
+
+    option.parseConnectionString("jdbc:db://localhost:3306?verdictdbtopkearlystop=true");
+    assertTrue(option.isTopKEarlyStop());
+
+    Properties prop = new Properties();
+    prop.setProperty("verdictdbtopkearlystop", "false");
+    option.parseProperties(prop);
+    assertFalse(option.isTopKEarlyStop());
+  }
 }
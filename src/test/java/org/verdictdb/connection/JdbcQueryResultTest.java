@@ -66,4 +66,33 @@ public class JdbcQueryResultTest {
     assertTrue("alias1".equalsIgnoreCase(rs.getColumnName(0)));
   }
 
+  @Test
+  public void testViewsHaveSeparateCursors() throws VerdictDBDbmsException {
+    DbmsQueryResult rs = jdbc.executeQuery("SELECT * FROM PERSON");
+    rs.next();
+    rs.next();
+    DbmsQueryResult view1 = rs.createView();
+    DbmsQueryResult view2 = rs.createView();
+
+    // a view starts before the first row regardless of the cursor of the original result
+    assertTrue(view1.next());
+    assertEquals(contents.get(0).get(0), view1.getValue(0));
+    assertTrue(view2.next());
+    assertTrue(view2.next());
+    assertEquals(contents.get(1).get(1), view2.getValue(1));
+    assertEquals(contents.get(0).get(0), view1.getValue(0));
+    assertEquals(contents.get(1).get(0), rs.getValue(0));
+    assertEquals(3, view1.getRowCount());
+
+    // the rows are shared rather than copied
+    assertTrue(
+        ((JdbcQueryResult) view1).getResult().get(0)
+            == ((JdbcQueryResult) rs).getResult().get(0));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSharedRowsNotModifiable() throws VerdictDBDbmsException {
+    JdbcQueryResult rs = (JdbcQueryResult) jdbc.executeQuery("SELECT * FROM PERSON");
+    rs.getResult().clear();
+  }
 }
@@ -82,6 +82,42 @@ public class PostgreSqlUniformScramblingCoordinatorTest {
     testScramblingCoordinator("orders");
   }
 
+  @Test
+  public void testParallelScramblingCoordinatorLineitem() throws VerdictDBException {
+    DbmsConnection conn = JdbcConnection.create(postgresConn);
+    long blockSize = 100;
+    conn.execute(
+        String.format("drop table if exists %s.lineitem_serial_scrambled", POSTGRES_SCHEMA));
+    conn.execute(
+        String.format("drop table if exists %s.lineitem_parallel_scrambled", POSTGRES_SCHEMA));
+
+    ScramblingCoordinator scrambler =
+        new ScramblingCoordinator(conn, POSTGRES_SCHEMA, POSTGRES_SCHEMA, blockSize);
+    scrambler.scramble(
+        POSTGRES_SCHEMA, "lineitem", POSTGRES_SCHEMA, "lineitem_serial_scrambled", "uniform");
+    scrambler = new ScramblingCoordinator(conn, POSTGRES_SCHEMA, POSTGRES_SCHEMA, blockSize);
+    scrambler.setScramblingUnitCount(4);
+    scrambler.scramble(
+        POSTGRES_SCHEMA, "lineitem", POSTGRES_SCHEMA, "lineitem_parallel_scrambled", "uniform");
+
+    // every row is inserted by exactly one unit
+    DbmsQueryResult serial =
+        conn.execute(
+            String.format(
+                "select count(*), max(verdictdbblock) from %s.lineitem_serial_scrambled",
+                POSTGRES_SCHEMA));
+    DbmsQueryResult parallel =
+        conn.execute(
+            String.format(
+                "select count(*), max(verdictdbblock) from %s.lineitem_parallel_scrambled",
+                POSTGRES_SCHEMA));
+    serial.next();
+    parallel.next();
+    assertEquals(1000, parallel.getInt(0));
+    assertEquals(serial.getInt(0), parallel.getInt(0));
+    assertEquals(serial.getInt(1), parallel.getInt(1));
+  }
+
   public void testScramblingCoordinator(String tablename) throws VerdictDBException {
     DbmsConnection conn = JdbcConnection.create(postgresConn);
 
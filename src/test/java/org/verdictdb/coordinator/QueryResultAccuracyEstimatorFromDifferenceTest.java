@@ -0,0 +1,134 @@
+package org.verdictdb.coordinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.verdictdb.VerdictSingleResult;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+
+public class QueryResultAccuracyEstimatorFromDifferenceTest {
+
+  private static QueryResultAccuracyEstimatorFromDifference createEstimator() {
+    SelectQuery query =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new AliasedColumn(new BaseColumn("t", "grp"), "grp"),
+                new AliasedColumn(new ColumnOp("sum", new BaseColumn("t", "price")), "s")),
+            new BaseTable("myschema", "t", "t"));
+    return new QueryResultAccuracyEstimatorFromDifference(query);
+  }
+
+  /** @param rows pairs of a group and its sum */
+  private static VerdictSingleResult answer(Object... rows) {
+    List<List<Object>> data = new ArrayList<>();
+    for (int i = 0; i < rows.length; i += 2) {
+      data.add(Arrays.asList(rows[i], rows[i + 1]));
+    }
+    return new VerdictSingleResultFromListData(Arrays.asList("grp", "s"), data);
+  }
+
+  @Test
+  public void testConvergence() {
+    QueryResultAccuracyEstimatorFromDifference accEst = createEstimator();
+
+    accEst.add(answer("a", 100.0, "b", 200.0));
+    assertFalse(accEst.isLastResultAccurate());
+    assertEquals(0, accEst.getConvergedGroupFraction(), 0);
+
+    // "b" changed by 10%
+    accEst.add(answer("a", 101.0, "b", 220.0));
+    assertFalse(accEst.isLastResultAccurate());
+    assertEquals(0.5, accEst.getConvergedGroupFraction(), 0);
+
+    VerdictSingleResult last = answer("a", 101.5, "b", 221.0);
+    accEst.add(last);
+    assertTrue(accEst.isLastResultAccurate());
+    assertEquals(1.0, accEst.getConvergedGroupFraction(), 0);
+    assertSame(last, accEst.getLastAnswer());
+    assertEquals(3, accEst.getAnswerCount());
+  }
+
+  @Test
+  public void testNewGroupsAreNotConverged() {
+    QueryResultAccuracyEstimatorFromDifference accEst = createEstimator();
+    accEst.add(answer("a", 100.0, "b", 200.0, "c", 300.0));
+    assertFalse(accEst.isLastResultAccurate());
+
+    // the values of the existing groups converged; "d" is new, and "c" is gone.
+    accEst.add(answer("a", 100.0, "b", 200.0, "d", 300.0));
+    assertTrue(accEst.isLastResultAccurate());
+    assertEquals(2.0 / 3, accEst.getConvergedGroupFraction(), 1e-9);
+
+    // "c" reappears, but it was not in the previous answer
+    accEst.add(answer("a", 100.0, "b", 200.0, "c", 100.0));
+    assertTrue(accEst.isLastResultAccurate());
+    assertEquals(2.0 / 3, accEst.getConvergedGroupFraction(), 1e-9);
+  }
+
+  @Test
+  public void testNullValuesAreNotConverged() {
+    QueryResultAccuracyEstimatorFromDifference accEst = createEstimator();
+    accEst.add(answer("a", null));
+    assertFalse(accEst.isLastResultAccurate());
+    accEst.add(answer("a", null));
+    assertFalse(accEst.isLastResultAccurate());
+  }
+
+  @Test
+  public void testManyGroups() {
+    QueryResultAccuracyEstimatorFromDifference accEst = createEstimator();
+    for (int iter = 0; iter < 2; iter++) {
+      List<Object> rows = new ArrayList<>();
+      for (int i = 0; i < 10000; i++) {
+        rows.add("group" + i);
+        rows.add((double) i);
+      }
+      accEst.add(answer(rows.toArray()));
+      assertEquals(iter == 1, accEst.isLastResultAccurate());
+    }
+    assertEquals(1.0, accEst.getConvergedGroupFraction(), 0);
+  }
+
+  @Test
+  public void testGroupsOfOldAnswersAreEvicted() {
+    QueryResultAccuracyEstimatorFromDifference.GroupTable groups =
+        new QueryResultAccuracyEstimatorFromDifference.GroupTable(1);
+    // every answer has its own groups, and a few groups shared with the previous answer
+    for (int answer = 0; answer < 100; answer++) {
+      groups.startAnswer();
+      for (int i = 0; i < 1000; i++) {
+        groups.put(answer * 1000L + i);
+      }
+      groups.put(-1);
+      assertEquals(answer > 0, groups.wasInPreviousAnswer());
+    }
+    assertTrue(groups.capacity() <= 8192);
+  }
+
+  @Test
+  public void testHashValuesOfDistinctKeys() {
+    Set<Long> hashes = new HashSet<>();
+    for (int i = 0; i < 10000; i++) {
+      hashes.add(QueryResultAccuracyEstimatorFromDifference.hashValue("group" + i));
+    }
+    assertEquals(10000, hashes.size());
+    assertNotEquals(
+        QueryResultAccuracyEstimatorFromDifference.hashValue(1L),
+        QueryResultAccuracyEstimatorFromDifference.hashValue(1.0));
+  }
+}
@@ -0,0 +1,76 @@
+package org.verdictdb.coordinator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.sqlobject.CreateScrambleQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class ScrambleAppendTest {
+
+  static Connection conn;
+
+  static Statement stmt;
+
+  static final String SCHEMA = "scramble_append_test";
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    final String DB_CONNECTION = "jdbc:h2:mem:scrambleappendtest;DB_CLOSE_DELAY=-1";
+    conn = DriverManager.getConnection(DB_CONNECTION, "", "");
+    stmt = conn.createStatement();
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", SCHEMA));
+    stmt.execute(
+        String.format("CREATE TABLE \"%s\".\"orders\" (\"id\" INT, \"price\" DOUBLE)", SCHEMA));
+    for (int i = 0; i < 100; i++) {
+      stmt.execute(
+          String.format("INSERT INTO \"%s\".\"orders\" VALUES (%d, %d.5)", SCHEMA, i, i % 10));
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    stmt.execute(String.format("DROP SCHEMA IF EXISTS \"%s\" CASCADE", SCHEMA));
+    conn.close();
+  }
+
+  @Test
+  public void testDirectAppend() throws VerdictDBException, SQLException {
+    JdbcConnection h2conn = new JdbcConnection(conn, new H2Syntax());
+    ScramblingCoordinator scrambler = new ScramblingCoordinator(h2conn, SCHEMA, SCHEMA, 10L);
+    ScrambleMeta meta =
+        scrambler.scramble(SCHEMA, "orders", SCHEMA, "orders_scrambled", "uniform");
+
+    CreateScrambleQuery query = new CreateScrambleQuery();
+    query.setNewSchema(SCHEMA);
+    query.setNewTable("orders_scrambled");
+    query.setOriginalSchema(SCHEMA);
+    query.setOriginalTable("orders");
+    query.setMethod(meta.getMethod());
+    query.setScramblingMethod(meta.getScramblingMethod());
+    scrambler.appendScramble(query);
+
+    ResultSet rs =
+        stmt.executeQuery(
+            String.format(
+                "SELECT count(*), count(DISTINCT \"id\"), min(\"verdictdbblock\"), "
+                    + "max(\"verdictdbblock\") FROM \"%s\".\"orders_scrambled\"",
+                SCHEMA));
+    rs.next();
+    assertEquals(200, rs.getInt(1));
+    assertEquals(100, rs.getInt(2));
+    assertEquals(0, rs.getInt(3));
+    assertEquals(meta.getAggregationBlockCount() - 1, rs.getInt(4));
+  }
+}
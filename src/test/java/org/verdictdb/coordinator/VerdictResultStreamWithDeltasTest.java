@@ -0,0 +1,159 @@
+package org.verdictdb.coordinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.verdictdb.VerdictResultStream;
+import org.verdictdb.VerdictSingleResult;
+import org.verdictdb.coordinator.VerdictResultStreamWithDeltas.DeltaResult;
+
+public class VerdictResultStreamWithDeltasTest {
+
+  private static class ListStream implements VerdictResultStream {
+
+    private final Iterator<VerdictSingleResult> answers;
+
+    ListStream(List<VerdictSingleResult> answers) {
+      this.answers = answers.iterator();
+    }
+
+    @Override
+    public VerdictResultStream create(VerdictSingleResult singleResult) {
+      return null;
+    }
+
+    @Override
+    public boolean isCompleted() {
+      return !answers.hasNext();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return answers.hasNext();
+    }
+
+    @Override
+    public VerdictSingleResult next() {
+      return answers.next();
+    }
+
+    @Override
+    public Iterator<VerdictSingleResult> iterator() {
+      return this;
+    }
+
+    @Override
+    public void remove() {}
+
+    @Override
+    public void close() {}
+  }
+
+  /** @param rows pairs of a group and its count */
+  private static VerdictSingleResult answer(Object... rows) {
+    List<List<Object>> data = new ArrayList<>();
+    for (int i = 0; i < rows.length; i += 2) {
+      data.add(Arrays.asList(rows[i], rows[i + 1]));
+    }
+    return new VerdictSingleResultFromListData(Arrays.asList("grp", "cnt"), data);
+  }
+
+  private static List<List<Object>> rowsOf(DeltaResult result) {
+    List<List<Object>> rows = new ArrayList<>();
+    while (result.next()) {
+      rows.add(Arrays.asList(result.getValue(0), result.getValue(1), result.getValue(2)));
+    }
+    return rows;
+  }
+
+  private static List<Object> row(Object... values) {
+    return Arrays.asList(values);
+  }
+
+  @Test
+  public void testDeltasAndSnapshots() {
+    VerdictResultStreamWithDeltas stream =
+        new VerdictResultStreamWithDeltas(
+            new ListStream(
+                Arrays.asList(
+                    answer("a", 10, "b", 20),
+                    answer("a", 10, "b", 25, "c", 5),
+                    answer("b", 25, "c", 6),
+                    answer("b", 30, "c", 6))),
+            new int[] {0},
+            2,
+            3,
+            0);
+
+    DeltaResult first = stream.next();
+    assertEquals(1, first.getSequenceNumber());
+    assertTrue(first.isSnapshot());
+    assertEquals(VerdictResultStreamWithDeltas.CHANGE_COLUMN_NAME, first.getColumnName(0));
+    assertEquals("cnt", first.getColumnName(2));
+    assertEquals(
+        Arrays.asList(row("snapshot", "a", 10), row("snapshot", "b", 20)), rowsOf(first));
+
+    DeltaResult second = stream.next();
+    assertEquals(2, second.getSequenceNumber());
+    assertFalse(second.isSnapshot());
+    assertEquals(Arrays.asList(row("update", "b", 25), row("insert", "c", 5)), rowsOf(second));
+
+    DeltaResult third = stream.next();
+    assertEquals(Arrays.asList(row("update", "c", 6), row("delete", "a", null)), rowsOf(third));
+
+    // every third answer is a snapshot
+    DeltaResult fourth = stream.next();
+    assertTrue(fourth.isSnapshot());
+    assertEquals(
+        Arrays.asList(row("snapshot", "b", 30), row("snapshot", "c", 6)), rowsOf(fourth));
+    assertFalse(stream.hasNext());
+  }
+
+  @Test
+  public void testSmallChangesAreSentAtTheEnd() {
+    VerdictResultStreamWithDeltas stream =
+        new VerdictResultStreamWithDeltas(
+            new ListStream(
+                Arrays.asList(
+                    answer("a", 100.0, "b", 100.0),
+                    answer("a", 100.5, "b", 150.0),
+                    answer("a", 101.0, "b", 150.0))),
+            new int[] {0},
+            2,
+            10,
+            0.02);
+
+    assertTrue(stream.next().isSnapshot());
+    assertEquals(Arrays.asList(row("update", "b", 150.0)), rowsOf(stream.next()));
+    // the change of "a" is below the tolerance; nothing is sent
+    assertEquals(0, stream.next().getRowCount());
+
+    assertTrue(stream.hasNext());
+    DeltaResult last = stream.next();
+    assertEquals(4, last.getSequenceNumber());
+    assertEquals(Arrays.asList(row("update", "a", 101.0)), rowsOf(last));
+    assertFalse(stream.hasNext());
+  }
+
+  @Test
+  public void testDuplicateKeysFallBackToSnapshots() {
+    VerdictResultStreamWithDeltas stream =
+        new VerdictResultStreamWithDeltas(
+            new ListStream(Arrays.asList(answer("a", 1, "b", 2), answer("a", 1, "a", 2))),
+            new int[] {0},
+            2,
+            10,
+            0);
+
+    assertTrue(stream.next().isSnapshot());
+    assertTrue(stream.next().isSnapshot());
+    assertFalse(stream.hasNext());
+  }
+}
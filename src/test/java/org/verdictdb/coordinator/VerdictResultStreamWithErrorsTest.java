@@ -0,0 +1,179 @@
+package org.verdictdb.coordinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.verdictdb.VerdictSingleResult;
+import org.verdictdb.core.querying.ola.HyperLogLog;
+import org.verdictdb.core.querying.ola.ProgressiveEstimate;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.OrderbyAttribute;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+
+public class VerdictResultStreamWithErrorsTest {
+
+  private static List<SelectItem> selectList() {
+    return Arrays.<SelectItem>asList(
+        new AliasedColumn(new BaseColumn("t", "grp"), "grp"),
+        new AliasedColumn(new ColumnOp("sum", new BaseColumn("t", "price")), "s"),
+        new AliasedColumn(new ColumnOp("max", new BaseColumn("t", "price")), "m"));
+  }
+
+  /** @param rows triples of a group, its sum, and its max */
+  private static VerdictSingleResult answer(Object... rows) {
+    List<List<Object>> data = new ArrayList<>();
+    for (int i = 0; i < rows.length; i += 3) {
+      data.add(Arrays.asList(rows[i], rows[i + 1], rows[i + 2]));
+    }
+    return new VerdictSingleResultFromListData(Arrays.asList("grp", "s", "m"), data);
+  }
+
+  private static VerdictResultStreamWithErrors createStream() {
+    return new VerdictResultStreamWithErrors(
+        new VerdictResultStreamFromSingleResult(null), selectList(), 0.95);
+  }
+
+  @Test
+  public void testInverseStandardNormal() {
+    assertEquals(1.959964, ProgressiveEstimate.inverseStandardNormal(0.975), 1e-6);
+    assertEquals(-2.326348, ProgressiveEstimate.inverseStandardNormal(0.01), 1e-6);
+    assertEquals(0, ProgressiveEstimate.inverseStandardNormal(0.5), 1e-9);
+  }
+
+  @Test
+  public void testErrorColumns() {
+    VerdictResultStreamWithErrors errors = createStream();
+    assertEquals(9, errors.getColumnCountWithErrors());
+
+    VerdictSingleResult first = errors.addErrors(answer("a", 10.0, 5));
+    assertEquals(9, first.getColumnCount());
+    assertEquals("s_err", first.getColumnName(3));
+    assertEquals("s_lo", first.getColumnName(4));
+    assertEquals("m_hi", first.getColumnName(8));
+    assertTrue(first.next());
+    // a single answer does not tell the error
+    assertNull(first.getValue(3));
+
+    // the per-block estimates of "a" are 10 and 14; those of "b" are 0 and 8.
+    VerdictSingleResult second = errors.addErrors(answer("a", 12.0, 5, "b", 4.0, 3));
+    assertTrue(second.next());
+    assertEquals(2.0, (Double) second.getValue(3), 1e-9);
+    assertEquals(12.0 - 1.959964 * 2.0, (Double) second.getValue(4), 1e-5);
+    assertEquals(12.0 + 1.959964 * 2.0, (Double) second.getValue(5), 1e-5);
+    assertNull(second.getValue(6));
+    assertTrue(second.next());
+    assertEquals(4.0, (Double) second.getValue(3), 1e-9);
+
+    // the per-block estimates of "a" are 10, 14, and 9.
+    VerdictSingleResult third = errors.addErrors(answer("a", 11.0, 5, "b", 4.0, 3));
+    assertTrue(third.next());
+    assertEquals(Math.sqrt(7.0 / 3), (Double) third.getValue(3), 1e-9);
+  }
+
+  @Test
+  public void testErrorColumnsAreViewOfAnswer() throws Exception {
+    VerdictResultStreamWithErrors errors = createStream();
+    errors.addErrors(answer("a", 10.0, 5));
+    VerdictSingleResult second = errors.addErrors(answer("a", 12.0, 5));
+    assertEquals(Types.DOUBLE, second.getColumnType(3));
+    assertEquals(1, second.getRowCount());
+
+    assertTrue(second.next());
+    assertEquals(12.0, (Double) second.getValue(1), 1e-9);
+    assertEquals(2.0, (Double) second.getValue(3), 1e-9);
+    assertNull(second.getValue(6));
+    assertTrue(second.wasNull());
+
+    // the view is read again after a rewind
+    second.rewind();
+    assertTrue(second.next());
+    assertEquals(2.0, (Double) second.getValue(3), 1e-9);
+    assertFalse(second.next());
+  }
+
+  private static SelectQuery createQuery() {
+    SelectQuery query = SelectQuery.create(selectList(), new BaseTable("myschema", "t", "t"));
+    query.addGroupby(new BaseColumn("t", "grp"));
+    return query;
+  }
+
+  @Test
+  public void testMissingGroupsOfLimitQueryAreNotZero() {
+    SelectQuery query = createQuery();
+    query.addOrderby(new OrderbyAttribute("s", "desc"));
+    query.addLimit(ConstantColumn.valueOf(1));
+    VerdictResultStreamWithErrors errors =
+        new VerdictResultStreamWithErrors(
+            new VerdictResultStreamFromSingleResult(null), query, 0.95, false, true);
+
+    errors.addErrors(answer("a", 10.0, 5));
+    // "b" may have been cut by the limit in the first answer
+    VerdictSingleResult second = errors.addErrors(answer("b", 20.0, 3));
+    assertTrue(second.next());
+    assertNull(second.getValue(3));
+  }
+
+  @Test
+  public void testErrorsWithoutBlockEstimates() {
+    VerdictResultStreamWithErrors errors =
+        new VerdictResultStreamWithErrors(
+            new VerdictResultStreamFromSingleResult(null), createQuery(), 0.95, false, false);
+    assertEquals(9, errors.getColumnCountWithErrors());
+
+    errors.addErrors(answer("a", 10.0, 5));
+    VerdictSingleResult second = errors.addErrors(answer("a", 12.0, 5));
+    assertTrue(second.next());
+    assertNull(second.getValue(3));
+    assertNull(second.getValue(4));
+  }
+
+  @Test
+  public void testDistinctCountErrors() {
+    List<SelectItem> selectList =
+        Arrays.<SelectItem>asList(
+            new AliasedColumn(new BaseColumn("t", "grp"), "grp"),
+            new AliasedColumn(ColumnOp.countdistinct(new BaseColumn("t", "customer")), "d"),
+            new AliasedColumn(new ColumnOp("max", new BaseColumn("t", "price")), "m"));
+    VerdictResultStreamWithErrors errors =
+        new VerdictResultStreamWithErrors(
+            new VerdictResultStreamFromSingleResult(null), selectList, 0.95, true);
+
+    // the relative standard error of the sketches, from the first answer
+    VerdictSingleResult first =
+        errors.addErrors(
+            new VerdictSingleResultFromListData(
+                Arrays.asList("grp", "d", "m"),
+                Arrays.asList(Arrays.<Object>asList("a", 1000L, 5))));
+    assertTrue(first.next());
+    double error = 1000 * new HyperLogLog().getRelativeStandardError();
+    assertEquals(error, (Double) first.getValue(3), 1e-9);
+    assertEquals(1000 - 1.959964 * error, (Double) first.getValue(4), 1e-3);
+  }
+
+  @Test
+  public void testUnsupportedQueryIsPassedThrough() {
+    VerdictResultStreamWithErrors errors =
+        new VerdictResultStreamWithErrors(
+            new VerdictResultStreamFromSingleResult(null),
+            Arrays.<SelectItem>asList(new AsteriskColumn()),
+            0.95);
+    VerdictSingleResult answer = answer("a", 10.0, 5);
+    assertSame(answer, errors.addErrors(answer));
+    assertEquals(1, errors.getColumnCountWithErrors());
+  }
+}
@@ -0,0 +1,106 @@
+package org.verdictdb.core.execplan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.commons.VerdictOption;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.coordinator.ScramblingCoordinator;
+import org.verdictdb.coordinator.SelectQueryCoordinator;
+import org.verdictdb.core.resulthandler.ExecutionResultReader;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class ExecutableNodeRunnerEarlyStopTest {
+
+  static Connection h2conn;
+
+  static JdbcConnection conn;
+
+  static ScrambleMetaSet metaset = new ScrambleMetaSet();
+
+  static final String SCHEMA = "earlystopschema";
+
+  /** 4000 rows in blocks of 100 rows */
+  static final int BLOCK_COUNT = 40;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException, VerdictDBException {
+    h2conn = DriverManager.getConnection("jdbc:h2:mem:earlystoptest;DB_CLOSE_DELAY=-1");
+    Statement stmt = h2conn.createStatement();
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", SCHEMA));
+    stmt.execute(
+        String.format(
+            "CREATE SCHEMA IF NOT EXISTS \"%s\"", new VerdictOption().getVerdictTempSchemaName()));
+    stmt.execute(
+        String.format(
+            "CREATE TABLE \"%s\".\"sales\" (\"store\" varchar(8), \"price\" double)", SCHEMA));
+    // the stores g0 and g1 sell far more than the other 18 stores
+    for (int i = 0; i < 4000; i++) {
+      int store = i % 20;
+      double price = (store == 0) ? 1000 : (store == 1) ? 500 : 10 + i % 7;
+      stmt.execute(
+          String.format("INSERT INTO \"%s\".\"sales\" VALUES ('g%d', %s)", SCHEMA, store, price));
+    }
+    stmt.close();
+
+    conn = new JdbcConnection(h2conn, new H2Syntax());
+    ScramblingCoordinator scrambler = new ScramblingCoordinator(conn, SCHEMA, SCHEMA, 100L);
+    metaset.addScrambleMeta(
+        scrambler.scramble(SCHEMA, "sales", SCHEMA, "sales_scrambled", "uniform"));
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    h2conn.close();
+  }
+
+  /** @return The number of the answers; the last answer is checked to be the exact top 2 stores */
+  private int countAnswersOfTopTwoStores(boolean isTopKEarlyStop) throws VerdictDBException {
+    VerdictOption options = new VerdictOption();
+    options.setTopKEarlyStop(isTopKEarlyStop);
+    SelectQueryCoordinator coordinator = new SelectQueryCoordinator(conn, options);
+    coordinator.setScrambleMetaSet(metaset);
+    ExecutionResultReader reader =
+        coordinator.process(
+            String.format(
+                "select store, sum(price) as s from %s.sales_scrambled "
+                    + "group by store order by s desc limit 2",
+                SCHEMA));
+    int answerCount = 0;
+    DbmsQueryResult last = null;
+    for (DbmsQueryResult result : reader) {
+      answerCount++;
+      last = result;
+    }
+
+    assertEquals(2, last.getRowCount());
+    last.next();
+    assertEquals("g0", last.getString(0));
+    last.next();
+    assertEquals("g1", last.getString(0));
+    return answerCount;
+  }
+
+  @Test(timeout = 60000)
+  public void testSettledAnswerStopsRemainingBlocks() throws VerdictDBException {
+    assertEquals(BLOCK_COUNT, countAnswersOfTopTwoStores(false));
+
+    // the runner completes the plan without waiting for the blocks its dependents skipped
+    int answerCount = countAnswersOfTopTwoStores(true);
+    assertTrue(answerCount < BLOCK_COUNT);
+
+    // the connection is still usable after the skipped blocks are abandoned
+    assertEquals(BLOCK_COUNT, countAnswersOfTopTwoStores(false));
+  }
+}
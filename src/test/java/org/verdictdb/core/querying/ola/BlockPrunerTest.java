@@ -0,0 +1,210 @@
+package org.verdictdb.core.querying.ola;
+
+import static java.sql.Types.BIGINT;
+import static java.sql.Types.DATE;
+import static java.sql.Types.DOUBLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.connection.StaticMetaData;
+import org.verdictdb.core.querying.ExecutableNodeBase;
+import org.verdictdb.core.querying.QueryExecutionPlan;
+import org.verdictdb.core.querying.QueryExecutionPlanFactory;
+import org.verdictdb.core.querying.SelectAggExecutionNode;
+import org.verdictdb.core.scrambling.BlockZoneMap;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.sqlobject.AbstractRelation;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlreader.NonValidatingSQLParser;
+import org.verdictdb.sqlreader.RelationStandardizer;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class BlockPrunerTest {
+
+  static Connection conn;
+
+  static ScrambleMeta scrambleMeta;
+
+  static StaticMetaData staticMetaData = new StaticMetaData();
+
+  static final String SCHEMA = "zonemapschema";
+
+  static final String SCRAMBLE = "sales_scrambled";
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException, VerdictDBException {
+    final String DB_CONNECTION = "jdbc:h2:mem:blockprunertest;DB_CLOSE_DELAY=-1";
+    conn = DriverManager.getConnection(DB_CONNECTION, "", "");
+    Statement stmt = conn.createStatement();
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", SCHEMA));
+    stmt.execute(
+        String.format(
+            "CREATE TABLE \"%s\".\"%s\"(\"id\" int, \"price\" double, \"sold\" date, "
+                + "\"note\" varchar(8), \"verdictdbblock\" int, \"verdictdbtier\" int)",
+            SCHEMA, SCRAMBLE));
+    // as if every block has been appended from a different month
+    for (int i = 0; i < 100; i++) {
+      int block = i / 25;
+      stmt.execute(
+          String.format(
+              "INSERT INTO \"%s\".\"%s\" VALUES (%d, %d, '2018-0%d-15', %s, %d, 0)",
+              SCHEMA, SCRAMBLE, i, i % 10, block + 1, (block == 3) ? "'x'" : "NULL", block));
+    }
+
+    Map<Integer, List<Double>> distribution = new HashMap<>();
+    distribution.put(0, Arrays.asList(0.25, 0.5, 0.75, 1.0));
+    scrambleMeta =
+        new ScrambleMeta(
+            SCHEMA, SCRAMBLE, SCHEMA, "sales", "verdictdbblock", 4, "verdictdbtier", 1,
+            distribution, "uniform", null);
+    scrambleMeta.setZoneMap(
+        BlockZoneMap.compute(
+            new JdbcConnection(conn, new H2Syntax()),
+            scrambleMeta,
+            Arrays.asList("id", "sold", "note")));
+
+    staticMetaData.setDefaultSchema(SCHEMA);
+    List<Pair<String, Integer>> columns = new ArrayList<>();
+    columns.addAll(
+        Arrays.asList(
+            new ImmutablePair<>("id", BIGINT),
+            new ImmutablePair<>("price", DOUBLE),
+            new ImmutablePair<>("sold", DATE),
+            new ImmutablePair<>("note", java.sql.Types.VARCHAR),
+            new ImmutablePair<>("verdictdbblock", BIGINT),
+            new ImmutablePair<>("verdictdbtier", BIGINT)));
+    staticMetaData.addTableData(new StaticMetaData.TableInfo(SCHEMA, SCRAMBLE), columns);
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    conn.createStatement().execute(String.format("DROP SCHEMA IF EXISTS \"%s\" CASCADE", SCHEMA));
+    conn.close();
+  }
+
+  @Test
+  public void testZoneMap() {
+    BlockZoneMap zoneMap = scrambleMeta.getZoneMap();
+    assertEquals(4, zoneMap.getBlockCount());
+    assertTrue(zoneMap.isTemporal("sold"));
+    assertFalse(zoneMap.isTemporal("id"));
+    assertTrue(zoneMap.mayOverlap("id", 1, 49.0, true, 49.0, true));
+    assertFalse(zoneMap.mayOverlap("id", 1, 50.0, true, null, false));
+    assertFalse(zoneMap.mayOverlap("id", 2, null, false, 49.0, true));
+    assertFalse(zoneMap.mayContainNonNull("note", 0));
+    assertFalse(zoneMap.mayContainNull("note", 3));
+    assertEquals(scrambleMeta, ScrambleMeta.fromJsonString(scrambleMeta.toJsonString()));
+  }
+
+  @Test
+  public void testTemporalValuesInUtc() {
+    TimeZone original = TimeZone.getDefault();
+    try {
+      TimeZone.setDefault(TimeZone.getTimeZone("America/Detroit"));
+      assertEquals(
+          1514764800000L, BlockZoneMap.toEpochMillisInUtc(java.sql.Date.valueOf("2018-01-01")));
+      assertEquals(
+          1514764800123L,
+          BlockZoneMap.toEpochMillisInUtc(java.sql.Timestamp.valueOf("2018-01-01 00:00:00.123")));
+    } finally {
+      TimeZone.setDefault(original);
+    }
+  }
+
+  @Test
+  public void testSkippableBlocks() throws VerdictDBException {
+    assertEquals(
+        new HashSet<>(Arrays.asList(0, 1, 3)),
+        findSkippableBlocks("select count(*) from sales_scrambled where id >= 60 and id < 70"));
+    assertEquals(
+        new HashSet<>(Arrays.asList(0, 3)),
+        findSkippableBlocks(
+            "select count(*) from sales_scrambled "
+                + "where sold between '2018-02-01' and '2018-03-31'"));
+    // the boundaries of the blocks, which do not depend on the time zone
+    assertEquals(
+        new HashSet<>(Arrays.asList(0, 1, 2)),
+        findSkippableBlocks("select count(*) from sales_scrambled where sold >= '2018-04-15'"));
+    assertEquals(
+        new HashSet<>(Arrays.asList(1, 2, 3)),
+        findSkippableBlocks(
+            "select count(*) from sales_scrambled where sold <= '2018-01-15 00:00:00.000'"));
+    assertEquals(
+        new HashSet<>(Arrays.asList(0, 1, 2)),
+        findSkippableBlocks("select count(*) from sales_scrambled where note is not null"));
+    assertEquals(
+        new HashSet<>(Arrays.asList(2, 3)),
+        findSkippableBlocks("select count(*) from sales_scrambled where 30 > id"));
+    // disjunctions are not examined
+    assertEquals(
+        new HashSet<Integer>(),
+        findSkippableBlocks("select count(*) from sales_scrambled where id < 10 or id > 90"));
+    assertEquals(
+        new HashSet<>(Arrays.asList(0, 2)),
+        findSkippableBlocks("select count(*) from sales_scrambled where id in (30, 99)"));
+  }
+
+  @Test
+  public void testSkippedBlocksCountedInScaleFactors() throws VerdictDBException {
+    RelationStandardizer.resetItemID();
+    String sql = "select sum(price) from sales_scrambled where id >= 60 and id < 70";
+    AbstractRelation relation = new NonValidatingSQLParser().toRelation(sql);
+    relation = new RelationStandardizer(staticMetaData).standardize((SelectQuery) relation);
+    ScrambleMetaSet metaSet = new ScrambleMetaSet();
+    metaSet.addScrambleMeta(scrambleMeta);
+
+    QueryExecutionPlan plan =
+        QueryExecutionPlanFactory.create("verdictdb_temp", metaSet, (SelectQuery) relation);
+    plan.cleanUp();
+    plan = AsyncQueryExecutionPlan.create(plan);
+
+    // only block 2 is queried; the other blocks are counted as processed by the first answer.
+    List<SelectAggExecutionNode> aggNodes = new ArrayList<>();
+    collectSelectAggNodes(plan.getRootNode(), aggNodes);
+    assertEquals(1, aggNodes.size());
+    List<HyperTableCube> cubes = aggNodes.get(0).getAggMeta().getCubes();
+    assertEquals(4, cubes.size());
+    assertEquals(
+        new HyperTableCube(Arrays.asList(new Dimension(SCHEMA, SCRAMBLE, 2, 2))), cubes.get(0));
+  }
+
+  private Set<Integer> findSkippableBlocks(String sql) throws VerdictDBException {
+    RelationStandardizer.resetItemID();
+    AbstractRelation relation = new NonValidatingSQLParser().toRelation(sql);
+    SelectQuery query =
+        new RelationStandardizer(staticMetaData).standardize((SelectQuery) relation);
+    String alias = query.getFromList().get(0).getAliasName().get();
+    return BlockPruner.findSkippableBlocks(scrambleMeta, query, alias);
+  }
+
+  private void collectSelectAggNodes(ExecutableNodeBase node, List<SelectAggExecutionNode> found) {
+    if (node instanceof SelectAggExecutionNode && !found.contains(node)) {
+      found.add((SelectAggExecutionNode) node);
+    }
+    for (ExecutableNodeBase dep : node.getExecutableNodeBaseDependents()) {
+      collectSelectAggNodes(dep, found);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package org.verdictdb.core.querying.ola;
+
+import static java.sql.Types.BIGINT;
+import static java.sql.Types.DOUBLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.StaticMetaData;
+import org.verdictdb.core.querying.ExecutableNodeBase;
+import org.verdictdb.core.querying.QueryExecutionPlan;
+import org.verdictdb.core.querying.QueryExecutionPlanFactory;
+import org.verdictdb.core.querying.SelectAggExecutionNode;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.sqlobject.AbstractRelation;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlreader.NonValidatingSQLParser;
+import org.verdictdb.sqlreader.RelationStandardizer;
+
+public class CoHashedJoinTest {
+
+  static final String SCHEMA = "cohashschema";
+
+  static ScrambleMetaSet metaSet = new ScrambleMetaSet();
+
+  static StaticMetaData staticMetaData = new StaticMetaData();
+
+  @BeforeClass
+  public static void setupMetaData() throws VerdictDBException {
+    // orders and lineitem are aligned; customer has a different number of blocks.
+    metaSet.addScrambleMeta(createHashScrambleMeta("orders", "orderkey", 4));
+    metaSet.addScrambleMeta(createHashScrambleMeta("lineitem", "orderkey", 4));
+    metaSet.addScrambleMeta(createHashScrambleMeta("customer", "custkey", 5));
+
+    staticMetaData.setDefaultSchema(SCHEMA);
+    for (String table : Arrays.asList("orders", "lineitem", "customer")) {
+      List<Pair<String, Integer>> columns = new ArrayList<>();
+      columns.addAll(
+          Arrays.asList(
+              new ImmutablePair<>("orderkey", BIGINT),
+              new ImmutablePair<>("custkey", BIGINT),
+              new ImmutablePair<>("price", DOUBLE),
+              new ImmutablePair<>("verdictdbblock", BIGINT),
+              new ImmutablePair<>("verdictdbtier", BIGINT)));
+      staticMetaData.addTableData(new StaticMetaData.TableInfo(SCHEMA, table), columns);
+    }
+  }
+
+  private static ScrambleMeta createHashScrambleMeta(
+      String tableName, String hashColumn, int blockCount) throws VerdictDBException {
+    List<Double> cumulative = new ArrayList<>();
+    for (int i = 0; i < blockCount; i++) {
+      cumulative.add((i + 1) / (double) blockCount);
+    }
+    Map<Integer, List<Double>> distribution = new HashMap<>();
+    distribution.put(0, cumulative);
+    return new ScrambleMeta(
+        SCHEMA, tableName, SCHEMA, tableName + "_original", "verdictdbblock", blockCount,
+        "verdictdbtier", 1, distribution, "hash", hashColumn);
+  }
+
+  @Test
+  public void testIsCoHashed() throws VerdictDBException {
+    assertTrue(isCoHashed("select sum(l.price) from orders o, lineitem l "
+        + "where o.orderkey = l.orderkey"));
+    assertTrue(isCoHashed("select sum(l.price) from orders o inner join lineitem l "
+        + "on o.orderkey = l.orderkey"));
+    // not joined on the hash columns
+    assertFalse(isCoHashed("select sum(l.price) from orders o, lineitem l "
+        + "where o.custkey = l.custkey"));
+    // the blocks are not aligned
+    assertFalse(isCoHashed("select sum(c.price) from orders o, customer c "
+        + "where o.orderkey = c.custkey"));
+    assertFalse(isCoHashed("select sum(price) from orders"));
+  }
+
+  @Test
+  public void testDiagonalCubesAndScaleFactors() throws VerdictDBException {
+    SelectQuery query =
+        standardize(
+            "select sum(l.price) from orders o, lineitem l where o.orderkey = l.orderkey");
+    QueryExecutionPlan plan = QueryExecutionPlanFactory.create("verdictdb_temp", metaSet, query);
+    plan.cleanUp();
+    plan = AsyncQueryExecutionPlan.create(plan);
+
+    // a single query for each pair of aligned blocks instead of 16 block pairs.
+    List<SelectAggExecutionNode> aggNodes = new ArrayList<>();
+    collectSelectAggNodes(plan.getRootNode(), aggNodes);
+    assertEquals(4, aggNodes.size());
+    for (SelectAggExecutionNode node : aggNodes) {
+      HyperTableCube cube = node.getAggMeta().getCubes().get(0);
+      assertTrue(cube.isCoHashed());
+      assertEquals(cube.getSpanOf(SCHEMA, "orders"), cube.getSpanOf(SCHEMA, "lineitem"));
+    }
+
+    // a pair of aligned blocks is a quarter of the join result, not a sixteenth.
+    AggMeta aggMeta = new AggMeta();
+    aggMeta.setCubes(Arrays.asList(aggNodes.get(0).getAggMeta().getCubes().get(0)));
+    Map<ScrambleMeta, String> tierColumns = new HashMap<>();
+    tierColumns.put(metaSet.getSingleMeta(SCHEMA, "orders"), "tier0");
+    tierColumns.put(metaSet.getSingleMeta(SCHEMA, "lineitem"), "tier1");
+    aggMeta.setTierColumnForScramble(tierColumns);
+    for (Double scaleFactor : aggMeta.computeScaleFactors().values()) {
+      assertEquals(4.0, scaleFactor, 1e-6);
+    }
+  }
+
+  private boolean isCoHashed(String sql) throws VerdictDBException {
+    return CoHashedJoin.isCoHashed(metaSet, standardize(sql));
+  }
+
+  private SelectQuery standardize(String sql) throws VerdictDBException {
+    RelationStandardizer.resetItemID();
+    AbstractRelation relation = new NonValidatingSQLParser().toRelation(sql);
+    return new RelationStandardizer(staticMetaData).standardize((SelectQuery) relation);
+  }
+
+  private void collectSelectAggNodes(ExecutableNodeBase node, List<SelectAggExecutionNode> found) {
+    if (node instanceof SelectAggExecutionNode && !found.contains(node)) {
+      found.add((SelectAggExecutionNode) node);
+    }
+    for (ExecutableNodeBase dep : node.getExecutableNodeBaseDependents()) {
+      collectSelectAggNodes(dep, found);
+    }
+  }
+}
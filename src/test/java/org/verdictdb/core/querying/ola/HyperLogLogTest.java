@@ -0,0 +1,186 @@
+package org.verdictdb.core.querying.ola;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.JdbcQueryResult;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.OrderbyAttribute;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+
+public class HyperLogLogTest {
+
+  static Connection h2conn;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    h2conn = DriverManager.getConnection("jdbc:h2:mem:hyperloglogtest;DB_CLOSE_DELAY=-1");
+    Statement stmt = h2conn.createStatement();
+    stmt.execute("CREATE TABLE \"sales\" (\"store\" varchar(8), \"customer\" int, \"block\" int)");
+    // the customers of the two blocks overlap
+    for (int i = 0; i < 1000; i++) {
+      stmt.execute(String.format("INSERT INTO \"sales\" VALUES ('a', %d, 0)", i));
+      stmt.execute(String.format("INSERT INTO \"sales\" VALUES ('a', %d, 1)", i + 500));
+    }
+    for (int i = 0; i < 100; i++) {
+      stmt.execute(String.format("INSERT INTO \"sales\" VALUES ('b', %d, 1)", i));
+    }
+    stmt.close();
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    h2conn.close();
+  }
+
+  @Test
+  public void testEstimateWithinErrorBound() {
+    HyperLogLog sketch = new HyperLogLog();
+    for (int i = 0; i < 100000; i++) {
+      sketch.offer(i);
+      sketch.offer(i); // duplicates do not change the estimate
+    }
+    sketch.offer(null);
+    double error = Math.abs(sketch.estimate() - 100000) / 100000.0;
+    assertTrue(error < 3 * sketch.getRelativeStandardError());
+  }
+
+  @Test
+  public void testMergeEqualsSketchOfUnion() {
+    HyperLogLog first = new HyperLogLog();
+    HyperLogLog second = new HyperLogLog();
+    HyperLogLog union = new HyperLogLog();
+    for (int i = 0; i < 50000; i++) {
+      first.offer("c" + i);
+      second.offer("c" + (i + 25000));
+      union.offer("c" + i);
+      union.offer("c" + (i + 25000));
+    }
+    assertFalse(first.equals(union));
+    first.merge(second);
+    assertEquals(union, first);
+    assertEquals(union.estimate(), first.estimate());
+  }
+
+  @Test
+  public void testSerialization() {
+    HyperLogLog sketch = new HyperLogLog();
+    for (int i = 0; i < 1000; i++) {
+      sketch.offer(i);
+    }
+    String encoded = sketch.toString();
+    assertEquals(1 << HyperLogLog.DEFAULT_PRECISION, encoded.length());
+    HyperLogLog decoded = HyperLogLog.fromString(encoded);
+    assertEquals(sketch, decoded);
+    assertEquals(sketch.estimate(), decoded.estimate());
+  }
+
+  @Test
+  public void testNumbersAreNormalized() {
+    HyperLogLog sketch = new HyperLogLog();
+    sketch.offer(1);
+    sketch.offer(1L);
+    sketch.offer(1.0);
+    sketch.offer(1.0f);
+    sketch.offer(new BigDecimal("1.00"));
+    assertEquals(1, sketch.estimate());
+    assertEquals("0", HyperLogLog.normalize(new BigDecimal("0.000")));
+    assertEquals("1.5", HyperLogLog.normalize(1.5f));
+    assertEquals("100", HyperLogLog.normalize(new BigDecimal("1E+2")));
+  }
+
+  /**
+   * Simulates the registers computed by a database (see SelectAggExecutionNode), whose hash values
+   * are multiples of 0.00001 in [0, 1).
+   */
+  @Test
+  public void testRegistersComputedByDatabase() {
+    Random random = new Random(0);
+    HyperLogLog sketch = new HyperLogLog();
+    int m = 1 << HyperLogLog.DEFAULT_PRECISION;
+    for (int i = 0; i < 200000; i++) {
+      double indexHash = random.nextInt(100000) / 100000.0;
+      double rankHash = random.nextInt(100000) / 100000.0 + 0.00001;
+      int rank = (int) Math.floor(Math.log(rankHash) * (-1 / Math.log(2)) + 1.000000001);
+      sketch.offerRegister((int) Math.floor(indexHash * m), rank);
+    }
+    double error = Math.abs(sketch.estimate() - 200000) / 200000.0;
+    assertTrue(error < 3 * sketch.getRelativeStandardError());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeDifferentPrecisions() {
+    new HyperLogLog(10).merge(new HyperLogLog(12));
+  }
+
+  @Test
+  public void testCombineSketchesInMemory() throws VerdictDBException, SQLException {
+    InMemoryAggregate inMemoryAggregate = InMemoryAggregate.create();
+    inMemoryAggregate.setSketchColumns(Collections.singleton("agg0"));
+
+    // the individual aggregate queries retrieve the distinct values of each group
+    for (int block = 0; block < 2; block++) {
+      DbmsQueryResult result =
+          new JdbcQueryResult(
+              h2conn
+                  .createStatement()
+                  .executeQuery(
+                      String.format(
+                          "SELECT \"store\" AS \"store\", \"customer\" AS \"agg0\" FROM \"sales\" "
+                              + "WHERE \"block\" = %d GROUP BY \"store\", \"customer\"",
+                          block)));
+      inMemoryAggregate.createTable(result, "BLOCK" + block);
+    }
+
+    SelectQuery dependentQuery =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new AliasedColumn(new BaseColumn("sales", "store"), "store"),
+                new AliasedColumn(
+                    ColumnOp.countdistinct(new BaseColumn("sales", "customer")), "agg0")),
+            new BaseTable("PUBLIC", "sales"));
+    String combined = inMemoryAggregate.combineTables("BLOCK0", "", dependentQuery);
+    combined = inMemoryAggregate.combineTables("BLOCK1", combined, dependentQuery);
+
+    SelectQuery query =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new AliasedColumn(new BaseColumn("store"), "store"),
+                new AliasedColumn(
+                    new ColumnOp(
+                        InMemoryAggregate.SKETCH_ESTIMATE_FUNCTION, new BaseColumn("agg0")),
+                    "distinct_customers")),
+            new BaseTable("PUBLIC", combined));
+    query.addOrderby(new OrderbyAttribute("store"));
+    DbmsQueryResult result = inMemoryAggregate.executeQuery(query);
+
+    // the sum of the per-block counts would be 2100 for the store 'a'
+    assertEquals(2, result.getRowCount());
+    result.next();
+    assertEquals("a", result.getString(0));
+    assertEquals(1500, result.getLong(1), 1500 * 0.05);
+    result.next();
+    assertEquals("b", result.getString(0));
+    assertEquals(100, result.getLong(1), 100 * 0.05);
+    inMemoryAggregate.abort();
+  }
+}
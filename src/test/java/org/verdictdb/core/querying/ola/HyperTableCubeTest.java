@@ -161,4 +161,19 @@ public class HyperTableCubeTest {
     assertEquals(2, slices.get(6).getDimension(2).end);
   }
 
+  @Test
+  public void testDiagonalSlicing() throws VerdictDBValueException {
+    Dimension d1 = new Dimension("myschema", "mytable1", 0, 2);
+    Dimension d2 = new Dimension("myschema", "mytable2", 0, 2);
+    HyperTableCube cube = new HyperTableCube(Arrays.asList(d1, d2));
+
+    List<HyperTableCube> slices = cube.diagonalSlice();
+    assertEquals(3, slices.size());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(true, slices.get(i).isCoHashed());
+      assertEquals(Pair.of(i, i), slices.get(i).getSpanOf("myschema", "mytable1"));
+      assertEquals(Pair.of(i, i), slices.get(i).getSpanOf("myschema", "mytable2"));
+    }
+  }
+
 }
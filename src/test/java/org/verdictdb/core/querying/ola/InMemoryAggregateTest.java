@@ -0,0 +1,145 @@
+package org.verdictdb.core.querying.ola;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.JdbcQueryResult;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.OrderbyAttribute;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+
+public class InMemoryAggregateTest {
+
+  static Connection h2conn;
+
+  static final int GROUP_COUNT = 5000;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    h2conn = DriverManager.getConnection("jdbc:h2:mem:inmemoryaggregatetest;DB_CLOSE_DELAY=-1");
+    Statement stmt = h2conn.createStatement();
+    stmt.execute("CREATE TABLE \"sales\" (\"customer\" int, \"price\" int, \"block\" int)");
+    // every customer appears once in each of the three blocks
+    stmt.execute(
+        String.format(
+            "INSERT INTO \"sales\" SELECT MOD(X, %d), X, X / %d FROM SYSTEM_RANGE(0, %d)",
+            GROUP_COUNT, GROUP_COUNT, 3 * GROUP_COUNT - 1));
+    stmt.close();
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    h2conn.close();
+  }
+
+  @Test
+  public void testPartitionOfEqualGroups() {
+    Set<Integer> partitions = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      int partition = InMemoryAggregate.partitionOf(8, i, "a");
+      assertTrue(partition >= 0 && partition < 8);
+      partitions.add(partition);
+    }
+    assertEquals(8, partitions.size());
+    assertEquals(
+        InMemoryAggregate.partitionOf(8, new BigDecimal("1.0"), null),
+        InMemoryAggregate.partitionOf(8, new BigDecimal("1.00"), null));
+    assertEquals(
+        InMemoryAggregate.partitionOf(8, BigDecimal.ZERO),
+        InMemoryAggregate.partitionOf(8, new BigDecimal("0.00")));
+  }
+
+  @Test
+  public void testCombineInPartitionsWithinMemoryBudget()
+      throws VerdictDBException, SQLException, IOException {
+    File spillDirectory = Files.createTempDirectory("verdictdb_spill").toFile();
+    InMemoryAggregate inMemoryAggregate = InMemoryAggregate.create();
+    // the groups of the blocks do not fit in the half of 64 KB
+    inMemoryAggregate.setMemoryBudget(64 * 1024, spillDirectory.getAbsolutePath());
+
+    SelectQuery dependentQuery =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new AliasedColumn(new BaseColumn("sales", "customer"), "customer"),
+                new AliasedColumn(ColumnOp.sum(new BaseColumn("sales", "price")), "agg0")),
+            new BaseTable("PUBLIC", "sales"));
+    String combined = "";
+    for (int block = 0; block < 3; block++) {
+      DbmsQueryResult result =
+          new JdbcQueryResult(
+              h2conn
+                  .createStatement()
+                  .executeQuery(
+                      String.format(
+                          "SELECT \"customer\" AS \"customer\", sum(\"price\") AS \"agg0\" "
+                              + "FROM \"sales\" WHERE \"block\" = %d GROUP BY \"customer\"",
+                          block)));
+      inMemoryAggregate.createTable(result, "BLOCK" + block);
+      combined = inMemoryAggregate.combineTables("BLOCK" + block, combined, dependentQuery);
+    }
+    assertTrue(spillDirectory.listFiles().length > 0);
+
+    SelectQuery query =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new AliasedColumn(new BaseColumn("customer"), "customer"),
+                new AliasedColumn(new BaseColumn("agg0"), "agg0")),
+            new BaseTable("PUBLIC", combined));
+    query.addOrderby(new OrderbyAttribute("customer"));
+    DbmsQueryResult result = inMemoryAggregate.executeQuery(query);
+
+    // every group is combined exactly once
+    assertEquals(GROUP_COUNT, result.getRowCount());
+    for (int customer = 0; customer < GROUP_COUNT; customer++) {
+      result.next();
+      assertEquals(customer, result.getLong(0));
+      assertEquals(3 * customer + 3 * GROUP_COUNT, result.getLong(1));
+    }
+
+    // an intermediate answer is cut to the first groups that fit in the half of the budget
+    DbmsQueryResult answer = inMemoryAggregate.executeAnswerQuery(query, false);
+    assertEquals(inMemoryAggregate.getMaxAnswerRowCount(2), answer.getRowCount());
+    assertTrue(answer.getRowCount() < GROUP_COUNT);
+    answer.next();
+    assertEquals(0, answer.getLong(0));
+
+    // the final answer is complete
+    assertEquals(GROUP_COUNT, inMemoryAggregate.executeAnswerQuery(query, true).getRowCount());
+
+    // the superseded tables are dropped
+    try {
+      inMemoryAggregate.executeQuery(
+          SelectQuery.create(new AsteriskColumn(), new BaseTable("PUBLIC", "BLOCK0")));
+      fail();
+    } catch (SQLException e) {
+      // expected
+    }
+
+    inMemoryAggregate.close();
+    assertEquals(0, spillDirectory.listFiles().length);
+    spillDirectory.delete();
+  }
+}
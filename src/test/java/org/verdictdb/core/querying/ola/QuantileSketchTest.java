@@ -0,0 +1,277 @@
+package org.verdictdb.core.querying.ola;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.commons.VerdictOption;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.connection.JdbcQueryResult;
+import org.verdictdb.coordinator.ScramblingCoordinator;
+import org.verdictdb.coordinator.SelectQueryCoordinator;
+import org.verdictdb.core.resulthandler.ExecutionResultReader;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.OrderbyAttribute;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class QuantileSketchTest {
+
+  static Connection h2conn;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    h2conn = DriverManager.getConnection("jdbc:h2:mem:quantilesketchtest;DB_CLOSE_DELAY=-1");
+    Statement stmt = h2conn.createStatement();
+    stmt.execute("CREATE TABLE \"sales\" (\"store\" varchar(8), \"price\" int, \"block\" int)");
+    // the prices of the store 'a' are 0, ..., 999; the small prices are in the first block.
+    for (int i = 0; i < 1000; i++) {
+      stmt.execute(String.format("INSERT INTO \"sales\" VALUES ('a', %d, %d)", i, i / 300));
+    }
+    for (int i = 0; i < 100; i++) {
+      stmt.execute(String.format("INSERT INTO \"sales\" VALUES ('b', %d, 1)", i % 10));
+    }
+    stmt.close();
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    h2conn.close();
+  }
+
+  @Test
+  public void testQuantilesOfUniformValues() {
+    QuantileSketch sketch = new QuantileSketch();
+    Random random = new Random(0);
+    for (int i = 0; i < 100000; i++) {
+      sketch.add(random.nextDouble() * 1000, 1);
+    }
+    assertEquals(100000, sketch.getTotalWeight(), 1e-6);
+    assertTrue(sketch.getCentroidCount() <= QuantileSketch.DEFAULT_COMPRESSION * Math.PI / 2 + 1);
+    assertEquals(500, sketch.quantile(0.5), 10);
+    assertEquals(10, sketch.quantile(0.01), 2);
+    assertEquals(990, sketch.quantile(0.99), 2);
+    assertEquals(0, sketch.quantile(0), 1);
+    assertEquals(1000, sketch.quantile(1), 1);
+  }
+
+  @Test
+  public void testWeightsAreOccurrences() {
+    QuantileSketch weighted = new QuantileSketch();
+    weighted.offer(1, 3L);
+    weighted.offer(2, 1L);
+    weighted.offer(null, 5L);
+    assertEquals(4, weighted.getTotalWeight(), 0);
+    assertEquals(1.0, weighted.quantile(0.25), 1e-9);
+    assertEquals(2.0, weighted.quantile(1), 1e-9);
+    assertNull(new QuantileSketch().quantile(0.5));
+  }
+
+  @Test
+  public void testMergeAndScale() {
+    QuantileSketch first = new QuantileSketch();
+    QuantileSketch second = new QuantileSketch();
+    for (int i = 0; i < 10000; i++) {
+      first.add(i, 1);
+      second.add(i + 10000, 1);
+    }
+    QuantileSketch merged = QuantileSketch.fromString(first.toString());
+    merged.merge(second);
+    assertEquals(10000, merged.quantile(0.5), 200);
+
+    // the values of the second sketch were sampled at a three times lower rate
+    second.scale(3);
+    first.merge(second);
+    assertEquals(40000, first.getTotalWeight(), 1e-6);
+    assertEquals(10000 + 10000 / 3.0, first.quantile(0.5), 200);
+  }
+
+  @Test
+  public void testMergeKeepsOtherSketch() {
+    QuantileSketch other = new QuantileSketch();
+    for (int i = 0; i < 100; i++) {
+      other.add(i, 1);
+    }
+    QuantileSketch merged = new QuantileSketch();
+    merged.merge(other);
+    merged.merge(other);
+    assertEquals(200, merged.getTotalWeight(), 1e-9);
+    assertEquals(100, other.getTotalWeight(), 1e-9);
+
+    // a sketch merged into itself doubles its weights
+    other.merge(other);
+    assertEquals(200, other.getTotalWeight(), 1e-9);
+    assertEquals(merged.quantile(0.5), other.quantile(0.5), 1e-9);
+  }
+
+  @Test
+  public void testSerialization() {
+    QuantileSketch sketch = new QuantileSketch();
+    for (int i = 0; i < 1000; i++) {
+      sketch.add(i * 0.1, 2);
+    }
+    QuantileSketch decoded = QuantileSketch.fromString(sketch.toString());
+    assertEquals(sketch.toString(), decoded.toString());
+    assertEquals(sketch.quantile(0.3), decoded.quantile(0.3));
+    assertNull(QuantileSketch.fromString(new QuantileSketch().toString()).quantile(0.5));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonNumericValues() {
+    new QuantileSketch().offer("abc", 1);
+  }
+
+  @Test
+  public void testCombineSketchesInMemory() throws VerdictDBException, SQLException {
+    assertMediansCombinedInMemory(InMemoryAggregate.create());
+  }
+
+  @Test
+  public void testCombineSketchesUnderMemoryBudget() throws VerdictDBException, SQLException {
+    // the budget holds the sketch of a single group; the folded groups are inserted one by one
+    InMemoryAggregate inMemoryAggregate = InMemoryAggregate.create();
+    inMemoryAggregate.setMemoryBudget(20000, null);
+    assertMediansCombinedInMemory(inMemoryAggregate);
+  }
+
+  private static void assertMediansCombinedInMemory(InMemoryAggregate inMemoryAggregate)
+      throws VerdictDBException, SQLException {
+    inMemoryAggregate.setQuantileSketchColumns(Collections.singleton("agg0"));
+    inMemoryAggregate.setAggregateColumns(
+        Arrays.asList("agg0", "agg1"), Collections.<String, String>emptyMap());
+
+    // the individual aggregate queries retrieve the per-block histograms of each group
+    for (int block = 0; block < 4; block++) {
+      DbmsQueryResult result =
+          new JdbcQueryResult(
+              h2conn
+                  .createStatement()
+                  .executeQuery(
+                      String.format(
+                          "SELECT \"store\" AS \"store\", \"price\" AS \"agg0\", "
+                              + "count(*) AS \"agg1\", count(*) AS \"%s\" FROM \"sales\" "
+                              + "WHERE \"block\" = %d GROUP BY \"store\", \"price\"",
+                          InMemoryAggregate.QUANTILE_WEIGHT_ALIAS, block)));
+      inMemoryAggregate.createTable(result, "BLOCK" + block);
+    }
+
+    SelectQuery dependentQuery =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new AliasedColumn(new BaseColumn("sales", "store"), "store"),
+                new AliasedColumn(new ColumnOp("median", new BaseColumn("sales", "price")), "agg0"),
+                new AliasedColumn(ColumnOp.count(), "agg1")),
+            new BaseTable("PUBLIC", "sales"));
+    String combined = inMemoryAggregate.combineTables("BLOCK0", "", dependentQuery);
+    for (int block = 1; block < 4; block++) {
+      combined = inMemoryAggregate.combineTables("BLOCK" + block, combined, dependentQuery);
+    }
+
+    UnnamedColumn merged =
+        new ColumnOp(InMemoryAggregate.QUANTILE_MERGE_FUNCTION, new BaseColumn("agg0"));
+    SelectQuery query =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new AliasedColumn(new BaseColumn("store"), "store"),
+                new AliasedColumn(
+                    new ColumnOp(
+                        InMemoryAggregate.QUANTILE_ESTIMATE_FUNCTION,
+                        Arrays.asList(merged, ConstantColumn.valueOf(0.5))),
+                    "median_price"),
+                new AliasedColumn(ColumnOp.sum(new BaseColumn("agg1")), "cnt")),
+            new BaseTable("PUBLIC", combined));
+    query.addGroupby(new BaseColumn("store"));
+    query.addOrderby(new OrderbyAttribute("store"));
+    DbmsQueryResult result = inMemoryAggregate.executeQuery(query);
+
+    // the medians of the per-block medians would be far from the median of all the prices
+    assertEquals(2, result.getRowCount());
+    result.next();
+    assertEquals("a", result.getString(0));
+    assertEquals(500, result.getDouble(1), 10);
+    assertEquals(1000, result.getLong(2));
+    result.next();
+    assertEquals("b", result.getString(0));
+    assertEquals(4.5, result.getDouble(1), 1);
+    assertEquals(100, result.getLong(2));
+    inMemoryAggregate.abort();
+  }
+
+  @Test
+  public void testMedianThroughOnlineAggregation() throws VerdictDBException, SQLException {
+    Statement stmt = h2conn.createStatement();
+    String schema = "quantileschema";
+    VerdictOption options = new VerdictOption();
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", schema));
+    stmt.execute(
+        String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", options.getVerdictTempSchemaName()));
+    stmt.execute(
+        String.format(
+            "CREATE TABLE \"%s\".\"prices\" (\"store\" varchar(8), \"price\" double)", schema));
+    // log-normal prices, and a few zeros and negative prices
+    Random random = new Random(0);
+    List<List<Double>> prices =
+        Arrays.<List<Double>>asList(new ArrayList<Double>(), new ArrayList<Double>());
+    for (int i = 0; i < 4000; i++) {
+      int store = i % 2;
+      double price = (i % 50 == 0) ? 0 : Math.exp(random.nextGaussian() + 3 * store);
+      if (i % 70 == 0) {
+        price = -price;
+      }
+      prices.get(store).add(price);
+      stmt.execute(
+          String.format(
+              "INSERT INTO \"%s\".\"prices\" VALUES ('%s', %s)",
+              schema, (store == 0) ? "a" : "b", price));
+    }
+    stmt.close();
+
+    JdbcConnection conn = new JdbcConnection(h2conn, new H2Syntax());
+    ScramblingCoordinator scrambler = new ScramblingCoordinator(conn, schema, schema, 100L);
+    ScrambleMetaSet metaset = new ScrambleMetaSet();
+    metaset.addScrambleMeta(
+        scrambler.scramble(schema, "prices", schema, "prices_scrambled", "uniform"));
+
+    SelectQueryCoordinator coordinator = new SelectQueryCoordinator(conn, options);
+    coordinator.setScrambleMetaSet(metaset);
+    ExecutionResultReader reader =
+        coordinator.process(
+            String.format(
+                "select store, median(price) from %s.prices_scrambled group by store", schema));
+    DbmsQueryResult last = null;
+    for (DbmsQueryResult result : reader) {
+      last = result;
+    }
+
+    // the answer covering every block is close to the exact median
+    assertEquals(2, last.getRowCount());
+    while (last.next()) {
+      List<Double> values = prices.get(last.getString(0).equals("a") ? 0 : 1);
+      Collections.sort(values);
+      double exact = (values.get(999) + values.get(1000)) / 2;
+      assertEquals(exact, last.getDouble(1), Math.abs(exact) * 0.02);
+    }
+  }
+}
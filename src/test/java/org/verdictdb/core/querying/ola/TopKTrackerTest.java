@@ -0,0 +1,211 @@
+package org.verdictdb.core.querying.ola;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.OrderbyAttribute;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+
+public class TopKTrackerTest {
+
+  private static SelectQuery createQuery(ColumnOp aggregate, String orderAlias, String order) {
+    SelectQuery query =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new AliasedColumn(new BaseColumn("t", "grp"), "grp"),
+                new AliasedColumn(aggregate, "s")),
+            new BaseTable("myschema", "t", "t"));
+    query.addGroupby(new BaseColumn("t", "grp"));
+    query.addOrderby(new OrderbyAttribute(orderAlias, order));
+    query.addLimit(ConstantColumn.valueOf(2));
+    return query;
+  }
+
+  /**
+   * Simulates the progressive answers of groups whose per-block estimates are the means plus
+   * Gaussian noise; the answer covering n blocks is the average of n per-block estimates.
+   *
+   * @return True if the tracker settles the top groups within the given number of blocks
+   */
+  private static boolean simulate(
+      TopKTracker tracker, final double[] means, double noise, int blockCount) {
+    Random random = new Random(0);
+    final double[] sums = new double[means.length];
+    for (int n = 1; n <= blockCount; n++) {
+      List<Integer> order = new ArrayList<>();
+      for (int g = 0; g < means.length; g++) {
+        sums[g] += means[g] + noise * random.nextGaussian();
+        order.add(g);
+      }
+      Collections.sort(
+          order,
+          new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+              return Double.compare(sums[b], sums[a]);
+            }
+          });
+      List<List<Object>> rows = new ArrayList<>();
+      for (int g : order.subList(0, Math.min(order.size(), tracker.getFetchCount()))) {
+        rows.add(Arrays.<Object>asList("group" + g, sums[g] / n));
+      }
+      if (tracker.add(rows)) {
+        assertTrue(n >= TopKTracker.MIN_ANSWER_COUNT);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void testSupportedQueries() {
+    TopKTracker tracker =
+        TopKTracker.create(createQuery(ColumnOp.sum(new BaseColumn("t", "price")), "s", "desc"));
+    assertNotNull(tracker);
+    assertEquals(2, tracker.getK());
+    assertEquals(2 + TopKTracker.MIN_CONTENDER_COUNT, tracker.getFetchCount());
+
+    // ordered by a grouping column
+    assertNull(
+        TopKTracker.create(createQuery(ColumnOp.sum(new BaseColumn("t", "price")), "grp", "asc")));
+    // ordered by max, whose error is not known
+    assertNull(
+        TopKTracker.create(
+            createQuery(new ColumnOp("max", new BaseColumn("t", "price")), "s", "desc")));
+    // ordered by avg, whose answers are not the means of per-block estimates
+    assertNull(
+        TopKTracker.create(createQuery(ColumnOp.avg(new BaseColumn("t", "price")), "s", "desc")));
+    // with a having clause
+    SelectQuery having = createQuery(ColumnOp.sum(new BaseColumn("t", "price")), "s", "desc");
+    having.addHavingByAnd(
+        ColumnOp.greater(ColumnOp.sum(new BaseColumn("t", "price")), ConstantColumn.valueOf(0)));
+    assertNull(TopKTracker.create(having));
+  }
+
+  @Test
+  public void testSeparatedGroupsAreSettled() {
+    TopKTracker tracker =
+        TopKTracker.create(createQuery(ColumnOp.sum(new BaseColumn("t", "price")), "s", "desc"));
+    double[] means = new double[50];
+    for (int g = 0; g < means.length; g++) {
+      means[g] = (g < 2) ? 1000 * (g + 1) : g;
+    }
+    assertTrue(simulate(tracker, means, 10, 20));
+    assertTrue(tracker.isSettled());
+  }
+
+  @Test
+  public void testCloseGroupsAreNotSettled() {
+    // the second and the third groups are too close to tell which one is in the top 2
+    TopKTracker tracker =
+        TopKTracker.create(createQuery(ColumnOp.sum(new BaseColumn("t", "price")), "s", "desc"));
+    assertFalse(simulate(tracker, new double[] {1000, 500, 499, 10, 5}, 50, 20));
+
+    // the order of the top 2 groups is not settled either
+    tracker =
+        TopKTracker.create(createQuery(ColumnOp.sum(new BaseColumn("t", "price")), "s", "desc"));
+    assertFalse(simulate(tracker, new double[] {1000, 999, 10, 5}, 50, 20));
+  }
+
+  /** @return The answer of the groups named and valued as given, in the given order */
+  private static List<List<Object>> answer(String[] groups, double[] values) {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < groups.length; i++) {
+      rows.add(Arrays.<Object>asList(groups[i], values[i]));
+    }
+    return rows;
+  }
+
+  @Test
+  public void testUnfetchedGroupsAreBounded() {
+    // the first group is noisy, and the contenders are close below the second group
+    String[] groups = new String[12];
+    double[] values = new double[12];
+    groups[1] = "second";
+    values[1] = 1000;
+    for (int i = 2; i < 12; i++) {
+      groups[i] = "contender" + i;
+      values[i] = 991 - i;
+    }
+    groups[0] = "first";
+
+    // the unfetched groups might be as noisy as the first group
+    TopKTracker tracker =
+        TopKTracker.create(createQuery(ColumnOp.sum(new BaseColumn("t", "price")), "s", "desc"));
+    for (int n = 1; n <= 8; n++) {
+      values[0] = (n % 2 == 1) ? 2000 : 1990;
+      assertFalse(tracker.add(answer(groups, values)));
+    }
+
+    // no groups are ranked below the fetched rows
+    tracker =
+        TopKTracker.create(createQuery(ColumnOp.sum(new BaseColumn("t", "price")), "s", "desc"));
+    String[] allGroups = Arrays.copyOf(groups, 11);
+    boolean isSettled = false;
+    for (int n = 1; n <= 8 && !isSettled; n++) {
+      values[0] = (n % 2 == 1) ? 2000 : 1990;
+      isSettled = tracker.add(answer(allGroups, Arrays.copyOf(values, 11)));
+    }
+    assertTrue(isSettled);
+  }
+
+  @Test
+  public void testEnteringGroupIsNotFilledWithZeros() {
+    TopKTracker tracker = TopKTracker.create(createQuery(ColumnOp.count(), "s", "desc"));
+    String[] groups = {"a", "b", "c"};
+    double[] values = {1000, 500, 10};
+    tracker.add(answer(groups, values));
+    tracker.add(answer(groups, values));
+
+    // the group entering the top 2 had rows cut by the limit, not zero rows
+    String[] entered = {"a", "new", "b"};
+    double[] enteredValues = {1000, 600, 500};
+    assertFalse(tracker.add(answer(entered, enteredValues)));
+    assertFalse(tracker.add(answer(entered, enteredValues)));
+    assertTrue(tracker.add(answer(entered, enteredValues)));
+  }
+
+  @Test
+  public void testErrorRateIsCorrected() {
+    TopKTracker tracker = TopKTracker.create(createQuery(ColumnOp.count(), "s", "desc"));
+    String[] groups = {"a", "b", "c"};
+    double[] values = {1000, 500, 10};
+    for (int n = 1; n <= TopKTracker.MIN_ANSWER_COUNT; n++) {
+      tracker.add(answer(groups, values));
+    }
+    // the first check with a single comparison uses the uncorrected interval
+    assertEquals(1.959964, tracker.getZScore(1), 1e-5);
+    // the allowance is split among the comparisons
+    assertEquals(
+        -ProgressiveEstimate.inverseStandardNormal(0.025 / 2), tracker.getZScore(2), 1e-9);
+
+    // the second check is allowed a third of the remaining error rate
+    tracker.add(answer(groups, values));
+    assertEquals(
+        -ProgressiveEstimate.inverseStandardNormal(0.025 / 3), tracker.getZScore(1), 1e-9);
+  }
+
+  @Test
+  public void testAscendingOrder() {
+    TopKTracker tracker = TopKTracker.create(createQuery(ColumnOp.count(), "s", "asc"));
+    // the answers are in the descending order, which is the opposite of the query
+    assertFalse(simulate(tracker, new double[] {1000, 500, 10, 5}, 1, 20));
+  }
+}
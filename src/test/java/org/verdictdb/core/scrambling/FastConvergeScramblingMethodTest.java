@@ -1,6 +1,7 @@
 package org.verdictdb.core.scrambling;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -176,6 +177,62 @@ public class FastConvergeScramblingMethodTest {
     assertEquals(expected, actual);
   }
   
+  @Test
+  public void testLargeGroupListNodeWithOutlierSize() throws VerdictDBException {
+    String scratchpadSchemaName = "verdictdbtempSchema";
+    TempIdCreatorInScratchpadSchema idCreator = new TempIdCreatorInScratchpadSchema(scratchpadSchemaName);
+    LargeGroupListNode node = 
+        new LargeGroupListNode(idCreator, "oldSchema", "oldTable", "pcolumn", 10);
+    
+    // provision the statistics of a numeric column
+    DbmsConnection conn = JdbcConnection.create(h2conn);
+    DbmsQueryResult result = conn.execute(
+        "select 10 as \"verdictdbavgage\", 1 as \"verdictdbstddevage\", "
+        + "100 as \"verdictdbtotalcount\"");
+    ExecutionInfoToken e = new ExecutionInfoToken();
+    e.setKeyValue(PercentilesAndCountNode.class.getSimpleName(), result);
+    
+    SqlConvertible sqlobj = node.createQuery(Arrays.<ExecutionInfoToken>asList(e));
+    String sql = QueryToSql.convert(new HiveSyntax(), sqlobj);
+    assertTrue(sql.contains("as `verdictdboutliersize`"));
+    assertTrue(sql.contains("where rand() < 0.1"));
+    assertTrue(node.createToken(null).containsKey(LargeGroupListNode.OUTLIER_SIZE_COLUMN_ALIAS));
+  }
+  
+  @Test
+  public void testStatisticsAreReusedAfterRestore() throws VerdictDBException {
+    FastConvergeScramblingMethod method = 
+        new FastConvergeScramblingMethod(10, "test", "name");
+    DbmsConnection conn = JdbcConnection.create(h2conn);
+    DbmsQueryResult queryResult = conn.execute(
+        "select avg(t.\"age\") as \"verdictdbavgage\", "
+        + "stddev_pop(t.\"age\") as \"verdictdbstddevage\", "
+        + "count(*) as \"verdictdbtotalcount\" "
+        + "from \"test\".\"people\" as t");
+    Map<String, Object> metaData = new HashMap<>();
+    metaData.put(PercentilesAndCountNode.class.getSimpleName(), queryResult);
+    UnnamedColumn outlierPredicate = method.getTierExpressions(metaData).get(0);
+    
+    // the method is stored in the metastore as part of the scramble meta
+    Map<Integer, List<Double>> cumulativeMassDistributionPerTier = new HashMap<>();
+    cumulativeMassDistributionPerTier.put(0, Arrays.asList(0.5, 1.0));
+    ScrambleMeta meta = new ScrambleMeta(
+        "test", "people_scramble", "test", "people", "verdictdbblock", 2, "verdictdbtier", 3,
+        cumulativeMassDistributionPerTier, "fastconverge", null);
+    meta.setScramblingMethod(method);
+    ScramblingMethod restored = 
+        ScrambleMeta.fromJsonString(meta.toJsonString()).getScramblingMethod();
+    
+    // only the large group list is recomputed
+    List<ExecutableNodeBase> nodes = 
+        restored.getStatisticsNode("test", "people", "columnMeta", "partitionMeta", "primaryMeta");
+    assertEquals(1, nodes.size());
+    assertTrue(nodes.get(0) instanceof LargeGroupListNode);
+    assertEquals(
+        outlierPredicate, 
+        restored.getTierExpressions(new HashMap<String, Object>()).get(0));
+  }
+  
   @Test
   public void testGetStatisticsNode() throws SQLException, VerdictDBException {
     int blockSize = 10;
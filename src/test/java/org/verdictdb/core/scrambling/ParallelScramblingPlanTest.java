@@ -0,0 +1,94 @@
+package org.verdictdb.core.scrambling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.verdictdb.core.querying.ExecutableNodeBase;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.DeleteQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+import org.verdictdb.sqlsyntax.ImpalaSyntax;
+import org.verdictdb.sqlsyntax.MysqlSyntax;
+import org.verdictdb.sqlsyntax.PostgresqlSyntax;
+import org.verdictdb.sqlsyntax.SqliteSyntax;
+import org.verdictdb.sqlwriter.QueryToSql;
+
+public class ParallelScramblingPlanTest {
+
+  @Test
+  public void testPlanStructure() {
+    ScramblingMethod method = new UniformScramblingMethod(100);
+    Map<String, String> options = new HashMap<>();
+    options.put("tierColumnName", "verdictdbtier");
+    options.put("blockColumnName", "verdictdbblock");
+
+    ScramblingPlan plan =
+        ScramblingPlan.createParallel(
+            "newschema", "newtable", "oldschema", "oldtable", method, null, options, "id", 4);
+    ExecutableNodeBase root = (ExecutableNodeBase) plan.getReportingNode();
+    assertEquals(4, root.getSourceCount());
+    for (ExecutableNodeBase unit : root.getSources()) {
+      // metadata nodes, the statistics node, and the table creation node
+      assertEquals(4, unit.getSourceCount());
+    }
+    assertNotNull(plan.getProgress());
+    assertEquals(4, plan.getProgress().getTotalUnitCount());
+    assertEquals(0, plan.getProgress().getProgressRatio(), 1e-9);
+  }
+
+  @Test
+  public void testUnitPredicates() {
+    BaseColumn column = new BaseColumn("t", "id");
+    assertNull(ScramblingPlan.createUnitPredicate(column, 0, 1));
+
+    // the first unit also takes the rows with null values
+    ColumnOp first = (ColumnOp) ScramblingPlan.createUnitPredicate(column, 0, 3);
+    assertEquals("or", first.getOpType());
+    assertEquals("less", ((ColumnOp) first.getOperand(0)).getOpType());
+    assertEquals("isnull", ((ColumnOp) first.getOperand(1)).getOpType());
+
+    ColumnOp middle = (ColumnOp) ScramblingPlan.createUnitPredicate(column, 1, 3);
+    assertEquals("and", middle.getOpType());
+    ColumnOp lower = (ColumnOp) middle.getOperand(0);
+    assertEquals("greaterequal", lower.getOpType());
+    assertEquals("hash", ((ColumnOp) lower.getOperand(0)).getOpType());
+    assertEquals(String.valueOf(1 / 3.0), ((ConstantColumn) lower.getOperand(1)).getValue());
+
+    ColumnOp last = (ColumnOp) ScramblingPlan.createUnitPredicate(column, 2, 3);
+    assertEquals("greaterequal", last.getOpType());
+  }
+
+  @Test
+  public void testUnitDeleteQuery() throws VerdictDBException {
+    DeleteQuery query = ScramblingPlan.createUnitDeleteQuery("newschema", "newtable", "id", 2, 3);
+    String sql = QueryToSql.convert(new PostgresqlSyntax(), query);
+    assertTrue(sql.startsWith("delete from \"newschema\".\"newtable\" where "));
+    assertTrue(sql.contains(new PostgresqlSyntax().hashFunction("\"id\"")));
+
+    // a single unit covers all the rows
+    query = ScramblingPlan.createUnitDeleteQuery("newschema", "newtable", "id", 0, 1);
+    assertEquals(
+        "delete from \"newschema\".\"newtable\"",
+        QueryToSql.convert(new PostgresqlSyntax(), query));
+  }
+
+  @Test
+  public void testParallelSupport() {
+    assertTrue(ScramblingPlan.isParallelSupported(new PostgresqlSyntax()));
+    assertTrue(ScramblingPlan.isParallelSupported(new MysqlSyntax()));
+    // no hash function
+    assertFalse(ScramblingPlan.isParallelSupported(new H2Syntax()));
+    assertFalse(ScramblingPlan.isParallelSupported(new SqliteSyntax()));
+    assertFalse(ScramblingPlan.isParallelSupported(new ImpalaSyntax()));
+  }
+}
@@ -0,0 +1,99 @@
+package org.verdictdb.core.scrambling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.core.scrambling.ScrambleAdvisor.ScrambleRecommendation;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.exception.VerdictDBValueException;
+
+public class ScrambleAdvisorTest {
+
+  static Connection h2conn;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    final String DB_CONNECTION = "jdbc:h2:mem:scrambleadvisortest;DB_CLOSE_DELAY=-1";
+    h2conn = DriverManager.getConnection(DB_CONNECTION, "", "");
+    Statement stmt = h2conn.createStatement();
+    stmt.execute("CREATE SCHEMA IF NOT EXISTS \"test\"");
+    stmt.execute("DROP TABLE \"test\".\"people\" IF EXISTS");
+    stmt.execute("CREATE TABLE \"test\".\"people\" (\"id\" int, \"age\" int)");
+    for (int i = 0; i < 500; i++) {
+      stmt.execute(String.format("INSERT INTO \"test\".\"people\" VALUES (%d, %d)", i, i % 90));
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    h2conn.createStatement().execute("DROP SCHEMA IF EXISTS \"test\" CASCADE");
+    h2conn.close();
+  }
+
+  @Test
+  public void testAdviseSmallTable() throws VerdictDBException {
+    ScrambleAdvisor advisor = new ScrambleAdvisor(JdbcConnection.create(h2conn));
+    ScrambleRecommendation recommendation = advisor.advise("test", "people", 10);
+
+    // a table smaller than the minimum block size fits in a single block
+    assertEquals(500, recommendation.getRowCount());
+    assertEquals(500, recommendation.getBlockSize());
+    assertEquals(1, recommendation.getBlockCount());
+    assertEquals(1.0, recommendation.getRelativeSize(), 1e-9);
+    assertEquals("uniform", recommendation.getMethod());
+  }
+
+  @Test(expected = VerdictDBValueException.class)
+  public void testNonPositiveTarget() throws VerdictDBException {
+    new ScrambleAdvisor(JdbcConnection.create(h2conn)).advise("test", "people", 0);
+  }
+
+  @Test
+  public void testRecommendBlockSize() {
+    ScrambleAdvisor advisor = new ScrambleAdvisor(null);
+    // (2.0 - 0.5) s * 100,000 rows/s = 150,000 rows per block
+    ScrambleRecommendation recommendation =
+        advisor.recommend("test", "lineitem", 6000000, 0.5, 100000, 2.0);
+    assertEquals(150000, recommendation.getBlockSize());
+    assertEquals(40, recommendation.getBlockCount());
+    assertEquals(1.0, recommendation.getRelativeSize(), 1e-9);
+    assertEquals(2.0, recommendation.getExpectedFirstAnswerSeconds(), 1e-9);
+    assertEquals(
+        "CREATE SCRAMBLE test.lineitem_scrambled FROM test.lineitem "
+            + "METHOD uniform SIZE 1.0 BLOCKSIZE 150000",
+        recommendation.toCreateScrambleStatement("test", "lineitem_scrambled"));
+  }
+
+  @Test
+  public void testRecommendCappedBlockCount() {
+    ScrambleAdvisor advisor = new ScrambleAdvisor(null);
+    advisor.setMaxBlockCount(10);
+    // 1,000 rows per block would require 1,000 blocks; only 10 blocks are kept instead.
+    ScrambleRecommendation recommendation =
+        advisor.recommend("test", "lineitem", 1000000, 0.0, 1000, 1.0);
+    assertEquals(1000, recommendation.getBlockSize());
+    assertEquals(10, recommendation.getBlockCount());
+    assertEquals(0.01, recommendation.getRelativeSize(), 1e-9);
+    assertTrue(
+        recommendation
+            .toCreateScrambleStatement("test", "lineitem_scrambled")
+            .contains("SIZE 0.01 BLOCKSIZE 1000"));
+  }
+
+  @Test
+  public void testRecommendTargetShorterThanFixedLatency() {
+    ScrambleAdvisor advisor = new ScrambleAdvisor(null);
+    ScrambleRecommendation recommendation =
+        advisor.recommend("test", "lineitem", 1000000, 2.0, 100000, 1.0);
+    assertEquals(ScrambleAdvisor.MIN_BLOCK_SIZE, recommendation.getBlockSize());
+  }
+}
@@ -0,0 +1,80 @@
+package org.verdictdb.core.scrambling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.verdictdb.exception.VerdictDBValueException;
+
+public class ScrambleMetaSetTest {
+
+  private ScrambleMeta createScrambleMeta(
+      String scrambleTable, int blockCount, String method, String hashColumn)
+      throws VerdictDBValueException {
+    Map<Integer, List<Double>> cumulativeMassDistributionPerTier = new HashMap<>();
+    cumulativeMassDistributionPerTier.put(0, Arrays.asList(0.5, 1.0));
+    return new ScrambleMeta(
+        "scramble_schema",
+        scrambleTable,
+        "original_schema",
+        "original_table",
+        "verdictdbblock",
+        blockCount,
+        "verdictdbtier",
+        1,
+        cumulativeMassDistributionPerTier,
+        method,
+        hashColumn);
+  }
+
+  @Test
+  public void testLookups() throws VerdictDBValueException {
+    ScrambleMetaSet metaSet = new ScrambleMetaSet();
+    ScrambleMeta uniform = createScrambleMeta("uniform_scramble", 10, "uniform", null);
+    ScrambleMeta hash = createScrambleMeta("hash_scramble", 10, "hash", "id");
+    metaSet.addScrambleMeta(uniform);
+    metaSet.addScrambleMeta(hash);
+
+    assertEquals(hash, metaSet.getSingleMeta("scramble_schema", "hash_scramble"));
+    assertTrue(metaSet.isScrambled("scramble_schema", "uniform_scramble"));
+    assertFalse(metaSet.isScrambled("original_schema", "original_table"));
+    assertEquals(
+        Arrays.asList(uniform, hash),
+        metaSet.getScramblesOf("original_schema", "original_table"));
+    assertEquals(0, metaSet.getScramblesOf("original_schema", "other_table").size());
+    assertEquals(Arrays.asList(hash), metaSet.getScramblesByMethod("HASH"));
+  }
+
+  @Test
+  public void testFirstInsertedMetaIsFound() throws VerdictDBValueException {
+    ScrambleMetaSet metaSet = new ScrambleMetaSet();
+    ScrambleMeta recent = createScrambleMeta("scramble", 10, "uniform", null);
+    ScrambleMeta old = createScrambleMeta("scramble", 20, "uniform", null);
+    metaSet.addScrambleMeta(recent);
+    metaSet.addScrambleMeta(old);
+    assertEquals(recent, metaSet.getSingleMeta("scramble_schema", "scramble"));
+  }
+
+  @Test
+  public void testBestScramble() throws VerdictDBValueException {
+    ScrambleMetaSet metaSet = new ScrambleMetaSet();
+    ScrambleMeta large = createScrambleMeta("large", 100, "uniform", null);
+    ScrambleMeta small = createScrambleMeta("small", 10, "fastconverge", null);
+    ScrambleMeta hash = createScrambleMeta("hash", 5, "hash", "id");
+    metaSet.addScrambleMeta(large);
+    metaSet.addScrambleMeta(small);
+    metaSet.addScrambleMeta(hash);
+
+    assertEquals(small, metaSet.getBestScrambleFor("original_schema", "original_table", null));
+    assertEquals(hash, metaSet.getBestScrambleFor("original_schema", "original_table", "id"));
+    assertNull(metaSet.getBestScrambleFor("original_schema", "original_table", "name"));
+    assertNull(metaSet.getBestScrambleFor("original_schema", "other_table", null));
+  }
+}
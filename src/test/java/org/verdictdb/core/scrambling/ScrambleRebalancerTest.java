@@ -0,0 +1,142 @@
+package org.verdictdb.core.scrambling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.exception.VerdictDBValueException;
+import org.verdictdb.metastore.ScrambleMetaStore;
+import org.verdictdb.sqlreader.NonValidatingSQLParser;
+import org.verdictdb.sqlreader.ScrambleTableReplacer;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class ScrambleRebalancerTest {
+
+  static Connection h2conn;
+
+  static DbmsConnection conn;
+
+  static final String SCHEMA = "rebalanceschema";
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    h2conn = DriverManager.getConnection("jdbc:h2:mem:rebalancetest;DB_CLOSE_DELAY=-1");
+    conn = new JdbcConnection(h2conn, new H2Syntax());
+    Statement stmt = h2conn.createStatement();
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", SCHEMA));
+    for (String table : Arrays.asList("sales_scrambled", "sales_hashed")) {
+      stmt.execute(
+          String.format(
+              "CREATE TABLE \"%s\".\"%s\" (\"id\" int, \"price\" double, "
+                  + "\"verdictdbtier\" int, \"verdictdbblock\" int)",
+              SCHEMA, table));
+    }
+    // two blocks that have grown by appends
+    for (int i = 0; i < 1000; i++) {
+      stmt.execute(
+          String.format(
+              "INSERT INTO \"%s\".\"sales_scrambled\" VALUES (%d, %d, 0, %d)",
+              SCHEMA, i, i % 10, i % 2));
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    h2conn.createStatement().execute(String.format("DROP SCHEMA IF EXISTS \"%s\" CASCADE", SCHEMA));
+    h2conn.close();
+  }
+
+  private static ScrambleMeta createMeta(String table, String method, List<Double> distribution)
+      throws VerdictDBException {
+    Map<Integer, List<Double>> cumulative = new HashMap<>();
+    cumulative.put(0, distribution);
+    return new ScrambleMeta(
+        SCHEMA, table, SCHEMA, "sales", "verdictdbblock", distribution.size(), "verdictdbtier", 1,
+        cumulative, method, method.equals("hash") ? "id" : null);
+  }
+
+  @Test
+  public void testRebalanceUniformScramble() throws VerdictDBException, SQLException {
+    // the scramble includes a half of the original table
+    ScrambleMeta meta = createMeta("sales_scrambled", "uniform", Arrays.asList(0.25, 0.5));
+    ScrambleMeta rebalanced = new ScrambleRebalancer(conn).rebalance(meta, 100, 100);
+
+    assertEquals("sales_scrambled", rebalanced.getTableName());
+    String physicalTable = rebalanced.getPhysicalTableName();
+    assertTrue(physicalTable.startsWith("sales_scrambled" + ScrambleMeta.REBALANCED_TABLE_INFIX));
+    assertEquals(physicalTable, rebalanced.getStoredTableName());
+    assertEquals(10, rebalanced.getAggregationBlockCount());
+    List<Double> distribution = rebalanced.getCumulativeDistributionForTier(0);
+    assertEquals(0.05, distribution.get(0), 1e-6);
+    assertEquals(0.5, distribution.get(9), 1e-6);
+    assertEquals(
+        physicalTable,
+        ScrambleMeta.fromJsonString(rebalanced.toJsonString()).getPhysicalTableName());
+
+    ResultSet rs =
+        h2conn
+            .createStatement()
+            .executeQuery(
+                String.format(
+                    "SELECT count(*), sum(\"price\"), min(\"verdictdbblock\"), "
+                        + "max(\"verdictdbblock\"), count(distinct \"verdictdbblock\") "
+                        + "FROM \"%s\".\"%s\"",
+                    SCHEMA, physicalTable));
+    rs.next();
+    assertEquals(1000, rs.getLong(1));
+    assertEquals(4500.0, rs.getDouble(2), 1e-6);
+    assertEquals(0, rs.getInt(3));
+    assertEquals(9, rs.getInt(4));
+    assertEquals(10, rs.getInt(5));
+
+    // queries on the scramble are planned on its new table
+    ScrambleMetaSet metaSet = new ScrambleMetaSet();
+    metaSet.addScrambleMeta(rebalanced);
+    assertEquals(rebalanced, metaSet.getSingleMeta(SCHEMA, physicalTable));
+    SelectQuery query =
+        NonValidatingSQLParser.toSelectQuery("select sum(price) from sales_scrambled");
+    new ScrambleTableReplacer(metaSet).replaceWithPhysicalTables(query, SCHEMA);
+    BaseTable table = (BaseTable) query.getFromList().get(0);
+    assertEquals(physicalTable, table.getTableName());
+    assertEquals("sales_scrambled", table.getAliasName().get());
+
+    // the previous table is dropped by the next rebalance
+    new ScrambleMetaStore(conn, "verdictdbmetadata").dropRetiredScrambleTables(rebalanced);
+    List<String> tables = conn.getTables(SCHEMA);
+    assertFalse(tables.contains("sales_scrambled"));
+    assertTrue(tables.contains(physicalTable));
+  }
+
+  @Test(expected = VerdictDBValueException.class)
+  public void testPartialHashScrambleNotRebalanced() throws VerdictDBException {
+    ScrambleMeta meta = createMeta("sales_hashed", "hash", Arrays.asList(0.25, 0.5));
+    new ScrambleRebalancer(conn).rebalance(meta, 100, 100);
+  }
+
+  @Test
+  public void testNotRebalancedMetaHasNoPhysicalTable() throws VerdictDBException {
+    ScrambleMeta meta = createMeta("sales_hashed", "hash", Arrays.asList(0.5, 1.0));
+    assertNull(meta.getPhysicalTableName());
+    assertEquals("sales_hashed", meta.getStoredTableName());
+    assertFalse(meta.toJsonString().contains("physicalTableName"));
+  }
+}
@@ -0,0 +1,162 @@
+package org.verdictdb.core.scrambling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.core.execplan.ExecutablePlanRunner;
+import org.verdictdb.exception.VerdictDBException;
+
+public class StratifiedScramblingMethodTest {
+
+  static Connection h2conn;
+
+  private final Map<String, String> options =
+      new HashMap<String, String>() {
+        {
+          put("tierColumnName", "verdictdbtier");
+          put("blockColumnName", "verdictdbblock");
+          put("scrambleTableSuffix", "_scrambled");
+          put("createIfNotExists", "false");
+        }
+      };
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    final String DB_CONNECTION = "jdbc:h2:mem:stratifiedmethodtest;DB_CLOSE_DELAY=-1";
+    h2conn = DriverManager.getConnection(DB_CONNECTION, "", "");
+    Statement stmt = h2conn.createStatement();
+    stmt.execute("CREATE SCHEMA IF NOT EXISTS \"test\"");
+    stmt.execute("DROP TABLE \"test\".\"sales\" IF EXISTS");
+    stmt.execute(
+        "CREATE TABLE \"test\".\"sales\" (\"id\" int, \"country\" varchar(8), \"price\" double)");
+
+    // 90 rows for a large stratum and 10 rows for three small strata
+    List<String> countries = Arrays.asList("CHN", "CHN", "CHN", "CHN", "CHN", "KOR", "KOR", "KOR",
+        "JPN", "JPN");
+    for (int i = 0; i < 100; i++) {
+      String country = (i < 90) ? "USA" : countries.get(i - 90);
+      stmt.execute(
+          String.format(
+              "INSERT INTO \"test\".\"sales\" VALUES (%d, '%s', %d)", i, country, i % 7));
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    h2conn.createStatement().execute("DROP SCHEMA IF EXISTS \"test\" CASCADE");
+    h2conn.close();
+  }
+
+  @Test
+  public void testSmallStrataInEarlyBlocks() throws VerdictDBException, SQLException {
+    StratifiedScramblingMethod method =
+        new StratifiedScramblingMethod(10, "test", Arrays.asList("country"));
+    method.setMinRowsPerBlock(1);
+
+    ScramblingPlan plan =
+        ScramblingPlan.create("test", "sales_scramble", "test", "sales", method, options);
+    ExecutablePlanRunner.runTillEnd(JdbcConnection.create(h2conn), plan);
+
+    // the small strata (10 tuples) take up to half of the first blocks
+    assertEquals(10, method.getActualBlockCount());
+    assertEquals(Arrays.asList(0.5, 1.0), method.tier0CumulProbDist.subList(0, 2));
+    assertEquals(1.0, method.tier0CumulProbDist.get(9), 1e-6);
+    assertEquals(5 / 90.0, method.tier1CumulProbDist.get(0), 1e-6);
+    assertEquals(1.0, method.tier1CumulProbDist.get(9), 1e-6);
+
+    ResultSet rs =
+        h2conn
+            .createStatement()
+            .executeQuery(
+                "SELECT \"country\", \"verdictdbtier\", max(\"verdictdbblock\"), count(*) "
+                    + "FROM \"test\".\"sales_scramble\" "
+                    + "GROUP BY \"country\", \"verdictdbtier\"");
+    int rowCount = 0;
+    while (rs.next()) {
+      String country = rs.getString(1);
+      assertEquals(country.equals("USA") ? 1 : 0, rs.getInt(2));
+      if (!country.equals("USA")) {
+        assertTrue(rs.getInt(3) <= 1);
+      }
+      rowCount += rs.getInt(4);
+    }
+    assertEquals(100, rowCount);
+  }
+
+  @Test
+  public void testBlockCountAndSizeLimits() throws VerdictDBException, SQLException {
+    // at most 5 blocks of 20 tuples, instead of 10 blocks of 10 tuples
+    StratifiedScramblingMethod method =
+        new StratifiedScramblingMethod(10, 5, 1.0, "test", Arrays.asList("country"));
+    ScramblingPlan plan =
+        ScramblingPlan.create("test", "sales_scramble_capped", "test", "sales", method, options);
+    ExecutablePlanRunner.runTillEnd(JdbcConnection.create(h2conn), plan);
+    assertEquals(5, method.getActualBlockCount());
+    ResultSet rs =
+        h2conn
+            .createStatement()
+            .executeQuery(
+                "SELECT max(\"verdictdbblock\"), count(*) FROM \"test\".\"sales_scramble_capped\"");
+    rs.next();
+    assertEquals(4, rs.getInt(1));
+    assertEquals(100, rs.getInt(2));
+
+    // half of the table: the first 5 of 10 blocks are stored
+    method = new StratifiedScramblingMethod(10, 100, 0.5, "test", Arrays.asList("country"));
+    method.setMinRowsPerBlock(1);
+    plan = ScramblingPlan.create("test", "sales_scramble_half", "test", "sales", method, options);
+    ExecutablePlanRunner.runTillEnd(JdbcConnection.create(h2conn), plan);
+    assertEquals(5, method.getActualBlockCount());
+    assertEquals(10, method.getBlockCount());
+    rs =
+        h2conn
+            .createStatement()
+            .executeQuery(
+                "SELECT \"verdictdbtier\", max(\"verdictdbblock\"), count(*) "
+                    + "FROM \"test\".\"sales_scramble_half\" GROUP BY \"verdictdbtier\"");
+    while (rs.next()) {
+      assertTrue(rs.getInt(2) < 5);
+      if (rs.getInt(1) == 0) {
+        // the small strata are in the first blocks, so all of them are kept
+        assertEquals(10, rs.getInt(3));
+      } else {
+        assertTrue(rs.getInt(3) < 90);
+      }
+    }
+  }
+
+  @Test
+  public void testJsonRoundTrip() throws VerdictDBException {
+    StratifiedScramblingMethod method =
+        new StratifiedScramblingMethod(10, "test", Arrays.asList("country", "device"));
+    Map<Integer, List<Double>> cumulativeMassDistributionPerTier = new HashMap<>();
+    cumulativeMassDistributionPerTier.put(0, Arrays.asList(0.5, 1.0));
+    cumulativeMassDistributionPerTier.put(1, Arrays.asList(0.4, 1.0));
+    ScrambleMeta meta =
+        new ScrambleMeta(
+            "test", "sales_scramble", "test", "sales", "verdictdbblock", 2, "verdictdbtier", 2,
+            cumulativeMassDistributionPerTier, "stratified", null);
+    meta.setScramblingMethod(method);
+
+    ScrambleMeta restored = ScrambleMeta.fromJsonString(meta.toJsonString());
+    assertTrue(restored.getScramblingMethod() instanceof StratifiedScramblingMethod);
+    assertEquals(
+        Arrays.asList("country", "device"),
+        ((StratifiedScramblingMethod) restored.getScramblingMethod()).getStratifiedColumns());
+    assertTrue(restored.isMethodCompatibleWithSimpleAggregates());
+  }
+}
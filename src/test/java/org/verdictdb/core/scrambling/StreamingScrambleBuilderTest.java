@@ -0,0 +1,120 @@
+package org.verdictdb.core.scrambling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+import org.verdictdb.sqlsyntax.SqliteSyntax;
+
+public class StreamingScrambleBuilderTest {
+
+  static Connection h2conn;
+
+  static Connection sqliteConn;
+
+  @BeforeClass
+  public static void setupDatabases() throws SQLException {
+    h2conn = DriverManager.getConnection("jdbc:h2:mem:streamingscrambletest;DB_CLOSE_DELAY=-1");
+    Statement stmt = h2conn.createStatement();
+    stmt.execute("CREATE SCHEMA IF NOT EXISTS \"test\"");
+    stmt.execute(
+        "CREATE TABLE \"test\".\"sales\" (\"id\" int, \"price\" double, \"note\" varchar(8))");
+    insertRows(stmt, "\"test\".\"sales\"");
+
+    sqliteConn = DriverManager.getConnection("jdbc:sqlite:");
+    stmt = sqliteConn.createStatement();
+    stmt.execute("CREATE TABLE \"sales\" (\"id\" int, \"price\" double, \"note\" varchar(8))");
+    insertRows(stmt, "\"main\".\"sales\"");
+  }
+
+  private static void insertRows(Statement stmt, String table) throws SQLException {
+    for (int i = 0; i < 1000; i++) {
+      stmt.execute(
+          String.format(
+              "INSERT INTO %s VALUES (%d, %d, %s)",
+              table, i, i % 10, (i % 2 == 0) ? "'even'" : "NULL"));
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    h2conn.createStatement().execute("DROP SCHEMA IF EXISTS \"test\" CASCADE");
+    h2conn.close();
+    sqliteConn.close();
+  }
+
+  @Test
+  public void testH2() throws VerdictDBException, SQLException {
+    StreamingScrambleBuilder builder =
+        new StreamingScrambleBuilder(new JdbcConnection(h2conn, new H2Syntax()));
+    builder.setSeed(0);
+    builder.setBatchSize(64);
+    UniformScramblingMethod method = new UniformScramblingMethod(100, 100, 1.0);
+    BlockZoneMap zoneMap =
+        builder.build(
+            "test", "sales", "test", "sales_scrambled", null, method,
+            "verdictdbtier", "verdictdbblock", Arrays.asList("id"));
+
+    assertEquals(10, method.getActualBlockCount());
+    checkScramble(h2conn, "\"test\".\"sales_scrambled\"", 1000, zoneMap);
+  }
+
+  @Test
+  public void testSqliteWithSmallerScramble() throws VerdictDBException, SQLException {
+    StreamingScrambleBuilder builder =
+        new StreamingScrambleBuilder(new JdbcConnection(sqliteConn, new SqliteSyntax()));
+    builder.setSeed(0);
+    // half of the blocks are dropped
+    UniformScramblingMethod method = new UniformScramblingMethod(100, 5, 0.5);
+    BlockZoneMap zoneMap =
+        builder.build(
+            "main", "sales", "main", "sales_scrambled", null, method,
+            "verdictdbtier", "verdictdbblock", Arrays.asList("id", "note"));
+
+    assertEquals(5, method.getActualBlockCount());
+    assertEquals(10, method.getBlockCount());
+    long rowCount = 0;
+    for (int block = 0; block < zoneMap.getBlockCount(); block++) {
+      rowCount += zoneMap.rowCounts.get(block);
+    }
+    assertTrue(rowCount > 350 && rowCount < 650);
+    checkScramble(sqliteConn, "\"main\".\"sales_scrambled\"", rowCount, zoneMap);
+    assertTrue(zoneMap.mayContainNonNull("note", 0));
+    assertFalse(zoneMap.isTemporal("id"));
+  }
+
+  /** Checks the blocks of the scramble against the zone map computed while it was written. */
+  private void checkScramble(Connection conn, String table, long rowCount, BlockZoneMap zoneMap)
+      throws SQLException {
+    ResultSet rs =
+        conn.createStatement()
+            .executeQuery(
+                String.format(
+                    "SELECT \"verdictdbblock\", count(*), min(\"id\"), max(\"id\"), "
+                        + "max(\"verdictdbtier\") FROM %s GROUP BY \"verdictdbblock\"",
+                    table));
+    long total = 0;
+    while (rs.next()) {
+      int block = rs.getInt(1);
+      assertEquals(zoneMap.rowCounts.get(block).longValue(), rs.getLong(2));
+      assertTrue(zoneMap.mayOverlap("id", block, rs.getDouble(3), true, rs.getDouble(3), true));
+      assertFalse(zoneMap.mayOverlap("id", block, rs.getDouble(4) + 1, true, null, false));
+      assertEquals(0, rs.getInt(5));
+      total += rs.getLong(2);
+    }
+    assertEquals(rowCount, total);
+  }
+}
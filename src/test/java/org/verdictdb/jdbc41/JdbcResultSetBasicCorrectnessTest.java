@@ -584,4 +584,37 @@ public class JdbcResultSetBasicCorrectnessTest {
     }
   }
 
+  @Test
+  public void getPrimitivesByLabelTest() throws SQLException {
+    ResultSet rs = stmt.executeQuery(
+        "SELECT gender, count(*) as \"cnt\", avg(height) as \"a\", max(id) = 3 as \"flag\" "
+            + "FROM PEOPLE GROUP BY gender ORDER BY gender");
+    VerdictSingleResultFromDbmsQueryResult result =
+        new VerdictSingleResultFromDbmsQueryResult(new JdbcQueryResult(rs));
+    jdbcResultSet = new VerdictResultSet(result);
+
+    assertEquals(2, jdbcResultSet.findColumn("CNT"));
+    assertEquals(2, jdbcResultSet.findColumn("cnt"));
+    jdbcResultSet.next();
+    // the same labels are resolved from the cache for the second row
+    for (int i = 0; i < 2; i++) {
+      long count = jdbcResultSet.getLong("CNT");
+      assertEquals(count, jdbcResultSet.getInt("cnt"));
+      assertEquals((short) count, jdbcResultSet.getShort("Cnt"));
+      assertEquals((double) count, jdbcResultSet.getDouble("cnt"), 1e-9);
+      assertEquals(jdbcResultSet.getDouble(3), jdbcResultSet.getDouble("A"), 1e-9);
+      assertEquals(jdbcResultSet.getBoolean(4), jdbcResultSet.getBoolean("flag"));
+      jdbcResultSet.next();
+    }
+  }
+
+  @Test(expected = SQLException.class)
+  public void getByMissingLabelTest() throws SQLException {
+    ResultSet rs = stmt.executeQuery("SELECT count(*) as \"cnt\" FROM PEOPLE");
+    VerdictSingleResultFromDbmsQueryResult result =
+        new VerdictSingleResultFromDbmsQueryResult(new JdbcQueryResult(rs));
+    jdbcResultSet = new VerdictResultSet(result);
+    jdbcResultSet.next();
+    jdbcResultSet.getLong("nonexisting");
+  }
 }
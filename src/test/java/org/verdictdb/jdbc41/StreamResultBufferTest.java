@@ -0,0 +1,113 @@
+package org.verdictdb.jdbc41;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import org.verdictdb.VerdictSingleResult;
+import org.verdictdb.coordinator.VerdictSingleResultFromListData;
+
+public class StreamResultBufferTest {
+
+  private static VerdictSingleResult createResult(int value) {
+    return VerdictSingleResultFromListData.createWithSingleColumn(
+        Arrays.asList("value"), Arrays.<Object>asList(value));
+  }
+
+  @Test
+  public void testLatestPolicyKeepsOnlyLastResult() throws InterruptedException {
+    StreamResultBuffer buffer = StreamResultBuffer.create("latest", 10);
+    VerdictSingleResult last = createResult(3);
+    assertTrue(buffer.put(createResult(1)));
+    assertTrue(buffer.put(createResult(2)));
+    assertTrue(buffer.put(last));
+    buffer.setCompleted();
+
+    assertEquals(1, buffer.size());
+    Pair<Integer, VerdictSingleResult> taken = buffer.take();
+    assertEquals(3, (int) taken.getLeft());
+    assertSame(last, taken.getRight());
+    assertNull(buffer.take());
+  }
+
+  @Test
+  public void testBoundedPolicyBlocksProducer() throws InterruptedException {
+    final StreamResultBuffer buffer = StreamResultBuffer.create("bounded", 2);
+    final CountDownLatch produced = new CountDownLatch(1);
+    Thread producer =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  for (int i = 1; i <= 3; i++) {
+                    buffer.put(createResult(i));
+                  }
+                  produced.countDown();
+                  buffer.setCompleted();
+                } catch (InterruptedException e) {
+                  // the test fails by the timeout below
+                }
+              }
+            });
+    producer.start();
+
+    // the third result waits until a result is taken
+    assertFalse(produced.await(200, TimeUnit.MILLISECONDS));
+    assertEquals(2, buffer.size());
+    assertEquals(1, (int) buffer.take().getLeft());
+    assertTrue(produced.await(5, TimeUnit.SECONDS));
+    assertEquals(2, (int) buffer.take().getLeft());
+    assertEquals(3, (int) buffer.take().getLeft());
+    assertNull(buffer.take());
+    producer.join();
+  }
+
+  @Test
+  public void testCloseReleasesProducer() throws InterruptedException {
+    StreamResultBuffer buffer = StreamResultBuffer.create("bounded", 1);
+    assertTrue(buffer.put(createResult(1)));
+    buffer.close();
+    assertFalse(buffer.put(createResult(2)));
+    assertNull(buffer.take());
+  }
+
+  @Test
+  public void testResultSetReadsAllResults() throws InterruptedException, SQLException {
+    StreamResultBuffer buffer = StreamResultBuffer.create("bounded", 10);
+    buffer.put(createResult(1));
+    buffer.put(createResult(2));
+    buffer.setCompleted();
+
+    VerdictStreamResultSet resultSet = new VerdictStreamResultSet(buffer);
+    assertTrue(resultSet.next());
+    assertEquals(1, resultSet.getInt(1));
+    assertEquals(1, resultSet.getInt(2));
+    assertTrue(resultSet.next());
+    assertEquals(2, resultSet.getInt(1));
+    assertEquals(2, resultSet.getInt(2));
+    assertFalse(resultSet.next());
+  }
+
+  @Test(expected = SQLException.class)
+  public void testResultSetReportsFailure() throws SQLException {
+    StreamResultBuffer buffer = StreamResultBuffer.create("bounded", 10);
+    buffer.fail(new RuntimeException("the query failed"));
+    buffer.setCompleted();
+    new VerdictStreamResultSet(buffer).next();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownPolicyIsRejected() {
+    StreamResultBuffer.create("unbounded", 10);
+  }
+}
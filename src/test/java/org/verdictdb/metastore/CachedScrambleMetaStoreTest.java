@@ -0,0 +1,112 @@
+package org.verdictdb.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class CachedScrambleMetaStoreTest {
+
+  static Connection conn;
+
+  static final String STORE_SCHEMA = "cached_meta_store_test";
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    final String DB_CONNECTION = "jdbc:h2:mem:cachedscramblemetastoretest;DB_CLOSE_DELAY=-1";
+    conn = DriverManager.getConnection(DB_CONNECTION, "", "");
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    conn.createStatement()
+        .execute(String.format("DROP SCHEMA IF EXISTS %s CASCADE", STORE_SCHEMA));
+    conn.close();
+  }
+
+  @Test
+  public void testIncrementalRefresh() throws VerdictDBException, InterruptedException {
+    DbmsConnection dbmsConn = new JdbcConnection(conn, new H2Syntax());
+    ScrambleMetaStore store = new ScrambleMetaStore(dbmsConn, STORE_SCHEMA);
+    store.remove();
+    store.addToStore(createScrambleMeta("scramble1"));
+
+    CachedScrambleMetaStore cached = new CachedScrambleMetaStore(store);
+    ScrambleMetaSet metaSet = cached.retrieve();
+    assertEquals(1, countOf(metaSet));
+    assertFalse(cached.refreshIfChanged());
+
+    // another client adds a scramble
+    Thread.sleep(10);
+    new ScrambleMetaStore(dbmsConn, STORE_SCHEMA).addToStore(createScrambleMeta("scramble2"));
+    assertTrue(cached.refreshIfChanged());
+    metaSet = cached.retrieve();
+    assertEquals(2, countOf(metaSet));
+    // the most recent one comes first
+    assertEquals("scramble2", metaSet.iterator().next().getTableName());
+    assertEquals(store.retrieveVersion(), cached.getCachedVersion());
+
+    // another client drops a scramble
+    Thread.sleep(10);
+    new ScrambleMetaStore(dbmsConn, STORE_SCHEMA)
+        .dropScrambleTable(
+            new BaseTable("original_schema", "original_table"),
+            new BaseTable("new_schema", "scramble1"));
+    assertTrue(cached.refreshIfChanged());
+    metaSet = cached.retrieve();
+    assertEquals(1, countOf(metaSet));
+    assertNull(metaSet.getSingleMeta("new_schema", "scramble1"));
+    assertFalse(cached.refreshIfChanged());
+  }
+
+  @Test
+  public void testRowCountOfVersion() {
+    assertEquals(3, ScrambleMetaStore.getRowCountOfVersion("3,2018-10-01 00:00:00.0"));
+    assertEquals(0, ScrambleMetaStore.getRowCountOfVersion("empty"));
+    assertEquals(-1, ScrambleMetaStore.getRowCountOfVersion(null));
+  }
+
+  private int countOf(ScrambleMetaSet metaSet) {
+    int count = 0;
+    for (ScrambleMeta meta : metaSet) {
+      count++;
+    }
+    return count;
+  }
+
+  private ScrambleMeta createScrambleMeta(String scrambleTable) throws VerdictDBException {
+    Map<Integer, List<Double>> cumulativeMassDistributionPerTier = new HashMap<>();
+    cumulativeMassDistributionPerTier.put(0, Arrays.asList(0.5, 1.0));
+    return new ScrambleMeta(
+        "new_schema",
+        scrambleTable,
+        "original_schema",
+        "original_table",
+        "verdictdbblock",
+        2,
+        "verdictdbtier",
+        1,
+        cumulativeMassDistributionPerTier,
+        "uniform",
+        null);
+  }
+}
@@ -0,0 +1,140 @@
+package org.verdictdb.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.CachedDbmsConnection;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class MetaDataSnapshotTest {
+
+  static Connection conn;
+
+  static final String SCHEMA = "snapshot_test";
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    final String DB_CONNECTION = "jdbc:h2:mem:metadatasnapshottest;DB_CLOSE_DELAY=-1";
+    conn = DriverManager.getConnection(DB_CONNECTION, "", "");
+    conn.createStatement().execute(String.format("CREATE SCHEMA IF NOT EXISTS %s", SCHEMA));
+    conn.createStatement()
+        .execute(
+            String.format(
+                "CREATE TABLE %s.people (id int, name varchar(255), age int)", SCHEMA));
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    conn.createStatement().execute(String.format("DROP SCHEMA IF EXISTS %s CASCADE", SCHEMA));
+    conn.close();
+  }
+
+  @Test
+  public void testWriteAndRead() throws VerdictDBException, IOException {
+    CachedDbmsConnection cachedConn =
+        new CachedDbmsConnection(new JdbcConnection(conn, new H2Syntax()));
+    cachedConn.getSchemas();
+    cachedConn.getTables(SCHEMA);
+    cachedConn.getColumns(SCHEMA, "PEOPLE");
+
+    ScrambleMetaSet metaSet = new ScrambleMetaSet();
+    ScrambleMeta meta = createScrambleMeta();
+    metaSet.addScrambleMeta(meta);
+
+    File file = File.createTempFile("verdictdbsnapshot", ".bin");
+    file.deleteOnExit();
+    MetaDataSnapshot snapshot = MetaDataSnapshot.capture(cachedConn, metaSet, "1,2018-10-01");
+    snapshot.writeTo(file.getPath());
+
+    MetaDataSnapshot restored = MetaDataSnapshot.readFrom(file.getPath());
+    assertEquals("1,2018-10-01", restored.getMetaStoreVersion());
+    assertEquals(
+        meta, restored.getScrambleMetaSet().getSingleMeta("new_schema", "New_Table"));
+
+    // the restored cache must be identical to the original one
+    CachedDbmsConnection newConn =
+        new CachedDbmsConnection(new JdbcConnection(conn, new H2Syntax()));
+    restored.restoreTo(newConn);
+    assertEquals(cachedConn.getCachedSchemas(), newConn.getCachedSchemas());
+    assertEquals(cachedConn.getCachedTables(), newConn.getCachedTables());
+    assertEquals(cachedConn.getCachedColumns(), newConn.getCachedColumns());
+  }
+
+  @Test
+  public void testValidity() throws VerdictDBException {
+    CachedDbmsConnection cachedConn =
+        new CachedDbmsConnection(new JdbcConnection(conn, new H2Syntax()));
+    MetaDataSnapshot snapshot =
+        MetaDataSnapshot.capture(cachedConn, new ScrambleMetaSet(), "3,2018-10-01");
+    assertTrue(snapshot.isValid("3,2018-10-01", 60));
+    assertFalse(snapshot.isValid("4,2018-10-02", 60));
+    assertFalse(snapshot.isValid("3,2018-10-01", -1));
+  }
+
+  @Test
+  public void testInvalidate() throws VerdictDBException, IOException {
+    CachedDbmsConnection cachedConn =
+        new CachedDbmsConnection(new JdbcConnection(conn, new H2Syntax()));
+    long count = cachedConn.getCacheModificationCount();
+    cachedConn.getTables(SCHEMA);
+    assertTrue(cachedConn.getCacheModificationCount() > count);
+
+    // cache hits do not change the cache
+    count = cachedConn.getCacheModificationCount();
+    cachedConn.getTables(SCHEMA);
+    assertEquals(count, cachedConn.getCacheModificationCount());
+
+    File file = File.createTempFile("verdictdbsnapshot", ".bin");
+    file.deleteOnExit();
+    MetaDataSnapshot.capture(cachedConn, new ScrambleMetaSet(), "5,2018-10-01")
+        .writeTo(file.getPath());
+    MetaDataSnapshot.invalidate(file.getPath());
+    assertFalse(file.exists());
+    assertNull(MetaDataSnapshot.readFrom(file.getPath()));
+  }
+
+  @Test
+  public void testReadCorruptedFile() throws IOException {
+    File file = File.createTempFile("verdictdbsnapshot", ".bin");
+    file.deleteOnExit();
+    assertNull(MetaDataSnapshot.readFrom(file.getPath()));
+    assertNull(MetaDataSnapshot.readFrom(file.getPath() + "_nonexisting"));
+  }
+
+  private ScrambleMeta createScrambleMeta() throws VerdictDBException {
+    Map<Integer, List<Double>> cumulativeMassDistributionPerTier = new HashMap<>();
+    cumulativeMassDistributionPerTier.put(0, Arrays.asList(0.3, 0.6, 1.0));
+    cumulativeMassDistributionPerTier.put(1, Arrays.asList(0.2, 0.5, 1.0));
+    return new ScrambleMeta(
+        "new_schema",
+        "New_Table",
+        "Original_Schema",
+        "origiNAL_TABLE",
+        "verdictDBblock",
+        3,
+        "VerdictTIER",
+        2,
+        cumulativeMassDistributionPerTier,
+        "uniform",
+        null);
+  }
+}
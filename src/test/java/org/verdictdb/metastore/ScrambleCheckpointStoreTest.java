@@ -0,0 +1,90 @@
+package org.verdictdb.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.metastore.ScrambleCheckpointStore.ScrambleCheckpoint;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class ScrambleCheckpointStoreTest {
+
+  static Connection conn;
+
+  static final String STORE_SCHEMA = "checkpoint_test";
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    final String DB_CONNECTION = "jdbc:h2:mem:scramblecheckpointstoretest;DB_CLOSE_DELAY=-1";
+    conn = DriverManager.getConnection(DB_CONNECTION, "", "");
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    conn.createStatement()
+        .execute(String.format("DROP SCHEMA IF EXISTS %s CASCADE", STORE_SCHEMA));
+    conn.close();
+  }
+
+  @Test
+  public void testPendingBuild() throws VerdictDBException {
+    DbmsConnection dbmsConn = new JdbcConnection(conn, new H2Syntax());
+    ScrambleCheckpointStore store = new ScrambleCheckpointStore(dbmsConn, STORE_SCHEMA);
+    store.remove();
+    assertNull(store.retrievePendingBuild("new_schema", "scramble"));
+
+    String statement =
+        "CREATE SCRAMBLE new_schema.scramble FROM original_schema.original_table "
+            + "WHERE name = 'o''brien'";
+    String buildId = store.startBuild(createScrambleMeta(), statement, "id", 4);
+    store.markUnitComplete("new_schema", "scramble", buildId, 0);
+    store.markUnitComplete("new_schema", "scramble", buildId, 2);
+
+    ScrambleCheckpoint checkpoint = store.retrievePendingBuild("new_schema", "scramble");
+    assertNotNull(checkpoint);
+    assertEquals(buildId, checkpoint.getBuildId());
+    assertEquals(statement, checkpoint.getStatement());
+    assertEquals("id", checkpoint.getUnitColumn());
+    assertEquals(4, checkpoint.getUnitCount());
+    assertEquals(new HashSet<>(Arrays.asList(0, 2)), checkpoint.getCompletedUnits());
+    assertEquals(
+        "verdictdbblock", checkpoint.getScrambleMeta().getAggregationBlockColumn());
+    assertNull(store.retrievePendingBuild("new_schema", "other_scramble"));
+
+    store.markBuildComplete("new_schema", "scramble", buildId);
+    assertNull(store.retrievePendingBuild("new_schema", "scramble"));
+  }
+
+  private ScrambleMeta createScrambleMeta() throws VerdictDBException {
+    Map<Integer, List<Double>> cumulativeMassDistributionPerTier = new HashMap<>();
+    cumulativeMassDistributionPerTier.put(0, Arrays.asList(0.5, 1.0));
+    return new ScrambleMeta(
+        "new_schema",
+        "scramble",
+        "original_schema",
+        "original_table",
+        "verdictdbblock",
+        2,
+        "verdictdbtier",
+        1,
+        cumulativeMassDistributionPerTier,
+        "uniform",
+        null);
+  }
+}
@@ -0,0 +1,161 @@
+package org.verdictdb.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class ScrambleMetaStoreCompactionTest {
+
+  static Connection conn;
+
+  static final String STORE_SCHEMA = "compaction_test";
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    final String DB_CONNECTION = "jdbc:h2:mem:scramblemetastorecompactiontest;DB_CLOSE_DELAY=-1";
+    conn = DriverManager.getConnection(DB_CONNECTION, "", "");
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    conn.createStatement()
+        .execute(String.format("DROP SCHEMA IF EXISTS %s CASCADE", STORE_SCHEMA));
+    conn.close();
+  }
+
+  @Test
+  public void testCompaction() throws VerdictDBException, SQLException, InterruptedException {
+    DbmsConnection dbmsConn = new JdbcConnection(conn, new H2Syntax());
+    ScrambleMetaStore store = new ScrambleMetaStore(dbmsConn, STORE_SCHEMA);
+    store.remove();
+
+    // the same scramble is recreated several times; another one is dropped.
+    for (int i = 0; i < 3; i++) {
+      store.addToStore(createScrambleMeta("scramble1", i + 1));
+      Thread.sleep(5);
+    }
+    store.addToStore(createScrambleMeta("scramble2", 1));
+    Thread.sleep(5);
+    store.dropScrambleTable(
+        new BaseTable("original_schema", "original_table"),
+        new BaseTable("new_schema", "scramble2"));
+    Thread.sleep(5);
+
+    store.compact();
+    List<ScrambleMetaStore.MetaStoreEntry> compacted = store.retrieveCompactedEntries();
+    assertEquals(2, compacted.size());
+    assertTrue(compacted.get(1).isDeleted());
+
+    // the history is kept
+    ResultSet rs =
+        conn.createStatement()
+            .executeQuery(
+                String.format(
+                    "SELECT count(*) FROM %s.%s", STORE_SCHEMA, store.getMetaStoreTableName()));
+    rs.next();
+    assertEquals(5, rs.getInt(1));
+
+    // rows added after the compaction are read from the metastore table
+    store.addToStore(createScrambleMeta("scramble3", 1));
+    ScrambleMetaSet metaSet = store.retrieve();
+    assertEquals(3, metaSet.getSingleMeta("new_schema", "scramble1").getAggregationBlockCount());
+    assertNull(metaSet.getSingleMeta("new_schema", "scramble2"));
+    assertNotNull(metaSet.getSingleMeta("new_schema", "scramble3"));
+    assertEquals("scramble3", metaSet.iterator().next().getTableName());
+  }
+
+  @Test
+  public void testIncompleteCurrentStateTableIsIgnored() throws VerdictDBException, SQLException {
+    DbmsConnection dbmsConn = new JdbcConnection(conn, new H2Syntax());
+    ScrambleMetaStore store = new ScrambleMetaStore(dbmsConn, STORE_SCHEMA);
+    store.remove();
+    store.addToStore(createScrambleMeta("scramble1", 1));
+    store.compact();
+    assertEquals(1, store.retrieveCompactedEntries().size());
+
+    // removing the marker row makes the table look partially written; then, the staging table
+    // is read instead.
+    deleteMarker(ScrambleMetaStore.getCurrentStateTableName());
+    assertEquals(1, store.retrieveCompactedEntries().size());
+    deleteMarker(ScrambleMetaStore.getStagingStateTableName());
+    assertEquals(0, store.retrieveCompactedEntries().size());
+    assertNotNull(store.retrieve().getSingleMeta("new_schema", "scramble1"));
+  }
+
+  @Test
+  public void testRowAddedBeforeCompactionIsNotMissed()
+      throws VerdictDBException, SQLException, InterruptedException {
+    DbmsConnection dbmsConn = new JdbcConnection(conn, new H2Syntax());
+    ScrambleMetaStore store = new ScrambleMetaStore(dbmsConn, STORE_SCHEMA);
+    store.remove();
+    store.addToStore(createScrambleMeta("scramble1", 1));
+    Thread.sleep(5);
+    store.compact();
+
+    // a client whose clock lags behind adds a row earlier than the compaction
+    store.addToStore(createScrambleMeta("scramble2", 1));
+    conn.createStatement()
+        .execute(
+            String.format(
+                "UPDATE %s.%s SET %s = TIMESTAMP '2000-01-01 00:00:00' WHERE %s = 'scramble2'",
+                STORE_SCHEMA,
+                store.getMetaStoreTableName(),
+                ScrambleMetaStore.getAddedAtColumn(),
+                ScrambleMetaStore.getScrambleTableColumn()));
+    assertNotNull(store.retrieve().getSingleMeta("new_schema", "scramble2"));
+    assertNotNull(
+        new CachedScrambleMetaStore(store).retrieve().getSingleMeta("new_schema", "scramble2"));
+
+    // the next compaction includes the row
+    store.compact();
+    assertEquals(2, store.retrieveCompactedEntries().size());
+    assertNotNull(store.retrieve().getSingleMeta("new_schema", "scramble2"));
+  }
+
+  private void deleteMarker(String tableName) throws SQLException {
+    conn.createStatement()
+        .execute(
+            String.format(
+                "DELETE FROM %s.%s WHERE %s = 'COMPACTED'",
+                STORE_SCHEMA, tableName, ScrambleMetaStore.getScrambleMethodColumn()));
+  }
+
+  private ScrambleMeta createScrambleMeta(String scrambleTable, int blockCount)
+      throws VerdictDBException {
+    Map<Integer, List<Double>> cumulativeMassDistributionPerTier = new HashMap<>();
+    cumulativeMassDistributionPerTier.put(0, Arrays.asList(0.5, 1.0));
+    return new ScrambleMeta(
+        "new_schema",
+        scrambleTable,
+        "original_schema",
+        "original_table",
+        "verdictdbblock",
+        blockCount,
+        "verdictdbtier",
+        1,
+        cumulativeMassDistributionPerTier,
+        "uniform",
+        null);
+  }
+}